@@ -22,8 +22,10 @@ import io.accio.base.client.Client;
 import io.accio.base.client.jdbc.JdbcRecordIterator;
 import io.accio.base.metadata.ColumnMetadata;
 import io.airlift.log.Logger;
+import org.duckdb.DuckDBAppender;
 import org.duckdb.DuckDBConnection;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -31,26 +33,47 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 
 import static io.accio.base.client.duckdb.DuckdbType.DUCKDB_TYPE;
 import static io.accio.base.metadata.StandardErrorCode.GENERIC_USER_ERROR;
 import static java.lang.String.format;
+import static java.time.ZoneOffset.UTC;
+import static java.util.stream.Collectors.joining;
 
 public final class DuckdbClient
         implements Client
 {
     private static final Logger LOG = Logger.get(DuckdbClient.class);
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+    public static final int DEFAULT_CONNECTION_POOL_SIZE = 16;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 128;
+
     private final Connection duckDBConnection;
+    private final DuckdbConnectionPool connectionPool;
+    private final int connectionPoolSize;
 
     public DuckdbClient()
+    {
+        this(DEFAULT_CONNECTION_POOL_SIZE, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    public DuckdbClient(int connectionPoolSize, int statementCacheSize)
     {
         try {
             // The instance will be cleared after the process end. We don't need to
             // close this connection
             Class.forName("org.duckdb.DuckDBDriver");
             this.duckDBConnection = DriverManager.getConnection("jdbc:duckdb:");
+            this.connectionPool = new DuckdbConnectionPool((DuckDBConnection) duckDBConnection, connectionPoolSize, statementCacheSize);
+            this.connectionPoolSize = connectionPoolSize;
         }
         catch (SQLException | ClassNotFoundException e) {
             throw new RuntimeException(e);
@@ -152,16 +175,176 @@ public final class DuckdbClient
         }
     }
 
+    /**
+     * Create the table with the given columns and load the records through the duckdb appender.
+     * The records are streamed into duckdb row by row, so no intermediate file is needed.
+     *
+     * @return the number of appended rows
+     */
+    public long createTableFromRecords(String tableName, List<ColumnMetadata> columns, Iterator<Object[]> records)
+    {
+        String columnDefinitions = columns.stream()
+                .map(column -> format("\"%s\" %s", column.getName(), DUCKDB_TYPE.toDuckdbTypeName(column)))
+                .collect(joining(", "));
+        executeDDL(format("CREATE TABLE \"%s\" (%s)", tableName, columnDefinitions));
+
+        long rowCount = 0;
+        try (Connection connection = createConnection();
+                DuckDBAppender appender = ((DuckDBConnection) connection).createAppender(DuckDBConnection.DEFAULT_SCHEMA, tableName)) {
+            while (records.hasNext()) {
+                Object[] record = records.next();
+                appender.beginRow();
+                for (Object value : record) {
+                    appendValue(appender, value);
+                }
+                appender.endRow();
+                rowCount++;
+            }
+        }
+        catch (SQLException se) {
+            throw new RuntimeException(se);
+        }
+        return rowCount;
+    }
+
+    private static void appendValue(DuckDBAppender appender, Object value)
+            throws SQLException
+    {
+        if (value == null) {
+            appender.append((String) null);
+        }
+        else if (value instanceof Boolean) {
+            appender.append((boolean) value);
+        }
+        else if (value instanceof Short) {
+            appender.append((short) value);
+        }
+        else if (value instanceof Integer) {
+            appender.append((int) value);
+        }
+        else if (value instanceof Long) {
+            appender.append((long) value);
+        }
+        else if (value instanceof Float) {
+            appender.append((float) value);
+        }
+        else if (value instanceof Double) {
+            appender.append((double) value);
+        }
+        // the appender casts the varchar value to the column type
+        else if (value instanceof BigDecimal) {
+            appender.append(((BigDecimal) value).toPlainString());
+        }
+        else if (value instanceof LocalDate) {
+            appender.append(value.toString());
+        }
+        else if (value instanceof LocalDateTime) {
+            appender.append(TIMESTAMP_FORMATTER.format((LocalDateTime) value));
+        }
+        else if (value instanceof OffsetDateTime) {
+            appender.append(TIMESTAMP_FORMATTER.format(((OffsetDateTime) value).withOffsetSameInstant(UTC)) + "+00");
+        }
+        else if (value instanceof byte[]) {
+            appender.append(toBlobLiteral((byte[]) value));
+        }
+        else {
+            appender.append(value.toString());
+        }
+    }
+
+    private static String toBlobLiteral(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(bytes.length * 4);
+        for (byte b : bytes) {
+            sb.append(format("\\x%02X", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Measure the size of the table in bytes. Fixed-width values are counted by the width of their type, and
+     * variable-length values by their header and the length of their content, which is summed up by scanning
+     * the variable-length columns.
+     */
+    public long getTableSize(String tableName)
+    {
+        try (Connection connection = createConnection()) {
+            long rowWidth = 0;
+            List<String> contentLengths = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement("SELECT column_name, data_type FROM duckdb_columns() WHERE table_name = ?")) {
+                statement.setString(1, tableName);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        String dataType = resultSet.getString(2);
+                        rowWidth += DUCKDB_TYPE.getTypeWidth(dataType);
+                        getContentLength(quoteIdentifier(resultSet.getString(1)), dataType)
+                                .ifPresent(length -> contentLengths.add(format("CAST(coalesce(sum(%s), 0) AS BIGINT)", length)));
+                    }
+                }
+            }
+            contentLengths.add(0, "count(*)");
+            try (Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery(format("SELECT %s FROM %s", String.join(", ", contentLengths), quoteIdentifier(tableName)))) {
+                resultSet.next();
+                long size = resultSet.getLong(1) * rowWidth;
+                for (int i = 2; i <= contentLengths.size(); i++) {
+                    size += resultSet.getLong(i);
+                }
+                return size;
+            }
+        }
+        catch (SQLException se) {
+            throw new RuntimeException(se);
+        }
+    }
+
+    private static Optional<String> getContentLength(String column, String dataType)
+    {
+        if (dataType.equals("VARCHAR")) {
+            return Optional.of(format("strlen(%s)", column));
+        }
+        if (dataType.equals("BLOB")) {
+            return Optional.of(format("octet_length(%s)", column));
+        }
+        if (dataType.endsWith("[]") || dataType.startsWith("STRUCT") || dataType.startsWith("MAP")) {
+            // nested values are counted by the length of their text form
+            return Optional.of(format("strlen(CAST(%s AS VARCHAR))", column));
+        }
+        return Optional.empty();
+    }
+
+    private static String quoteIdentifier(String name)
+    {
+        return format("\"%s\"", name.replace("\"", "\"\""));
+    }
+
     public void dropTableQuietly(String tableName)
     {
         try {
             executeDDL(format("BEGIN TRANSACTION;DROP TABLE IF EXISTS %s;COMMIT;", tableName));
+            // the cached statements reading the table can't be executed anymore
+            connectionPool.invalidateStatements(tableName);
         }
         catch (Exception e) {
             LOG.error(e, "Failed to drop table %s", tableName);
         }
     }
 
+    public int getConnectionPoolSize()
+    {
+        return connectionPoolSize;
+    }
+
+    /**
+     * Borrow a connection from the pool. Closing the pooled connection returns it to the pool,
+     * and its cached prepared statements can be reused by the next borrower.
+     */
+    public DuckdbConnectionPool.PooledConnection acquireConnection()
+            throws SQLException
+    {
+        return connectionPool.acquire();
+    }
+
     @Override
     public Connection createConnection()
             throws SQLException
@@ -0,0 +1,229 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.base.client.duckdb;
+
+import io.airlift.log.Logger;
+import org.duckdb.DuckDBConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A pool of connections duplicated from the same duckdb instance. Each pooled connection keeps
+ * its own cache of prepared statements keyed by sql, so a query served repeatedly from the same
+ * pre-aggregation table skips the parsing and planning in duckdb.
+ * <p>
+ * A connection is never shared while it's borrowed. Connections beyond the pool size are created
+ * on demand and closed when they're released, so a burst of queries is never blocked by the pool.
+ * <p>
+ * The cached statements reading a dropped table are closed by the next borrower of each connection,
+ * see {@link #invalidateStatements(String)}.
+ */
+public class DuckdbConnectionPool
+{
+    private static final Logger LOG = Logger.get(DuckdbConnectionPool.class);
+
+    private final DuckDBConnection rootConnection;
+    private final int statementCacheSize;
+    private final BlockingQueue<PooledConnection> idleConnections;
+    private final Set<PooledConnection> connections = ConcurrentHashMap.newKeySet();
+
+    public DuckdbConnectionPool(DuckDBConnection rootConnection, int poolSize, int statementCacheSize)
+    {
+        this.rootConnection = requireNonNull(rootConnection, "rootConnection is null");
+        checkArgument(poolSize > 0, "poolSize must be positive");
+        checkArgument(statementCacheSize > 0, "statementCacheSize must be positive");
+        this.statementCacheSize = statementCacheSize;
+        this.idleConnections = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    public PooledConnection acquire()
+            throws SQLException
+    {
+        PooledConnection pooledConnection = idleConnections.poll();
+        if (pooledConnection != null) {
+            pooledConnection.borrowed = true;
+            return pooledConnection;
+        }
+        // Refer to the official doc, if we want to create multiple read-write connections,
+        // to the same database in-memory database instance, we can use the custom `duplicate()` method.
+        // https://duckdb.org/docs/api/java
+        pooledConnection = new PooledConnection(rootConnection.duplicate());
+        connections.add(pooledConnection);
+        return pooledConnection;
+    }
+
+    /**
+     * Close the cached statements whose sql reads the table. A statement can only be closed by the thread
+     * borrowing its connection, so the table is queued on every connection and the statements are closed
+     * when the connection is borrowed next time.
+     */
+    public void invalidateStatements(String tableName)
+    {
+        requireNonNull(tableName, "tableName is null");
+        connections.forEach(pooledConnection -> pooledConnection.invalidate(tableName));
+    }
+
+    private void release(PooledConnection pooledConnection)
+    {
+        if (!idleConnections.offer(pooledConnection)) {
+            pooledConnection.closeQuietly();
+        }
+    }
+
+    public class PooledConnection
+            implements AutoCloseable
+    {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+        private final Queue<String> invalidatedTables = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger invalidatedTableCount = new AtomicInteger();
+        // too many tables are dropped while the connection is idle, all cached statements are closed instead
+        private volatile boolean invalidateAll;
+        private boolean borrowed = true;
+        private boolean broken;
+
+        private PooledConnection(Connection connection)
+        {
+            this.connection = requireNonNull(connection, "connection is null");
+            this.statements = new LinkedHashMap<>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+                {
+                    if (size() > statementCacheSize) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        public Connection getConnection()
+        {
+            return connection;
+        }
+
+        /**
+         * Get the cached prepared statement of the sql or prepare a new one. The statement belongs to
+         * the pooled connection, the caller should close its result set instead of the statement.
+         */
+        public PreparedStatement prepareStatement(String sql)
+                throws SQLException
+        {
+            checkState(borrowed, "connection is not borrowed");
+            closeInvalidatedStatements();
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        private void invalidate(String tableName)
+        {
+            if (invalidatedTableCount.incrementAndGet() > statementCacheSize) {
+                invalidateAll = true;
+                return;
+            }
+            invalidatedTables.add(tableName);
+        }
+
+        private void closeInvalidatedStatements()
+        {
+            if (invalidateAll) {
+                invalidateAll = false;
+                invalidatedTables.clear();
+                invalidatedTableCount.set(0);
+                statements.values().forEach(DuckdbConnectionPool::closeQuietly);
+                statements.clear();
+                return;
+            }
+            String tableName;
+            while ((tableName = invalidatedTables.poll()) != null) {
+                invalidatedTableCount.decrementAndGet();
+                String droppedTable = tableName;
+                statements.entrySet().removeIf(entry -> {
+                    if (entry.getKey().contains(droppedTable)) {
+                        closeQuietly(entry.getValue());
+                        return true;
+                    }
+                    return false;
+                });
+            }
+        }
+
+        /**
+         * The connection is closed instead of being returned to the pool when it's released.
+         */
+        public void markBroken()
+        {
+            broken = true;
+        }
+
+        @Override
+        public void close()
+        {
+            if (!borrowed) {
+                return;
+            }
+            borrowed = false;
+            if (broken) {
+                closeQuietly();
+                return;
+            }
+            release(this);
+        }
+
+        private void closeQuietly()
+        {
+            connections.remove(this);
+            statements.values().forEach(DuckdbConnectionPool::closeQuietly);
+            statements.clear();
+            try {
+                connection.close();
+            }
+            catch (SQLException e) {
+                LOG.warn(e, "Failed to close duckdb connection");
+            }
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement)
+    {
+        try {
+            statement.close();
+        }
+        catch (SQLException e) {
+            LOG.warn(e, "Failed to close duckdb prepared statement");
+        }
+    }
+}
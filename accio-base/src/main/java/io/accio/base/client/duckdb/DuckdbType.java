@@ -15,6 +15,7 @@ package io.accio.base.client.duckdb;
 
 import com.google.common.collect.ImmutableMap;
 import io.accio.base.AccioException;
+import io.accio.base.metadata.ColumnMetadata;
 import io.accio.base.type.PGType;
 
 import java.sql.Types;
@@ -35,10 +36,12 @@ import static io.accio.base.type.TimestampType.TIMESTAMP;
 import static io.accio.base.type.TimestampWithTimeZoneType.TIMESTAMP_WITH_TIMEZONE;
 import static io.accio.base.type.TinyIntType.TINYINT;
 import static io.accio.base.type.VarcharType.VARCHAR;
+import static java.lang.String.format;
 
 public final class DuckdbType
 {
     public static final DuckdbType DUCKDB_TYPE = new DuckdbType();
+    public static final int MAX_DECIMAL_PRECISION = 38;
     // other types LIST, ENUM, HUGEINT, UTINYINT, USMALLINT, STRUCT, UUID, JSON, UINTEGER, UBIGINT, INTERVAL, MAP
     private final Map<Integer, PGType<?>> duckdbTypeToPgTypeMap = ImmutableMap.<Integer, PGType<?>>builder()
             .put(Types.BOOLEAN, BOOLEAN)
@@ -56,11 +59,77 @@ public final class DuckdbType
             .put(Types.TIMESTAMP_WITH_TIMEZONE, TIMESTAMP_WITH_TIMEZONE)
             .build();
 
+    // used to create the duckdb table for the given pg types, other types are stored as VARCHAR
+    private final Map<Integer, String> pgTypeToDuckdbTypeMap = ImmutableMap.<Integer, String>builder()
+            .put(BOOLEAN.oid(), "BOOLEAN")
+            .put(BYTEA.oid(), "BLOB")
+            .put(SMALLINT.oid(), "SMALLINT")
+            .put(INTEGER.oid(), "INTEGER")
+            .put(BIGINT.oid(), "BIGINT")
+            .put(REAL.oid(), "REAL")
+            .put(DOUBLE.oid(), "DOUBLE")
+            .put(NUMERIC.oid(), "DECIMAL(38, 9)")
+            .put(VARCHAR.oid(), "VARCHAR")
+            .put(DATE.oid(), "DATE")
+            .put(TIMESTAMP.oid(), "TIMESTAMP")
+            .put(TIMESTAMP_WITH_TIMEZONE.oid(), "TIMESTAMPTZ")
+            .build();
+
     public PGType<?> toPGType(int type)
     {
         return Optional.ofNullable(duckdbTypeToPgTypeMap.get(type))
                 .orElseThrow(() -> new AccioException(NOT_SUPPORTED, "Unsupported Type: " + type));
     }
 
+    // the in-memory width of the duckdb type, variable-length types are counted by their 16 bytes header
+    public int getTypeWidth(String duckdbTypeName)
+    {
+        if (duckdbTypeName.startsWith("DECIMAL(")) {
+            int precision = Integer.parseInt(duckdbTypeName.substring("DECIMAL(".length(), duckdbTypeName.indexOf(',')).trim());
+            if (precision <= 4) {
+                return 2;
+            }
+            if (precision <= 9) {
+                return 4;
+            }
+            return precision <= 18 ? 8 : 16;
+        }
+        switch (duckdbTypeName) {
+            case "BOOLEAN":
+            case "TINYINT":
+                return 1;
+            case "SMALLINT":
+                return 2;
+            case "INTEGER":
+            case "FLOAT":
+            case "DATE":
+                return 4;
+            case "BIGINT":
+            case "DOUBLE":
+            case "TIMESTAMP":
+            case "TIMESTAMP WITH TIME ZONE":
+            case "TIME":
+                return 8;
+            default:
+                return 16;
+        }
+    }
+
+    public String toDuckdbTypeName(PGType<?> type)
+    {
+        return pgTypeToDuckdbTypeMap.getOrDefault(type.oid(), "VARCHAR");
+    }
+
+    /**
+     * Same as {@link #toDuckdbTypeName(PGType)}, but a numeric column keeps its precision and scale.
+     */
+    public String toDuckdbTypeName(ColumnMetadata column)
+    {
+        if (column.getType().oid() == NUMERIC.oid() && column.getPrecision().isPresent()) {
+            return format("DECIMAL(%s, %s)", column.getPrecision().get(), column.getScale().orElse(0));
+        }
+        return toDuckdbTypeName(column.getType());
+    }
+
     private DuckdbType() {}
 }
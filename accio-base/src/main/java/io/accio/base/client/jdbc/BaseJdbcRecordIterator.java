@@ -26,6 +26,7 @@ import java.sql.Statement;
 import java.util.List;
 import java.util.NoSuchElementException;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static java.util.Collections.emptyList;
 import static java.util.Objects.requireNonNull;
@@ -38,6 +39,10 @@ public abstract class BaseJdbcRecordIterator<T>
     protected final ResultSet resultSet;
     private final ResultSetMetaData resultSetMetaData;
     protected final int columnCount;
+    private final boolean streaming;
+    private final int maxFetchSize;
+    private int fetchSize;
+    private long nextFetchSizeGrowthRow;
 
     private boolean hasNext;
 
@@ -49,17 +54,52 @@ public abstract class BaseJdbcRecordIterator<T>
 
     public BaseJdbcRecordIterator(Client client, String sql, List<Parameter> parameters)
             throws SQLException
+    {
+        this(client, sql, parameters, 0, 0);
+    }
+
+    /**
+     * Stream the result through a server-side cursor if {@code initialFetchSize} is positive. The first batch
+     * is small to return the first row early, and the fetch size doubles with each batch up to {@code maxFetchSize}.
+     */
+    public BaseJdbcRecordIterator(Client client, String sql, List<Parameter> parameters, int initialFetchSize, int maxFetchSize)
+            throws SQLException
     {
         requireNonNull(client, "client is null");
+        checkArgument(initialFetchSize >= 0, "initialFetchSize must not be negative");
+        checkArgument(maxFetchSize >= initialFetchSize, "maxFetchSize must not be less than initialFetchSize");
+        this.streaming = initialFetchSize > 0;
+        this.fetchSize = initialFetchSize;
+        this.maxFetchSize = maxFetchSize;
+        this.nextFetchSizeGrowthRow = initialFetchSize;
         connection = client.createConnection();
-        statement = connection.prepareStatement(sql);
-        setParameter(parameters);
-        resultSet = statement.executeQuery();
+        try {
+            if (streaming) {
+                // the driver only uses a cursor to fetch the result in batches within a transaction
+                connection.setAutoCommit(false);
+            }
+            statement = connection.prepareStatement(sql);
+            if (streaming) {
+                statement.setFetchSize(initialFetchSize);
+            }
+            setParameter(parameters);
+            resultSet = statement.executeQuery();
 
-        this.resultSetMetaData = resultSet.getMetaData();
-        this.columnCount = resultSetMetaData.getColumnCount();
+            this.resultSetMetaData = resultSet.getMetaData();
+            this.columnCount = resultSetMetaData.getColumnCount();
 
-        hasNext = resultSet.next();
+            hasNext = resultSet.next();
+        }
+        catch (SQLException | RuntimeException e) {
+            // the connection might be borrowed from a pool, it must be returned even if the query fails
+            try {
+                connection.close();
+            }
+            catch (SQLException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
     }
 
     protected void setParameter(List<Parameter> parameters)
@@ -85,6 +125,9 @@ public abstract class BaseJdbcRecordIterator<T>
         T currentResult;
         try {
             currentResult = getCurrentRecord();
+            if (streaming) {
+                growFetchSize();
+            }
             // move to next row
             hasNext = resultSet.next();
         }
@@ -94,10 +137,25 @@ public abstract class BaseJdbcRecordIterator<T>
         return currentResult;
     }
 
+    private void growFetchSize()
+            throws SQLException
+    {
+        // the batch of the current fetch size is consumed, the next fetch gets a larger batch
+        if (--nextFetchSizeGrowthRow <= 0 && fetchSize < maxFetchSize) {
+            fetchSize = Math.min(fetchSize * 2, maxFetchSize);
+            resultSet.setFetchSize(fetchSize);
+            nextFetchSizeGrowthRow = fetchSize;
+        }
+    }
+
     @Override
     public void close()
             throws Exception
     {
+        if (streaming) {
+            closeCursor();
+            return;
+        }
         // use try with resources to close everything properly
         try (Connection connection = this.connection;
                 Statement statement = this.statement;
@@ -122,6 +180,26 @@ public abstract class BaseJdbcRecordIterator<T>
         }
     }
 
+    private void closeCursor()
+    {
+        // no query is running between the fetches, closing the result set closes the cursor and the
+        // connection can be reused without canceling the statement or aborting the connection
+        try (Connection connection = this.connection) {
+            resultSet.close();
+            statement.close();
+            if (hasNext) {
+                connection.rollback();
+            }
+            else {
+                // the whole result is read, end the transaction the same way auto-commit does
+                connection.commit();
+            }
+        }
+        catch (SQLException | RuntimeException e) {
+            // ignore exception from close
+        }
+    }
+
     public ResultSetMetaData getResultSetMetaData()
     {
         return resultSetMetaData;
@@ -0,0 +1,49 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.base.client.jdbc;
+
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Read the value of a column from the current row. The extractor is resolved once per column
+ * when the result set is opened, so reading a row doesn't look up the column type again.
+ */
+@FunctionalInterface
+public interface ColumnExtractor
+{
+    ColumnExtractor OBJECT = ResultSet::getObject;
+
+    /**
+     * A null smallint is read as null. {@link ResultSet#getShort(int)} returns 0 for a null value, which the
+     * jdbc iterators used to return, while the duckdb iterator already returned null.
+     */
+    ColumnExtractor SMALLINT = (resultSet, index) -> {
+        short value = resultSet.getShort(index);
+        return resultSet.wasNull() ? null : value;
+    };
+
+    /**
+     * A null blob is read as null instead of failing on the missing blob.
+     */
+    ColumnExtractor BLOB = (resultSet, index) -> {
+        Blob blob = resultSet.getBlob(index);
+        return blob == null ? null : blob.getBytes(0, (int) blob.length());
+    };
+
+    Object extract(ResultSet resultSet, int index)
+            throws SQLException;
+}
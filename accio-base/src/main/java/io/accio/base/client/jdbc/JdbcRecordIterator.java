@@ -17,10 +17,9 @@ package io.accio.base.client.jdbc;
 import io.accio.base.Parameter;
 import io.accio.base.client.Client;
 
-import java.sql.Blob;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
-import java.util.ArrayList;
 import java.util.List;
 
 import static java.util.Collections.emptyList;
@@ -28,6 +27,8 @@ import static java.util.Collections.emptyList;
 public class JdbcRecordIterator
         extends BaseJdbcRecordIterator<Object[]>
 {
+    private final ColumnExtractor[] extractors;
+
     public static JdbcRecordIterator of(Client client, String sql)
 
             throws SQLException
@@ -45,26 +46,33 @@ public class JdbcRecordIterator
             throws SQLException
     {
         super(client, sql, parameters);
+        ResultSetMetaData metaData = getResultSetMetaData();
+        this.extractors = new ColumnExtractor[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            extractors[i - 1] = createExtractor(metaData.getColumnType(i));
+        }
+    }
+
+    private static ColumnExtractor createExtractor(int columnType)
+    {
+        switch (columnType) {
+            case Types.BLOB:
+                return ColumnExtractor.BLOB;
+            case Types.SMALLINT:
+                return ColumnExtractor.SMALLINT;
+            default:
+                return ColumnExtractor.OBJECT;
+        }
     }
 
     @Override
     public Object[] getCurrentRecord()
             throws SQLException
     {
-        List<Object> builder = new ArrayList<>(columnCount);
-        for (int i = 1; i <= columnCount; i++) {
-            if (resultSet.getMetaData().getColumnType(i) == Types.BLOB) {
-                Blob blob = resultSet.getBlob(i);
-                byte[] bytes = blob.getBytes(0, (int) blob.length());
-                builder.add(bytes);
-            }
-            else if (resultSet.getMetaData().getColumnType(i) == Types.SMALLINT) {
-                builder.add(resultSet.getShort(i));
-            }
-            else {
-                builder.add(resultSet.getObject(i));
-            }
+        Object[] record = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            record[i] = extractors[i].extract(resultSet, i + 1);
         }
-        return builder.toArray();
+        return record;
     }
 }
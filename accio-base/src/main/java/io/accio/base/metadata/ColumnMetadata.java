@@ -16,6 +16,7 @@ package io.accio.base.metadata;
 import io.accio.base.type.PGType;
 
 import java.util.Objects;
+import java.util.Optional;
 
 import static java.util.Objects.requireNonNull;
 
@@ -23,11 +24,16 @@ public class ColumnMetadata
 {
     private final String name;
     private final PGType<?> type;
+    // the precision and the scale of a numeric column, empty if it's unconstrained
+    private final Optional<Integer> precision;
+    private final Optional<Integer> scale;
 
-    private ColumnMetadata(String name, PGType<?> type)
+    private ColumnMetadata(String name, PGType<?> type, Optional<Integer> precision, Optional<Integer> scale)
     {
         this.name = name;
         this.type = type;
+        this.precision = precision;
+        this.scale = scale;
     }
 
     public String getName()
@@ -40,12 +46,24 @@ public class ColumnMetadata
         return type;
     }
 
+    public Optional<Integer> getPrecision()
+    {
+        return precision;
+    }
+
+    public Optional<Integer> getScale()
+    {
+        return scale;
+    }
+
     @Override
     public String toString()
     {
         StringBuilder sb = new StringBuilder("ColumnMetadata{");
         sb.append("name='").append(name).append('\'');
         sb.append(", type=").append(type);
+        precision.ifPresent(value -> sb.append(", precision=").append(value));
+        scale.ifPresent(value -> sb.append(", scale=").append(value));
         sb.append('}');
         return sb.toString();
     }
@@ -53,7 +71,7 @@ public class ColumnMetadata
     @Override
     public int hashCode()
     {
-        return Objects.hash(name, type);
+        return Objects.hash(name, type, precision, scale);
     }
 
     @Override
@@ -67,7 +85,9 @@ public class ColumnMetadata
         }
         ColumnMetadata other = (ColumnMetadata) obj;
         return Objects.equals(this.name, other.name) &&
-                Objects.equals(this.type, other.type);
+                Objects.equals(this.type, other.type) &&
+                Objects.equals(this.precision, other.precision) &&
+                Objects.equals(this.scale, other.scale);
     }
 
     public static Builder builder()
@@ -79,6 +99,8 @@ public class ColumnMetadata
     {
         private String name;
         private PGType<?> type;
+        private Optional<Integer> precision = Optional.empty();
+        private Optional<Integer> scale = Optional.empty();
 
         private Builder() {}
 
@@ -94,9 +116,21 @@ public class ColumnMetadata
             return this;
         }
 
+        public Builder setPrecision(int precision)
+        {
+            this.precision = Optional.of(precision);
+            return this;
+        }
+
+        public Builder setScale(int scale)
+        {
+            this.scale = Optional.of(scale);
+            return this;
+        }
+
         public ColumnMetadata build()
         {
-            return new ColumnMetadata(name, type);
+            return new ColumnMetadata(name, type, precision, scale);
         }
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.base.client.duckdb;
+
+import org.testng.annotations.Test;
+
+import java.sql.PreparedStatement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestDuckdbConnectionPool
+{
+    @Test
+    public void testReuseConnectionAndStatement()
+            throws Exception
+    {
+        DuckdbClient duckdbClient = new DuckdbClient(1, 2);
+        DuckdbConnectionPool.PooledConnection first = duckdbClient.acquireConnection();
+        PreparedStatement statement = first.prepareStatement("select 1");
+        first.close();
+
+        try (DuckdbConnectionPool.PooledConnection second = duckdbClient.acquireConnection()) {
+            assertThat(second).isSameAs(first);
+            assertThat(second.prepareStatement("select 1")).isSameAs(statement);
+        }
+    }
+
+    @Test
+    public void testCloseConnectionsBeyondPoolSize()
+            throws Exception
+    {
+        DuckdbClient duckdbClient = new DuckdbClient(1, 2);
+        DuckdbConnectionPool.PooledConnection first = duckdbClient.acquireConnection();
+        DuckdbConnectionPool.PooledConnection second = duckdbClient.acquireConnection();
+        assertThat(second).isNotSameAs(first);
+
+        first.close();
+        second.close();
+        assertThat(first.getConnection().isClosed()).isFalse();
+        assertThat(second.getConnection().isClosed()).isTrue();
+    }
+
+    @Test
+    public void testCloseBrokenConnection()
+            throws Exception
+    {
+        DuckdbClient duckdbClient = new DuckdbClient(1, 2);
+        DuckdbConnectionPool.PooledConnection broken = duckdbClient.acquireConnection();
+        broken.markBroken();
+        broken.close();
+        assertThat(broken.getConnection().isClosed()).isTrue();
+
+        try (DuckdbConnectionPool.PooledConnection connection = duckdbClient.acquireConnection()) {
+            assertThat(connection).isNotSameAs(broken);
+        }
+    }
+
+    @Test
+    public void testStatementCacheSize()
+            throws Exception
+    {
+        DuckdbClient duckdbClient = new DuckdbClient(1, 2);
+        try (DuckdbConnectionPool.PooledConnection connection = duckdbClient.acquireConnection()) {
+            PreparedStatement first = connection.prepareStatement("select 1");
+            PreparedStatement second = connection.prepareStatement("select 2");
+            // the least recently used statement is closed
+            assertThat(connection.prepareStatement("select 1")).isSameAs(first);
+            connection.prepareStatement("select 3");
+            assertThat(first.isClosed()).isFalse();
+            assertThat(second.isClosed()).isTrue();
+        }
+    }
+
+    @Test
+    public void testInvalidateStatementsOfDroppedTable()
+            throws Exception
+    {
+        DuckdbClient duckdbClient = new DuckdbClient(1, 4);
+        duckdbClient.executeDDL("create table dropped_table as select 1 as c1");
+        duckdbClient.executeDDL("create table kept_table as select 1 as c1");
+
+        PreparedStatement dropped;
+        PreparedStatement kept;
+        try (DuckdbConnectionPool.PooledConnection connection = duckdbClient.acquireConnection()) {
+            dropped = connection.prepareStatement("select * from dropped_table");
+            kept = connection.prepareStatement("select * from kept_table");
+        }
+
+        duckdbClient.dropTableQuietly("dropped_table");
+        // the statements are closed by the next borrower of the connection
+        try (DuckdbConnectionPool.PooledConnection connection = duckdbClient.acquireConnection()) {
+            assertThat(connection.prepareStatement("select * from kept_table")).isSameAs(kept);
+            assertThat(dropped.isClosed()).isTrue();
+            assertThat(kept.isClosed()).isFalse();
+        }
+    }
+
+    @Test
+    public void testInvalidateAllStatementsAfterManyDrops()
+            throws Exception
+    {
+        DuckdbClient duckdbClient = new DuckdbClient(1, 2);
+        duckdbClient.executeDDL("create table kept_table as select 1 as c1");
+
+        PreparedStatement kept;
+        try (DuckdbConnectionPool.PooledConnection connection = duckdbClient.acquireConnection()) {
+            kept = connection.prepareStatement("select * from kept_table");
+        }
+
+        // more tables are dropped than the statements the connection can cache
+        for (int i = 0; i < 3; i++) {
+            duckdbClient.executeDDL("create table dropped_table_" + i + " as select 1 as c1");
+            duckdbClient.dropTableQuietly("dropped_table_" + i);
+        }
+        try (DuckdbConnectionPool.PooledConnection connection = duckdbClient.acquireConnection()) {
+            PreparedStatement statement = connection.prepareStatement("select * from kept_table");
+            assertThat(statement).isNotSameAs(kept);
+            assertThat(kept.isClosed()).isTrue();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.base.client.jdbc;
+
+import io.accio.base.client.duckdb.DuckdbClient;
+import io.accio.base.client.duckdb.DuckdbConnectionPool.PooledConnection;
+import org.testng.annotations.Test;
+
+import java.sql.ResultSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestColumnExtractor
+{
+    @Test
+    public void testExtractNullAndNonNullValues()
+            throws Exception
+    {
+        DuckdbClient duckdbClient = new DuckdbClient();
+        String sql = "SELECT 1::SMALLINT, NULL::SMALLINT, '\\xAA\\xAB'::BLOB, NULL::BLOB, 'a', NULL";
+        try (PooledConnection connection = duckdbClient.acquireConnection();
+                ResultSet resultSet = connection.prepareStatement(sql).executeQuery()) {
+            assertThat(resultSet.next()).isTrue();
+
+            assertThat(ColumnExtractor.SMALLINT.extract(resultSet, 1)).isEqualTo((short) 1);
+            assertThat(ColumnExtractor.SMALLINT.extract(resultSet, 2)).isNull();
+
+            assertThat(ColumnExtractor.BLOB.extract(resultSet, 3)).isEqualTo(new byte[] {(byte) 0xAA, (byte) 0xAB});
+            assertThat(ColumnExtractor.BLOB.extract(resultSet, 4)).isNull();
+
+            assertThat(ColumnExtractor.OBJECT.extract(resultSet, 5)).isEqualTo("a");
+            assertThat(ColumnExtractor.OBJECT.extract(resultSet, 6)).isNull();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import io.accio.base.AccioMDL;
+import io.accio.base.dto.Column;
+import io.accio.base.dto.Manifest;
+import io.accio.base.dto.Metric;
+import io.accio.base.dto.Model;
+import io.accio.base.dto.Relationship;
+import io.accio.base.dto.View;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import static io.accio.base.AccioTypes.INTEGER;
+import static io.accio.base.AccioTypes.VARCHAR;
+import static io.accio.base.dto.Column.column;
+import static io.accio.base.dto.Column.relationshipColumn;
+import static io.accio.base.dto.JoinType.MANY_TO_ONE;
+import static io.accio.base.dto.Metric.metric;
+import static io.accio.base.dto.Model.model;
+import static io.accio.base.dto.Relationship.relationship;
+import static io.accio.base.dto.View.view;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The MDLs the benchmarks run against.
+ */
+public final class BenchmarkMdls
+{
+    public static final String TPCH = "tpch";
+    public static final String SYNTHETIC_PREFIX = "synthetic_";
+
+    private static final int SYNTHETIC_COLUMNS = 10;
+    // one metric and one view every METRIC_INTERVAL models
+    private static final int METRIC_INTERVAL = 10;
+
+    private BenchmarkMdls() {}
+
+    /**
+     * @param name {@link #TPCH} or {@link #SYNTHETIC_PREFIX} followed by the number of models, e.g. synthetic_1000
+     */
+    public static AccioMDL create(String name)
+    {
+        if (name.equals(TPCH)) {
+            return tpch();
+        }
+        if (name.startsWith(SYNTHETIC_PREFIX)) {
+            return synthetic(Integer.parseInt(name.substring(SYNTHETIC_PREFIX.length())));
+        }
+        throw new IllegalArgumentException("Unknown MDL: " + name);
+    }
+
+    /**
+     * The TPC-H MDL the integration tests use, with relationships, a metric and views.
+     */
+    public static AccioMDL tpch()
+    {
+        try {
+            return AccioMDL.fromJson(Resources.toString(Resources.getResource("tpch_mdl.json"), UTF_8));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A chain of models, model_i has a many-to-one relationship `next` to model_(i+1) and the one-to-many
+     * relationship `previous` back to model_(i-1). Every {@value #METRIC_INTERVAL} models have a metric and a view.
+     */
+    public static AccioMDL synthetic(int modelCount)
+    {
+        ImmutableList.Builder<Model> models = ImmutableList.builder();
+        ImmutableList.Builder<Relationship> relationships = ImmutableList.builder();
+        ImmutableList.Builder<Metric> metrics = ImmutableList.builder();
+        ImmutableList.Builder<View> views = ImmutableList.builder();
+        for (int i = 0; i < modelCount; i++) {
+            ImmutableList.Builder<Column> columns = ImmutableList.builder();
+            columns.add(column("id", INTEGER, null, true));
+            columns.add(column("next_id", INTEGER, null, true));
+            for (int c = 0; c < SYNTHETIC_COLUMNS; c++) {
+                columns.add(column("c" + c, c % 2 == 0 ? VARCHAR : INTEGER, null, true));
+            }
+            if (i + 1 < modelCount) {
+                columns.add(relationshipColumn("next", modelName(i + 1), relationshipName(i)));
+                relationships.add(relationship(relationshipName(i), List.of(modelName(i), modelName(i + 1)), MANY_TO_ONE,
+                        format("%s.next_id = %s.id", modelName(i), modelName(i + 1))));
+            }
+            if (i > 0) {
+                columns.add(relationshipColumn("previous", modelName(i - 1), relationshipName(i - 1)));
+            }
+            models.add(model(modelName(i), format("select * from source.table_%s", i), columns.build(), "id"));
+
+            if (i % METRIC_INTERVAL == 0) {
+                metrics.add(metric(
+                        "metric_" + i,
+                        modelName(i),
+                        List.of(column("c0", VARCHAR, null, true)),
+                        List.of(column("total", INTEGER, null, true, format("sum(%s.c1)", modelName(i)))),
+                        List.of()));
+                views.add(view("view_" + i, format("select id, c0 from %s", modelName(i))));
+            }
+        }
+        return AccioMDL.fromManifest(Manifest.builder()
+                .setCatalog("accio")
+                .setSchema("synthetic")
+                .setModels(models.build())
+                .setRelationships(relationships.build())
+                .setMetrics(metrics.build())
+                .setViews(views.build())
+                .build());
+    }
+
+    private static String modelName(int i)
+    {
+        return "model_" + i;
+    }
+
+    private static String relationshipName(int i)
+    {
+        return format("model_%s_model_%s", i, i + 1);
+    }
+}
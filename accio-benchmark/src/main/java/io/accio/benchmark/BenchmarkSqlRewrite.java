@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import io.accio.base.AccioMDL;
+import io.accio.base.SessionContext;
+import io.accio.sqlrewrite.AccioPlanner;
+import io.accio.sqlrewrite.analyzer.Analysis;
+import io.accio.sqlrewrite.analyzer.StatementAnalyzer;
+import io.trino.sql.SqlFormatter;
+import io.trino.sql.parser.ParsingOptions;
+import io.trino.sql.parser.SqlParser;
+import io.trino.sql.tree.Statement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.Map;
+
+import static io.accio.benchmark.BenchmarkMdls.TPCH;
+import static io.accio.sqlrewrite.ScopeAwareRewrite.SCOPE_AWARE_REWRITE;
+import static io.trino.sql.parser.ParsingOptions.DecimalLiteralTreatment.AS_DECIMAL;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * Benchmark the steps of {@link AccioPlanner#rewrite} separately and as a whole. The analysis registers the
+ * relationship CTEs through RelationshipCteGenerator, so the relationship queries cover it too.
+ * <p>
+ * Run {@link #main} to get the throughput and the allocation rate of each step.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(SECONDS)
+@BenchmarkMode(Throughput)
+@Fork(value = 2, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkSqlRewrite
+{
+    private static final SqlParser SQL_PARSER = new SqlParser();
+    private static final ParsingOptions PARSING_OPTIONS = new ParsingOptions(AS_DECIMAL);
+
+    private static final Map<String, String> TPCH_QUERIES = ImmutableMap.<String, String>builder()
+            .put("model", "SELECT orderkey, totalprice FROM Orders WHERE orderstatus = 'F' ORDER BY totalprice DESC LIMIT 10")
+            .put("relationship", "SELECT orderkey, customer.name, customer.nation.name FROM Orders")
+            .put("to_many_relationship", "SELECT name, array_length(orders) FROM Customer")
+            .put("metric", "SELECT custkey, totalprice FROM Revenue")
+            .put("view", "SELECT * FROM useRelationship")
+            .build();
+
+    private static final Map<String, String> SYNTHETIC_QUERIES = ImmutableMap.<String, String>builder()
+            .put("model", "SELECT id, c0, c1 FROM model_0 WHERE c0 = 'a' ORDER BY c1 DESC LIMIT 10")
+            .put("relationship", "SELECT id, next.c0, next.next.c0, next.next.next.c0 FROM model_0")
+            .put("to_many_relationship", "SELECT id, array_length(previous) FROM model_1")
+            .put("metric", "SELECT c0, total FROM metric_0")
+            .put("view", "SELECT * FROM view_0")
+            .build();
+
+    @Param({TPCH, "synthetic_10", "synthetic_1000", "synthetic_5000"})
+    String mdl = TPCH;
+
+    @Param({"model", "relationship", "to_many_relationship", "metric", "view"})
+    String query = "model";
+
+    private AccioMDL accioMDL;
+    private SessionContext sessionContext;
+    private String sql;
+    private Statement statement;
+    private Statement scopedStatement;
+
+    @Setup
+    public void setup()
+    {
+        accioMDL = BenchmarkMdls.create(mdl);
+        sessionContext = SessionContext.builder()
+                .setCatalog(accioMDL.getCatalog())
+                .setSchema(accioMDL.getSchema())
+                .build();
+        sql = (mdl.equals(TPCH) ? TPCH_QUERIES : SYNTHETIC_QUERIES).get(query);
+        statement = SQL_PARSER.createStatement(sql, PARSING_OPTIONS);
+        scopedStatement = SCOPE_AWARE_REWRITE.rewrite(statement, accioMDL, sessionContext);
+    }
+
+    @Benchmark
+    public Statement parse()
+    {
+        return SQL_PARSER.createStatement(sql, PARSING_OPTIONS);
+    }
+
+    @Benchmark
+    public String format()
+    {
+        return SqlFormatter.formatSql(statement);
+    }
+
+    @Benchmark
+    public Statement scopeAwareRewrite()
+    {
+        return SCOPE_AWARE_REWRITE.rewrite(statement, accioMDL, sessionContext);
+    }
+
+    @Benchmark
+    public Analysis analyze()
+    {
+        return StatementAnalyzer.analyze(scopedStatement, sessionContext, accioMDL);
+    }
+
+    @Benchmark
+    public String rewrite()
+    {
+        return AccioPlanner.rewrite(sql, sessionContext, accioMDL);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkSqlRewrite.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import io.accio.base.type.PGType;
+import io.netty.buffer.ByteBuf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import static io.accio.main.wireprotocol.DataRowBatches.ROWS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.openjdk.jmh.annotations.Mode.AverageTime;
+
+/**
+ * Benchmark PGType#readTextValue and PGType#readBinaryValue the way the Bind message reads the parameters, over
+ * the DataRow messages of {@link BenchmarkDataRowEncoding}. The text arrays go through the PGArray parser.
+ * A benchmark operation is a row.
+ * <p>
+ * The column is the type name and the format code. The combinations the type can't encode or decode are left
+ * out, e.g. numeric in text.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(NANOSECONDS)
+@BenchmarkMode(AverageTime)
+@OperationsPerInvocation(ROWS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkDataRowDecoding
+{
+    @Param({
+            "bool:TEXT", "int2:TEXT", "int4:TEXT", "int8:TEXT", "float4:TEXT", "float8:TEXT", "oid:TEXT",
+            "char:TEXT", "varchar:TEXT", "text:TEXT", "name:TEXT", "bpchar:TEXT", "json:TEXT", "uuid:TEXT", "bytea:TEXT",
+            "inet:TEXT", "date:TEXT", "timestamp:TEXT", "interval:TEXT",
+            "_bool:TEXT", "_int4:TEXT", "_int8:TEXT", "_float8:TEXT", "_varchar:TEXT", "_text:TEXT",
+            "_json:TEXT", "_date:TEXT", "_timestamp:TEXT",
+            "bool:BINARY", "int2:BINARY", "int4:BINARY", "int8:BINARY", "float4:BINARY", "float8:BINARY", "numeric:BINARY",
+            "oid:BINARY", "char:BINARY", "varchar:BINARY", "text:BINARY", "name:BINARY", "bpchar:BINARY", "json:BINARY",
+            "uuid:BINARY", "bytea:BINARY", "interval:BINARY",
+            "_bool:BINARY", "_int4:BINARY", "_int8:BINARY", "_float8:BINARY", "_numeric:BINARY", "_varchar:BINARY",
+            "_text:BINARY", "_json:BINARY"})
+    String column = "int4:TEXT";
+
+    private PGType<?> type;
+    private FormatCodes.FormatCode formatCode;
+    private ByteBuf encoded;
+
+    @Setup
+    public void setup()
+    {
+        String[] parts = column.split(":");
+        type = DataRowBatches.pgType(parts[0]);
+        FormatCodes.FormatCode[] formatCodes = DataRowBatches.formatCodes(parts[1]);
+        formatCode = formatCodes[0];
+        encoded = DataRowBatches.encode(DataRowBatches.rows(type), DataRowBatches.schema(type), formatCodes);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        encoded.release();
+    }
+
+    @Benchmark
+    public void readDataRows(Blackhole blackhole)
+    {
+        ByteBuf buffer = encoded.duplicate();
+        while (buffer.isReadable()) {
+            buffer.readByte(); // 'D'
+            buffer.readInt(); // message length
+            short columns = buffer.readShort();
+            for (int i = 0; i < columns; i++) {
+                int length = buffer.readInt();
+                if (length == -1) {
+                    blackhole.consume(null);
+                }
+                else if (formatCode == FormatCodes.FormatCode.TEXT) {
+                    blackhole.consume(type.readTextValue(buffer, length));
+                }
+                else {
+                    blackhole.consume(type.readBinaryValue(buffer, length));
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkDataRowDecoding.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
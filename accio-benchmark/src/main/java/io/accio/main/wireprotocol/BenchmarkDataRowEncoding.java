@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import io.accio.base.type.PGType;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.List;
+
+import static io.accio.main.wireprotocol.DataRowBatches.ROWS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.openjdk.jmh.annotations.Mode.AverageTime;
+
+/**
+ * Benchmark {@link Messages#sendDataRow} on an EmbeddedChannel, i.e. PGType#writeAsText and PGType#writeAsBinary
+ * and the framing of the DataRow messages. A benchmark operation is a row, so the GC profiler reports the bytes
+ * allocated per row.
+ * <p>
+ * The column is the type name and the format code. The combinations the type doesn't support are left out,
+ * e.g. date in binary.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(NANOSECONDS)
+@BenchmarkMode(AverageTime)
+@OperationsPerInvocation(ROWS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkDataRowEncoding
+{
+    @Param({
+            "bool:TEXT", "int2:TEXT", "int4:TEXT", "int8:TEXT", "float4:TEXT", "float8:TEXT", "numeric:TEXT", "oid:TEXT",
+            "char:TEXT", "varchar:TEXT", "text:TEXT", "name:TEXT", "bpchar:TEXT", "json:TEXT", "uuid:TEXT", "bytea:TEXT",
+            "inet:TEXT", "date:TEXT", "timestamp:TEXT", "interval:TEXT",
+            "_bool:TEXT", "_int4:TEXT", "_int8:TEXT", "_float8:TEXT", "_numeric:TEXT", "_varchar:TEXT", "_text:TEXT",
+            "_json:TEXT", "_date:TEXT", "_timestamp:TEXT",
+            "bool:BINARY", "int2:BINARY", "int4:BINARY", "int8:BINARY", "float4:BINARY", "float8:BINARY", "numeric:BINARY",
+            "oid:BINARY", "char:BINARY", "varchar:BINARY", "text:BINARY", "name:BINARY", "bpchar:BINARY", "json:BINARY",
+            "uuid:BINARY", "bytea:BINARY", "interval:BINARY",
+            "_bool:BINARY", "_int4:BINARY", "_int8:BINARY", "_float8:BINARY", "_numeric:BINARY", "_varchar:BINARY",
+            "_text:BINARY", "_json:BINARY"})
+    String column = "int4:TEXT";
+
+    private EmbeddedChannel channel;
+    private List<Object[]> rows;
+    private List<PGType> schema;
+    private FormatCodes.FormatCode[] formatCodes;
+
+    @Setup
+    public void setup()
+    {
+        String[] parts = column.split(":");
+        PGType<?> type = DataRowBatches.pgType(parts[0]);
+        channel = new EmbeddedChannel();
+        rows = DataRowBatches.rows(type);
+        schema = DataRowBatches.schema(type);
+        formatCodes = DataRowBatches.formatCodes(parts[1]);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int sendDataRows()
+    {
+        return DataRowBatches.sendDataRows(channel, rows, schema, formatCodes);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkDataRowEncoding.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
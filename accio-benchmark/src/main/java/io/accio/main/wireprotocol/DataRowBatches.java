@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import com.google.common.collect.ImmutableList;
+import io.accio.base.type.PGArray;
+import io.accio.base.type.PGType;
+import io.accio.base.type.PGTypes;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.joda.time.Period;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The row batches the wire protocol benchmarks encode and decode. A row has {@value #COLUMNS} columns of the same
+ * type and one value in {@value #NULL_INTERVAL} is null.
+ */
+final class DataRowBatches
+{
+    static final int ROWS = 1024;
+    static final int COLUMNS = 8;
+
+    private static final int NULL_INTERVAL = 16;
+    private static final int ARRAY_LENGTH = 4;
+    private static final long EPOCH_2020_MICROS = 1_577_836_800_000_000L;
+
+    private DataRowBatches() {}
+
+    static PGType<?> pgType(String typName)
+    {
+        for (PGType<?> type : PGTypes.pgTypes()) {
+            if (type.typName().equals(typName)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown type: " + typName);
+    }
+
+    static List<PGType> schema(PGType<?> type)
+    {
+        return Collections.<PGType>nCopies(COLUMNS, type);
+    }
+
+    static FormatCodes.FormatCode[] formatCodes(String format)
+    {
+        return new FormatCodes.FormatCode[] {FormatCodes.FormatCode.valueOf(format)};
+    }
+
+    static List<Object[]> rows(PGType<?> type)
+    {
+        ImmutableList.Builder<Object[]> rows = ImmutableList.builder();
+        for (int row = 0; row < ROWS; row++) {
+            Object[] values = new Object[COLUMNS];
+            for (int column = 0; column < COLUMNS; column++) {
+                int seed = row * COLUMNS + column;
+                values[column] = seed % NULL_INTERVAL == 0 ? null : value(type, seed);
+            }
+            rows.add(values);
+        }
+        return rows.build();
+    }
+
+    /**
+     * Send the rows to the channel as DataRow messages and drain them.
+     *
+     * @return the number of bytes sent
+     */
+    static int sendDataRows(EmbeddedChannel channel, List<Object[]> rows, List<PGType> schema, FormatCodes.FormatCode[] formatCodes)
+    {
+        for (Object[] row : rows) {
+            Messages.sendDataRow(channel, row, schema, formatCodes);
+        }
+        channel.flush();
+        int bytes = 0;
+        ByteBuf buffer;
+        while ((buffer = channel.readOutbound()) != null) {
+            bytes += buffer.readableBytes();
+            buffer.release();
+        }
+        return bytes;
+    }
+
+    /**
+     * The DataRow messages of the rows in one heap buffer.
+     */
+    static ByteBuf encode(List<Object[]> rows, List<PGType> schema, FormatCodes.FormatCode[] formatCodes)
+    {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        try {
+            for (Object[] row : rows) {
+                Messages.sendDataRow(channel, row, schema, formatCodes);
+            }
+            channel.flush();
+            ByteBuf encoded = Unpooled.buffer();
+            ByteBuf buffer;
+            while ((buffer = channel.readOutbound()) != null) {
+                encoded.writeBytes(buffer);
+                buffer.release();
+            }
+            return encoded;
+        }
+        finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    private static Object value(PGType<?> type, int seed)
+    {
+        if (type instanceof PGArray) {
+            List<Object> array = new ArrayList<>(ARRAY_LENGTH);
+            for (int i = 0; i < ARRAY_LENGTH; i++) {
+                array.add(value(((PGArray) type).getInnerType(), seed + i));
+            }
+            return array;
+        }
+        switch (type.typName()) {
+            case "bool":
+                return seed % 2 == 0;
+            case "int2":
+                return (short) seed;
+            case "int4":
+                return seed;
+            case "int8":
+                return seed * 1_000_003L;
+            case "oid":
+                return (long) seed;
+            case "float4":
+                return seed * 1.5f;
+            case "float8":
+                return seed * 1.25;
+            case "numeric":
+                return BigDecimal.valueOf(seed * 100L + 37, 2);
+            case "char":
+                return String.valueOf((char) ('a' + seed % 26));
+            case "varchar":
+            case "text":
+            case "name":
+            case "bpchar":
+                return "value_" + seed;
+            case "json":
+                return "{\"id\": " + seed + ", \"name\": \"value_" + seed + "\"}";
+            case "uuid":
+                return new UUID(seed, seed).toString();
+            case "bytea":
+                return ("value_" + seed).getBytes(UTF_8);
+            case "inet":
+                return "192.168." + (seed / 256 % 256) + "." + (seed % 256);
+            case "date":
+                return LocalDate.of(2020, 1, 1).plusDays(seed);
+            case "timestamp":
+                return EPOCH_2020_MICROS + seed * 1_000_000L;
+            case "interval":
+                return new Period(0, seed % 12, 0, seed % 30, seed % 24, seed % 60, seed % 60, 0);
+            default:
+                throw new IllegalArgumentException("No sample value for type: " + type.typName());
+        }
+    }
+}
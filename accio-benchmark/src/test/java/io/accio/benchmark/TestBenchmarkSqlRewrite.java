@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.benchmark;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static io.accio.benchmark.BenchmarkMdls.TPCH;
+import static org.testng.Assert.assertNotNull;
+
+public class TestBenchmarkSqlRewrite
+{
+    @DataProvider
+    public Object[][] queries()
+    {
+        String[] mdls = {TPCH, "synthetic_10"};
+        String[] queries = {"model", "relationship", "to_many_relationship", "metric", "view"};
+        Object[][] result = new Object[mdls.length * queries.length][];
+        for (int i = 0; i < mdls.length; i++) {
+            for (int j = 0; j < queries.length; j++) {
+                result[i * queries.length + j] = new Object[] {mdls[i], queries[j]};
+            }
+        }
+        return result;
+    }
+
+    @Test(dataProvider = "queries")
+    public void verify(String mdl, String query)
+    {
+        BenchmarkSqlRewrite benchmark = new BenchmarkSqlRewrite();
+        benchmark.mdl = mdl;
+        benchmark.query = query;
+        benchmark.setup();
+
+        assertNotNull(benchmark.parse());
+        assertNotNull(benchmark.format());
+        assertNotNull(benchmark.scopeAwareRewrite());
+        assertNotNull(benchmark.analyze());
+        assertNotNull(benchmark.rewrite());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertTrue;
+
+public class TestBenchmarkDataRowCodec
+{
+    private static final String BLACKHOLE_CHALLENGE = "Today's password is swordfish. I understand instantiating Blackholes directly is dangerous.";
+
+    @DataProvider
+    public Object[][] encodingColumns()
+            throws NoSuchFieldException
+    {
+        return columns(BenchmarkDataRowEncoding.class);
+    }
+
+    @DataProvider
+    public Object[][] decodingColumns()
+            throws NoSuchFieldException
+    {
+        return columns(BenchmarkDataRowDecoding.class);
+    }
+
+    @Test(dataProvider = "encodingColumns")
+    public void verifyEncoding(String column)
+    {
+        BenchmarkDataRowEncoding benchmark = new BenchmarkDataRowEncoding();
+        benchmark.column = column;
+        benchmark.setup();
+        try {
+            assertTrue(benchmark.sendDataRows() > 0);
+        }
+        finally {
+            benchmark.tearDown();
+        }
+    }
+
+    @Test(dataProvider = "decodingColumns")
+    public void verifyDecoding(String column)
+    {
+        BenchmarkDataRowDecoding benchmark = new BenchmarkDataRowDecoding();
+        benchmark.column = column;
+        benchmark.setup();
+        try {
+            benchmark.readDataRows(new Blackhole(BLACKHOLE_CHALLENGE));
+        }
+        finally {
+            benchmark.tearDown();
+        }
+    }
+
+    // run every column the benchmark declares
+    private static Object[][] columns(Class<?> benchmark)
+            throws NoSuchFieldException
+    {
+        return Arrays.stream(benchmark.getDeclaredField("column").getAnnotation(Param.class).value())
+                .map(column -> new Object[] {column})
+                .toArray(Object[][]::new);
+    }
+}
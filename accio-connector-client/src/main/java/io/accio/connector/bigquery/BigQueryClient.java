@@ -15,15 +15,18 @@
 package io.accio.connector.bigquery;
 
 import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQuery.QueryResultsOption;
 import com.google.cloud.bigquery.BigQueryException;
 import com.google.cloud.bigquery.Dataset;
 import com.google.cloud.bigquery.DatasetId;
 import com.google.cloud.bigquery.DatasetInfo;
 import com.google.cloud.bigquery.Job;
+import com.google.cloud.bigquery.JobId;
 import com.google.cloud.bigquery.JobInfo;
 import com.google.cloud.bigquery.JobStatistics;
 import com.google.cloud.bigquery.QueryJobConfiguration;
 import com.google.cloud.bigquery.QueryParameterValue;
+import com.google.cloud.bigquery.QueryResponse;
 import com.google.cloud.bigquery.Routine;
 import com.google.cloud.bigquery.Table;
 import com.google.cloud.bigquery.TableDefinition;
@@ -40,25 +43,40 @@ import io.accio.base.metadata.SchemaTableName;
 import io.accio.base.type.PGArray;
 import io.accio.base.type.PGType;
 import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static io.accio.base.metadata.StandardErrorCode.AMBIGUOUS_NAME;
 import static io.accio.base.metadata.StandardErrorCode.GENERIC_INTERNAL_ERROR;
 import static io.accio.base.metadata.StandardErrorCode.GENERIC_USER_ERROR;
 import static io.accio.base.metadata.StandardErrorCode.NOT_FOUND;
+import static io.airlift.units.Duration.nanosSince;
 import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 public class BigQueryClient
 {
     private static final Logger LOG = Logger.get(BigQueryClient.class);
     private static final Set<String> INVALID_QUERY = ImmutableSet.of("invalidQuery", "invalid");
+    // how long a poll waits at BigQuery for the job to complete
+    private static final long POLL_TIMEOUT_MILLIS = 500;
 
     private final BigQuery bigQuery;
 
+    private final TimeStat queryTime = new TimeStat(MILLISECONDS);
+    private final CounterStat queryFailures = new CounterStat();
+    private final TimeStat dryRunTime = new TimeStat(MILLISECONDS);
+
     public BigQueryClient(BigQuery bigQuery)
     {
         this.bigQuery = bigQuery;
@@ -123,6 +141,7 @@ public class BigQueryClient
 
     public TableResult query(String sql, List<Parameter> parameters)
     {
+        long start = System.nanoTime();
         try {
             QueryJobConfiguration.Builder queryConfigBuilder =
                     QueryJobConfiguration
@@ -135,13 +154,132 @@ public class BigQueryClient
             return bigQuery.query(queryConfigBuilder.build());
         }
         catch (InterruptedException e) {
+            queryFailures.update(1);
             Thread.currentThread().interrupt();
             throw new BigQueryException(BaseHttpServiceException.UNKNOWN_CODE, format("Failed to run the query [%s]", sql), e);
         }
+        catch (RuntimeException e) {
+            queryFailures.update(1);
+            throw e;
+        }
+        finally {
+            queryTime.add(nanosSince(start));
+        }
+    }
+
+    /**
+     * Run the query as a job and wait until it's done. Unlike {@link #query}, the caller can get the
+     * destination table of the job from its configuration.
+     */
+    public Job queryJob(String sql, List<Parameter> parameters)
+    {
+        long start = System.nanoTime();
+        try {
+            Job job = bigQuery.create(JobInfo.of(createQueryJobConfiguration(sql, parameters))).waitFor();
+            return checkJobSucceeded(job, sql);
+        }
+        catch (InterruptedException e) {
+            queryFailures.update(1);
+            Thread.currentThread().interrupt();
+            throw new BigQueryException(BaseHttpServiceException.UNKNOWN_CODE, format("Failed to run the query [%s]", sql), e);
+        }
+        catch (RuntimeException e) {
+            queryFailures.update(1);
+            throw e;
+        }
+        finally {
+            queryTime.add(nanosSince(start));
+        }
+    }
+
+    /**
+     * Run the query as a job without waiting for it. The job is created and polled on the executor. Each poll
+     * waits at BigQuery for at most {@value #POLL_TIMEOUT_MILLIS}ms, so the job is noticed as soon as it completes,
+     * and the next poll is queued behind the other tasks of the executor. The returned future is completed
+     * on the executor.
+     */
+    public CompletableFuture<Job> queryJobAsync(String sql, List<Parameter> parameters, Executor executor)
+    {
+        return queryJobAsync(sql, parameters, executor, jobId -> {});
+    }
+
+    /**
+     * {@link #queryJobAsync(String, List, Executor)} which reports the id of the job once it's created.
+     * The job is cancelled if the returned future is completed, e.g. cancelled, before the job is done.
+     */
+    public CompletableFuture<Job> queryJobAsync(String sql, List<Parameter> parameters, Executor executor, Consumer<JobId> jobIdListener)
+    {
+        CompletableFuture<Job> future = new CompletableFuture<>();
+        long start = System.nanoTime();
+        future.whenComplete((job, e) -> {
+            queryTime.add(nanosSince(start));
+            if (e != null) {
+                queryFailures.update(1);
+            }
+        });
+        executor.execute(() -> {
+            try {
+                Job job = bigQuery.create(JobInfo.of(createQueryJobConfiguration(sql, parameters)));
+                jobIdListener.accept(job.getJobId());
+                pollJob(job.getJobId(), sql, executor, future);
+            }
+            catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void pollJob(JobId jobId, String sql, Executor executor, CompletableFuture<Job> future)
+    {
+        if (future.isDone()) {
+            // the caller cancelled the query
+            bigQuery.cancel(jobId);
+            return;
+        }
+        try {
+            // long poll, BigQuery responds as soon as the job completes or the timeout elapses
+            QueryResponse response = bigQuery.getQueryResults(jobId, QueryResultsOption.maxWaitTime(POLL_TIMEOUT_MILLIS));
+            if (!response.getCompleted()) {
+                executor.execute(() -> pollJob(jobId, sql, executor, future));
+                return;
+            }
+            if (response.hasErrors()) {
+                throw new BigQueryException(response.getErrors());
+            }
+            future.complete(checkJobSucceeded(bigQuery.getJob(jobId), sql));
+        }
+        catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private QueryJobConfiguration createQueryJobConfiguration(String sql, List<Parameter> parameters)
+    {
+        QueryJobConfiguration.Builder queryConfigBuilder =
+                QueryJobConfiguration
+                        .newBuilder(sql);
+
+        for (Parameter parameter : parameters) {
+            queryConfigBuilder.addPositionalParameter(toQueryParameterValue(parameter.getType(), parameter.getValue()));
+        }
+        return queryConfigBuilder.build();
+    }
+
+    private static Job checkJobSucceeded(Job job, String sql)
+    {
+        if (job == null) {
+            throw new BigQueryException(BaseHttpServiceException.UNKNOWN_CODE, format("The job of the query [%s] no longer exists", sql));
+        }
+        if (job.getStatus().getError() != null) {
+            throw new BigQueryException(job.getStatus().getExecutionErrors());
+        }
+        return job;
     }
 
     public JobStatistics.QueryStatistics queryDryRun(Optional<String> datasetIdOptional, String query, List<Parameter> parameters)
     {
+        long start = System.nanoTime();
         try {
             QueryJobConfiguration.Builder queryConfigBuilder =
                     QueryJobConfiguration
@@ -168,6 +306,30 @@ public class BigQueryClient
             }
             throw new AccioException(GENERIC_INTERNAL_ERROR, e);
         }
+        finally {
+            dryRunTime.add(nanosSince(start));
+        }
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getQueryTime()
+    {
+        return queryTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getQueryFailures()
+    {
+        return queryFailures;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getDryRunTime()
+    {
+        return dryRunTime;
     }
 
     public void dropTable(SchemaTableName schemaTableName)
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.connector.bigquery;
+
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.Schema;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.CreateReadSessionRequest;
+import com.google.cloud.bigquery.storage.v1.DataFormat;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.PreDestroy;
+
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+/**
+ * Read a table through the BigQuery Storage Read API. The table is split into streams read in parallel,
+ * and the Arrow record batches of the streams are decoded into rows.
+ * <p>
+ * The read client is created on the first read, so nothing is connected if the storage read is never used.
+ * The endpoint of the client is given by the supplier, which can point to a local stand-in server in tests.
+ */
+public class BigQueryStorageReader
+{
+    private static final Set<StandardSQLTypeName> SUPPORTED_TYPES = ImmutableSet.of(
+            StandardSQLTypeName.BOOL,
+            StandardSQLTypeName.INT64,
+            StandardSQLTypeName.FLOAT64,
+            StandardSQLTypeName.STRING,
+            StandardSQLTypeName.BYTES,
+            StandardSQLTypeName.DATE,
+            StandardSQLTypeName.DATETIME,
+            StandardSQLTypeName.TIMESTAMP,
+            StandardSQLTypeName.NUMERIC,
+            StandardSQLTypeName.BIGNUMERIC);
+
+    private final Supplier<BigQueryReadClient> readClientFactory;
+    private final String parentProjectId;
+    private final int maxStreams;
+    private final int bufferedBatchesPerStream;
+    private final ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("bigquery-storage-read-%s"));
+    private BigQueryReadClient readClient;
+
+    public BigQueryStorageReader(Supplier<BigQueryReadClient> readClientFactory, String parentProjectId, int maxStreams, int bufferedBatchesPerStream)
+    {
+        this.readClientFactory = requireNonNull(readClientFactory, "readClientFactory is null");
+        this.parentProjectId = requireNonNull(parentProjectId, "parentProjectId is null");
+        checkArgument(maxStreams > 0, "maxStreams must be positive");
+        checkArgument(bufferedBatchesPerStream > 0, "bufferedBatchesPerStream must be positive");
+        this.maxStreams = maxStreams;
+        this.bufferedBatchesPerStream = bufferedBatchesPerStream;
+    }
+
+    /**
+     * Only the non-repeated columns of primitive types are decoded from Arrow, the others should be read
+     * through the rest api.
+     */
+    public static boolean isSupported(Schema schema)
+    {
+        return schema.getFields().stream()
+                .allMatch(field -> !Field.Mode.REPEATED.equals(field.getMode())
+                        && SUPPORTED_TYPES.contains(field.getType().getStandardType()));
+    }
+
+    /**
+     * @param preserveOrder read the table in a single stream to keep the order of the rows
+     */
+    public BigQueryStorageRecordIterator read(TableId tableId, Schema schema, boolean preserveOrder)
+    {
+        requireNonNull(tableId, "tableId is null");
+        requireNonNull(schema, "schema is null");
+        checkArgument(isSupported(schema), "schema is not supported by the storage read: %s", schema);
+        BigQueryReadClient readClient = getReadClient();
+        ReadSession session = readClient.createReadSession(CreateReadSessionRequest.newBuilder()
+                .setParent(format("projects/%s", parentProjectId))
+                .setReadSession(ReadSession.newBuilder()
+                        .setTable(format("projects/%s/datasets/%s/tables/%s", tableId.getProject(), tableId.getDataset(), tableId.getTable()))
+                        .setDataFormat(DataFormat.ARROW))
+                .setMaxStreamCount(preserveOrder ? 1 : maxStreams)
+                .build());
+        return new BigQueryStorageRecordIterator(readClient, session, schema, executor, bufferedBatchesPerStream);
+    }
+
+    private synchronized BigQueryReadClient getReadClient()
+    {
+        if (readClient == null) {
+            readClient = requireNonNull(readClientFactory.get(), "readClient is null");
+        }
+        return readClient;
+    }
+
+    @PreDestroy
+    public synchronized void close()
+    {
+        executor.shutdownNow();
+        if (readClient != null) {
+            readClient.close();
+        }
+    }
+}
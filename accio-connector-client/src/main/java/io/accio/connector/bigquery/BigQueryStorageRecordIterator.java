@@ -0,0 +1,362 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.connector.bigquery;
+
+import com.google.api.gax.rpc.ServerStream;
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.Schema;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.ReadRowsRequest;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.bigquery.storage.v1.ReadStream;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import io.accio.base.ConnectorRecordIterator;
+import io.accio.base.type.PGType;
+import io.airlift.log.Logger;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.Decimal256Vector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ReadChannel;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Iterate the rows of a read session. Each stream of the session is read by its own task, which decodes the
+ * Arrow record batches into rows and hands them over through a bounded queue, so a slow consumer stops the
+ * readers instead of buffering the whole table. The order of the rows is only kept when the session has a
+ * single stream.
+ */
+public class BigQueryStorageRecordIterator
+        implements ConnectorRecordIterator
+{
+    private static final Logger LOG = Logger.get(BigQueryStorageRecordIterator.class);
+
+    private final List<PGType> types;
+    private final BufferAllocator allocator = new RootAllocator();
+    private final BlockingQueue<ReadResult> results;
+    private final Queue<ServerStream<ReadRowsResponse>> serverStreams = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch finishedReaders;
+    private final int streamCount;
+
+    private int finishedStreams;
+    private Iterator<Object[]> currentBatch = Collections.emptyIterator();
+    private volatile boolean closed;
+
+    BigQueryStorageRecordIterator(BigQueryReadClient readClient, ReadSession session, Schema schema, ExecutorService executor, int bufferedBatchesPerStream)
+    {
+        requireNonNull(readClient, "readClient is null");
+        requireNonNull(session, "session is null");
+        requireNonNull(schema, "schema is null");
+        requireNonNull(executor, "executor is null");
+        this.types = schema.getFields().stream()
+                .map(BigQueryType::toPGType)
+                .collect(toImmutableList());
+        this.streamCount = session.getStreamsCount();
+        this.results = new ArrayBlockingQueue<>(Math.max(streamCount, 1) * bufferedBatchesPerStream);
+        this.finishedReaders = new CountDownLatch(streamCount);
+        if (streamCount == 0) {
+            // the table is empty
+            return;
+        }
+        org.apache.arrow.vector.types.pojo.Schema arrowSchema = deserializeSchema(session.getArrowSchema().getSerializedSchema());
+        for (ReadStream stream : session.getStreamsList()) {
+            executor.execute(() -> {
+                try {
+                    readStream(readClient, stream, arrowSchema, schema);
+                }
+                finally {
+                    finishedReaders.countDown();
+                }
+            });
+        }
+    }
+
+    @Override
+    public List<PGType> getTypes()
+    {
+        return types;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (!currentBatch.hasNext()) {
+            if (finishedStreams == streamCount) {
+                return false;
+            }
+            ReadResult result = takeResult();
+            if (result.failure != null) {
+                throw new RuntimeException("Failed to read the BigQuery storage stream", result.failure);
+            }
+            if (result.rows == null) {
+                finishedStreams++;
+                continue;
+            }
+            currentBatch = result.rows.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public Object[] next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentBatch.next();
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        serverStreams.forEach(ServerStream::cancel);
+        results.clear();
+        try {
+            // the readers stop at the next batch once closed, wait for them to release the arrow buffers
+            if (!finishedReaders.await(10, SECONDS)) {
+                LOG.warn("Timed out waiting for the BigQuery storage readers to stop");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            allocator.close();
+        }
+        catch (RuntimeException e) {
+            LOG.warn(e, "Failed to release the arrow memory");
+        }
+    }
+
+    private ReadResult takeResult()
+    {
+        try {
+            return results.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading the BigQuery storage stream", e);
+        }
+    }
+
+    private void readStream(BigQueryReadClient readClient, ReadStream stream, org.apache.arrow.vector.types.pojo.Schema arrowSchema, Schema schema)
+    {
+        if (closed) {
+            return;
+        }
+        ReadResult end = ReadResult.END;
+        try (VectorSchemaRoot root = VectorSchemaRoot.create(arrowSchema, allocator)) {
+            VectorLoader loader = new VectorLoader(root);
+            ValueDecoder[] decoders = createDecoders(root, schema);
+            ServerStream<ReadRowsResponse> responses = readClient.readRowsCallable()
+                    .call(ReadRowsRequest.newBuilder().setReadStream(stream.getName()).build());
+            serverStreams.add(responses);
+            for (ReadRowsResponse response : responses) {
+                if (closed) {
+                    return;
+                }
+                try (ArrowRecordBatch batch = deserializeRecordBatch(response.getArrowRecordBatch().getSerializedRecordBatch())) {
+                    loader.load(batch);
+                }
+                if (!offer(new ReadResult(decodeRows(root, decoders), null))) {
+                    return;
+                }
+            }
+        }
+        catch (Throwable e) {
+            // the consumer waits for the end of every stream, so any failure must be queued
+            if (closed) {
+                return;
+            }
+            end = new ReadResult(null, e);
+        }
+        offer(end);
+    }
+
+    /**
+     * @return false if the iterator is closed before the result is queued
+     */
+    private boolean offer(ReadResult result)
+    {
+        try {
+            while (!results.offer(result, 100, MILLISECONDS)) {
+                if (closed) {
+                    return false;
+                }
+            }
+            return !closed;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static List<Object[]> decodeRows(VectorSchemaRoot root, ValueDecoder[] decoders)
+    {
+        int rowCount = root.getRowCount();
+        ImmutableList.Builder<Object[]> rows = ImmutableList.builderWithExpectedSize(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            Object[] record = new Object[decoders.length];
+            for (int column = 0; column < decoders.length; column++) {
+                record[column] = decoders[column].decode(row);
+            }
+            rows.add(record);
+        }
+        return rows.build();
+    }
+
+    private static ValueDecoder[] createDecoders(VectorSchemaRoot root, Schema schema)
+    {
+        List<Field> fields = schema.getFields();
+        ValueDecoder[] decoders = new ValueDecoder[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            decoders[i] = createDecoder(field.getType().getStandardType(), root.getVector(field.getName()));
+        }
+        return decoders;
+    }
+
+    // the values are converted to the same java types as BigQueryRecordIterator in accio-main
+    private static ValueDecoder createDecoder(StandardSQLTypeName typeName, FieldVector vector)
+    {
+        switch (typeName) {
+            case BOOL: {
+                BitVector bitVector = (BitVector) vector;
+                return row -> bitVector.isNull(row) ? null : bitVector.get(row) == 1;
+            }
+            case INT64: {
+                BigIntVector bigIntVector = (BigIntVector) vector;
+                return row -> bigIntVector.isNull(row) ? null : bigIntVector.get(row);
+            }
+            case FLOAT64: {
+                Float8Vector float8Vector = (Float8Vector) vector;
+                return row -> float8Vector.isNull(row) ? null : float8Vector.get(row);
+            }
+            case STRING: {
+                VarCharVector varCharVector = (VarCharVector) vector;
+                return row -> varCharVector.isNull(row) ? null : new String(varCharVector.get(row), UTF_8);
+            }
+            case BYTES: {
+                VarBinaryVector varBinaryVector = (VarBinaryVector) vector;
+                return row -> varBinaryVector.isNull(row) ? null : varBinaryVector.get(row);
+            }
+            case DATE: {
+                DateDayVector dateDayVector = (DateDayVector) vector;
+                return row -> dateDayVector.isNull(row) ? null : LocalDate.ofEpochDay(dateDayVector.get(row));
+            }
+            case DATETIME: {
+                // microseconds since epoch without time zone
+                TimeStampMicroVector timeStampVector = (TimeStampMicroVector) vector;
+                return row -> timeStampVector.isNull(row) ? null : timeStampVector.get(row);
+            }
+            case TIMESTAMP: {
+                TimeStampMicroTZVector timeStampVector = (TimeStampMicroTZVector) vector;
+                return row -> timeStampVector.isNull(row) ? null : timeStampVector.get(row);
+            }
+            case NUMERIC: {
+                DecimalVector decimalVector = (DecimalVector) vector;
+                return decimalVector::getObject;
+            }
+            case BIGNUMERIC: {
+                Decimal256Vector decimalVector = (Decimal256Vector) vector;
+                return decimalVector::getObject;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported type: " + typeName);
+        }
+    }
+
+    private static org.apache.arrow.vector.types.pojo.Schema deserializeSchema(ByteString serializedSchema)
+    {
+        try {
+            return MessageSerializer.deserializeSchema(new ReadChannel(new ByteArrayReadableSeekableByteChannel(serializedSchema.toByteArray())));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ArrowRecordBatch deserializeRecordBatch(ByteString serializedRecordBatch)
+    {
+        try {
+            return MessageSerializer.deserializeRecordBatch(new ReadChannel(new ByteArrayReadableSeekableByteChannel(serializedRecordBatch.toByteArray())), allocator);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ValueDecoder
+    {
+        Object decode(int row);
+    }
+
+    private static class ReadResult
+    {
+        // the stream is exhausted
+        private static final ReadResult END = new ReadResult(null, null);
+
+        private final List<Object[]> rows;
+        private final Throwable failure;
+
+        private ReadResult(List<Object[]> rows, Throwable failure)
+        {
+            this.rows = rows;
+            this.failure = failure;
+        }
+    }
+}
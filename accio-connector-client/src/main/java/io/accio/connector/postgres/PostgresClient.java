@@ -28,13 +28,17 @@ import io.accio.base.type.IntervalType;
 import io.accio.base.type.PGArray;
 import io.accio.base.type.PGType;
 import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
 import org.joda.time.Period;
 import org.postgresql.util.PGInterval;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -43,19 +47,32 @@ import java.util.List;
 
 import static io.accio.base.metadata.StandardErrorCode.GENERIC_USER_ERROR;
 import static io.accio.connector.postgres.PostgresJdbcType.toPGType;
+import static io.airlift.units.Duration.nanosSince;
+import static java.util.Collections.emptyList;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toUnmodifiableList;
 
 public class PostgresClient
         implements Client
 {
     private static final Logger LOG = Logger.get(PostgresClient.class);
-    private final PostgresConfig postgresConfig;
+    private final PostgresConnectionPool connectionPool;
+    private final int fetchSize;
+    private final int maxFetchSize;
+
+    // the time until the first rows are fetched, the rows are streamed by the caller afterwards
+    private final TimeStat queryTime = new TimeStat(MILLISECONDS);
+    private final CounterStat queryFailures = new CounterStat();
+    private final TimeStat describeTime = new TimeStat(MILLISECONDS);
 
     @Inject
     public PostgresClient(PostgresConfig postgresConfig)
     {
-        this.postgresConfig = requireNonNull(postgresConfig, "postgresConfig is null");
+        requireNonNull(postgresConfig, "postgresConfig is null");
+        this.connectionPool = new PostgresConnectionPool(postgresConfig);
+        this.fetchSize = postgresConfig.getFetchSize();
+        this.maxFetchSize = Math.max(postgresConfig.getMaxFetchSize(), fetchSize);
     }
 
     public List<TableMetadata> listTable(String schemaName)
@@ -87,25 +104,24 @@ public class PostgresClient
     @Override
     public AutoCloseableIterator<Object[]> query(String sql)
     {
-        try {
-            return PostgresRecordIterator.of(this, sql);
-        }
-        catch (Exception e) {
-            LOG.error(e, "Error executing query");
-            throw new AccioException(GENERIC_USER_ERROR, e);
-        }
+        return query(sql, emptyList());
     }
 
     @Override
     public AutoCloseableIterator<Object[]> query(String sql, List<Parameter> parameters)
     {
+        long start = System.nanoTime();
         try {
-            return PostgresRecordIterator.of(this, sql, parameters);
+            return PostgresRecordIterator.of(this, sql, parameters, fetchSize, maxFetchSize);
         }
         catch (Exception e) {
+            queryFailures.update(1);
             LOG.error(e, "Error executing query");
             throw new AccioException(GENERIC_USER_ERROR, e);
         }
+        finally {
+            queryTime.add(nanosSince(start));
+        }
     }
 
     @Override
@@ -123,6 +139,7 @@ public class PostgresClient
     @Override
     public List<ColumnMetadata> describe(String sql, List<Parameter> parameters)
     {
+        long start = System.nanoTime();
         try (Connection connection = createConnection()) {
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             setParameter(preparedStatement, parameters);
@@ -142,6 +159,9 @@ public class PostgresClient
             LOG.error(e, "Error executing describe");
             throw new AccioException(GENERIC_USER_ERROR, e);
         }
+        finally {
+            describeTime.add(nanosSince(start));
+        }
     }
 
     @Override
@@ -174,16 +194,48 @@ public class PostgresClient
         }
     }
 
+    /**
+     * Borrow a connection from the pool. Closing the connection returns it to the pool.
+     */
+    @Override
     public Connection createConnection()
             throws SQLException
     {
-        try {
-            Class.forName("org.postgresql.Driver");
-        }
-        catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
-        return DriverManager.getConnection(postgresConfig.getJdbcUrl(), postgresConfig.getUser(), postgresConfig.getPassword());
+        return connectionPool.getConnection();
+    }
+
+    @Managed
+    @Nested
+    public PostgresConnectionPool getConnectionPool()
+    {
+        return connectionPool;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getQueryTime()
+    {
+        return queryTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getQueryFailures()
+    {
+        return queryFailures;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getDescribeTime()
+    {
+        return describeTime;
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        connectionPool.close();
     }
 
     public static void setParameter(PreparedStatement preparedStatement, List<Parameter> parameters)
@@ -15,12 +15,26 @@
 package io.accio.connector.postgres;
 
 import io.airlift.configuration.Config;
+import io.airlift.units.Duration;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class PostgresConfig
 {
     private String jdbcUrl;
     private String user;
     private String password;
+    private int maxConnections = 10;
+    private Duration connectionAcquireTimeout = new Duration(30, SECONDS);
+    private Duration connectionMaxLifetime = new Duration(30, MINUTES);
+    private Duration connectionValidationTimeout = new Duration(5, SECONDS);
+    private Duration connectionLeakDetectionThreshold = new Duration(0, SECONDS);
+    private boolean connectionAlwaysReset;
+    private int fetchSize = 256;
+    private int maxFetchSize = 16384;
+    private Duration metadataCacheTtl = new Duration(5, MINUTES);
+    private long metadataCacheMaxSize = 1000;
 
     public String getJdbcUrl()
     {
@@ -57,4 +71,129 @@ public class PostgresConfig
         this.password = password;
         return this;
     }
+
+    public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    @Config("postgres.connection-pool.max-size")
+    public PostgresConfig setMaxConnections(int maxConnections)
+    {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public Duration getConnectionAcquireTimeout()
+    {
+        return connectionAcquireTimeout;
+    }
+
+    @Config("postgres.connection-pool.acquire-timeout")
+    public PostgresConfig setConnectionAcquireTimeout(Duration connectionAcquireTimeout)
+    {
+        this.connectionAcquireTimeout = connectionAcquireTimeout;
+        return this;
+    }
+
+    public Duration getConnectionMaxLifetime()
+    {
+        return connectionMaxLifetime;
+    }
+
+    @Config("postgres.connection-pool.max-lifetime")
+    public PostgresConfig setConnectionMaxLifetime(Duration connectionMaxLifetime)
+    {
+        this.connectionMaxLifetime = connectionMaxLifetime;
+        return this;
+    }
+
+    public Duration getConnectionValidationTimeout()
+    {
+        return connectionValidationTimeout;
+    }
+
+    @Config("postgres.connection-pool.validation-timeout")
+    public PostgresConfig setConnectionValidationTimeout(Duration connectionValidationTimeout)
+    {
+        this.connectionValidationTimeout = connectionValidationTimeout;
+        return this;
+    }
+
+    public Duration getConnectionLeakDetectionThreshold()
+    {
+        return connectionLeakDetectionThreshold;
+    }
+
+    // 0 disables the leak detection
+    @Config("postgres.connection-pool.leak-detection-threshold")
+    public PostgresConfig setConnectionLeakDetectionThreshold(Duration connectionLeakDetectionThreshold)
+    {
+        this.connectionLeakDetectionThreshold = connectionLeakDetectionThreshold;
+        return this;
+    }
+
+    public boolean isConnectionAlwaysReset()
+    {
+        return connectionAlwaysReset;
+    }
+
+    // reset every returned connection, not only the ones which ran a statement that may change the session state
+    @Config("postgres.connection-pool.always-reset")
+    public PostgresConfig setConnectionAlwaysReset(boolean connectionAlwaysReset)
+    {
+        this.connectionAlwaysReset = connectionAlwaysReset;
+        return this;
+    }
+
+    public int getFetchSize()
+    {
+        return fetchSize;
+    }
+
+    // 0 disables the streaming and the whole result is fetched at once
+    @Config("postgres.fetch-size")
+    public PostgresConfig setFetchSize(int fetchSize)
+    {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    public int getMaxFetchSize()
+    {
+        return maxFetchSize;
+    }
+
+    @Config("postgres.max-fetch-size")
+    public PostgresConfig setMaxFetchSize(int maxFetchSize)
+    {
+        this.maxFetchSize = maxFetchSize;
+        return this;
+    }
+
+    public Duration getMetadataCacheTtl()
+    {
+        return metadataCacheTtl;
+    }
+
+    // how long the listed function names are cached, 0s disables the cache
+    @Config("postgres.metadata.cache-ttl")
+    public PostgresConfig setMetadataCacheTtl(Duration metadataCacheTtl)
+    {
+        this.metadataCacheTtl = metadataCacheTtl;
+        return this;
+    }
+
+    public long getMetadataCacheMaxSize()
+    {
+        return metadataCacheMaxSize;
+    }
+
+    // the max number of schemas whose function names are cached
+    @Config("postgres.metadata.cache-max-size")
+    public PostgresConfig setMetadataCacheMaxSize(long metadataCacheMaxSize)
+    {
+        this.metadataCacheMaxSize = metadataCacheMaxSize;
+        return this;
+    }
 }
@@ -0,0 +1,435 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.connector.postgres;
+
+import io.airlift.log.Logger;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+
+/**
+ * A bounded pool of postgres connections.
+ * <p>
+ * The connection handed out is a proxy of the physical connection. Closing it returns the physical connection
+ * to the pool, and the statements created through it are closed at the same time. Aborting it discards the
+ * physical connection, which is what {@code BaseJdbcRecordIterator.close} does when the result isn't drained.
+ * A returned connection is reset with {@code DISCARD ALL}, so no session state leaks to the next borrower. The reset
+ * costs a round trip and drops the server-side prepared statements of the driver, so it's skipped if the borrower
+ * only ran the queries, e.g. {@code SELECT} without the functions changing the session, unless the pool is configured
+ * to always reset. The raw connection got by {@code unwrap} isn't tracked, a borrower using it is always reset.
+ * An idle connection is validated before it's reused unless it was used very recently, and a connection older
+ * than the max lifetime is closed instead of being reused. If leak detection is enabled, a connection borrowed
+ * longer than the threshold is reported with the stack trace of the borrower.
+ */
+public class PostgresConnectionPool
+        implements AutoCloseable
+{
+    private static final Logger LOG = Logger.get(PostgresConnectionPool.class);
+    // a connection used within this period is very likely still alive, skip the validation round trip
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    // the statements which only read, a comment before the keyword makes the statement reset the connection
+    private static final Pattern QUERY_PATTERN = Pattern.compile("^[\\s(]*(select|with|values|table|show)\\b", CASE_INSENSITIVE);
+    // the functions changing the session state a query can call
+    private static final Pattern SESSION_FUNCTION_PATTERN = Pattern.compile("\\b(set_config|pg_advisory_\\w*lock\\w*|dblink_connect\\w*)\\s*\\(", CASE_INSENSITIVE);
+
+    private final String jdbcUrl;
+    private final String user;
+    private final String password;
+    private final int maxConnections;
+    private final Duration acquireTimeout;
+    private final long maxLifetimeMillis;
+    private final int validationTimeoutSeconds;
+    private final long leakDetectionThresholdMillis;
+    private final boolean alwaysReset;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService leakDetector;
+    private volatile boolean closed;
+
+    public PostgresConnectionPool(PostgresConfig postgresConfig)
+    {
+        requireNonNull(postgresConfig, "postgresConfig is null");
+        this.jdbcUrl = postgresConfig.getJdbcUrl();
+        this.user = postgresConfig.getUser();
+        this.password = postgresConfig.getPassword();
+        this.maxConnections = postgresConfig.getMaxConnections();
+        this.acquireTimeout = requireNonNull(postgresConfig.getConnectionAcquireTimeout(), "connectionAcquireTimeout is null");
+        this.maxLifetimeMillis = postgresConfig.getConnectionMaxLifetime().toMillis();
+        this.validationTimeoutSeconds = (int) Math.max(1, postgresConfig.getConnectionValidationTimeout().roundTo(SECONDS));
+        this.leakDetectionThresholdMillis = postgresConfig.getConnectionLeakDetectionThreshold().toMillis();
+        this.alwaysReset = postgresConfig.isConnectionAlwaysReset();
+        checkArgument(maxConnections > 0, "maxConnections must be positive");
+        this.permits = new Semaphore(maxConnections, true);
+
+        try {
+            Class.forName("org.postgresql.Driver");
+        }
+        catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (leakDetectionThresholdMillis > 0) {
+            long interval = Math.max(leakDetectionThresholdMillis / 2, 1000);
+            this.leakDetector = newSingleThreadScheduledExecutor(daemonThreadsNamed("postgres-connection-leak-detector-%s"));
+            leakDetector.scheduleWithFixedDelay(this::detectLeaks, interval, interval, MILLISECONDS);
+        }
+        else {
+            this.leakDetector = null;
+        }
+    }
+
+    public Connection getConnection()
+            throws SQLException
+    {
+        if (closed) {
+            throw new SQLException("Postgres connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeout.toMillis(), MILLISECONDS)) {
+                throw new SQLException(format("Timed out after %s waiting for a postgres connection; all %s connections are in use", acquireTimeout, maxConnections));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a postgres connection", e);
+        }
+
+        try {
+            PooledConnection pooledConnection = takeIdleConnection();
+            if (pooledConnection == null) {
+                pooledConnection = new PooledConnection(DriverManager.getConnection(jdbcUrl, user, password));
+            }
+            Lease lease = new Lease(pooledConnection, leakDetector != null ? new Exception("Connection borrowed here") : null);
+            leases.add(lease);
+            return lease.getProxy();
+        }
+        catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Managed
+    public int getActiveConnections()
+    {
+        return leases.size();
+    }
+
+    @Managed
+    public int getIdleConnections()
+    {
+        return idleConnections.size();
+    }
+
+    @Managed
+    public int getWaitingThreads()
+    {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            pooledConnection.closeQuietly();
+        }
+    }
+
+    private PooledConnection takeIdleConnection()
+    {
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            long now = currentTimeMillis();
+            if (pooledConnection.isExpired(now)) {
+                pooledConnection.closeQuietly();
+                continue;
+            }
+            if (now - pooledConnection.lastUsedMillis > VALIDATION_BYPASS_MILLIS && !pooledConnection.isValid()) {
+                LOG.debug("Discard the invalid postgres connection");
+                pooledConnection.closeQuietly();
+                continue;
+            }
+            return pooledConnection;
+        }
+        return null;
+    }
+
+    private void release(Lease lease, boolean broken)
+    {
+        leases.remove(lease);
+        PooledConnection pooledConnection = lease.pooledConnection;
+        try {
+            lease.closeStatements();
+            if (broken || closed || pooledConnection.isExpired(currentTimeMillis()) || !pooledConnection.reset(alwaysReset || lease.sessionChanged)) {
+                pooledConnection.closeQuietly();
+            }
+            else {
+                pooledConnection.lastUsedMillis = currentTimeMillis();
+                // reuse the most recently used connection first, the others can reach the max lifetime and be closed
+                idleConnections.offerFirst(pooledConnection);
+            }
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    private void detectLeaks()
+    {
+        long now = currentTimeMillis();
+        for (Lease lease : leases) {
+            if (now - lease.borrowedMillis > leakDetectionThresholdMillis && !lease.leakReported) {
+                lease.leakReported = true;
+                LOG.warn(lease.borrowStackTrace, "Postgres connection has been borrowed for %sms without being closed; the record iterator using it might be leaked", now - lease.borrowedMillis);
+            }
+        }
+    }
+
+    private class PooledConnection
+    {
+        private final Connection connection;
+        private final long createdMillis = currentTimeMillis();
+        private volatile long lastUsedMillis = createdMillis;
+
+        private PooledConnection(Connection connection)
+        {
+            this.connection = requireNonNull(connection, "connection is null");
+        }
+
+        private boolean isExpired(long now)
+        {
+            return maxLifetimeMillis > 0 && now - createdMillis > maxLifetimeMillis;
+        }
+
+        private boolean isValid()
+        {
+            try {
+                return connection.isValid(validationTimeoutSeconds);
+            }
+            catch (SQLException e) {
+                return false;
+            }
+        }
+
+        // the next borrower should get the connection in its default state
+        private boolean reset(boolean discardSession)
+        {
+            try {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                if (discardSession) {
+                    // drop the session state, e.g. settings, temp tables, prepared statements, cursors and advisory locks.
+                    // the driver sees the command and forgets its server-side prepared statements
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("DISCARD ALL");
+                    }
+                }
+                return true;
+            }
+            catch (SQLException e) {
+                LOG.debug(e, "Failed to reset postgres connection");
+                return false;
+            }
+        }
+
+        private void closeQuietly()
+        {
+            try {
+                connection.close();
+            }
+            catch (SQLException e) {
+                LOG.debug(e, "Failed to close postgres connection");
+            }
+        }
+    }
+
+    private class Lease
+            implements InvocationHandler
+    {
+        private final PooledConnection pooledConnection;
+        private final Exception borrowStackTrace;
+        private final long borrowedMillis = currentTimeMillis();
+        private final Queue<Statement> statements = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean returned = new AtomicBoolean();
+        private final Connection proxy;
+        private volatile boolean leakReported;
+        // the borrower ran something which may change the session state, the connection is reset when it's returned
+        private volatile boolean sessionChanged;
+
+        private Lease(PooledConnection pooledConnection, Exception borrowStackTrace)
+        {
+            this.pooledConnection = pooledConnection;
+            this.borrowStackTrace = borrowStackTrace;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, this);
+        }
+
+        private Connection getProxy()
+        {
+            return proxy;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable
+        {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(this, false);
+                    }
+                    return null;
+                case "abort":
+                    if (returned.compareAndSet(false, true)) {
+                        try {
+                            return invokeConnection(method, args);
+                        }
+                        finally {
+                            release(this, true);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    if (returned.get()) {
+                        return true;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooledConnection.connection + "]";
+                default:
+                    break;
+            }
+            if (returned.get()) {
+                throw new SQLException("Connection is closed");
+            }
+            if (changesSession(method, args)) {
+                sessionChanged = true;
+            }
+            Object result = invokeConnection(method, args);
+            if (result instanceof Statement) {
+                statements.add((Statement) result);
+                return trackStatement(method.getReturnType(), (Statement) result);
+            }
+            return result;
+        }
+
+        private boolean changesSession(Method method, Object[] args)
+        {
+            String name = method.getName();
+            if (name.startsWith("prepare")) {
+                return !isQuery((String) args[0]);
+            }
+            // the transaction is rolled back and the auto-commit is restored by the reset anyway
+            return name.equals("unwrap") || (name.startsWith("set") && !name.equals("setAutoCommit"));
+        }
+
+        /**
+         * Wrap the statement to see the sql it runs, the other calls go to the statement of the driver.
+         */
+        private Statement trackStatement(Class<?> type, Statement statement)
+        {
+            return (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (statementProxy, method, args) -> {
+                if ((method.getName().startsWith("execute") || method.getName().equals("addBatch"))
+                        && args != null
+                        && args.length > 0
+                        && args[0] instanceof String
+                        && !isQuery((String) args[0])) {
+                    sessionChanged = true;
+                }
+                if (method.getName().equals("getConnection")) {
+                    return proxy;
+                }
+                if (method.getName().equals("unwrap")) {
+                    sessionChanged = true;
+                }
+                try {
+                    return method.invoke(statement, args);
+                }
+                catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+
+        private Object invokeConnection(Method method, Object[] args)
+                throws Throwable
+        {
+            try {
+                return method.invoke(pooledConnection.connection, args);
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void closeStatements()
+        {
+            Statement statement;
+            while ((statement = statements.poll()) != null) {
+                try {
+                    statement.close();
+                }
+                catch (SQLException e) {
+                    LOG.debug(e, "Failed to close postgres statement");
+                }
+            }
+        }
+    }
+
+    private static boolean isQuery(String sql)
+    {
+        return QUERY_PATTERN.matcher(sql).find() && !SESSION_FUNCTION_PATTERN.matcher(sql).find();
+    }
+}
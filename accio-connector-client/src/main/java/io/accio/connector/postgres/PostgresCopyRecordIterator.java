@@ -0,0 +1,337 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.connector.postgres;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.accio.base.AccioException;
+import io.accio.base.client.AutoCloseableIterator;
+import io.accio.base.metadata.ColumnMetadata;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.accio.base.client.duckdb.DuckdbType.MAX_DECIMAL_PRECISION;
+import static io.accio.base.metadata.StandardErrorCode.NOT_SUPPORTED;
+import static io.accio.connector.postgres.PostgresJdbcType.toPGType;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.ZoneOffset.UTC;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Stream the result of a query through {@code COPY ... TO STDOUT (FORMAT binary)}.
+ * The rows are decoded from the binary copy stream directly, so the whole result is never buffered
+ * in the JVM and the rows don't need to go through the jdbc result set.
+ * <p>
+ * Columns whose type can't be decoded from the binary format are cast to text in the copy query. Numeric
+ * columns which don't fit in a duckdb decimal are cast to {@code numeric(38, s)} in the copy query, so the
+ * values stay exact and postgres fails the copy if a value overflows. An unconstrained numeric, e.g. the
+ * result of sum(), keeps {@value #UNCONSTRAINED_NUMERIC_SCALE} fractional digits.
+ * <p>
+ * Infinite dates and timestamps are decoded as the {@code infinity} literals, which duckdb casts to its own
+ * infinite values when they're appended.
+ */
+public class PostgresCopyRecordIterator
+        implements AutoCloseableIterator<Object[]>
+{
+    private static final byte[] BINARY_COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    // postgres epoch is 2000-01-01
+    private static final LocalDate PG_EPOCH_DATE = LocalDate.of(2000, 1, 1);
+    private static final LocalDateTime PG_EPOCH_TIMESTAMP = PG_EPOCH_DATE.atStartOfDay();
+    private static final short NUMERIC_NEG = 0x4000;
+    private static final short NUMERIC_NAN = (short) 0xC000;
+    private static final short NUMERIC_PINF = (short) 0xD000;
+    private static final short NUMERIC_NINF = (short) 0xF000;
+    private static final int UNCONSTRAINED_NUMERIC_SCALE = 9;
+    private static final String POSITIVE_INFINITY = "infinity";
+    private static final String NEGATIVE_INFINITY = "-infinity";
+
+    private static final Map<String, ValueDecoder> DECODERS = ImmutableMap.<String, ValueDecoder>builder()
+            .put("bool", (input, length) -> input.readByte() != 0)
+            .put("int2", (input, length) -> input.readShort())
+            .put("int4", (input, length) -> input.readInt())
+            .put("int8", (input, length) -> input.readLong())
+            .put("float4", (input, length) -> input.readFloat())
+            .put("float8", (input, length) -> input.readDouble())
+            .put("numeric", (input, length) -> readNumeric(input))
+            .put("text", PostgresCopyRecordIterator::readText)
+            .put("varchar", PostgresCopyRecordIterator::readText)
+            .put("bpchar", PostgresCopyRecordIterator::readText)
+            .put("name", PostgresCopyRecordIterator::readText)
+            .put("char", PostgresCopyRecordIterator::readText)
+            .put("date", (input, length) -> readDate(input))
+            .put("timestamp", (input, length) -> readTimestamp(input, false))
+            .put("timestamptz", (input, length) -> readTimestamp(input, true))
+            .put("bytea", PostgresCopyRecordIterator::readBytes)
+            .build();
+
+    private final Connection connection;
+    private final List<ColumnMetadata> columns;
+    private final ValueDecoder[] decoders;
+    private final InputStream copyStream;
+    private final DataInputStream input;
+
+    private Object[] nextRecord;
+
+    public static PostgresCopyRecordIterator of(PostgresClient client, String sql)
+            throws SQLException
+    {
+        return new PostgresCopyRecordIterator(client, sql);
+    }
+
+    private PostgresCopyRecordIterator(PostgresClient client, String sql)
+            throws SQLException
+    {
+        requireNonNull(client, "client is null");
+        requireNonNull(sql, "sql is null");
+        this.connection = client.createConnection();
+        try {
+            ImmutableList.Builder<ColumnMetadata> columnsBuilder = ImmutableList.builder();
+            ImmutableList.Builder<String> projections = ImmutableList.builder();
+            ImmutableList.Builder<String> aliases = ImmutableList.builder();
+            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                ResultSetMetaData metaData = preparedStatement.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                this.decoders = new ValueDecoder[columnCount];
+                for (int i = 1; i <= columnCount; i++) {
+                    String alias = "c" + i;
+                    String typeName = metaData.getColumnTypeName(i);
+                    ColumnMetadata.Builder column = ColumnMetadata.builder().setName(metaData.getColumnName(i));
+                    Optional<String> castType = Optional.empty();
+                    if (typeName.equals("numeric")) {
+                        // unconstrained numeric, e.g. the result of sum(), has no precision
+                        int precision = metaData.getPrecision(i);
+                        int scale = precision > 0 ? Math.min(metaData.getScale(i), MAX_DECIMAL_PRECISION) : UNCONSTRAINED_NUMERIC_SCALE;
+                        if (precision <= 0 || precision > MAX_DECIMAL_PRECISION) {
+                            // duckdb decimal holds at most 38 digits, postgres fails the cast of a value with more integer digits
+                            precision = MAX_DECIMAL_PRECISION;
+                            castType = Optional.of(format("numeric(%s, %s)", precision, scale));
+                        }
+                        column.setPrecision(precision).setScale(scale);
+                    }
+                    else if (!DECODERS.containsKey(typeName)) {
+                        typeName = "text";
+                        castType = Optional.of(typeName);
+                    }
+                    if (castType.isPresent()) {
+                        projections.add(format("\"%s\"::%s", alias, castType.get()));
+                    }
+                    else {
+                        projections.add(format("\"%s\"", alias));
+                    }
+                    aliases.add(format("\"%s\"", alias));
+                    decoders[i - 1] = DECODERS.get(typeName);
+                    columnsBuilder.add(column.setType(toPGType(typeName)).build());
+                }
+            }
+            this.columns = columnsBuilder.build();
+            String copySql = format("COPY (SELECT %s FROM (%s) t(%s)) TO STDOUT (FORMAT binary)",
+                    String.join(", ", projections.build()),
+                    sql,
+                    String.join(", ", aliases.build()));
+            this.copyStream = new PGCopyInputStream(connection.unwrap(PGConnection.class), copySql);
+            this.input = new DataInputStream(new BufferedInputStream(copyStream));
+            readHeader();
+            this.nextRecord = readRecord();
+        }
+        catch (SQLException | RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    public List<ColumnMetadata> getColumns()
+    {
+        return columns;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return nextRecord != null;
+    }
+
+    @Override
+    public Object[] next()
+    {
+        if (nextRecord == null) {
+            throw new NoSuchElementException();
+        }
+        Object[] currentRecord = nextRecord;
+        nextRecord = readRecord();
+        return currentRecord;
+    }
+
+    @Override
+    public void close()
+            throws Exception
+    {
+        try (Connection connection = this.connection) {
+            if (nextRecord != null) {
+                // the copy is still in progress, abort it instead of draining the stream
+                connection.abort(directExecutor());
+            }
+            else {
+                copyStream.close();
+            }
+        }
+        catch (IOException | SQLException | RuntimeException e) {
+            // ignore exception from close
+        }
+    }
+
+    private void closeQuietly()
+    {
+        try {
+            connection.close();
+        }
+        catch (SQLException ignored) {
+            // ignore exception from close
+        }
+    }
+
+    private void readHeader()
+    {
+        try {
+            byte[] signature = new byte[BINARY_COPY_SIGNATURE.length];
+            input.readFully(signature);
+            checkArgument(Arrays.equals(signature, BINARY_COPY_SIGNATURE), "Invalid binary copy signature");
+            // flags field
+            input.readInt();
+            int extensionLength = input.readInt();
+            input.skipBytes(extensionLength);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Object[] readRecord()
+    {
+        try {
+            short fieldCount = input.readShort();
+            if (fieldCount == -1) {
+                // file trailer
+                return null;
+            }
+            checkArgument(fieldCount == decoders.length, "Expected %s fields but got %s", decoders.length, fieldCount);
+            Object[] record = new Object[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                int length = input.readInt();
+                record[i] = length == -1 ? null : decoders[i].decode(input, length);
+            }
+            return record;
+        }
+        catch (IOException e) {
+            // only the trailer ends the stream, EOF anywhere else means the copy was truncated
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String readText(DataInputStream input, int length)
+            throws IOException
+    {
+        return new String(readBytes(input, length), UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream input, int length)
+            throws IOException
+    {
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    // https://github.com/postgres/postgres/blob/master/src/include/datatype/timestamp.h DATE_NOBEGIN and DATE_NOEND
+    private static Object readDate(DataInputStream input)
+            throws IOException
+    {
+        int days = input.readInt();
+        if (days == Integer.MAX_VALUE) {
+            return POSITIVE_INFINITY;
+        }
+        if (days == Integer.MIN_VALUE) {
+            return NEGATIVE_INFINITY;
+        }
+        return PG_EPOCH_DATE.plusDays(days);
+    }
+
+    // https://github.com/postgres/postgres/blob/master/src/include/datatype/timestamp.h DT_NOBEGIN and DT_NOEND
+    private static Object readTimestamp(DataInputStream input, boolean withTimeZone)
+            throws IOException
+    {
+        long micros = input.readLong();
+        if (micros == Long.MAX_VALUE) {
+            return POSITIVE_INFINITY;
+        }
+        if (micros == Long.MIN_VALUE) {
+            return NEGATIVE_INFINITY;
+        }
+        LocalDateTime timestamp = PG_EPOCH_TIMESTAMP.plusSeconds(Math.floorDiv(micros, 1_000_000L))
+                .plusNanos(Math.floorMod(micros, 1_000_000L) * 1000L);
+        return withTimeZone ? timestamp.atOffset(UTC) : timestamp;
+    }
+
+    // https://github.com/postgres/postgres/blob/master/src/backend/utils/adt/numeric.c numeric_send
+    private static BigDecimal readNumeric(DataInputStream input)
+            throws IOException
+    {
+        short digitCount = input.readShort();
+        short weight = input.readShort();
+        short sign = input.readShort();
+        short scale = input.readShort();
+        if (sign == NUMERIC_NAN) {
+            throw new AccioException(NOT_SUPPORTED, "NaN numeric value is not supported");
+        }
+        if (sign == NUMERIC_PINF || sign == NUMERIC_NINF) {
+            throw new AccioException(NOT_SUPPORTED, "Infinite numeric value is not supported");
+        }
+        BigDecimal value = BigDecimal.ZERO;
+        for (int i = 0; i < digitCount; i++) {
+            // each digit is a base-10000 digit
+            value = value.add(BigDecimal.valueOf(input.readShort()).scaleByPowerOfTen(4 * (weight - i)));
+        }
+        value = value.setScale(scale, RoundingMode.DOWN);
+        return sign == NUMERIC_NEG ? value.negate() : value;
+    }
+
+    @FunctionalInterface
+    private interface ValueDecoder
+    {
+        Object decode(DataInputStream input, int length)
+                throws IOException;
+    }
+}
@@ -17,24 +17,28 @@ package io.accio.connector.postgres;
 import io.accio.base.Parameter;
 import io.accio.base.client.Client;
 import io.accio.base.client.jdbc.BaseJdbcRecordIterator;
+import io.accio.base.client.jdbc.ColumnExtractor;
 import org.joda.time.Period;
 import org.postgresql.util.PGInterval;
 import org.postgresql.util.PGobject;
 
-import java.sql.Blob;
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import static java.util.Collections.emptyList;
 
 public class PostgresRecordIterator
         extends BaseJdbcRecordIterator<Object[]>
 {
+    private final ColumnExtractor[] extractors;
+
     public static PostgresRecordIterator of(Client client, String sql)
 
             throws SQLException
@@ -45,72 +49,91 @@ public class PostgresRecordIterator
     public static PostgresRecordIterator of(Client client, String sql, List<Parameter> parameters)
             throws SQLException
     {
-        return new PostgresRecordIterator(client, sql, parameters);
+        return of(client, sql, parameters, 0, 0);
     }
 
-    private PostgresRecordIterator(Client client, String sql, List<Parameter> parameters)
+    public static PostgresRecordIterator of(Client client, String sql, List<Parameter> parameters, int fetchSize, int maxFetchSize)
             throws SQLException
     {
-        super(client, sql, parameters);
+        return new PostgresRecordIterator(client, sql, parameters, fetchSize, maxFetchSize);
+    }
+
+    private PostgresRecordIterator(Client client, String sql, List<Parameter> parameters, int fetchSize, int maxFetchSize)
+            throws SQLException
+    {
+        super(client, sql, parameters, fetchSize, maxFetchSize);
+        ResultSetMetaData metaData = getResultSetMetaData();
+        this.extractors = new ColumnExtractor[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            extractors[i - 1] = createExtractor(metaData.getColumnType(i));
+        }
+    }
+
+    private ColumnExtractor createExtractor(int columnType)
+    {
+        switch (columnType) {
+            case Types.BLOB:
+                return ColumnExtractor.BLOB;
+            case Types.SMALLINT:
+                return ColumnExtractor.SMALLINT;
+            case Types.ARRAY:
+                return this::getArray;
+            case Types.DATE:
+                return (resultSet, index) -> {
+                    Date date = resultSet.getDate(index);
+                    return date == null ? null : date.toLocalDate();
+                };
+            default:
+                return this::getObject;
+        }
     }
 
     @Override
     public Object[] getCurrentRecord()
             throws SQLException
     {
-        List<Object> builder = new ArrayList<>(columnCount);
-        for (int i = 1; i <= columnCount; i++) {
-            if (resultSet.getMetaData().getColumnType(i) == Types.BLOB) {
-                Blob blob = resultSet.getBlob(i);
-                byte[] bytes = blob.getBytes(0, (int) blob.length());
-                builder.add(bytes);
-            }
-            else if (resultSet.getMetaData().getColumnType(i) == Types.SMALLINT) {
-                builder.add(resultSet.getShort(i));
-            }
-            else if (resultSet.getMetaData().getColumnType(i) == Types.ARRAY) {
-                List<Object> objArray = Optional.ofNullable(resultSet.getArray(i))
-                        .map(array -> {
-                            try {
-                                return Arrays.stream((Object[]) array.getArray()).map(obj -> {
-                                    if (obj instanceof PGobject) {
-                                        return getPgObjectValue((PGobject) obj);
-                                    }
-                                    return obj;
-                                }).collect(Collectors.toList());
-                            }
-                            catch (SQLException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }).orElse(null);
-                builder.add(objArray);
-            }
-            else if (resultSet.getMetaData().getColumnType(i) == Types.DATE) {
-                builder.add(resultSet.getDate(i).toLocalDate());
-            }
-            else {
-                Object obj = resultSet.getObject(i);
-                if (obj instanceof PGInterval) {
-                    PGInterval pgInterval = (PGInterval) obj;
-                    builder.add(new Period(
-                            pgInterval.getYears(),
-                            pgInterval.getMonths(),
-                            0,
-                            pgInterval.getDays(),
-                            pgInterval.getHours(),
-                            pgInterval.getMinutes(),
-                            pgInterval.getWholeSeconds(),
-                            pgInterval.getMicroSeconds() / 1000));
-                }
-                else if (obj instanceof PGobject) {
-                    builder.add(getPgObjectValue((PGobject) obj));
-                }
-                else {
-                    builder.add(obj);
-                }
-            }
+        Object[] record = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            record[i] = extractors[i].extract(resultSet, i + 1);
+        }
+        return record;
+    }
+
+    private List<Object> getArray(ResultSet resultSet, int index)
+            throws SQLException
+    {
+        Array array = resultSet.getArray(index);
+        if (array == null) {
+            return null;
+        }
+        Object[] elements = (Object[]) array.getArray();
+        List<Object> values = new ArrayList<>(elements.length);
+        for (Object element : elements) {
+            values.add(element instanceof PGobject ? getPgObjectValue((PGobject) element) : element);
+        }
+        return values;
+    }
+
+    private Object getObject(ResultSet resultSet, int index)
+            throws SQLException
+    {
+        Object obj = resultSet.getObject(index);
+        if (obj instanceof PGInterval) {
+            PGInterval pgInterval = (PGInterval) obj;
+            return new Period(
+                    pgInterval.getYears(),
+                    pgInterval.getMonths(),
+                    0,
+                    pgInterval.getDays(),
+                    pgInterval.getHours(),
+                    pgInterval.getMinutes(),
+                    pgInterval.getWholeSeconds(),
+                    pgInterval.getMicroSeconds() / 1000);
+        }
+        if (obj instanceof PGobject) {
+            return getPgObjectValue((PGobject) obj);
         }
-        return builder.toArray();
+        return obj;
     }
 
     public Object getPgObjectValue(PGobject pgObject)
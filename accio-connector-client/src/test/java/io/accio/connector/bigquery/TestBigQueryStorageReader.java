@@ -0,0 +1,322 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.connector.bigquery;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.ResponseObserver;
+import com.google.api.gax.rpc.ServerStreamingCallable;
+import com.google.api.gax.rpc.StreamController;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.Schema;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.storage.v1.ArrowRecordBatch;
+import com.google.cloud.bigquery.storage.v1.ArrowSchema;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.CreateReadSessionRequest;
+import com.google.cloud.bigquery.storage.v1.ReadRowsRequest;
+import com.google.cloud.bigquery.storage.v1.ReadRowsResponse;
+import com.google.cloud.bigquery.storage.v1.ReadSession;
+import com.google.cloud.bigquery.storage.v1.ReadStream;
+import com.google.cloud.bigquery.storage.v1.stub.BigQueryReadStub;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.WriteChannel;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Test(singleThreaded = true)
+public class TestBigQueryStorageReader
+{
+    private static final TableId TABLE_ID = TableId.of("project", "dataset", "table");
+    private static final Schema ID_SCHEMA = Schema.of(Field.of("id", StandardSQLTypeName.INT64));
+    private static final org.apache.arrow.vector.types.pojo.Schema ID_ARROW_SCHEMA = new org.apache.arrow.vector.types.pojo.Schema(ImmutableList.of(
+            org.apache.arrow.vector.types.pojo.Field.nullable("id", new ArrowType.Int(64, true))));
+
+    private final BufferAllocator allocator = new RootAllocator();
+    private final List<BigQueryStorageReader> readers = new ArrayList<>();
+
+    @AfterClass(alwaysRun = true)
+    public void close()
+    {
+        readers.forEach(BigQueryStorageReader::close);
+        allocator.close();
+    }
+
+    @Test(timeOut = 10_000)
+    public void testDecodeArrowBatch()
+    {
+        Schema schema = Schema.of(
+                Field.of("c_bool", StandardSQLTypeName.BOOL),
+                Field.of("c_int64", StandardSQLTypeName.INT64),
+                Field.of("c_float64", StandardSQLTypeName.FLOAT64),
+                Field.of("c_string", StandardSQLTypeName.STRING),
+                Field.of("c_date", StandardSQLTypeName.DATE),
+                Field.of("c_timestamp", StandardSQLTypeName.TIMESTAMP),
+                Field.of("c_numeric", StandardSQLTypeName.NUMERIC));
+        org.apache.arrow.vector.types.pojo.Schema arrowSchema = new org.apache.arrow.vector.types.pojo.Schema(ImmutableList.of(
+                org.apache.arrow.vector.types.pojo.Field.nullable("c_bool", new ArrowType.Bool()),
+                org.apache.arrow.vector.types.pojo.Field.nullable("c_int64", new ArrowType.Int(64, true)),
+                org.apache.arrow.vector.types.pojo.Field.nullable("c_float64", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+                org.apache.arrow.vector.types.pojo.Field.nullable("c_string", new ArrowType.Utf8()),
+                org.apache.arrow.vector.types.pojo.Field.nullable("c_date", new ArrowType.Date(DateUnit.DAY)),
+                org.apache.arrow.vector.types.pojo.Field.nullable("c_timestamp", new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC")),
+                org.apache.arrow.vector.types.pojo.Field.nullable("c_numeric", new ArrowType.Decimal(38, 9, 128))));
+        ByteString batch = serialize(arrowSchema, root -> {
+            ((BitVector) root.getVector("c_bool")).setSafe(0, 1);
+            ((BigIntVector) root.getVector("c_int64")).setSafe(0, 42L);
+            ((Float8Vector) root.getVector("c_float64")).setSafe(0, 1.5);
+            ((VarCharVector) root.getVector("c_string")).setSafe(0, "accio".getBytes(UTF_8));
+            ((DateDayVector) root.getVector("c_date")).setSafe(0, (int) LocalDate.parse("2023-07-01").toEpochDay());
+            ((TimeStampMicroTZVector) root.getVector("c_timestamp")).setSafe(0, 1_688_169_600_123_456L);
+            ((DecimalVector) root.getVector("c_numeric")).setSafe(0, new BigDecimal("12.345000000"));
+            root.getFieldVectors().forEach(vector -> vector.setNull(1));
+            root.setRowCount(2);
+        });
+        TestingReadStub stub = new TestingReadStub(arrowSchema, ImmutableList.of(batch));
+
+        List<Object[]> rows = readAll(createReader(stub, 1).read(TABLE_ID, schema, true));
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0)).containsExactly(true, 42L, 1.5, "accio", LocalDate.parse("2023-07-01"), 1_688_169_600_123_456L, new BigDecimal("12.345000000"));
+        assertThat(rows.get(1)).containsExactly(null, null, null, null, null, null, null);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testPreserveOrder()
+    {
+        TestingReadStub stub = new TestingReadStub(ID_ARROW_SCHEMA, idBatches(5, 100));
+        List<Object[]> rows = readAll(createReader(stub, 4).read(TABLE_ID, ID_SCHEMA, true));
+        assertThat(stub.maxStreamCounts).containsExactly(1);
+        assertThat(rows.stream().map(row -> (Long) row[0]).collect(toImmutableList())).isSorted().hasSize(500);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testMergeStreams()
+    {
+        TestingReadStub stub = new TestingReadStub(ID_ARROW_SCHEMA, idBatches(12, 100));
+        // one buffered batch per stream makes the readers wait for the consumer
+        List<Object[]> rows = readAll(createReader(stub, 4).read(TABLE_ID, ID_SCHEMA, false));
+        assertThat(stub.maxStreamCounts).containsExactly(4);
+        assertThat(rows.stream().map(row -> (Long) row[0]).collect(toImmutableList()))
+                .containsExactlyInAnyOrderElementsOf(LongStream.range(0, 1200).boxed().collect(toImmutableList()));
+    }
+
+    @Test(timeOut = 10_000)
+    public void testStreamFailure()
+    {
+        TestingReadStub stub = new TestingReadStub(ID_ARROW_SCHEMA, idBatches(4, 10));
+        // an error isn't a RuntimeException, the consumer must not wait for the failed stream forever
+        stub.failingStream = "streams/1";
+        try (BigQueryStorageRecordIterator iterator = createReader(stub, 2).read(TABLE_ID, ID_SCHEMA, false)) {
+            assertThatThrownBy(() -> iterator.forEachRemaining(row -> {}))
+                    .hasMessage("Failed to read the BigQuery storage stream")
+                    .hasRootCauseMessage("stream failed");
+        }
+    }
+
+    private BigQueryStorageReader createReader(TestingReadStub stub, int maxStreams)
+    {
+        BigQueryStorageReader reader = new BigQueryStorageReader(() -> BigQueryReadClient.create(stub), "project", maxStreams, 1);
+        readers.add(reader);
+        return reader;
+    }
+
+    private List<ByteString> idBatches(int batchCount, int rowsPerBatch)
+    {
+        ImmutableList.Builder<ByteString> batches = ImmutableList.builder();
+        for (int batch = 0; batch < batchCount; batch++) {
+            long start = (long) batch * rowsPerBatch;
+            batches.add(serialize(ID_ARROW_SCHEMA, root -> {
+                BigIntVector vector = (BigIntVector) root.getVector("id");
+                for (int row = 0; row < rowsPerBatch; row++) {
+                    vector.setSafe(row, start + row);
+                }
+                root.setRowCount(rowsPerBatch);
+            }));
+        }
+        return batches.build();
+    }
+
+    private ByteString serialize(org.apache.arrow.vector.types.pojo.Schema schema, Consumer<VectorSchemaRoot> writer)
+    {
+        try (VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator)) {
+            root.allocateNew();
+            writer.accept(root);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (org.apache.arrow.vector.ipc.message.ArrowRecordBatch batch = new VectorUnloader(root).getRecordBatch()) {
+                MessageSerializer.serialize(new WriteChannel(Channels.newChannel(output)), batch);
+            }
+            return ByteString.copyFrom(output.toByteArray());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ByteString serialize(org.apache.arrow.vector.types.pojo.Schema schema)
+    {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            MessageSerializer.serialize(new WriteChannel(Channels.newChannel(output)), schema);
+            return ByteString.copyFrom(output.toByteArray());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Object[]> readAll(BigQueryStorageRecordIterator iterator)
+    {
+        try (iterator) {
+            List<Object[]> rows = new ArrayList<>();
+            iterator.forEachRemaining(rows::add);
+            return rows;
+        }
+    }
+
+    /**
+     * Serve a read session from the given record batches, which are dealt to the streams of the session in turn.
+     */
+    private static class TestingReadStub
+            extends BigQueryReadStub
+    {
+        private final ByteString serializedSchema;
+        private final List<ByteString> batches;
+        private final List<Long> maxStreamCounts = new ArrayList<>();
+        private volatile String failingStream;
+        private volatile int streamCount;
+
+        private TestingReadStub(org.apache.arrow.vector.types.pojo.Schema arrowSchema, List<ByteString> batches)
+        {
+            this.serializedSchema = serialize(arrowSchema);
+            this.batches = batches;
+        }
+
+        @Override
+        public UnaryCallable<CreateReadSessionRequest, ReadSession> createReadSessionCallable()
+        {
+            return new UnaryCallable<>()
+            {
+                @Override
+                public ApiFuture<ReadSession> futureCall(CreateReadSessionRequest request, ApiCallContext context)
+                {
+                    maxStreamCounts.add((long) request.getMaxStreamCount());
+                    streamCount = (int) Math.min(request.getMaxStreamCount(), batches.size());
+                    ReadSession.Builder session = ReadSession.newBuilder()
+                            .setArrowSchema(ArrowSchema.newBuilder().setSerializedSchema(serializedSchema));
+                    for (int i = 0; i < streamCount; i++) {
+                        session.addStreams(ReadStream.newBuilder().setName("streams/" + i));
+                    }
+                    return ApiFutures.immediateFuture(session.build());
+                }
+            };
+        }
+
+        @Override
+        public ServerStreamingCallable<ReadRowsRequest, ReadRowsResponse> readRowsCallable()
+        {
+            return new ServerStreamingCallable<>()
+            {
+                @Override
+                public void call(ReadRowsRequest request, ResponseObserver<ReadRowsResponse> observer, ApiCallContext context)
+                {
+                    if (request.getReadStream().equals(failingStream)) {
+                        throw new AssertionError("stream failed");
+                    }
+                    observer.onStart(new StreamController()
+                    {
+                        @Override
+                        public void cancel() {}
+
+                        @Override
+                        public void disableAutoInboundFlowControl() {}
+
+                        @Override
+                        public void request(int count) {}
+                    });
+                    int stream = Integer.parseInt(request.getReadStream().substring("streams/".length()));
+                    for (int i = stream; i < batches.size(); i += streamCount) {
+                        observer.onResponse(ReadRowsResponse.newBuilder()
+                                .setArrowRecordBatch(ArrowRecordBatch.newBuilder().setSerializedRecordBatch(batches.get(i)))
+                                .build());
+                    }
+                    observer.onComplete();
+                }
+            };
+        }
+
+        @Override
+        public void close() {}
+
+        @Override
+        public void shutdown() {}
+
+        @Override
+        public boolean isShutdown()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated()
+        {
+            return false;
+        }
+
+        @Override
+        public void shutdownNow() {}
+
+        @Override
+        public boolean awaitTermination(long duration, java.util.concurrent.TimeUnit unit)
+        {
+            return true;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static io.accio.base.AccioMDL.EMPTY;
@@ -34,6 +35,7 @@ public class AccioManager
 {
     private static final Logger LOG = Logger.get(AccioManager.class);
     private final AtomicReference<AccioMDL> accioMDL = new AtomicReference<>(EMPTY);
+    private final AtomicLong accioMDLVersion = new AtomicLong();
     private final File accioMDLFile;
     private final PreAggregationManager preAggregationManager;
 
@@ -62,8 +64,10 @@ public class AccioManager
             throws JsonProcessingException
     {
         AccioMDL oldAccioMDL = accioMDL.get();
-        preAggregationManager.removePreAggregation(oldAccioMDL.getCatalog(), oldAccioMDL.getSchema());
-        accioMDL.set(AccioMDL.fromJson(json));
+        AccioMDL newAccioMDL = AccioMDL.fromJson(json);
+        preAggregationManager.removeOutdatedPreAggregation(oldAccioMDL, newAccioMDL);
+        accioMDL.set(newAccioMDL);
+        accioMDLVersion.incrementAndGet();
     }
 
     @Override
@@ -71,4 +75,10 @@ public class AccioManager
     {
         return accioMDL.get();
     }
+
+    @Override
+    public long getAccioMDLVersion()
+    {
+        return accioMDLVersion.get();
+    }
 }
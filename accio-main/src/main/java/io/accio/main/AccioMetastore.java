@@ -19,4 +19,9 @@ import io.accio.base.AccioMDL;
 public interface AccioMetastore
 {
     AccioMDL getAccioMDL();
+
+    /**
+     * @return a number increased every time the MDL is reloaded
+     */
+    long getAccioMDLVersion();
 }
@@ -17,11 +17,14 @@ package io.accio.main;
 import com.google.common.collect.ImmutableList;
 import io.accio.base.sql.SqlConverter;
 import io.accio.main.metadata.Metadata;
+import io.accio.main.pgcatalog.LocalPgCatalog;
+import io.accio.main.pgcatalog.PgCatalogManager;
 import io.accio.main.pgcatalog.regtype.RegObjectFactory;
 import io.accio.main.wireprotocol.PostgresNetty;
+import io.accio.main.wireprotocol.QueryRegistry;
+import io.accio.main.wireprotocol.WireProtocolStats;
 import io.accio.main.wireprotocol.ssl.SslContextProvider;
 import io.accio.preaggregation.PreAggregationManager;
-import io.accio.preaggregation.PreAggregationTableMapping;
 import org.elasticsearch.common.network.NetworkService;
 
 import javax.inject.Inject;
@@ -40,7 +43,10 @@ public class PostgresNettyProvider
     private final SqlConverter sqlConverter;
     private final AccioMetastore accioMetastore;
     private final PreAggregationManager preAggregationManager;
-    private final PreAggregationTableMapping preAggregationTableMapping;
+    private final LocalPgCatalog localPgCatalog;
+    private final PgCatalogManager pgCatalogManager;
+    private final WireProtocolStats stats;
+    private final QueryRegistry queryRegistry;
 
     @Inject
     public PostgresNettyProvider(
@@ -51,7 +57,10 @@ public class PostgresNettyProvider
             SqlConverter sqlConverter,
             AccioMetastore accioMetastore,
             PreAggregationManager preAggregationManager,
-            PreAggregationTableMapping preAggregationTableMapping)
+            LocalPgCatalog localPgCatalog,
+            PgCatalogManager pgCatalogManager,
+            WireProtocolStats stats,
+            QueryRegistry queryRegistry)
     {
         this.postgresWireProtocolConfig = requireNonNull(postgresWireProtocolConfig, "postgreWireProtocolConfig is null");
         this.sslContextProvider = requireNonNull(sslContextProvider, "sslContextProvider is null");
@@ -60,7 +69,10 @@ public class PostgresNettyProvider
         this.sqlConverter = requireNonNull(sqlConverter, "sqlConverter is null");
         this.accioMetastore = requireNonNull(accioMetastore, "accioMetastore is null");
         this.preAggregationManager = requireNonNull(preAggregationManager, "preAggregationManager is null");
-        this.preAggregationTableMapping = requireNonNull(preAggregationTableMapping, "preAggregationTableMapping is null");
+        this.localPgCatalog = requireNonNull(localPgCatalog, "localPgCatalog is null");
+        this.pgCatalogManager = requireNonNull(pgCatalogManager, "pgCatalogManager is null");
+        this.stats = requireNonNull(stats, "stats is null");
+        this.queryRegistry = requireNonNull(queryRegistry, "queryRegistry is null");
     }
 
     @Override
@@ -76,7 +88,10 @@ public class PostgresNettyProvider
                 sqlConverter,
                 accioMetastore,
                 preAggregationManager,
-                preAggregationTableMapping);
+                localPgCatalog,
+                pgCatalogManager,
+                stats,
+                queryRegistry);
         postgresNetty.start();
         return postgresNetty;
     }
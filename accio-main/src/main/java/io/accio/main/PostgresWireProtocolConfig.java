@@ -14,18 +14,35 @@
 package io.accio.main;
 
 import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
+import io.airlift.units.Duration;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
+import static java.util.concurrent.TimeUnit.MINUTES;
+
 public class PostgresWireProtocolConfig
 {
     public static final String PG_WIRE_PROTOCOL_PORT = "pg-wire-protocol.port";
     public static final String PG_WIRE_PROTOCOL_SSL_ENABLED = "pg-wire-protocol.ssl.enabled";
     public static final String PG_WIRE_PROTOCOL_NETTY_THREAD_COUNT = "pg-wire-protocol.netty.thread.count";
+    public static final String PG_WIRE_PROTOCOL_LOCAL_PG_CATALOG_ENABLED = "pg-wire-protocol.local-pg-catalog.enabled";
+    public static final String PG_WIRE_PROTOCOL_PG_CATALOG_INIT_CONCURRENCY = "pg-wire-protocol.pg-catalog.init-concurrency";
+    public static final String PG_WIRE_PROTOCOL_PG_CATALOG_INIT_WAIT_TIMEOUT = "pg-wire-protocol.pg-catalog.init-wait-timeout";
+    public static final String PG_WIRE_PROTOCOL_PG_CATALOG_INIT_RETRY_MAX_DELAY = "pg-wire-protocol.pg-catalog.init-retry-max-delay";
+    public static final String PG_WIRE_PROTOCOL_ADMIN_USERS = "pg-wire-protocol.admin-users";
+    public static final String PG_WIRE_PROTOCOL_QUERY_API_ENABLED = "pg-wire-protocol.query-api.enabled";
 
     private String port = "7432";
     private boolean sslEnable;
     private int nettyThreadCount;
+    private boolean localPgCatalogEnabled = true;
+    private int pgCatalogInitConcurrency = 8;
+    private Duration pgCatalogInitWaitTimeout = new Duration(1, MINUTES);
+    private Duration pgCatalogInitRetryMaxDelay = new Duration(1, MINUTES);
+    private String adminUsers = "";
+    private boolean queryApiEnabled;
 
     @NotNull
     public String getPort()
@@ -65,4 +82,85 @@ public class PostgresWireProtocolConfig
         this.nettyThreadCount = nettyThreadCount;
         return this;
     }
+
+    public boolean isLocalPgCatalogEnabled()
+    {
+        return localPgCatalogEnabled;
+    }
+
+    @Config(PG_WIRE_PROTOCOL_LOCAL_PG_CATALOG_ENABLED)
+    public PostgresWireProtocolConfig setLocalPgCatalogEnabled(boolean localPgCatalogEnabled)
+    {
+        this.localPgCatalogEnabled = localPgCatalogEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getPgCatalogInitConcurrency()
+    {
+        return pgCatalogInitConcurrency;
+    }
+
+    @Config(PG_WIRE_PROTOCOL_PG_CATALOG_INIT_CONCURRENCY)
+    @ConfigDescription("The max number of pg_catalog objects created at the same time")
+    public PostgresWireProtocolConfig setPgCatalogInitConcurrency(int pgCatalogInitConcurrency)
+    {
+        this.pgCatalogInitConcurrency = pgCatalogInitConcurrency;
+        return this;
+    }
+
+    @NotNull
+    public Duration getPgCatalogInitWaitTimeout()
+    {
+        return pgCatalogInitWaitTimeout;
+    }
+
+    @Config(PG_WIRE_PROTOCOL_PG_CATALOG_INIT_WAIT_TIMEOUT)
+    @ConfigDescription("How long the queries reading pg_catalog in the data source wait for its initialization; default is 1m")
+    public PostgresWireProtocolConfig setPgCatalogInitWaitTimeout(Duration pgCatalogInitWaitTimeout)
+    {
+        this.pgCatalogInitWaitTimeout = pgCatalogInitWaitTimeout;
+        return this;
+    }
+
+    @NotNull
+    public Duration getPgCatalogInitRetryMaxDelay()
+    {
+        return pgCatalogInitRetryMaxDelay;
+    }
+
+    @Config(PG_WIRE_PROTOCOL_PG_CATALOG_INIT_RETRY_MAX_DELAY)
+    @ConfigDescription("The maximum delay between the retries of a failed pg_catalog initialization; default is 1m")
+    public PostgresWireProtocolConfig setPgCatalogInitRetryMaxDelay(Duration pgCatalogInitRetryMaxDelay)
+    {
+        this.pgCatalogInitRetryMaxDelay = pgCatalogInitRetryMaxDelay;
+        return this;
+    }
+
+    @NotNull
+    public String getAdminUsers()
+    {
+        return adminUsers;
+    }
+
+    @Config(PG_WIRE_PROTOCOL_ADMIN_USERS)
+    @ConfigDescription("The comma-separated users who see the queries of all users in accio_system.running_queries, the others only see their own queries")
+    public PostgresWireProtocolConfig setAdminUsers(String adminUsers)
+    {
+        this.adminUsers = adminUsers;
+        return this;
+    }
+
+    public boolean isQueryApiEnabled()
+    {
+        return queryApiEnabled;
+    }
+
+    @Config(PG_WIRE_PROTOCOL_QUERY_API_ENABLED)
+    @ConfigDescription("Expose the running queries and the kill action at /v1/query, the http api has no authentication; default is false")
+    public PostgresWireProtocolConfig setQueryApiEnabled(boolean queryApiEnabled)
+    {
+        this.queryApiEnabled = queryApiEnabled;
+        return this;
+    }
 }
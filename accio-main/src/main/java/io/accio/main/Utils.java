@@ -50,4 +50,14 @@ public class Utils
             LOG.error(ex);
         }
     }
+
+    public static void closeQuietly(AutoCloseable closeable)
+    {
+        try {
+            closeable.close();
+        }
+        catch (Exception ex) {
+            LOG.error(ex, "Failed to close %s", closeable);
+        }
+    }
 }
@@ -17,9 +17,16 @@ import io.airlift.configuration.Config;
 import io.airlift.configuration.ConfigDescription;
 import io.airlift.configuration.ConfigSecuritySensitive;
 import io.airlift.configuration.validation.FileExists;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
 
 import java.util.Optional;
 
+import static java.util.concurrent.TimeUnit.MINUTES;
+
 public class BigQueryConfig
 {
     private Optional<String> credentialsKey = Optional.empty();
@@ -31,6 +38,23 @@ public class BigQueryConfig
 
     private Optional<String> bucketName = Optional.empty();
 
+    private long dryRunCacheMaxSize = 10_000;
+    private Duration dryRunCacheTtl = new Duration(10, MINUTES);
+
+    private int queryThreads = 16;
+
+    private Duration metadataCacheTtl = new Duration(5, MINUTES);
+    private int metadataListingConcurrency = 8;
+
+    private int resultPrefetchPages = 2;
+    private DataSize resultPrefetchMaxSize = DataSize.of(64, DataSize.Unit.MEGABYTE);
+
+    private boolean storageReadEnabled;
+    private long storageReadMinRows = 10_000;
+    private int storageReadMaxStreams = 8;
+    private int storageReadBufferedBatchesPerStream = 4;
+    private Optional<String> storageReadEndpoint = Optional.empty();
+
     public Optional<String> getCredentialsKey()
     {
         return credentialsKey;
@@ -109,4 +133,170 @@ public class BigQueryConfig
         this.bucketName = Optional.of(bucketName);
         return this;
     }
+
+    @Min(0)
+    public long getDryRunCacheMaxSize()
+    {
+        return dryRunCacheMaxSize;
+    }
+
+    @Config("bigquery.dry-run-cache.max-size")
+    @ConfigDescription("The maximum number of query schemas cached from the dry-runs, 0 to disable the cache")
+    public BigQueryConfig setDryRunCacheMaxSize(long dryRunCacheMaxSize)
+    {
+        this.dryRunCacheMaxSize = dryRunCacheMaxSize;
+        return this;
+    }
+
+    @NotNull
+    public Duration getDryRunCacheTtl()
+    {
+        return dryRunCacheTtl;
+    }
+
+    @Config("bigquery.dry-run-cache.ttl")
+    @ConfigDescription("How long a query schema from a dry-run is cached")
+    public BigQueryConfig setDryRunCacheTtl(Duration dryRunCacheTtl)
+    {
+        this.dryRunCacheTtl = dryRunCacheTtl;
+        return this;
+    }
+
+    @Min(1)
+    public int getQueryThreads()
+    {
+        return queryThreads;
+    }
+
+    @Config("bigquery.query-threads")
+    @ConfigDescription("The number of threads to create and poll the query jobs, a poll holds a thread for at most 500ms while the job runs")
+    public BigQueryConfig setQueryThreads(int queryThreads)
+    {
+        this.queryThreads = queryThreads;
+        return this;
+    }
+
+    @NotNull
+    public Duration getMetadataCacheTtl()
+    {
+        return metadataCacheTtl;
+    }
+
+    @Config("bigquery.metadata.cache-ttl")
+    @ConfigDescription("How long the listed datasets and tables are cached, 0s to disable the cache")
+    public BigQueryConfig setMetadataCacheTtl(Duration metadataCacheTtl)
+    {
+        this.metadataCacheTtl = metadataCacheTtl;
+        return this;
+    }
+
+    @Min(1)
+    public int getMetadataListingConcurrency()
+    {
+        return metadataListingConcurrency;
+    }
+
+    @Config("bigquery.metadata.listing-concurrency")
+    @ConfigDescription("The maximum number of concurrent requests to fetch the metadata of the tables")
+    public BigQueryConfig setMetadataListingConcurrency(int metadataListingConcurrency)
+    {
+        this.metadataListingConcurrency = metadataListingConcurrency;
+        return this;
+    }
+
+    @Min(0)
+    public int getResultPrefetchPages()
+    {
+        return resultPrefetchPages;
+    }
+
+    @Config("bigquery.result.prefetch-pages")
+    @ConfigDescription("The number of result pages fetched ahead of the client, 0 to fetch the next page only when the current one is consumed")
+    public BigQueryConfig setResultPrefetchPages(int resultPrefetchPages)
+    {
+        this.resultPrefetchPages = resultPrefetchPages;
+        return this;
+    }
+
+    @NotNull
+    public DataSize getResultPrefetchMaxSize()
+    {
+        return resultPrefetchMaxSize;
+    }
+
+    @Config("bigquery.result.prefetch-max-size")
+    @ConfigDescription("The maximum estimated size of the result pages fetched ahead of the client")
+    public BigQueryConfig setResultPrefetchMaxSize(DataSize resultPrefetchMaxSize)
+    {
+        this.resultPrefetchMaxSize = resultPrefetchMaxSize;
+        return this;
+    }
+
+    public boolean isStorageReadEnabled()
+    {
+        return storageReadEnabled;
+    }
+
+    @Config("bigquery.storage-read.enabled")
+    @ConfigDescription("Read large query results through the BigQuery Storage Read API")
+    public BigQueryConfig setStorageReadEnabled(boolean storageReadEnabled)
+    {
+        this.storageReadEnabled = storageReadEnabled;
+        return this;
+    }
+
+    @Min(0)
+    public long getStorageReadMinRows()
+    {
+        return storageReadMinRows;
+    }
+
+    @Config("bigquery.storage-read.min-rows")
+    @ConfigDescription("The minimum number of rows of a query result to read it through the Storage Read API")
+    public BigQueryConfig setStorageReadMinRows(long storageReadMinRows)
+    {
+        this.storageReadMinRows = storageReadMinRows;
+        return this;
+    }
+
+    @Min(1)
+    public int getStorageReadMaxStreams()
+    {
+        return storageReadMaxStreams;
+    }
+
+    @Config("bigquery.storage-read.max-streams")
+    @ConfigDescription("The maximum number of streams read in parallel for a query result")
+    public BigQueryConfig setStorageReadMaxStreams(int storageReadMaxStreams)
+    {
+        this.storageReadMaxStreams = storageReadMaxStreams;
+        return this;
+    }
+
+    @Min(1)
+    public int getStorageReadBufferedBatchesPerStream()
+    {
+        return storageReadBufferedBatchesPerStream;
+    }
+
+    @Config("bigquery.storage-read.buffered-batches-per-stream")
+    @ConfigDescription("The number of decoded record batches buffered for each stream before the stream waits for the client")
+    public BigQueryConfig setStorageReadBufferedBatchesPerStream(int storageReadBufferedBatchesPerStream)
+    {
+        this.storageReadBufferedBatchesPerStream = storageReadBufferedBatchesPerStream;
+        return this;
+    }
+
+    public Optional<String> getStorageReadEndpoint()
+    {
+        return storageReadEndpoint;
+    }
+
+    @Config("bigquery.storage-read.endpoint")
+    @ConfigDescription("The host:port of the Storage Read API, the default endpoint is used if not set")
+    public BigQueryConfig setStorageReadEndpoint(String storageReadEndpoint)
+    {
+        this.storageReadEndpoint = Optional.ofNullable(storageReadEndpoint);
+        return this;
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.connector.bigquery;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.accio.base.Column;
+import io.accio.base.Parameter;
+import io.airlift.units.Duration;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Cache the result schema of the dry-run queries across sessions. The key is the exact BigQuery SQL, the
+ * types of the parameters and the version of the MDL, so a reloaded MDL never gets the schema of the
+ * previous one. Concurrent misses of the same key wait for a single dry-run instead of issuing their own.
+ * Failures are not cached.
+ */
+class BigQueryDryRunCache
+{
+    private final Cache<CacheKey, List<Column>> cache;
+
+    BigQueryDryRunCache(long maxSize, Duration ttl)
+    {
+        requireNonNull(ttl, "ttl is null");
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl.toMillis(), MILLISECONDS)
+                .build();
+    }
+
+    List<Column> get(String sql, List<Parameter> parameters, long mdlVersion, Supplier<List<Column>> dryRun)
+    {
+        CacheKey key = new CacheKey(sql, parameters, mdlVersion);
+        try {
+            return cache.get(key, dryRun::get);
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            // rethrow the failure of the dry-run as is
+            throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    void invalidateAll()
+    {
+        cache.invalidateAll();
+    }
+
+    private static class CacheKey
+    {
+        private final String sql;
+        private final List<Integer> parameterTypeOids;
+        private final long mdlVersion;
+
+        private CacheKey(String sql, List<Parameter> parameters, long mdlVersion)
+        {
+            this.sql = requireNonNull(sql, "sql is null");
+            this.parameterTypeOids = parameters.stream()
+                    .map(parameter -> parameter.getType().oid())
+                    .collect(toImmutableList());
+            this.mdlVersion = mdlVersion;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return mdlVersion == that.mdlVersion
+                    && sql.equals(that.sql)
+                    && parameterTypeOids.equals(that.parameterTypeOids);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(sql, parameterTypeOids, mdlVersion);
+        }
+    }
+}
@@ -17,13 +17,19 @@ package io.accio.main.connector.bigquery;
 import com.google.cloud.bigquery.BigQueryException;
 import com.google.cloud.bigquery.Dataset;
 import com.google.cloud.bigquery.DatasetInfo;
+import com.google.cloud.bigquery.Job;
 import com.google.cloud.bigquery.JobStatistics;
+import com.google.cloud.bigquery.QueryJobConfiguration;
 import com.google.cloud.bigquery.Routine;
 import com.google.cloud.bigquery.Table;
+import com.google.cloud.bigquery.TableId;
 import com.google.cloud.bigquery.TableResult;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.accio.base.AccioException;
 import io.accio.base.Column;
 import io.accio.base.ConnectorRecordIterator;
@@ -31,33 +37,71 @@ import io.accio.base.Parameter;
 import io.accio.base.metadata.SchemaTableName;
 import io.accio.base.metadata.TableMetadata;
 import io.accio.connector.bigquery.BigQueryClient;
+import io.accio.connector.bigquery.BigQueryStorageReader;
 import io.accio.connector.bigquery.BigQueryType;
+import io.accio.main.AccioMetastore;
 import io.accio.main.metadata.Metadata;
 import io.accio.main.pgcatalog.function.PgFunctionRegistry;
 import io.airlift.log.Logger;
+import io.airlift.units.DataSize;
 import io.trino.sql.tree.QualifiedName;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import static com.google.common.base.Throwables.throwIfUnchecked;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static io.accio.base.metadata.StandardErrorCode.GENERIC_USER_ERROR;
 import static io.accio.base.metadata.StandardErrorCode.NOT_FOUND;
+import static io.accio.main.Utils.closeQuietly;
 import static io.accio.main.pgcatalog.PgCatalogUtils.PG_CATALOG_NAME;
 import static io.accio.main.pgcatalog.function.PgFunction.PG_FUNCTION_PATTERN;
+import static io.airlift.concurrent.MoreFutures.getFutureValue;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
 import static java.lang.String.format;
 import static java.util.Locale.ENGLISH;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 public class BigQueryMetadata
         implements Metadata
 {
     private static final Logger LOG = Logger.get(BigQueryMetadata.class);
+    // the rows of an ordered result are read in a single stream to keep the order
+    private static final Pattern ORDER_BY_PATTERN = Pattern.compile("\\border\\s+by\\b", Pattern.CASE_INSENSITIVE);
     private final BigQueryClient bigQueryClient;
+    private final Optional<BigQueryStorageReader> storageReader;
+    private final long storageReadMinRows;
+    private final int resultPrefetchPages;
+    private final DataSize resultPrefetchMaxSize;
+    private final LongSupplier mdlVersion;
+    private final Optional<BigQueryDryRunCache> dryRunCache;
+    private final ExecutorService prefetchExecutor = newCachedThreadPool(daemonThreadsNamed("bigquery-result-prefetch-%s"));
+    // creates and polls the query jobs of the async execution
+    private final ExecutorService queryExecutor;
+    // runs the blocking dry runs and first page fetches, so they never hold up the polling of the jobs
+    private final ExecutorService requestExecutor = newCachedThreadPool(daemonThreadsNamed("bigquery-request-%s"));
+    // bounds the concurrent requests to fetch the metadata of the tables
+    private final ExecutorService metadataExecutor;
+    private final Cache<String, List<String>> schemasCache;
+    private final Cache<String, List<TableMetadata>> tablesCache;
+    private final Cache<String, List<String>> functionNamesCache;
 
     private final PgFunctionRegistry pgFunctionRegistry = new PgFunctionRegistry();
 
@@ -65,11 +109,45 @@ public class BigQueryMetadata
 
     private final String location;
 
-    @Inject
     public BigQueryMetadata(BigQueryClient bigQueryClient, BigQueryConfig bigQueryConfig)
+    {
+        this(bigQueryClient, bigQueryConfig, Optional.empty(), () -> 0L);
+    }
+
+    @Inject
+    public BigQueryMetadata(
+            BigQueryClient bigQueryClient,
+            BigQueryConfig bigQueryConfig,
+            Optional<BigQueryStorageReader> storageReader,
+            // the metastore depends on the metadata through the pre-aggregation, so it's resolved lazily
+            Provider<AccioMetastore> accioMetastore)
+    {
+        this(bigQueryClient, bigQueryConfig, storageReader, () -> accioMetastore.get().getAccioMDLVersion());
+    }
+
+    private BigQueryMetadata(BigQueryClient bigQueryClient, BigQueryConfig bigQueryConfig, Optional<BigQueryStorageReader> storageReader, LongSupplier mdlVersion)
     {
         this.bigQueryClient = requireNonNull(bigQueryClient, "bigQueryClient is null");
         requireNonNull(bigQueryConfig, "bigQueryConfig is null");
+        this.storageReader = requireNonNull(storageReader, "storageReader is null");
+        this.mdlVersion = requireNonNull(mdlVersion, "mdlVersion is null");
+        this.dryRunCache = bigQueryConfig.getDryRunCacheMaxSize() > 0
+                ? Optional.of(new BigQueryDryRunCache(bigQueryConfig.getDryRunCacheMaxSize(), bigQueryConfig.getDryRunCacheTtl()))
+                : Optional.empty();
+        this.storageReadMinRows = bigQueryConfig.getStorageReadMinRows();
+        this.resultPrefetchPages = bigQueryConfig.getResultPrefetchPages();
+        this.resultPrefetchMaxSize = bigQueryConfig.getResultPrefetchMaxSize();
+        this.queryExecutor = newFixedThreadPool(bigQueryConfig.getQueryThreads(), daemonThreadsNamed("bigquery-query-%s"));
+        this.metadataExecutor = newFixedThreadPool(bigQueryConfig.getMetadataListingConcurrency(), daemonThreadsNamed("bigquery-metadata-%s"));
+        this.schemasCache = CacheBuilder.newBuilder()
+                .expireAfterWrite(bigQueryConfig.getMetadataCacheTtl().toMillis(), MILLISECONDS)
+                .build();
+        this.tablesCache = CacheBuilder.newBuilder()
+                .expireAfterWrite(bigQueryConfig.getMetadataCacheTtl().toMillis(), MILLISECONDS)
+                .build();
+        this.functionNamesCache = CacheBuilder.newBuilder()
+                .expireAfterWrite(bigQueryConfig.getMetadataCacheTtl().toMillis(), MILLISECONDS)
+                .build();
         this.pgToBqFunctionNameMappings = initPgNameToBqFunctions();
         this.location = bigQueryConfig.getLocation()
                 .orElseThrow(() -> new AccioException(GENERIC_USER_ERROR, "Location must be set"));
@@ -90,6 +168,7 @@ public class BigQueryMetadata
     public void createSchema(String name)
     {
         bigQueryClient.createSchema(DatasetInfo.newBuilder(name).setLocation(location).build());
+        schemasCache.invalidateAll();
     }
 
     @Override
@@ -101,38 +180,66 @@ public class BigQueryMetadata
     @Override
     public List<String> listSchemas()
     {
-        // TODO: https://github.com/Canner/canner-metric-layer/issues/47
-        //  Getting full dataset information is a heavy cost. It's better to find another way to list dataset by region.
-        return Streams.stream(bigQueryClient.listDatasets(bigQueryClient.getProjectId()))
-                .map(bigQueryClient::getDataSet)
+        String projectId = bigQueryClient.getProjectId();
+        return getCached(schemasCache, projectId, () -> Streams.stream(bigQueryClient.listDatasets(projectId))
+                // the location is returned by the dataset listing, only get the full dataset if it's missing
+                .map(dataset -> dataset.getLocation() == null ? bigQueryClient.getDataSet(dataset) : dataset)
                 .filter(dataset -> location.equalsIgnoreCase(dataset.getLocation()))
                 .map(dataset -> dataset.getDatasetId().getDataset())
-                .collect(toImmutableList());
+                .collect(toImmutableList()));
     }
 
     @Override
     public List<TableMetadata> listTables(String schemaName)
     {
-        Optional<Dataset> dataset = getDataset(schemaName);
-        if (dataset.isEmpty()) {
-            throw new AccioException(NOT_FOUND, format("Dataset %s is not found", schemaName));
+        return getCached(tablesCache, schemaName, () -> {
+            Optional<Dataset> dataset = getDataset(schemaName);
+            if (dataset.isEmpty()) {
+                throw new AccioException(NOT_FOUND, format("Dataset %s is not found", schemaName));
+            }
+            // the listing doesn't contain the schema of the tables, get the tables in parallel instead of one by one
+            List<Future<TableMetadata>> tables = Streams.stream(bigQueryClient.listTables(dataset.get().getDatasetId()))
+                    .map(table -> metadataExecutor.submit(() -> getTableMetadata(table.getTableId())))
+                    .collect(toImmutableList());
+            try {
+                return tables.stream()
+                        .map(table -> getFutureValue(table))
+                        .collect(toImmutableList());
+            }
+            finally {
+                tables.forEach(table -> table.cancel(true));
+            }
+        });
+    }
+
+    private TableMetadata getTableMetadata(TableId tableId)
+    {
+        TableMetadata.Builder builder = TableMetadata.builder(new SchemaTableName(tableId.getDataset(), tableId.getTable()));
+        Table fullTable = bigQueryClient.getTable(tableId);
+        // TODO: type mapping
+        fullTable.getDefinition().getSchema().getFields()
+                .forEach(field -> builder.column(field.getName(), BigQueryType.toPGType(field)));
+        return builder.build();
+    }
+
+    private static <T> List<T> getCached(Cache<String, List<T>> cache, String key, Callable<List<T>> loader)
+    {
+        try {
+            return cache.get(key, loader);
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
         }
-        Iterable<Table> result = bigQueryClient.listTables(dataset.get().getDatasetId());
-        return Streams.stream(result)
-                .map(table -> {
-                    TableMetadata.Builder builder = TableMetadata.builder(
-                            new SchemaTableName(table.getTableId().getDataset(), table.getTableId().getTable()));
-                    Table fullTable = bigQueryClient.getTable(table.getTableId());
-                    // TODO: type mapping
-                    fullTable.getDefinition().getSchema().getFields()
-                            .forEach(field -> builder.column(field.getName(), BigQueryType.toPGType(field)));
-                    return builder.build();
-                })
-                .collect(toImmutableList());
     }
 
     @Override
     public List<String> listFunctionNames(String schemaName)
+    {
+        return getCached(functionNamesCache, schemaName, () -> listRoutineNames(schemaName));
+    }
+
+    private List<String> listRoutineNames(String schemaName)
     {
         Optional<Dataset> dataset = getDataset(schemaName);
         if (dataset.isEmpty()) {
@@ -178,6 +285,8 @@ public class BigQueryMetadata
             LOG.error(ex, "Failed SQL: %s", sql);
             throw ex;
         }
+        // the ddl may change the schema of the tables the cached queries read
+        invalidateCache();
     }
 
     private Optional<Dataset> getDataset(String name)
@@ -190,8 +299,11 @@ public class BigQueryMetadata
     {
         requireNonNull(sql, "sql can't be null.");
         try {
+            if (storageReader.isPresent()) {
+                return toRecordIterator(bigQueryClient.queryJob(sql, parameters), sql);
+            }
             TableResult results = bigQueryClient.query(sql, parameters);
-            return BigQueryRecordIterator.of(results);
+            return toRecordIterator(results);
         }
         catch (BigQueryException ex) {
             LOG.error(ex);
@@ -200,8 +312,77 @@ public class BigQueryMetadata
         }
     }
 
+    @Override
+    public CompletableFuture<ConnectorRecordIterator> directQueryAsync(String sql, List<Parameter> parameters)
+    {
+        return directQueryAsync(sql, parameters, jobId -> {});
+    }
+
+    @Override
+    public CompletableFuture<ConnectorRecordIterator> directQueryAsync(String sql, List<Parameter> parameters, Consumer<String> backendJobIdListener)
+    {
+        requireNonNull(sql, "sql can't be null.");
+        CompletableFuture<Job> job = bigQueryClient.queryJobAsync(sql, parameters, queryExecutor, jobId -> backendJobIdListener.accept(jobId.getJob()));
+        CompletableFuture<ConnectorRecordIterator> result = new CompletableFuture<>();
+        // fetching the first page of the result blocks, it's not done on the threads polling the jobs
+        job.whenCompleteAsync((done, e) -> {
+            if (e != null) {
+                LOG.error(e, "Failed SQL: %s", sql);
+                result.completeExceptionally(e);
+                return;
+            }
+            try {
+                ConnectorRecordIterator iterator = toRecordIterator(done, sql);
+                if (!result.complete(iterator)) {
+                    // cancelled while the result was read, nobody reads it
+                    closeQuietly(iterator);
+                }
+            }
+            catch (RuntimeException ex) {
+                LOG.error(ex, "Failed SQL: %s", sql);
+                result.completeExceptionally(ex);
+            }
+        }, requestExecutor);
+        // the job is cancelled at BigQuery if it's still running
+        result.whenComplete((iterator, e) -> job.cancel(true));
+        return result;
+    }
+
+    private ConnectorRecordIterator toRecordIterator(TableResult results)
+    {
+        if (resultPrefetchPages == 0) {
+            return BigQueryRecordIterator.of(results);
+        }
+        return BigQueryRecordIterator.of(results, prefetchExecutor, resultPrefetchPages, resultPrefetchMaxSize);
+    }
+
+    private ConnectorRecordIterator toRecordIterator(Job job, String sql)
+    {
+        TableResult results = job.getQueryResults();
+        // small results are cheaper to page through the rest api than to open a read session for
+        if (storageReader.isEmpty() || results.getTotalRows() < storageReadMinRows || !BigQueryStorageReader.isSupported(results.getSchema())) {
+            return toRecordIterator(results);
+        }
+        QueryJobConfiguration configuration = job.getConfiguration();
+        return storageReader.get().read(configuration.getDestinationTable(), results.getSchema(), ORDER_BY_PATTERN.matcher(sql).find());
+    }
+
     @Override
     public List<Column> describeQuery(String sql, List<Parameter> parameters)
+    {
+        if (dryRunCache.isPresent()) {
+            return dryRunCache.get().get(sql, parameters, mdlVersion.getAsLong(), () -> dryRun(sql, parameters));
+        }
+        return dryRun(sql, parameters);
+    }
+
+    @Override
+    public CompletableFuture<List<Column>> describeQueryAsync(String sql, List<Parameter> parameters)
+    {
+        return CompletableFuture.supplyAsync(() -> describeQuery(sql, parameters), requestExecutor);
+    }
+
+    private List<Column> dryRun(String sql, List<Parameter> parameters)
     {
         JobStatistics.QueryStatistics queryStatistics = bigQueryClient.queryDryRun(Optional.empty(), sql, parameters);
         return queryStatistics.getSchema().getFields().stream()
@@ -220,4 +401,22 @@ public class BigQueryMetadata
     {
         return false;
     }
+
+    @Override
+    public void invalidateCache()
+    {
+        dryRunCache.ifPresent(BigQueryDryRunCache::invalidateAll);
+        schemasCache.invalidateAll();
+        tablesCache.invalidateAll();
+        functionNamesCache.invalidateAll();
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        queryExecutor.shutdownNow();
+        requestExecutor.shutdownNow();
+        prefetchExecutor.shutdownNow();
+        metadataExecutor.shutdownNow();
+    }
 }
@@ -0,0 +1,253 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.connector.bigquery;
+
+import com.google.cloud.bigquery.FieldValue;
+import com.google.cloud.bigquery.FieldValueList;
+import com.google.cloud.bigquery.TableResult;
+import com.google.common.collect.ImmutableList;
+import io.airlift.units.DataSize;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Iterate the rows of a query result while the next pages are fetched in the background, so the network
+ * round trip of page N+1 overlaps with the encoding of page N. {@link TableResult#iterateAll()} only fetches
+ * the next page after the current one is consumed.
+ * <p>
+ * At most {@code maxPrefetchPages} pages are buffered, and a page is only buffered beyond the first one if
+ * the estimated size of the buffered pages stays under {@code maxPrefetchSize}. The fetcher holds at most one
+ * more page while it waits for room.
+ */
+class BigQueryPagePrefetcher
+        implements Iterator<FieldValueList>, AutoCloseable
+{
+    // rough per-value overhead of FieldValue and the boxed string
+    private static final long FIELD_VALUE_OVERHEAD = 64;
+
+    private final int maxPrefetchPages;
+    private final long maxPrefetchBytes;
+    private final Future<?> fetchTask;
+
+    private final Deque<Page> pages = new ArrayDeque<>();
+    private long bufferedBytes;
+    private boolean finished;
+    private Throwable failure;
+    private boolean closed;
+
+    private Iterator<FieldValueList> currentPage;
+
+    BigQueryPagePrefetcher(TableResult firstPage, ExecutorService executor, int maxPrefetchPages, DataSize maxPrefetchSize)
+    {
+        requireNonNull(firstPage, "firstPage is null");
+        requireNonNull(executor, "executor is null");
+        checkArgument(maxPrefetchPages > 0, "maxPrefetchPages must be positive");
+        this.maxPrefetchPages = maxPrefetchPages;
+        this.maxPrefetchBytes = requireNonNull(maxPrefetchSize, "maxPrefetchSize is null").toBytes();
+        // the first page is already fetched with the query, start on it while the second page is fetched
+        this.currentPage = firstPage.getValues().iterator();
+        this.fetchTask = firstPage.hasNextPage() ? executor.submit(() -> fetchPages(firstPage)) : null;
+        if (fetchTask == null) {
+            synchronized (this) {
+                finished = true;
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (!currentPage.hasNext()) {
+            Page page = takePage();
+            if (page == null) {
+                return false;
+            }
+            currentPage = page.rows.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public FieldValueList next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    @Override
+    public void close()
+    {
+        synchronized (this) {
+            closed = true;
+            pages.clear();
+            bufferedBytes = 0;
+            notifyAll();
+        }
+        currentPage = Collections.emptyIterator();
+        if (fetchTask != null) {
+            fetchTask.cancel(true);
+        }
+    }
+
+    private synchronized Page takePage()
+    {
+        try {
+            while (pages.isEmpty() && !finished && failure == null && !closed) {
+                wait();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while fetching the BigQuery result", e);
+        }
+        if (closed) {
+            // the fetcher fails with the interruption of close, don't surface it
+            return null;
+        }
+        Page page = pages.poll();
+        if (page != null) {
+            bufferedBytes -= page.sizeInBytes;
+            // wake up the fetcher waiting for room
+            notifyAll();
+            return page;
+        }
+        if (failure != null) {
+            throw new RuntimeException("Failed to fetch the BigQuery result", failure);
+        }
+        return null;
+    }
+
+    private void fetchPages(TableResult firstPage)
+    {
+        TableResult page = firstPage;
+        try {
+            while (page.hasNextPage() && !isClosed()) {
+                page = page.getNextPage();
+                List<FieldValueList> rows = ImmutableList.copyOf(page.getValues());
+                if (!offer(new Page(rows, estimateSize(rows)))) {
+                    return;
+                }
+            }
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        }
+        catch (Throwable e) {
+            // anything escaping here must reach the consumer, otherwise takePage waits forever
+            fail(e);
+        }
+    }
+
+    private synchronized void fail(Throwable e)
+    {
+        failure = e;
+        notifyAll();
+    }
+
+    private synchronized boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * @return false if the prefetcher is closed while waiting for room
+     */
+    private synchronized boolean offer(Page page)
+            throws InterruptedException
+    {
+        while (!closed && !hasRoomFor(page)) {
+            wait();
+        }
+        if (closed) {
+            return false;
+        }
+        pages.add(page);
+        bufferedBytes += page.sizeInBytes;
+        notifyAll();
+        return true;
+    }
+
+    private boolean hasRoomFor(Page page)
+    {
+        if (pages.isEmpty()) {
+            // always hand over one page, even if it's larger than the limit
+            return true;
+        }
+        return pages.size() < maxPrefetchPages && bufferedBytes + page.sizeInBytes <= maxPrefetchBytes;
+    }
+
+    private static long estimateSize(List<FieldValueList> rows)
+    {
+        long size = 0;
+        for (FieldValueList row : rows) {
+            for (FieldValue value : row) {
+                size += estimateSize(value);
+            }
+        }
+        return size;
+    }
+
+    private static long estimateSize(FieldValue value)
+    {
+        switch (value.getAttribute()) {
+            case PRIMITIVE:
+                Object primitive = value.getValue();
+                return FIELD_VALUE_OVERHEAD + (primitive instanceof String ? 2L * ((String) primitive).length() : 0);
+            case REPEATED:
+                long repeatedSize = FIELD_VALUE_OVERHEAD;
+                for (FieldValue innerValue : value.getRepeatedValue()) {
+                    repeatedSize += estimateSize(innerValue);
+                }
+                return repeatedSize;
+            case RECORD:
+                long recordSize = FIELD_VALUE_OVERHEAD;
+                for (FieldValue innerValue : value.getRecordValue()) {
+                    recordSize += estimateSize(innerValue);
+                }
+                return recordSize;
+            default:
+                return FIELD_VALUE_OVERHEAD;
+        }
+    }
+
+    private static class Page
+    {
+        private final List<FieldValueList> rows;
+        private final long sizeInBytes;
+
+        private Page(List<FieldValueList> rows, long sizeInBytes)
+        {
+            this.rows = rows;
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+}
@@ -17,11 +17,14 @@ package io.accio.main.connector.bigquery;
 import com.google.cloud.bigquery.Field;
 import com.google.cloud.bigquery.FieldValue;
 import com.google.cloud.bigquery.FieldValueList;
+import com.google.cloud.bigquery.Schema;
 import com.google.cloud.bigquery.StandardSQLTypeName;
 import com.google.cloud.bigquery.TableResult;
+import com.google.common.collect.ImmutableList;
 import io.accio.base.ConnectorRecordIterator;
 import io.accio.base.type.PGType;
 import io.accio.connector.bigquery.BigQueryType;
+import io.airlift.units.DataSize;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.Period;
 
@@ -31,6 +34,7 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,30 +48,52 @@ import static java.util.Objects.requireNonNull;
 public class BigQueryRecordIterator
         implements ConnectorRecordIterator
 {
+    // BigQuery interval format: [sign]Y-M [sign]D [sign]H:M:S[.F], and F up to six digits
+    private static final Pattern INTERVAL_PATTERN = Pattern.compile("(?<NEG>-?)(?<Y>[0-9]+)-(?<M>[0-9]+) (?<D>-?[0-9]+) (?<NEGTIME>-?)(?<H>[0-9]+):(?<MIN>[0-9]+):(?<S>[0-9]+).?(?<F>[0-9]{1,6})?");
+
     private final List<PGType> types;
-    private final List<Field> bqFields;
+    private final FieldConverter[] converters;
 
     private final Iterator<FieldValueList> resultIterator;
+    private final AutoCloseable onClose;
 
     public static BigQueryRecordIterator of(TableResult tableResult)
     {
-        return new BigQueryRecordIterator(tableResult);
+        requireNonNull(tableResult, "tableResult is null");
+        return new BigQueryRecordIterator(tableResult.getSchema(), tableResult.iterateAll().iterator(), () -> {});
     }
 
-    private BigQueryRecordIterator(TableResult tableResult)
+    /**
+     * Fetch the next pages of the result in the background while the current page is consumed.
+     */
+    public static BigQueryRecordIterator of(TableResult tableResult, ExecutorService executor, int maxPrefetchPages, DataSize maxPrefetchSize)
     {
         requireNonNull(tableResult, "tableResult is null");
-        this.resultIterator = tableResult.iterateAll().iterator();
+        BigQueryPagePrefetcher prefetcher = new BigQueryPagePrefetcher(tableResult, executor, maxPrefetchPages, maxPrefetchSize);
+        return new BigQueryRecordIterator(tableResult.getSchema(), prefetcher, prefetcher);
+    }
+
+    private BigQueryRecordIterator(Schema schema, Iterator<FieldValueList> resultIterator, AutoCloseable onClose)
+    {
+        this.resultIterator = requireNonNull(resultIterator, "resultIterator is null");
+        this.onClose = requireNonNull(onClose, "onClose is null");
 
-        this.types = tableResult.getSchema().getFields().stream()
+        this.types = schema.getFields().stream()
                 .map(BigQueryType::toPGType)
                 .collect(toImmutableList());
 
-        this.bqFields = tableResult.getSchema().getFields();
+        // the values of a row are in the order of the schema fields, so they're read by index instead of by name
+        this.converters = schema.getFields().stream()
+                .map(BigQueryRecordIterator::createConverter)
+                .toArray(FieldConverter[]::new);
     }
 
     @Override
-    public void close() {}
+    public void close()
+            throws Exception
+    {
+        onClose.close();
+    }
 
     @Override
     public boolean hasNext()
@@ -79,61 +105,75 @@ public class BigQueryRecordIterator
     public Object[] next()
     {
         FieldValueList fieldValues = resultIterator.next();
-        return bqFields.stream()
-                .map(field -> getFieldValue(field, fieldValues.get(field.getName())))
-                .toArray();
+        Object[] record = new Object[converters.length];
+        for (int i = 0; i < converters.length; i++) {
+            record[i] = converters[i].convert(fieldValues.get(i));
+        }
+        return record;
     }
 
-    private static Object getFieldValue(Field field, FieldValue fieldValue)
+    private static FieldConverter createConverter(Field field)
     {
-        if (fieldValue.isNull()) {
-            return null;
-        }
-
+        FieldConverter valueConverter = createValueConverter(field);
         if (Field.Mode.REPEATED.equals(field.getMode())) {
-            return fieldValue.getRepeatedValue().stream()
-                    .map(innerField -> getFieldValueByType(field, innerField))
-                    .collect(toImmutableList());
+            return fieldValue -> {
+                if (fieldValue.isNull()) {
+                    return null;
+                }
+                ImmutableList.Builder<Object> builder = ImmutableList.builder();
+                for (FieldValue innerValue : fieldValue.getRepeatedValue()) {
+                    builder.add(valueConverter.convert(innerValue));
+                }
+                return builder.build();
+            };
         }
-        return getFieldValueByType(field, fieldValue);
+        return fieldValue -> fieldValue.isNull() ? null : valueConverter.convert(fieldValue);
     }
 
-    private static Object getFieldValueByType(Field field, FieldValue fieldValue)
+    private static FieldConverter createValueConverter(Field field)
     {
         StandardSQLTypeName typeName = field.getType().getStandardType();
         switch (typeName) {
             case BOOL:
-                return fieldValue.getBooleanValue();
+                return FieldValue::getBooleanValue;
             case INT64:
-                return fieldValue.getLongValue();
+                return FieldValue::getLongValue;
             case FLOAT64:
-                return fieldValue.getDoubleValue();
+                return FieldValue::getDoubleValue;
             case STRING:
             case JSON:
-                return fieldValue.getStringValue();
+                return FieldValue::getStringValue;
             case BYTES:
-                return fieldValue.getBytesValue();
+                return FieldValue::getBytesValue;
             case DATE:
-                return LocalDate.parse((String) fieldValue.getValue());
+                return fieldValue -> LocalDate.parse((String) fieldValue.getValue());
             case DATETIME:
-                return convertToMicroseconds(LocalDateTime.parse(fieldValue.getStringValue()));
+                return fieldValue -> convertToMicroseconds(LocalDateTime.parse(fieldValue.getStringValue()));
             case TIMESTAMP:
-                return fieldValue.getTimestampValue();
+                return FieldValue::getTimestampValue;
             case NUMERIC:
             case BIGNUMERIC:
-                return fieldValue.getNumericValue();
+                return FieldValue::getNumericValue;
             case INTERVAL:
-                return convertBigQueryIntervalToPeriod(fieldValue.getStringValue());
+                return fieldValue -> convertBigQueryIntervalToPeriod(fieldValue.getStringValue());
             case STRUCT:
                 List<Field> subFields = field.getSubFields();
-                List<FieldValue> subFieldValues = fieldValue.getRecordValue();
-                Map<String, Object> result = new LinkedHashMap<>();
-                for (int i = 0; i < subFields.size(); i++) {
-                    result.put(subFields.get(i).getName(), getFieldValue(subFields.get(i), subFieldValues.get(i)));
-                }
-                return unmodifiableMap(result);
+                String[] subFieldNames = subFields.stream().map(Field::getName).toArray(String[]::new);
+                FieldConverter[] subConverters = subFields.stream()
+                        .map(BigQueryRecordIterator::createConverter)
+                        .toArray(FieldConverter[]::new);
+                return fieldValue -> {
+                    List<FieldValue> subFieldValues = fieldValue.getRecordValue();
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    for (int i = 0; i < subConverters.length; i++) {
+                        result.put(subFieldNames[i], subConverters[i].convert(subFieldValues.get(i)));
+                    }
+                    return unmodifiableMap(result);
+                };
             default:
-                throw new IllegalArgumentException("Unsupported type: " + typeName);
+                return fieldValue -> {
+                    throw new IllegalArgumentException("Unsupported type: " + typeName);
+                };
         }
     }
 
@@ -144,9 +184,7 @@ public class BigQueryRecordIterator
 
     private static Period convertBigQueryIntervalToPeriod(String value)
     {
-        // BigQuery interval format: [sign]Y-M [sign]D [sign]H:M:S[.F], and F up to six digits
-        Pattern pattern = Pattern.compile("(?<NEG>-?)(?<Y>[0-9]+)-(?<M>[0-9]+) (?<D>-?[0-9]+) (?<NEGTIME>-?)(?<H>[0-9]+):(?<MIN>[0-9]+):(?<S>[0-9]+).?(?<F>[0-9]{1,6})?");
-        Matcher matcher = pattern.matcher(value);
+        Matcher matcher = INTERVAL_PATTERN.matcher(value);
         if (!matcher.matches()) {
             throw new IllegalArgumentException(format(ENGLISH, "Invalid interval format: %s", value));
         }
@@ -169,4 +207,10 @@ public class BigQueryRecordIterator
     {
         return (localDateTime.toInstant(UTC).getEpochSecond() * 1000000) + (localDateTime.getNano() / 1000);
     }
+
+    @FunctionalInterface
+    private interface FieldConverter
+    {
+        Object convert(FieldValue fieldValue);
+    }
 }
@@ -14,41 +14,64 @@
 
 package io.accio.main.connector.postgres;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.accio.base.AccioException;
 import io.accio.base.Column;
 import io.accio.base.ConnectorRecordIterator;
 import io.accio.base.Parameter;
 import io.accio.base.metadata.TableMetadata;
 import io.accio.connector.postgres.PostgresClient;
+import io.accio.connector.postgres.PostgresConfig;
 import io.accio.connector.postgres.PostgresRecordIterator;
 import io.accio.main.metadata.Metadata;
 import io.trino.sql.tree.QualifiedName;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
+import static com.google.common.base.Throwables.throwIfUnchecked;
 import static io.accio.base.metadata.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static io.accio.main.Utils.closeQuietly;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toList;
 
 public class PostgresMetadata
         implements Metadata
 {
     private final PostgresClient postgresClient;
+    private final Cache<String, List<String>> functionNames;
+    // jdbc blocks a thread per query, so the async execution is bounded by the connections of the pool
+    private final ExecutorService queryExecutor;
+    private volatile String defaultCatalog;
 
     @Inject
-    public PostgresMetadata(PostgresClient postgresClient)
+    public PostgresMetadata(PostgresClient postgresClient, PostgresConfig postgresConfig)
     {
         this.postgresClient = requireNonNull(postgresClient, "postgresClient is null");
+        this.queryExecutor = newFixedThreadPool(postgresConfig.getMaxConnections(), daemonThreadsNamed("postgres-query-%s"));
+        this.functionNames = CacheBuilder.newBuilder()
+                .maximumSize(postgresConfig.getMetadataCacheMaxSize())
+                .expireAfterWrite(postgresConfig.getMetadataCacheTtl().toMillis(), MILLISECONDS)
+                .build();
     }
 
     @Override
     public void createSchema(String name)
     {
         postgresClient.executeDDL("CREATE SCHEMA IF NOT EXISTS " + name);
+        functionNames.invalidateAll();
     }
 
     @Override
@@ -85,6 +108,17 @@ public class PostgresMetadata
 
     @Override
     public List<String> listFunctionNames(String schemaName)
+    {
+        try {
+            return functionNames.get(schemaName, () -> queryFunctionNames(schemaName));
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            throwIfUnchecked(e.getCause());
+            throw new AccioException(GENERIC_INTERNAL_ERROR, e.getCause());
+        }
+    }
+
+    private List<String> queryFunctionNames(String schemaName)
     {
         try (PostgresRecordIterator iterator = PostgresRecordIterator.of(postgresClient, "select distinct proname from pg_catalog.pg_proc where pronamespace =" +
                 "(select oid from pg_catalog.pg_namespace where nspname = 'pg_catalog' OR nspname = '" + schemaName + "')")) {
@@ -108,18 +142,26 @@ public class PostgresMetadata
     @Override
     public String getDefaultCatalog()
     {
-        try (PostgresRecordIterator iterator = PostgresRecordIterator.of(postgresClient, "select current_database()")) {
-            return (String) iterator.next()[0];
-        }
-        catch (Exception e) {
-            throw new AccioException(GENERIC_INTERNAL_ERROR, e);
+        // the database of the connection never changes, it's queried once instead of on every parse
+        String catalog = defaultCatalog;
+        if (catalog == null) {
+            try (PostgresRecordIterator iterator = PostgresRecordIterator.of(postgresClient, "select current_database()")) {
+                catalog = (String) iterator.next()[0];
+            }
+            catch (Exception e) {
+                throw new AccioException(GENERIC_INTERNAL_ERROR, e);
+            }
+            defaultCatalog = catalog;
         }
+        return catalog;
     }
 
     @Override
     public void directDDL(String sql)
     {
         postgresClient.executeDDL(sql);
+        // the ddl may create or drop functions
+        functionNames.invalidateAll();
     }
 
     @Override
@@ -141,9 +183,51 @@ public class PostgresMetadata
                 .collect(toList());
     }
 
+    @Override
+    public CompletableFuture<ConnectorRecordIterator> directQueryAsync(String sql, List<Parameter> parameters)
+    {
+        CompletableFuture<ConnectorRecordIterator> future = new CompletableFuture<>();
+        queryExecutor.execute(() -> {
+            if (future.isDone()) {
+                // cancelled before it's started
+                return;
+            }
+            try {
+                ConnectorRecordIterator iterator = directQuery(sql, parameters);
+                if (!future.complete(iterator)) {
+                    // cancelled while the query ran, nobody reads the result
+                    closeQuietly(iterator);
+                }
+            }
+            catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<List<Column>> describeQueryAsync(String sql, List<Parameter> parameters)
+    {
+        return CompletableFuture.supplyAsync(() -> describeQuery(sql, parameters), queryExecutor);
+    }
+
     @Override
     public boolean isPgCompatible()
     {
         return true;
     }
+
+    @Override
+    public void invalidateCache()
+    {
+        defaultCatalog = null;
+        functionNames.invalidateAll();
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        queryExecutor.shutdownNow();
+    }
 }
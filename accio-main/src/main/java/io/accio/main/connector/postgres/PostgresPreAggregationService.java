@@ -14,20 +14,57 @@
 
 package io.accio.main.connector.postgres;
 
+import io.accio.base.AccioException;
+import io.accio.base.client.duckdb.DuckdbClient;
+import io.accio.connector.postgres.PostgresClient;
+import io.accio.connector.postgres.PostgresCopyRecordIterator;
 import io.accio.preaggregation.PathInfo;
 import io.accio.preaggregation.PreAggregationService;
+import io.airlift.log.Logger;
+
+import javax.inject.Inject;
 
 import java.util.Optional;
 
+import static io.accio.base.metadata.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static java.util.Objects.requireNonNull;
+
 public class PostgresPreAggregationService
         implements PreAggregationService
 {
+    private static final Logger LOG = Logger.get(PostgresPreAggregationService.class);
+    private final PostgresClient postgresClient;
+    private final DuckdbClient duckdbClient;
+
+    @Inject
+    public PostgresPreAggregationService(
+            PostgresClient postgresClient,
+            DuckdbClient duckdbClient)
+    {
+        this.postgresClient = requireNonNull(postgresClient, "postgresClient is null");
+        this.duckdbClient = requireNonNull(duckdbClient, "duckdbClient is null");
+    }
+
     @Override
     public Optional<PathInfo> createPreAggregation(String catalog, String schema, String name, String statement)
     {
         return Optional.empty();
     }
 
+    @Override
+    public boolean loadPreAggregation(String statement, String duckdbTableName)
+    {
+        // stream the result from postgres into duckdb through binary COPY, no intermediate file is needed
+        try (PostgresCopyRecordIterator iterator = PostgresCopyRecordIterator.of(postgresClient, statement)) {
+            long rowCount = duckdbClient.createTableFromRecords(duckdbTableName, iterator.getColumns(), iterator);
+            LOG.info("Loaded %s rows into pre-aggregation table %s", rowCount, duckdbTableName);
+            return true;
+        }
+        catch (Exception e) {
+            throw new AccioException(GENERIC_INTERNAL_ERROR, e);
+        }
+    }
+
     @Override
     public void deleteTarget(PathInfo pathInfo) {}
 }
@@ -20,6 +20,8 @@ import io.accio.base.metadata.TableMetadata;
 import io.trino.sql.tree.QualifiedName;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface Metadata
 {
@@ -43,5 +45,30 @@ public interface Metadata
 
     List<Column> describeQuery(String sql, List<Parameter> parameters);
 
+    /**
+     * The async variants of {@link #directQuery} and {@link #describeQuery} the wire protocol serves the clients
+     * with. The connectors run them on their own executors bounded by what the backend can serve, instead of
+     * holding a thread of the caller while the backend works.
+     */
+    CompletableFuture<ConnectorRecordIterator> directQueryAsync(String sql, List<Parameter> parameters);
+
+    /**
+     * {@link #directQueryAsync(String, List)} which reports the id the data source gives to the query, e.g. the
+     * BigQuery job id, once the query is submitted. Cancelling the returned future abandons the query: the result
+     * which comes later is closed, and the connectors which can stop the query at the data source do so.
+     */
+    default CompletableFuture<ConnectorRecordIterator> directQueryAsync(String sql, List<Parameter> parameters, Consumer<String> backendJobIdListener)
+    {
+        return directQueryAsync(sql, parameters);
+    }
+
+    CompletableFuture<List<Column>> describeQueryAsync(String sql, List<Parameter> parameters);
+
     boolean isPgCompatible();
+
+    /**
+     * The default catalog and the function names are cached by the connectors since they rarely change.
+     * Drop the cached metadata, e.g. after the remote database is changed outside of accio.
+     */
+    void invalidateCache();
 }
@@ -0,0 +1,261 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.pgcatalog;
+
+import io.accio.base.Column;
+import io.accio.base.ConnectorRecordIterator;
+import io.accio.base.Parameter;
+import io.accio.base.client.duckdb.DuckdbClient;
+import io.accio.main.AccioMetastore;
+import io.accio.main.PostgresWireProtocolConfig;
+import io.accio.main.metadata.Metadata;
+import io.accio.main.pgcatalog.builder.DuckdbPgCatalogTableBuilder;
+import io.accio.main.pgcatalog.function.PgFunctionRegistry;
+import io.accio.main.pgcatalog.table.PgCatalogTable;
+import io.accio.main.wireprotocol.BaseRewriteVisitor;
+import io.accio.preaggregation.DuckdbRecordIterator;
+import io.airlift.log.Logger;
+import io.trino.sql.SqlFormatter;
+import io.trino.sql.tree.DereferenceExpression;
+import io.trino.sql.tree.Node;
+import io.trino.sql.tree.QualifiedName;
+import io.trino.sql.tree.Query;
+import io.trino.sql.tree.Statement;
+import io.trino.sql.tree.Table;
+import io.trino.sql.tree.WithQuery;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.accio.main.pgcatalog.PgCatalogUtils.LOCAL_PG_CATALOG_NAME;
+import static io.accio.main.pgcatalog.PgCatalogUtils.PG_CATALOG_NAME;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.trino.sql.QueryUtil.getQualifiedName;
+import static io.trino.sql.SqlFormatter.Dialect.DUCKDB;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+/**
+ * The pg_catalog tables materialized in the embedded duckdb. The queries which only read pg_catalog
+ * tables are answered here instead of the data source, e.g. the metadata queries the BI tools send
+ * when they connect or browse the schemas. The tables are rebuilt when the MDL is reloaded.
+ * <p>
+ * It's only enabled for the data sources which aren't compatible with PostgreSQL. The others have
+ * their own pg_catalog.
+ */
+public class LocalPgCatalog
+{
+    private static final Logger LOG = Logger.get(LocalPgCatalog.class);
+
+    private final Metadata connector;
+    private final AccioMetastore accioMetastore;
+    private final DuckdbClient duckdbClient;
+    private final DuckdbPgCatalogTableBuilder tableBuilder;
+    private final PgFunctionRegistry pgFunctionRegistry = new PgFunctionRegistry();
+    private final Map<String, PgCatalogTable> tables = PgCatalogManager.initTables();
+    private final boolean enabled;
+    private final ExecutorService queryExecutor;
+
+    private volatile long builtVersion = -1;
+    private volatile long failedVersion = -1;
+
+    @Inject
+    public LocalPgCatalog(
+            Metadata connector,
+            AccioMetastore accioMetastore,
+            DuckdbClient duckdbClient,
+            DuckdbPgCatalogTableBuilder tableBuilder,
+            PostgresWireProtocolConfig config)
+    {
+        this.connector = requireNonNull(connector, "connector is null");
+        this.accioMetastore = requireNonNull(accioMetastore, "accioMetastore is null");
+        this.duckdbClient = requireNonNull(duckdbClient, "duckdbClient is null");
+        this.tableBuilder = requireNonNull(tableBuilder, "tableBuilder is null");
+        this.enabled = config.isLocalPgCatalogEnabled() && !connector.isPgCompatible();
+        this.queryExecutor = newFixedThreadPool(duckdbClient.getConnectionPoolSize(), daemonThreadsNamed("local-pg-catalog-query-%s"));
+    }
+
+    /**
+     * Rewrite the statement to read the local pg_catalog tables.
+     *
+     * @return the duckdb sql, or empty if the statement reads any table other than the pg_catalog tables
+     */
+    public Optional<String> rewrite(Statement statement)
+    {
+        if (!enabled || !(statement instanceof Query) || failedVersion == accioMetastore.getAccioMDLVersion()) {
+            return Optional.empty();
+        }
+        try {
+            Rewriter rewriter = new Rewriter(connector.getDefaultCatalog());
+            Node rewritten = rewriter.process(statement);
+            if (rewriter.onlyPgCatalogTables && rewriter.hasPgCatalogTable) {
+                return Optional.of(SqlFormatter.formatSql(rewritten, DUCKDB));
+            }
+        }
+        catch (RuntimeException e) {
+            LOG.warn(e, "Failed to rewrite the statement for the local pg_catalog");
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return whether the statement reads any pg_catalog table, even if it reads the other tables too
+     */
+    public boolean readsPgCatalog(Statement statement)
+    {
+        try {
+            Rewriter rewriter = new Rewriter(connector.getDefaultCatalog());
+            rewriter.process(statement);
+            return rewriter.hasPgCatalogTable;
+        }
+        catch (RuntimeException e) {
+            LOG.warn(e, "Failed to find the pg_catalog tables of the statement");
+            return false;
+        }
+    }
+
+    public List<Column> describe(String sql, List<Parameter> parameters)
+    {
+        refreshIfOutdated();
+        return duckdbClient.describe(sql, parameters).stream()
+                .map(columnMetadata -> new Column(columnMetadata.getName(), columnMetadata.getType()))
+                .collect(toImmutableList());
+    }
+
+    public CompletableFuture<ConnectorRecordIterator> queryAsync(String sql, List<Parameter> parameters)
+    {
+        return supplyAsync(() -> {
+            refreshIfOutdated();
+            try {
+                return DuckdbRecordIterator.of(duckdbClient, sql, parameters);
+            }
+            catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, queryExecutor);
+    }
+
+    /**
+     * Build the tables if they haven't been built for the current MDL.
+     */
+    public void refreshIfOutdated()
+    {
+        if (!enabled || builtVersion == accioMetastore.getAccioMDLVersion()) {
+            return;
+        }
+        synchronized (this) {
+            // read the version before building, a reload during the build triggers another one
+            long version = accioMetastore.getAccioMDLVersion();
+            if (builtVersion == version) {
+                return;
+            }
+            try {
+                tableBuilder.createSourceTables(connector.getDefaultCatalog(), tables.values(), pgFunctionRegistry.getPgFunctions());
+                tables.values().forEach(tableBuilder::createPgTable);
+            }
+            catch (RuntimeException e) {
+                // don't route the queries here until the MDL is reloaded
+                failedVersion = version;
+                throw e;
+            }
+            builtVersion = version;
+            LOG.info("Local pg_catalog has been built for MDL version %s", version);
+        }
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        queryExecutor.shutdownNow();
+    }
+
+    private class Rewriter
+            extends BaseRewriteVisitor<Void>
+    {
+        private final String defaultCatalog;
+        private final Set<String> withQueryNames = new HashSet<>();
+        private boolean onlyPgCatalogTables = true;
+        private boolean hasPgCatalogTable;
+
+        private Rewriter(String defaultCatalog)
+        {
+            this.defaultCatalog = defaultCatalog;
+        }
+
+        @Override
+        protected Node visitWithQuery(WithQuery node, Void context)
+        {
+            withQueryNames.add(node.getName().getValue());
+            return super.visitWithQuery(node, context);
+        }
+
+        @Override
+        protected Node visitTable(Table node, Void context)
+        {
+            List<String> parts = node.getName().getParts();
+            if (isPgCatalogTable(parts)) {
+                hasPgCatalogTable = true;
+                QualifiedName localName = toLocalTableName(parts);
+                return node.getLocation().isPresent() ? new Table(node.getLocation().get(), localName) : new Table(localName);
+            }
+            if (parts.size() != 1 || !withQueryNames.contains(parts.get(0))) {
+                onlyPgCatalogTables = false;
+            }
+            return node;
+        }
+
+        @Override
+        protected Node visitDereferenceExpression(DereferenceExpression node, Void context)
+        {
+            QualifiedName name = getQualifiedName(node.getBase());
+            if (name != null && isPgCatalogTable(name.getParts())) {
+                return new DereferenceExpression(
+                        node.getLocation(),
+                        DereferenceExpression.from(toLocalTableName(name.getParts())),
+                        node.getField());
+            }
+            return super.visitDereferenceExpression(node, context);
+        }
+
+        // the pg_catalog tables are qualified with the default catalog by PostgreSqlRewrite
+        private boolean isPgCatalogTable(List<String> parts)
+        {
+            if (parts.size() == 3 && !parts.get(0).equals(defaultCatalog)) {
+                return false;
+            }
+            return parts.size() >= 2
+                    && parts.size() <= 3
+                    && parts.get(parts.size() - 2).equals(PG_CATALOG_NAME)
+                    && tables.containsKey(parts.get(parts.size() - 1));
+        }
+
+        private QualifiedName toLocalTableName(List<String> parts)
+        {
+            return QualifiedName.of(LOCAL_PG_CATALOG_NAME, parts.get(parts.size() - 1));
+        }
+    }
+}
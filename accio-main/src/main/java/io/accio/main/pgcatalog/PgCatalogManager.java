@@ -15,13 +15,19 @@ package io.accio.main.pgcatalog;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
 import com.google.inject.Inject;
+import io.accio.base.AccioException;
+import io.accio.base.ConnectorRecordIterator;
 import io.accio.base.metadata.TableMetadata;
+import io.accio.main.PostgresWireProtocolConfig;
 import io.accio.main.metadata.Metadata;
 import io.accio.main.pgcatalog.builder.PgCatalogTableBuilder;
 import io.accio.main.pgcatalog.builder.PgFunctionBuilder;
 import io.accio.main.pgcatalog.function.PgFunction;
 import io.accio.main.pgcatalog.function.PgFunctionRegistry;
+import io.accio.main.pgcatalog.regtype.PgMetadata;
 import io.accio.main.pgcatalog.table.CharacterSets;
 import io.accio.main.pgcatalog.table.KeyColumnUsage;
 import io.accio.main.pgcatalog.table.PgAmTable;
@@ -43,17 +49,51 @@ import io.accio.main.pgcatalog.table.PgTablespaceTable;
 import io.accio.main.pgcatalog.table.PgTypeTable;
 import io.accio.main.pgcatalog.table.ReferentialConstraints;
 import io.accio.main.pgcatalog.table.TableConstraints;
+import io.airlift.log.Logger;
+import io.airlift.units.Duration;
 
+import javax.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static io.accio.base.metadata.StandardErrorCode.GENERIC_INTERNAL_ERROR;
 import static io.accio.main.pgcatalog.PgCatalogUtils.ACCIO_TEMP_NAME;
 import static io.accio.main.pgcatalog.PgCatalogUtils.PG_CATALOG_NAME;
+import static io.airlift.concurrent.MoreFutures.getFutureValue;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.joining;
 
+/**
+ * Create the pg_catalog tables and functions in the data source. The fingerprint of the statement creating
+ * each object is kept in {@code accio_temp.pg_catalog_fingerprint}, only the objects whose statement changed or
+ * which don't exist are created again at startup. They are created in parallel.
+ * <p>
+ * A failed initialization is retried in the background with an exponential backoff until it succeeds.
+ */
 public class PgCatalogManager
 {
+    private static final Logger LOG = Logger.get(PgCatalogManager.class);
+    static final String FINGERPRINT_TABLE_NAME = "pg_catalog_fingerprint";
+    private static final Duration INIT_RETRY_MIN_DELAY = new Duration(1, SECONDS);
+
     private final Map<String, PgCatalogTable> tables;
 
     private final Metadata connector;
@@ -61,20 +101,37 @@ public class PgCatalogManager
     private final PgFunctionRegistry pgFunctionRegistry;
     private final PgCatalogTableBuilder pgCatalogTableBuilder;
     private final PgFunctionBuilder pgFunctionBuilder;
+    private final PgMetadata pgMetadata;
+    private final int initConcurrency;
+    private final Duration initWaitTimeout;
+    private final Duration initRetryMaxDelay;
+    private final ScheduledExecutorService initExecutor = newSingleThreadScheduledExecutor(daemonThreadsNamed("pg-catalog-init"));
+
+    // incomplete while the background initialization is running, failed if it failed
+    private volatile CompletableFuture<Void> ready = CompletableFuture.completedFuture(null);
 
     private final List<String> highPriorityTableName = ImmutableList.of(PgTypeTable.NAME);
 
     @Inject
-    public PgCatalogManager(Metadata connector, PgCatalogTableBuilder pgCatalogTableBuilder, PgFunctionBuilder pgFunctionBuilder)
+    public PgCatalogManager(
+            Metadata connector,
+            PgCatalogTableBuilder pgCatalogTableBuilder,
+            PgFunctionBuilder pgFunctionBuilder,
+            PgMetadata pgMetadata,
+            PostgresWireProtocolConfig config)
     {
         this.tables = initTables();
         this.connector = requireNonNull(connector, "connector is null");
         this.pgCatalogTableBuilder = requireNonNull(pgCatalogTableBuilder, "pgCatalogBuilder is null");
         this.pgFunctionBuilder = requireNonNull(pgFunctionBuilder, "pgFunctionBuilder is null");
+        this.pgMetadata = requireNonNull(pgMetadata, "pgMetadata is null");
+        this.initConcurrency = config.getPgCatalogInitConcurrency();
+        this.initWaitTimeout = config.getPgCatalogInitWaitTimeout();
+        this.initRetryMaxDelay = config.getPgCatalogInitRetryMaxDelay();
         this.pgFunctionRegistry = new PgFunctionRegistry();
     }
 
-    private Map<String, PgCatalogTable> initTables()
+    static Map<String, PgCatalogTable> initTables()
     {
         return ImmutableMap.<String, PgCatalogTable>builder()
                 .put(PgAmTable.NAME, new PgAmTable())
@@ -100,6 +157,69 @@ public class PgCatalogManager
                 .build();
     }
 
+    /**
+     * Initialize the pg_catalog in the background. The queries only reading pg_catalog are answered by
+     * {@link LocalPgCatalog}, the others reading pg_catalog wait until it's done, see {@link #whenReady()}.
+     * <p>
+     * The returned future is completed by the first attempt. If it fails, the initialization is retried with
+     * an exponential backoff up to {@code pg-wire-protocol.pg-catalog.init-retry-max-delay}.
+     */
+    public CompletableFuture<Void> initPgCatalogAsync()
+    {
+        CompletableFuture<Void> firstAttempt = new CompletableFuture<>();
+        this.ready = new CompletableFuture<>();
+        initExecutor.execute(() -> initPgCatalogWithRetry(0, firstAttempt));
+        return firstAttempt;
+    }
+
+    private void initPgCatalogWithRetry(int attempt, CompletableFuture<Void> firstAttempt)
+    {
+        CompletableFuture<Void> ready = this.ready.isDone() ? new CompletableFuture<>() : this.ready;
+        this.ready = ready;
+        try {
+            initPgCatalog();
+            ready.complete(null);
+            firstAttempt.complete(null);
+        }
+        catch (RuntimeException e) {
+            // the queries fail fast until the next attempt starts
+            ready.completeExceptionally(e);
+            firstAttempt.completeExceptionally(e);
+            long delayMillis = Math.min(INIT_RETRY_MIN_DELAY.toMillis() << Math.min(attempt, 16), initRetryMaxDelay.toMillis());
+            LOG.warn(e, "Failed to initialize pg_catalog, retry in %sms", delayMillis);
+            if (!initExecutor.isShutdown()) {
+                initExecutor.schedule(() -> initPgCatalogWithRetry(attempt + 1, firstAttempt), delayMillis, MILLISECONDS);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        initExecutor.shutdownNow();
+    }
+
+    /**
+     * The queries reading pg_catalog in the data source wait on the returned future, the objects may be missing
+     * or being replaced until the background initialization is done. It fails fast if the initialization failed,
+     * and fails if it isn't done within {@code pg-wire-protocol.pg-catalog.init-wait-timeout}.
+     */
+    public CompletableFuture<Void> whenReady()
+    {
+        CompletableFuture<Void> ready = this.ready;
+        if (ready.isDone() && !ready.isCompletedExceptionally()) {
+            return ready;
+        }
+        return ready.copy()
+                .orTimeout(initWaitTimeout.toMillis(), MILLISECONDS)
+                .handle((ignored, e) -> {
+                    if (e != null) {
+                        throw new AccioException(GENERIC_INTERNAL_ERROR, "pg_catalog isn't initialized in the data source", e);
+                    }
+                    return null;
+                });
+    }
+
     public void initPgCatalog()
     {
         if (connector.isPgCompatible()) {
@@ -108,33 +228,59 @@ public class PgCatalogManager
 
         createCatalogIfNotExist(ACCIO_TEMP_NAME);
         createCatalogIfNotExist(PG_CATALOG_NAME);
-        if (!isPgCatalogValid()) {
-            initPgTables();
-            initPgFunctions();
-        }
-    }
 
-    public void initPgTables()
-    {
-        // Some table has dependency with the high priority table.
-        // Create them first.
-        for (String tableName : highPriorityTableName) {
-            createPgCatalogTable(tables.get(tableName));
-        }
+        Set<String> tempTables = connector.listTables(ACCIO_TEMP_NAME).stream()
+                .map(PgCatalogManager::getTableName)
+                .collect(toImmutableSet());
+        Map<String, String> fingerprints = listFingerprints(tempTables);
+        Set<String> remoteTables = connector.listTables(PG_CATALOG_NAME).stream()
+                .map(PgCatalogManager::getTableName)
+                .collect(toImmutableSet());
+        Set<String> remoteFunctions = ImmutableSet.copyOf(connector.listFunctionNames(PG_CATALOG_NAME));
 
-        List<PgCatalogTable> lowPriorityTable = tables.values().stream()
-                .filter(pgCatalogTable -> !highPriorityTableName.contains(pgCatalogTable.getName()))
+        // some table has dependency with the high priority table, and the others read the source tables.
+        // create them first in order.
+        // the source tables may be dropped or expired in the data source while the fingerprints still match
+        List<PgCatalogObject> sourceTables = new ArrayList<>();
+        pgCatalogTableBuilder.generateCreateSourceTables().forEach((name, sql) ->
+                sourceTables.add(new PgCatalogObject("source:" + name, sql, tempTables.contains(name), () -> connector.directDDL(sql))));
+        List<PgCatalogObject> highPriorityTables = highPriorityTableName.stream()
+                .map(tables::get)
+                .map(table -> tableObject(table, remoteTables))
                 .collect(toImmutableList());
-
-        for (PgCatalogTable pgCatalogTable : lowPriorityTable) {
-            createPgCatalogTable(pgCatalogTable);
+        List<PgCatalogObject> others = new ArrayList<>();
+        tables.values().stream()
+                .filter(pgCatalogTable -> !highPriorityTableName.contains(pgCatalogTable.getName()))
+                .forEach(table -> others.add(tableObject(table, remoteTables)));
+        for (PgFunction pgFunction : pgFunctionRegistry.getPgFunctions()) {
+            others.add(new PgCatalogObject(
+                    "function:" + pgFunction.getRemoteName(),
+                    pgFunctionBuilder.generateCreateFunction(pgFunction),
+                    remoteFunctions.contains(pgFunction.getName()),
+                    () -> pgFunctionBuilder.createPgFunction(pgFunction)));
         }
-    }
 
-    public void initPgFunctions()
-    {
-        for (PgFunction pgFunction : pgFunctionRegistry.getPgFunctions()) {
-            pgFunctionBuilder.createPgFunction(pgFunction);
+        Map<String, String> newFingerprints = new LinkedHashMap<>();
+        ExecutorService executor = newFixedThreadPool(initConcurrency, daemonThreadsNamed("pg-catalog-init-%s"));
+        try {
+            int created = 0;
+            for (List<PgCatalogObject> objects : ImmutableList.of(highPriorityTables, sourceTables, others)) {
+                List<PgCatalogObject> outdated = objects.stream()
+                        .filter(object -> !object.exists || !object.fingerprint.equals(fingerprints.get(object.name)))
+                        .collect(toImmutableList());
+                createInParallel(outdated, executor);
+                objects.forEach(object -> newFingerprints.put(object.name, object.fingerprint));
+                created += outdated.size();
+            }
+            LOG.info("pg_catalog is initialized, %s of %s objects have been created", created, newFingerprints.size());
+            if (created > 0 || !newFingerprints.equals(fingerprints)) {
+                writeFingerprints(newFingerprints);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+            // the reg objects resolved from the old tables are stale
+            pgMetadata.invalidate();
         }
     }
 
@@ -145,19 +291,82 @@ public class PgCatalogManager
         }
     }
 
-    private boolean isPgCatalogValid()
+    private PgCatalogObject tableObject(PgCatalogTable pgCatalogTable, Set<String> remoteTables)
+    {
+        return new PgCatalogObject(
+                "table:" + pgCatalogTable.getName(),
+                pgCatalogTableBuilder.generateCreatePgTable(pgCatalogTable),
+                remoteTables.contains(pgCatalogTable.getName()),
+                () -> createPgCatalogTable(pgCatalogTable));
+    }
+
+    private static void createInParallel(List<PgCatalogObject> objects, ExecutorService executor)
+    {
+        Map<PgCatalogObject, Future<?>> futures = new LinkedHashMap<>();
+        objects.forEach(object -> futures.put(object, executor.submit(object.creator)));
+        List<PgCatalogObject> failed = new ArrayList<>();
+        futures.forEach((object, future) -> {
+            try {
+                getFutureValue(future);
+            }
+            catch (RuntimeException e) {
+                LOG.debug(e, "Failed to create %s, retry it later", object.name);
+                failed.add(object);
+            }
+        });
+        // an object may depend on another one created in the same round, e.g. a function calling another function.
+        // create the failed ones again one by one in order.
+        failed.forEach(object -> object.creator.run());
+    }
+
+    private Map<String, String> listFingerprints(Set<String> tempTables)
     {
-        List<TableMetadata> remoteTables = connector.listTables(PG_CATALOG_NAME);
-        if (remoteTables.size() != tables.values().size()) {
-            return false;
+        if (!tempTables.contains(FINGERPRINT_TABLE_NAME)) {
+            return ImmutableMap.of();
         }
+        Map<String, String> fingerprints = new HashMap<>();
+        try (ConnectorRecordIterator iterator = connector.directQuery(format("SELECT name, fingerprint FROM %s.%s", ACCIO_TEMP_NAME, FINGERPRINT_TABLE_NAME), ImmutableList.of())) {
+            iterator.forEachRemaining(row -> fingerprints.put((String) row[0], (String) row[1]));
+        }
+        catch (Exception e) {
+            // rebuild all objects if the fingerprints are unreadable
+            LOG.warn(e, "Failed to read the fingerprints of pg_catalog");
+            return ImmutableMap.of();
+        }
+        return fingerprints;
+    }
+
+    private void writeFingerprints(Map<String, String> fingerprints)
+    {
+        String rows = fingerprints.entrySet().stream()
+                .map(entry -> format("SELECT '%s' AS name, '%s' AS fingerprint", entry.getKey(), entry.getValue()))
+                .collect(joining(" UNION ALL "));
+        connector.directDDL(format("CREATE OR REPLACE TABLE %s.%s AS %s", ACCIO_TEMP_NAME, FINGERPRINT_TABLE_NAME, rows));
+    }
 
-        List<String> remoteFunctions = connector.listFunctionNames(PG_CATALOG_NAME);
-        return pgFunctionRegistry.getPgFunctions().size() == remoteFunctions.size();
+    private static String getTableName(TableMetadata tableMetadata)
+    {
+        return tableMetadata.getTable().getTableName();
     }
 
     private void createPgCatalogTable(PgCatalogTable pgCatalogTable)
     {
         pgCatalogTableBuilder.createPgTable(pgCatalogTable);
     }
+
+    private static class PgCatalogObject
+    {
+        private final String name;
+        private final String fingerprint;
+        private final boolean exists;
+        private final Runnable creator;
+
+        private PgCatalogObject(String name, String sql, boolean exists, Runnable creator)
+        {
+            this.name = name;
+            this.fingerprint = Hashing.farmHashFingerprint64().hashString(sql, UTF_8).toString();
+            this.exists = exists;
+            this.creator = creator;
+        }
+    }
 }
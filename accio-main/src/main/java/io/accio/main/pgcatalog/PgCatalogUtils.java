@@ -18,6 +18,8 @@ public final class PgCatalogUtils
 {
     public static final String PG_CATALOG_NAME = "pg_catalog";
     public static final String ACCIO_TEMP_NAME = "accio_temp";
+    // the schema of the pg_catalog tables materialized in the embedded duckdb
+    public static final String LOCAL_PG_CATALOG_NAME = "accio_pg_catalog";
 
     private PgCatalogUtils() {}
 }
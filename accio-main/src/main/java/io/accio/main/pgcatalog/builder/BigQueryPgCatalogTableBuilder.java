@@ -15,6 +15,7 @@
 package io.accio.main.pgcatalog.builder;
 
 import com.google.common.collect.ImmutableMap;
+import io.accio.base.AccioMDL;
 import io.accio.base.metadata.ColumnMetadata;
 import io.accio.base.type.PGType;
 import io.accio.main.AccioMetastore;
@@ -69,10 +70,19 @@ public final class BigQueryPgCatalogTableBuilder
                 .build();
     }
 
+    @Override
+    public Map<String, String> generateCreateSourceTables()
+    {
+        AccioMDL accioMDL = getAccioMDL();
+        return ImmutableMap.of(
+                "all_tables", createOrReplaceAllTable(accioMDL),
+                "pg_type_mapping", createOrReplacePgTypeMapping(),
+                "all_columns", createOrReplaceAllColumn(accioMDL));
+    }
+
     @Override
     protected String createPgClass(PgCatalogTable pgCatalogTable)
     {
-        getMetadata().directDDL(createOrReplaceAllTable(getAccioMDL()));
         StringBuilder builder = new StringBuilder();
         builder.append(format("CREATE OR REPLACE VIEW `%s.%s` AS SELECT ", PG_CATALOG_NAME, pgCatalogTable.getName()));
         Map<String, String> tableContent = pgCatalogTable.getTableContent();
@@ -113,8 +123,6 @@ public final class BigQueryPgCatalogTableBuilder
     @Override
     protected String createPgAttributeTable(PgCatalogTable pgCatalogTable)
     {
-        getMetadata().directDDL(createOrReplacePgTypeMapping());
-        getMetadata().directDDL(createOrReplaceAllColumn(getAccioMDL()));
         StringBuilder builder = new StringBuilder();
         builder.append(format("CREATE OR REPLACE VIEW `%s.%s` AS SELECT ", PG_CATALOG_NAME, pgCatalogTable.getName()));
         Map<String, String> tableContent = pgCatalogTable.getTableContent();
@@ -143,7 +151,6 @@ public final class BigQueryPgCatalogTableBuilder
     protected String createPgDatabaseTable(PgCatalogTable pgCatalogTable)
     {
         // TODO get project id from config
-        getMetadata().directDDL(createOrReplaceAllTable(getAccioMDL()));
         StringBuilder builder = new StringBuilder();
         builder.append(format("CREATE OR REPLACE VIEW `%s.%s` AS SELECT DISTINCT ", PG_CATALOG_NAME, pgCatalogTable.getName()));
         Map<String, String> tableContent = pgCatalogTable.getTableContent();
@@ -177,7 +184,6 @@ public final class BigQueryPgCatalogTableBuilder
     @Override
     protected String createPgNamespaceTable(PgCatalogTable pgCatalogTable)
     {
-        getMetadata().directDDL(createOrReplaceAllTable(getAccioMDL()));
         StringBuilder builder = new StringBuilder();
         builder.append(format("CREATE OR REPLACE VIEW `%s.%s` AS SELECT DISTINCT ", PG_CATALOG_NAME, pgCatalogTable.getName()));
         Map<String, String> tableContent = pgCatalogTable.getTableContent();
@@ -234,7 +240,6 @@ public final class BigQueryPgCatalogTableBuilder
     @Override
     protected String createCharacterSets(PgCatalogTable pgCatalogTable)
     {
-        getMetadata().directDDL(createOrReplaceAllTable(getAccioMDL()));
         StringBuilder builder = new StringBuilder();
         builder.append(format("CREATE OR REPLACE VIEW `%s.%s` AS SELECT DISTINCT ", PG_CATALOG_NAME, pgCatalogTable.getName()));
         Map<String, String> tableContent = pgCatalogTable.getTableContent();
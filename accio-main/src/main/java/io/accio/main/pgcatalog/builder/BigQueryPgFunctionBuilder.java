@@ -38,7 +38,7 @@ public class BigQueryPgFunctionBuilder
     }
 
     @Override
-    protected String generateCreateFunction(PgFunction pgFunction)
+    public String generateCreateFunction(PgFunction pgFunction)
     {
         switch (pgFunction.getLanguage()) {
             case SQL:
@@ -0,0 +1,375 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.pgcatalog.builder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import io.accio.base.AccioMDL;
+import io.accio.base.client.duckdb.DuckdbClient;
+import io.accio.base.metadata.ColumnMetadata;
+import io.accio.base.type.PGType;
+import io.accio.main.AccioMetastore;
+import io.accio.main.metadata.Metadata;
+import io.accio.main.pgcatalog.function.PgFunction;
+import io.accio.main.pgcatalog.table.PgCatalogTable;
+
+import javax.inject.Inject;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.accio.base.client.duckdb.DuckdbType.DUCKDB_TYPE;
+import static io.accio.base.type.BigIntType.BIGINT;
+import static io.accio.base.type.CharType.CHAR;
+import static io.accio.base.type.IntegerType.INTEGER;
+import static io.accio.base.type.RegprocType.REGPROC;
+import static io.accio.base.type.VarcharType.VARCHAR;
+import static io.accio.main.pgcatalog.PgCatalogUtils.LOCAL_PG_CATALOG_NAME;
+import static io.accio.main.pgcatalog.PgCatalogUtils.PG_CATALOG_NAME;
+import static io.accio.main.pgcatalog.builder.PgCatalogTableBuilderUtils.generatePgTypeRecords;
+import static io.accio.main.pgcatalog.builder.PgCatalogTableBuilderUtils.listAccioColumns;
+import static io.accio.main.pgcatalog.builder.PgCatalogTableBuilderUtils.listAccioTables;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Materialize the pg_catalog tables in the embedded duckdb from the MDL and the pg_catalog definitions,
+ * so the catalog queries of the BI tools don't need a round trip to the data source.
+ * <p>
+ * The oids are the same as the ones of the pg_catalog created in BigQuery. They are the FARM_FINGERPRINT
+ * of the same keys, computed in java and looked up through the {@code accio_oid} macro.
+ */
+public final class DuckdbPgCatalogTableBuilder
+        extends PgCatalogTableBuilder
+{
+    private static final String OID_FUNCTION = "accio_oid";
+    private static final Pattern LITERAL_OID_PATTERN = Pattern.compile(OID_FUNCTION + "\\('((?:[^']|'')*)'\\)");
+
+    private final DuckdbClient duckdbClient;
+
+    @Inject
+    public DuckdbPgCatalogTableBuilder(Metadata metadata, AccioMetastore accioMetastore, DuckdbClient duckdbClient)
+    {
+        super(metadata, accioMetastore);
+        this.duckdbClient = requireNonNull(duckdbClient, "duckdbClient is null");
+    }
+
+    @Override
+    protected Map<String, String> initReplaceMap()
+    {
+        return ImmutableMap.<String, String>builder()
+                .put("hash", OID_FUNCTION)
+                .put("tableName", "table_name")
+                .put("schemaName", "table_schema")
+                .put("columnName", "column_name")
+                .put("typeOid", "typoid")
+                .put("typeLen", "typlen")
+                .put("columNum", "ordinal_position")
+                .put("catalogName", "table_catalog")
+                .put("functionName", "routine_name")
+                .put("functionSchema", "routine_schema")
+                .put("split", "str_split")
+                .put("firstOrdinal", "[1]")
+                .put("concat", "concat")
+                .build();
+    }
+
+    /**
+     * Create the tables the pg_catalog tables are selected from. They are the local counterparts of
+     * all_tables, all_columns and INFORMATION_SCHEMA.ROUTINES in BigQuery.
+     */
+    public void createSourceTables(String defaultCatalog, Collection<PgCatalogTable> pgCatalogTables, List<PgFunction> pgFunctions)
+    {
+        AccioMDL accioMDL = getAccioMDL();
+        ImmutableList.Builder<Object[]> tables = ImmutableList.builder();
+        ImmutableList.Builder<Object[]> columns = ImmutableList.builder();
+        for (PgCatalogTable pgCatalogTable : pgCatalogTables) {
+            tables.add(new Object[] {defaultCatalog, PG_CATALOG_NAME, pgCatalogTable.getName()});
+            List<ColumnMetadata> columnMetadata = pgCatalogTable.getTableMetadata().getColumns();
+            for (int i = 0; i < columnMetadata.size(); i++) {
+                PGType<?> type = columnMetadata.get(i).getType();
+                columns.add(new Object[] {PG_CATALOG_NAME, pgCatalogTable.getName(), columnMetadata.get(i).getName(), i + 1, type.oid(), type.typeLen()});
+            }
+        }
+        listAccioTables(accioMDL).forEach(tableName -> tables.add(new Object[] {accioMDL.getCatalog(), accioMDL.getSchema(), tableName}));
+        columns.addAll(listAccioColumns(accioMDL));
+        List<Object[]> tableRecords = tables.build();
+        List<Object[]> routines = pgFunctions.stream()
+                .map(pgFunction -> new Object[] {PG_CATALOG_NAME, pgFunction.getRemoteName()})
+                .collect(toImmutableList());
+
+        // the keys of all the oids computed from the source tables
+        Set<String> oidKeys = new LinkedHashSet<>();
+        for (Object[] table : tableRecords) {
+            oidKeys.add((String) table[1]);
+            oidKeys.add((String) table[1] + table[2]);
+        }
+        for (Object[] routine : routines) {
+            oidKeys.add((String) routine[0]);
+            oidKeys.add("PROC" + routine[1]);
+        }
+
+        duckdbClient.executeDDL(format("CREATE SCHEMA IF NOT EXISTS %s", LOCAL_PG_CATALOG_NAME));
+        createSourceTable("all_tables", "table_catalog VARCHAR, table_schema VARCHAR, table_name VARCHAR", tableRecords);
+        createSourceTable(
+                "all_columns",
+                "table_schema VARCHAR, table_name VARCHAR, column_name VARCHAR, ordinal_position BIGINT, typoid BIGINT, typlen BIGINT",
+                columns.build());
+        createSourceTable("all_routines", "routine_schema VARCHAR, routine_name VARCHAR", routines);
+        createSourceTable(
+                "oid_hash",
+                "hash_key VARCHAR, hash_value BIGINT",
+                oidKeys.stream().map(key -> new Object[] {key, oid(key)}).collect(toImmutableList()));
+        duckdbClient.executeDDL(format("CREATE OR REPLACE MACRO %s(k) AS (SELECT hash_value FROM %s.oid_hash WHERE hash_key = k)", OID_FUNCTION, LOCAL_PG_CATALOG_NAME));
+    }
+
+    @Override
+    protected void executeDDL(String sql)
+    {
+        // fold the oids of the literal keys, e.g. the namespace of pg_type, they aren't in the oid_hash table
+        Matcher matcher = LITERAL_OID_PATTERN.matcher(sql);
+        StringBuilder builder = new StringBuilder();
+        while (matcher.find()) {
+            matcher.appendReplacement(builder, String.valueOf(oid(matcher.group(1).replace("''", "'"))));
+        }
+        matcher.appendTail(builder);
+        duckdbClient.executeDDL(builder.toString());
+    }
+
+    @Override
+    protected String createPgClass(PgCatalogTable pgCatalogTable)
+    {
+        return buildTableFromSource(pgCatalogTable, false, "all_tables");
+    }
+
+    @Override
+    protected String createPgType(PgCatalogTable pgCatalogTable)
+    {
+        List<ColumnMetadata> columnMetadata = pgCatalogTable.getTableMetadata().getColumns();
+        String records = generatePgTypeRecords(pgCatalogTable).stream()
+                .map(typeRecord -> {
+                    StringBuilder recordBuilder = new StringBuilder("(");
+                    for (int i = 0; i < columnMetadata.size(); i++) {
+                        recordBuilder.append(quotedIfNeed(typeRecord[i], columnMetadata.get(i).getType())).append(",");
+                    }
+                    recordBuilder.setLength(recordBuilder.length() - 1);
+                    return recordBuilder.append(")").toString();
+                })
+                .collect(joining(","));
+        String columnNames = columnMetadata.stream()
+                .map(column -> format("\"%s\"", column.getName()))
+                .collect(joining(","));
+        return format("CREATE OR REPLACE TABLE %s.%s AS SELECT %s FROM (VALUES %s) t(%s)",
+                LOCAL_PG_CATALOG_NAME,
+                pgCatalogTable.getName(),
+                columnMetadata.stream()
+                        .map(column -> format("CAST(\"%s\" AS %s) AS \"%s\"", column.getName(), toDuckdbType(column.getType()), column.getName()))
+                        .collect(joining(",")),
+                records,
+                columnNames);
+    }
+
+    @Override
+    protected String createPgAmTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createPgAttributeTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildTableFromSource(pgCatalogTable, false, "all_columns");
+    }
+
+    @Override
+    protected String createPgAttrdefTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createPgConstraintTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createPgDatabaseTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildTableFromSource(pgCatalogTable, true, "all_tables");
+    }
+
+    @Override
+    protected String createPgDescriptionTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createPgEnumTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createPgIndexTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createPgNamespaceTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildTableFromSource(pgCatalogTable, true, "all_tables");
+    }
+
+    @Override
+    protected String createPgProcTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildTableFromSource(pgCatalogTable, true, "all_routines");
+    }
+
+    @Override
+    protected String createPgRangeTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createPgRoleTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createPgSettingsTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createPgTablespaceTable(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createCharacterSets(PgCatalogTable pgCatalogTable)
+    {
+        return buildTableFromSource(pgCatalogTable, true, "all_tables");
+    }
+
+    @Override
+    protected String createReferentialConstraints(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createKeyColumnUsage(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    @Override
+    protected String createTableConstraints(PgCatalogTable pgCatalogTable)
+    {
+        return buildEmptyTable(pgCatalogTable);
+    }
+
+    /**
+     * Same as FARM_FINGERPRINT of BigQuery, which generates the oids of the pg_catalog created in BigQuery.
+     */
+    private static long oid(String key)
+    {
+        return Hashing.farmHashFingerprint64().hashString(key, UTF_8).asLong();
+    }
+
+    private void createSourceTable(String tableName, String columnDefinition, List<Object[]> records)
+    {
+        duckdbClient.executeDDL(format("CREATE OR REPLACE TABLE %s.%s (%s)", LOCAL_PG_CATALOG_NAME, tableName, columnDefinition));
+        if (records.isEmpty()) {
+            return;
+        }
+        String values = records.stream()
+                .map(record -> {
+                    StringBuilder recordBuilder = new StringBuilder("(");
+                    for (Object value : record) {
+                        recordBuilder.append(value instanceof String ? quoted((String) value) : value).append(",");
+                    }
+                    recordBuilder.setLength(recordBuilder.length() - 1);
+                    return recordBuilder.append(")").toString();
+                })
+                .collect(joining(","));
+        duckdbClient.executeDDL(format("INSERT INTO %s.%s VALUES %s", LOCAL_PG_CATALOG_NAME, tableName, values));
+    }
+
+    private static String buildTableFromSource(PgCatalogTable pgCatalogTable, boolean distinct, String sourceTable)
+    {
+        Map<String, String> tableContent = pgCatalogTable.getTableContent();
+        String selectItems = pgCatalogTable.getTableMetadata().getColumns().stream()
+                .map(column -> format("CAST(%s AS %s) AS \"%s\"", tableContent.get(column.getName()), toDuckdbType(column.getType()), column.getName()))
+                .collect(joining(","));
+        return format("CREATE OR REPLACE TABLE %s.%s AS SELECT %s%s FROM %s.%s",
+                LOCAL_PG_CATALOG_NAME,
+                pgCatalogTable.getName(),
+                distinct ? "DISTINCT " : "",
+                selectItems,
+                LOCAL_PG_CATALOG_NAME,
+                sourceTable);
+    }
+
+    private static String buildEmptyTable(PgCatalogTable pgCatalogTable)
+    {
+        String columnDefinition = pgCatalogTable.getTableMetadata().getColumns().stream()
+                .map(column -> format("\"%s\" %s", column.getName(), toDuckdbType(column.getType())))
+                .collect(joining(","));
+        return format("CREATE OR REPLACE TABLE %s.%s (%s)", LOCAL_PG_CATALOG_NAME, pgCatalogTable.getName(), columnDefinition);
+    }
+
+    private static String toDuckdbType(PGType<?> type)
+    {
+        // the oids are 64-bit fingerprints, the same as the INT64 columns of the pg_catalog in BigQuery
+        if (type.oid() == INTEGER.oid() || type.oid() == REGPROC.oid()) {
+            return DUCKDB_TYPE.toDuckdbTypeName(BIGINT);
+        }
+        return DUCKDB_TYPE.toDuckdbTypeName(type);
+    }
+
+    private static String quotedIfNeed(Object value, PGType<?> type)
+    {
+        if (value == null) {
+            return "null";
+        }
+        if (type.oid() == VARCHAR.oid() || type.oid() == CHAR.oid()) {
+            return quoted(value.toString());
+        }
+        return value.toString();
+    }
+
+    private static String quoted(String value)
+    {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
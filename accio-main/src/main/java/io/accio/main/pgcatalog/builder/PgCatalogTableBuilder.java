@@ -14,6 +14,7 @@
 
 package io.accio.main.pgcatalog.builder;
 
+import com.google.common.collect.ImmutableMap;
 import io.accio.base.AccioException;
 import io.accio.base.AccioMDL;
 import io.accio.main.AccioMetastore;
@@ -54,17 +55,33 @@ public abstract class PgCatalogTableBuilder
     private final Metadata metadata;
     private final Map<String, String> replaceMap;
     private final StrSubstitutor strSubstitutor;
-    private final AccioMDL accioMDL;
+    private final AccioMetastore accioMetastore;
 
     public PgCatalogTableBuilder(Metadata metadata, AccioMetastore accioMetastore)
     {
         this.metadata = requireNonNull(metadata, "metadata is null");
         this.replaceMap = initReplaceMap();
         this.strSubstitutor = new StrSubstitutor(getReplaceMap());
-        this.accioMDL = requireNonNull(accioMetastore.getAccioMDL(), "accioMDL is null");
+        this.accioMetastore = requireNonNull(accioMetastore, "accioMetastore is null");
     }
 
     public void createPgTable(PgCatalogTable pgCatalogTable)
+    {
+        executeDDL(generateCreatePgTable(pgCatalogTable));
+        LOG.info("pg_catalog.%s has created or updated", pgCatalogTable.getName());
+    }
+
+    /**
+     * The statements creating the tables which the pg_catalog tables read from, e.g. the accio models of pg_class,
+     * keyed by the table name in accio_temp. They may read pg_type, so they are executed after pg_type and before
+     * the other pg_catalog tables.
+     */
+    public Map<String, String> generateCreateSourceTables()
+    {
+        return ImmutableMap.of();
+    }
+
+    public String generateCreatePgTable(PgCatalogTable pgCatalogTable)
     {
         String sql;
         switch (pgCatalogTable.getName()) {
@@ -132,8 +149,12 @@ public abstract class PgCatalogTableBuilder
                 throw new AccioException(GENERIC_INTERNAL_ERROR, format("Unsupported table %s", pgCatalogTable.getName()));
         }
 
-        metadata.directDDL(strSubstitutor.replace(sql));
-        LOG.info("pg_catalog.%s has created or updated", pgCatalogTable.getName());
+        return strSubstitutor.replace(sql);
+    }
+
+    protected void executeDDL(String sql)
+    {
+        metadata.directDDL(sql);
     }
 
     protected abstract Map<String, String> initReplaceMap();
@@ -145,7 +166,7 @@ public abstract class PgCatalogTableBuilder
 
     protected AccioMDL getAccioMDL()
     {
-        return accioMDL;
+        return requireNonNull(accioMetastore.getAccioMDL(), "accioMDL is null");
     }
 
     public Map<String, String> getReplaceMap()
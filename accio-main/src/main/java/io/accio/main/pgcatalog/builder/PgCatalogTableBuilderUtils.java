@@ -14,13 +14,26 @@
 
 package io.accio.main.pgcatalog.builder;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Streams;
+import io.accio.base.AccioException;
+import io.accio.base.AccioMDL;
+import io.accio.base.dto.Column;
+import io.accio.base.dto.Metric;
+import io.accio.base.dto.Model;
+import io.accio.base.dto.Relationship;
+import io.accio.base.type.PGType;
 import io.accio.base.type.PGTypes;
 import io.accio.main.pgcatalog.table.PgCatalogTable;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.accio.base.metadata.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static io.accio.base.type.PGTypes.getArrayType;
+import static io.accio.base.type.PgTypeUtils.pgNameToType;
 import static io.accio.main.pgcatalog.function.PgFunctions.ARRAY_IN;
 import static io.accio.main.pgcatalog.function.PgFunctions.ARRAY_OUT;
 import static io.accio.main.pgcatalog.function.PgFunctions.ARRAY_RECV;
@@ -66,6 +79,98 @@ public final class PgCatalogTableBuilderUtils
                 }).collect(toImmutableList());
     }
 
+    public static List<String> listAccioTables(AccioMDL accioMDL)
+    {
+        List<String> accioTables = new ArrayList<>();
+        accioMDL.listModels().stream().map(Model::getName).forEach(accioTables::add);
+        accioMDL.listMetrics().stream().map(Metric::getName).forEach(accioTables::add);
+        // TODO add view https://github.com/Canner/accio/issues/334
+        return accioTables;
+    }
+
+    /**
+     * List the columns of the models and metrics as (table_schema, table_name, column_name, ordinal_position, typoid, typlen).
+     */
+    public static List<Object[]> listAccioColumns(AccioMDL accioMDL)
+    {
+        // TODO add view https://github.com/Canner/accio/issues/334
+        ImmutableList.Builder<Object[]> records = ImmutableList.builder();
+        for (Model model : accioMDL.listModels()) {
+            List<Column> columns = model.getColumns();
+            for (int i = 0; i < columns.size(); i++) {
+                Column col = columns.get(i);
+                Optional<Relationship> colRelationship = getColRelationship(accioMDL, col);
+                Optional<PGType<?>> pgType = colRelationship.isEmpty()
+                        ? pgNameToType(col.getType())
+                        : getRelationshipType(accioMDL, model, colRelationship.get());
+                if (pgType.isPresent()) {
+                    records.add(new Object[] {accioMDL.getSchema(), model.getName(), col.getName(), i + 1, pgType.get().oid(), pgType.get().typeLen()});
+                }
+            }
+        }
+        // TODO Add timegrain as column https://github.com/Canner/accio/issues/342
+        for (Metric metric : accioMDL.listMetrics()) {
+            int i = 1;
+            List<Column> columns = new ArrayList<>();
+            columns.addAll(metric.getDimension());
+            columns.addAll(metric.getMeasure());
+            for (Column col : columns) {
+                Optional<PGType<?>> pgType = pgNameToType(col.getType());
+                if (pgType.isPresent()) {
+                    records.add(new Object[] {accioMDL.getSchema(), metric.getName(), col.getName(), i, pgType.get().oid(), pgType.get().typeLen()});
+                    i = i + 1;
+                }
+            }
+        }
+        return records.build();
+    }
+
+    private static Optional<PGType<?>> getRelationshipType(AccioMDL accioMDL, Model model, Relationship relationship)
+    {
+        if (model.getName().equals(relationship.getModels().get(0))) {
+            Optional<Model> rightModel = accioMDL.getModel(relationship.getModels().get(1));
+            switch (relationship.getJoinType()) {
+                case ONE_TO_ONE:
+                case MANY_TO_ONE:
+                    return rightModel.flatMap(PgCatalogTableBuilderUtils::getModelPrimaryKeyType);
+                case ONE_TO_MANY:
+                    return rightModel
+                            .flatMap(PgCatalogTableBuilderUtils::getModelPrimaryKeyType)
+                            .flatMap(type -> Optional.of(getArrayType(type.oid())));
+                default:
+                    throw new AccioException(GENERIC_INTERNAL_ERROR, "Get relationship type failed, relationship: " + relationship.getName());
+            }
+        }
+
+        Optional<Model> leftModel = accioMDL.getModel(relationship.getModels().get(0));
+        switch (relationship.getJoinType()) {
+            case ONE_TO_ONE:
+            case ONE_TO_MANY:
+                return leftModel.flatMap(PgCatalogTableBuilderUtils::getModelPrimaryKeyType);
+            case MANY_TO_ONE:
+                return leftModel
+                        .flatMap(PgCatalogTableBuilderUtils::getModelPrimaryKeyType)
+                        .flatMap(type -> Optional.of(getArrayType(type.oid())));
+            default:
+                throw new AccioException(GENERIC_INTERNAL_ERROR, "Get relationship type failed, relationship: " + relationship.getName());
+        }
+    }
+
+    private static Optional<Relationship> getColRelationship(AccioMDL accioMDL, Column col)
+    {
+        if (col.getRelationship().isEmpty()) {
+            return Optional.empty();
+        }
+        return accioMDL.getRelationship(col.getRelationship().get());
+    }
+
+    private static Optional<PGType<?>> getModelPrimaryKeyType(Model model)
+    {
+        String primaryKey = model.getPrimaryKey();
+        Optional<Column> column = model.getColumns().stream().filter(col -> col.getName().equals(primaryKey)).findFirst();
+        return column.flatMap(value -> pgNameToType(value.getType()));
+    }
+
     private static String withProcHash(String key)
     {
         return withHash("PROC" + rewriteTyp(key));
@@ -35,5 +35,5 @@ public abstract class PgFunctionBuilder
         LOG.info("pg_catalog.%s has created or updated", pgFunction.getName());
     }
 
-    protected abstract String generateCreateFunction(PgFunction pgFunction);
+    public abstract String generateCreateFunction(PgFunction pgFunction);
 }
@@ -32,7 +32,7 @@ public class PostgresPgFunctionBuilder
     }
 
     @Override
-    protected String generateCreateFunction(PgFunction pgFunction)
+    public String generateCreateFunction(PgFunction pgFunction)
     {
         throw new AccioException(GENERIC_INTERNAL_ERROR, "Postgres no need to invoke this method");
     }
@@ -14,22 +14,33 @@
 
 package io.accio.main.pgcatalog.regtype;
 
-import com.google.common.collect.Streams;
+import com.google.common.collect.ImmutableListMultimap;
 import io.accio.base.AccioException;
 import io.accio.main.sql.PgOidTypeTableInfo;
 
-import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
+import static com.google.common.collect.ImmutableListMultimap.toImmutableListMultimap;
 import static io.accio.base.metadata.StandardErrorCode.NOT_FOUND;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Resolve the reg objects from an index of the pg_catalog records. The index is built once for each
+ * catalog version of {@link PgMetadata} instead of listing the records for every cast. The first missed
+ * lookup of a catalog version rebuilds the index, so the objects created after the index was built are
+ * found. The rebuilt index is final for the catalog version, the later misses are answered from it
+ * without listing the records again.
+ */
 public abstract class AbstractRegObjectFactory
 {
     protected final PgMetadata pgMetadata;
     protected final PgOidTypeTableInfo pgOidTypeTableInfo;
 
+    private volatile RegObjectIndex index;
+
     protected AbstractRegObjectFactory(PgMetadata pgMetadata, PgOidTypeTableInfo pgOidTypeTableInfo)
     {
         this.pgMetadata = requireNonNull(pgMetadata, "pgMetadata is null");
@@ -39,7 +50,7 @@ public abstract class AbstractRegObjectFactory
     public RegObject of(String objName)
     {
         requireNonNull(objName, "obj name can't be null");
-        Optional<RegObject> result = Streams.stream(this::getPgTableRecords).filter(regObject -> regObject.getName().equals(objName)).findFirst();
+        Optional<RegObject> result = lookup(index -> index.byName.get(objName).stream().findFirst());
         if (result.isEmpty()) {
             throw new AccioException(NOT_FOUND, format("%s does not exist", objName));
         }
@@ -48,7 +59,7 @@ public abstract class AbstractRegObjectFactory
 
     public RegObject of(int oid)
     {
-        Optional<RegObject> result = Streams.stream(this::getPgTableRecords).filter(regObject -> regObject.getOid() == oid).findFirst();
+        Optional<RegObject> result = lookup(index -> index.byOid.get((long) oid).stream().findFirst());
         if (result.isEmpty()) {
             throw new AccioException(NOT_FOUND, format("RegObject oid %s does not exist", oid));
         }
@@ -63,11 +74,59 @@ public abstract class AbstractRegObjectFactory
         // It looks like for compatibility with clients it is good enough
         // to not mirror this behavior.
         requireNonNull(objName, "obj name can't be null");
-        return Streams.stream(this::getPgTableRecords).filter(regObject -> regObject.getOid() == oid && regObject.getName().equals(objName)).findFirst();
+        return lookup(index -> index.byOid.get((long) oid).stream().filter(regObject -> regObject.getName().equals(objName)).findFirst());
+    }
+
+    protected List<RegObject> getPgTableRecords()
+    {
+        return pgMetadata.list(pgOidTypeTableInfo);
     }
 
-    protected Iterator<RegObject> getPgTableRecords()
+    private Optional<RegObject> lookup(Function<RegObjectIndex, Optional<RegObject>> lookup)
     {
-        return pgMetadata.list(pgOidTypeTableInfo).iterator();
+        RegObjectIndex current = getIndex();
+        Optional<RegObject> result = lookup.apply(current);
+        if (result.isPresent() || current.rebuiltOnMiss) {
+            return result;
+        }
+        return lookup.apply(rebuildIndex(current, true));
+    }
+
+    private RegObjectIndex getIndex()
+    {
+        RegObjectIndex current = index;
+        if (current != null && current.catalogVersion == pgMetadata.getCatalogVersion()) {
+            return current;
+        }
+        return rebuildIndex(current, false);
+    }
+
+    private synchronized RegObjectIndex rebuildIndex(RegObjectIndex stale, boolean onMiss)
+    {
+        // another thread may have rebuilt it while this one was waiting
+        if (index != stale && index.catalogVersion == pgMetadata.getCatalogVersion()) {
+            return index;
+        }
+        // read the version before listing, an invalidation during the listing triggers another rebuild
+        long catalogVersion = pgMetadata.getCatalogVersion();
+        index = new RegObjectIndex(catalogVersion, getPgTableRecords(), onMiss);
+        return index;
+    }
+
+    private static class RegObjectIndex
+    {
+        private final long catalogVersion;
+        private final ImmutableListMultimap<Long, RegObject> byOid;
+        private final ImmutableListMultimap<String, RegObject> byName;
+        // a miss on an index rebuilt for a miss doesn't rebuild it again
+        private final boolean rebuiltOnMiss;
+
+        private RegObjectIndex(long catalogVersion, List<RegObject> regObjects, boolean rebuiltOnMiss)
+        {
+            this.catalogVersion = catalogVersion;
+            this.byOid = regObjects.stream().collect(toImmutableListMultimap(RegObject::getOid, regObject -> regObject));
+            this.byName = regObjects.stream().collect(toImmutableListMultimap(RegObject::getName, regObject -> regObject));
+            this.rebuiltOnMiss = rebuiltOnMiss;
+        }
     }
 }
@@ -18,12 +18,16 @@ import io.accio.base.AccioException;
 import io.accio.main.sql.PgOidTypeTableInfo;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static io.accio.base.metadata.StandardErrorCode.NOT_FOUND;
 import static java.lang.String.format;
 
 public abstract class PgMetadata
 {
+    // bumped whenever the pg_catalog is re-initialized, the cached reg objects of the older versions are rebuilt
+    private final AtomicLong catalogVersion = new AtomicLong();
+
     public List<RegObject> list(PgOidTypeTableInfo pgOidTypeTableInfo)
     {
         switch (pgOidTypeTableInfo) {
@@ -35,6 +39,16 @@ public abstract class PgMetadata
         throw new AccioException(NOT_FOUND, format("Undefined oid type %s", pgOidTypeTableInfo.name()));
     }
 
+    public long getCatalogVersion()
+    {
+        return catalogVersion.get();
+    }
+
+    public void invalidate()
+    {
+        catalogVersion.incrementAndGet();
+    }
+
     protected abstract List<RegObject> listRegProc();
 
     protected abstract List<RegObject> listRegClass();
@@ -28,9 +28,11 @@ import java.util.function.BiConsumer;
 
 import static io.accio.base.metadata.StandardErrorCode.GENERIC_INTERNAL_ERROR;
 import static io.accio.base.metadata.StandardErrorCode.NOT_FOUND;
+import static io.accio.base.metadata.StandardErrorCode.PERMISSION_DENIED;
 import static java.lang.String.format;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.FORBIDDEN;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 
 public final class AccioExceptionMapper
@@ -84,6 +86,13 @@ public final class AccioExceptionMapper
                             .entity(createErrorMessageDto(exception))
                             .build();
                 }
+                if (exception.getErrorCode().equals(PERMISSION_DENIED.toErrorCode())) {
+                    return Response
+                            .status(FORBIDDEN)
+                            .type(APPLICATION_JSON)
+                            .entity(createErrorMessageDto(exception))
+                            .build();
+                }
                 return Response
                         .status(BAD_REQUEST)
                         .type(APPLICATION_JSON)
@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.web;
+
+import com.google.common.base.CaseFormat;
+
+import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.util.Objects.requireNonNull;
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+
+/**
+ * Render the numeric attributes of the accio MBeans as one {@code name value} line per attribute,
+ * e.g. {@code accio_wire_protocol_stats_query_time_five_minutes_p95 12.0}. JMX stays the single
+ * source of the metrics, this is only for the scrapers which can't read JMX.
+ */
+@Path("/v1/metrics")
+public class MetricsResource
+{
+    private static final String DOMAIN_PREFIX = "io.accio";
+
+    private final MBeanServer mbeanServer;
+
+    @Inject
+    public MetricsResource(MBeanServer mbeanServer)
+    {
+        this.mbeanServer = requireNonNull(mbeanServer, "mbeanServer is null");
+    }
+
+    @GET
+    @Produces(TEXT_PLAIN)
+    public String getMetrics()
+    {
+        StringBuilder builder = new StringBuilder();
+        Set<ObjectName> names = new TreeSet<>(Comparator.comparing(ObjectName::getCanonicalName));
+        names.addAll(mbeanServer.queryNames(null, null));
+        for (ObjectName name : names) {
+            if (!name.getDomain().startsWith(DOMAIN_PREFIX) || name.getKeyProperty("name") == null) {
+                continue;
+            }
+            try {
+                MBeanAttributeInfo[] attributes = mbeanServer.getMBeanInfo(name).getAttributes();
+                Arrays.sort(attributes, Comparator.comparing(MBeanAttributeInfo::getName));
+                for (MBeanAttributeInfo attribute : attributes) {
+                    if (attribute.isReadable()) {
+                        appendMetric(builder, name, attribute.getName());
+                    }
+                }
+            }
+            catch (JMException e) {
+                // the MBean is unregistered in the meantime
+            }
+        }
+        return builder.toString();
+    }
+
+    private void appendMetric(StringBuilder builder, ObjectName name, String attribute)
+    {
+        Object value;
+        try {
+            value = mbeanServer.getAttribute(name, attribute);
+        }
+        catch (JMException | RuntimeException e) {
+            return;
+        }
+        if (value instanceof Boolean) {
+            value = (Boolean) value ? 1 : 0;
+        }
+        if (!(value instanceof Number)) {
+            return;
+        }
+        builder.append("accio_")
+                .append(toSnakeCase(name.getKeyProperty("name")))
+                .append('_')
+                .append(toSnakeCase(attribute.replace('.', '_')))
+                .append(' ')
+                .append(value)
+                .append('\n');
+    }
+
+    static String toSnakeCase(String name)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (String part : name.split("_")) {
+            if (builder.length() > 0) {
+                builder.append('_');
+            }
+            builder.append(CaseFormat.UPPER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, part));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.web;
+
+import io.accio.base.AccioException;
+import io.accio.main.PostgresWireProtocolConfig;
+import io.accio.main.wireprotocol.QueryInfo;
+import io.accio.main.wireprotocol.QueryRegistry;
+
+import javax.inject.Inject;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+
+import java.util.List;
+
+import static io.accio.base.metadata.StandardErrorCode.NOT_FOUND;
+import static io.accio.base.metadata.StandardErrorCode.PERMISSION_DENIED;
+import static io.accio.main.PostgresWireProtocolConfig.PG_WIRE_PROTOCOL_QUERY_API_ENABLED;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+@Path("/v1/query")
+public class QueryResource
+{
+    private final QueryRegistry queryRegistry;
+    private final boolean enabled;
+
+    @Inject
+    public QueryResource(QueryRegistry queryRegistry, PostgresWireProtocolConfig config)
+    {
+        this.queryRegistry = requireNonNull(queryRegistry, "queryRegistry is null");
+        this.enabled = requireNonNull(config, "config is null").isQueryApiEnabled();
+    }
+
+    @GET
+    @Produces(APPLICATION_JSON)
+    public List<QueryInfo> getQueries()
+    {
+        checkEnabled();
+        return queryRegistry.getQueries();
+    }
+
+    @GET
+    @Path("{queryId}")
+    @Produces(APPLICATION_JSON)
+    public QueryInfo getQuery(@PathParam("queryId") long queryId)
+    {
+        checkEnabled();
+        return queryRegistry.getQuery(queryId)
+                .orElseThrow(() -> queryNotFound(queryId));
+    }
+
+    @DELETE
+    @Path("{queryId}")
+    public void killQuery(@PathParam("queryId") long queryId)
+    {
+        checkEnabled();
+        if (!queryRegistry.kill(queryId)) {
+            throw queryNotFound(queryId);
+        }
+    }
+
+    private void checkEnabled()
+    {
+        // the http api has no authentication, don't expose the statements of all users and the kill action by default
+        if (!enabled) {
+            throw new AccioException(PERMISSION_DENIED, format("The query api is disabled, set %s=true to enable it", PG_WIRE_PROTOCOL_QUERY_API_ENABLED));
+        }
+    }
+
+    private static AccioException queryNotFound(long queryId)
+    {
+        return new AccioException(NOT_FOUND, format("Query %s not found", queryId));
+    }
+}
@@ -15,6 +15,8 @@
 package io.accio.main.web;
 
 import io.accio.main.AccioManager;
+import io.accio.main.metadata.Metadata;
+import io.accio.main.pgcatalog.regtype.PgMetadata;
 
 import javax.inject.Inject;
 import javax.ws.rs.PUT;
@@ -31,11 +33,15 @@ import static java.util.Objects.requireNonNull;
 public class ReloadResource
 {
     private final AccioManager accioManager;
+    private final Metadata metadata;
+    private final PgMetadata pgMetadata;
 
     @Inject
-    public ReloadResource(AccioManager accioManager)
+    public ReloadResource(AccioManager accioManager, Metadata metadata, PgMetadata pgMetadata)
     {
         this.accioManager = requireNonNull(accioManager, "accioManager is null");
+        this.metadata = requireNonNull(metadata, "metadata is null");
+        this.pgMetadata = requireNonNull(pgMetadata, "pgMetadata is null");
     }
 
     @PUT
@@ -43,6 +49,9 @@ public class ReloadResource
             throws IOException
     {
         accioManager.loadAccioMDLFromFile();
+        // a reload also picks up the changes of the remote database
+        metadata.invalidateCache();
+        pgMetadata.invalidate();
         asyncResponse.resume(Response.ok().build());
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A statement with what {@link StatementClassifier} learned about it in its single pass: the type, the leading
+ * tokens and the words outside the quotes and comments.
+ */
+public final class ClassifiedStatement
+{
+    public enum Type
+    {
+        EMPTY,
+        TRANSACTION_CONTROL,
+        IGNORED_COMMAND,
+        SESSION_COMMAND,
+        QUERY,
+        OTHER
+    }
+
+    private final String sql;
+    private final Type type;
+    private final List<String> leadingTokens;
+    private final Set<String> words;
+
+    ClassifiedStatement(String sql, Type type, List<String> leadingTokens, Set<String> words)
+    {
+        this.sql = requireNonNull(sql, "sql is null");
+        this.type = requireNonNull(type, "type is null");
+        this.leadingTokens = ImmutableList.copyOf(requireNonNull(leadingTokens, "leadingTokens is null"));
+        this.words = ImmutableSet.copyOf(requireNonNull(words, "words is null"));
+    }
+
+    public String getSql()
+    {
+        return sql;
+    }
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    /**
+     * The commands accio acknowledges without executing them, e.g. the transaction control and the session properties
+     * which aren't supported.
+     */
+    public boolean isIgnored()
+    {
+        return type == Type.TRANSACTION_CONTROL || type == Type.IGNORED_COMMAND;
+    }
+
+    public boolean startsWith(String keyword)
+    {
+        return !leadingTokens.isEmpty() && leadingTokens.get(0).equalsIgnoreCase(keyword);
+    }
+
+    /**
+     * @param word the lower case word
+     */
+    public boolean containsWord(String word)
+    {
+        return words.contains(word);
+    }
+
+    /**
+     * The same statement after a rewriting which doesn't change its tokens, e.g. the parameter markers.
+     */
+    ClassifiedStatement withSql(String sql)
+    {
+        return new ClassifiedStatement(sql, type, leadingTokens, words);
+    }
+
+    List<String> getLeadingTokens()
+    {
+        return leadingTokens;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static io.accio.base.type.IntegerType.INTEGER;
+import static io.accio.base.type.VarcharType.VARCHAR;
+import static io.accio.main.wireprotocol.IntrospectionQuery.singleValue;
+import static io.accio.main.wireprotocol.PostgresWireProtocol.DEFAULT_PG_CONFIGS;
+import static java.lang.String.format;
+
+/**
+ * The statements the drivers and BI tools send when they connect or check a connection, e.g. {@code SELECT version()}
+ * or {@code SHOW TRANSACTION ISOLATION LEVEL}. They are matched by the normalized statement text and answered by the
+ * session without rewriting, planning and a round trip to the data source.
+ */
+public final class IntrospectionQueries
+{
+    private IntrospectionQueries() {}
+
+    private static final IntrospectionQuery VERSION = singleValue("version", VARCHAR,
+            session -> format("PostgreSQL %s", DEFAULT_PG_CONFIGS.get(PostgresSessionProperties.SERVER_VERSION)));
+    private static final IntrospectionQuery CURRENT_SCHEMA = singleValue("current_schema", VARCHAR, WireProtocolSession::getCurrentSchema);
+    private static final IntrospectionQuery CURRENT_DATABASE = singleValue("current_database", VARCHAR, WireProtocolSession::getCurrentDatabase);
+    private static final IntrospectionQuery CURRENT_USER = singleValue("current_user", VARCHAR, WireProtocolSession::getClientUser);
+    private static final IntrospectionQuery TRANSACTION_ISOLATION = singleValue("transaction_isolation", VARCHAR, session -> "read uncommitted");
+    private static final IntrospectionQuery MAX_IDENTIFIER_LENGTH = singleValue("max_identifier_length", INTEGER, session -> 63);
+    private static final IntrospectionQuery DATE_STYLE = singleValue("DateStyle", VARCHAR,
+            session -> DEFAULT_PG_CONFIGS.get(PostgresSessionProperties.DATE_STYLE));
+    private static final IntrospectionQuery STANDARD_CONFORMING_STRINGS = singleValue("standard_conforming_strings", VARCHAR, session -> "on");
+    private static final IntrospectionQuery SELECT_ONE = singleValue("?column?", INTEGER, session -> 1);
+
+    private static final Map<String, IntrospectionQuery> QUERIES = ImmutableMap.<String, IntrospectionQuery>builder()
+            .put("select version()", VERSION)
+            .put("select pg_catalog.version()", VERSION)
+            .put("select current_schema()", CURRENT_SCHEMA)
+            .put("select current_schema", CURRENT_SCHEMA)
+            .put("select pg_catalog.current_schema()", CURRENT_SCHEMA)
+            .put("select current_database()", CURRENT_DATABASE)
+            .put("select pg_catalog.current_database()", CURRENT_DATABASE)
+            .put("select current_user", CURRENT_USER)
+            .put("show transaction isolation level", TRANSACTION_ISOLATION)
+            .put("show transaction_isolation", TRANSACTION_ISOLATION)
+            .put("show max_identifier_length", MAX_IDENTIFIER_LENGTH)
+            .put("show datestyle", DATE_STYLE)
+            .put("show standard_conforming_strings", STANDARD_CONFORMING_STRINGS)
+            .put("select 1", SELECT_ONE)
+            .build();
+
+    public static Optional<IntrospectionQuery> match(String statement)
+    {
+        return Optional.ofNullable(QUERIES.get(normalize(statement)));
+    }
+
+    /**
+     * Lower case the statement outside the quotes, collapse the whitespaces and drop the ones around the
+     * punctuations, e.g. {@code SELECT  pg_catalog.version( ) ;} becomes {@code select pg_catalog.version()}.
+     */
+    static String normalize(String statement)
+    {
+        StringBuilder builder = new StringBuilder(statement.length());
+        char quote = 0;
+        boolean whitespace = false;
+        for (int i = 0; i < statement.length(); i++) {
+            char c = statement.charAt(i);
+            if (quote != 0) {
+                builder.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                whitespace = true;
+                continue;
+            }
+            if (whitespace && builder.length() > 0 && !isPunctuation(c) && !isPunctuation(builder.charAt(builder.length() - 1))) {
+                builder.append(' ');
+            }
+            whitespace = false;
+            if (c == '\'' || c == '"') {
+                quote = c;
+            }
+            builder.append(Character.toLowerCase(c));
+        }
+        while (builder.length() > 0 && builder.charAt(builder.length() - 1) == ';') {
+            builder.setLength(builder.length() - 1);
+        }
+        return builder.toString();
+    }
+
+    private static boolean isPunctuation(char c)
+    {
+        return c == '(' || c == ')' || c == ',' || c == ';' || c == '.' || c == '=';
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import com.google.common.collect.ImmutableList;
+import io.accio.base.Column;
+import io.accio.base.ConnectorRecordIterator;
+import io.accio.base.type.PGType;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A statement answered by the session itself. It returns the rows computed from the session or the
+ * server state, and the columns are known before the statement is executed.
+ */
+public class IntrospectionQuery
+{
+    private final List<Column> columns;
+    private final List<PGType> types;
+    private final Function<WireProtocolSession, List<Object[]>> rows;
+
+    private IntrospectionQuery(List<Column> columns, Function<WireProtocolSession, List<Object[]>> rows)
+    {
+        this.columns = ImmutableList.copyOf(requireNonNull(columns, "columns is null"));
+        ImmutableList.Builder<PGType> types = ImmutableList.builder();
+        columns.forEach(column -> types.add(column.getType()));
+        this.types = types.build();
+        this.rows = requireNonNull(rows, "rows is null");
+    }
+
+    public static IntrospectionQuery singleValue(String columnName, PGType<?> type, Function<WireProtocolSession, Object> value)
+    {
+        // the value may be null, e.g. the session has no default schema
+        return new IntrospectionQuery(
+                ImmutableList.of(new Column(columnName, type)),
+                session -> Collections.singletonList(new Object[] {value.apply(session)}));
+    }
+
+    public static IntrospectionQuery table(List<Column> columns, Function<WireProtocolSession, List<Object[]>> rows)
+    {
+        return new IntrospectionQuery(columns, rows);
+    }
+
+    public List<Column> getColumns()
+    {
+        return columns;
+    }
+
+    public ConnectorRecordIterator execute(WireProtocolSession session)
+    {
+        return new RowIterator(types, rows.apply(session).iterator());
+    }
+
+    private static class RowIterator
+            implements ConnectorRecordIterator
+    {
+        private final List<PGType> types;
+        private final Iterator<Object[]> rows;
+
+        private RowIterator(List<PGType> types, Iterator<Object[]> rows)
+        {
+            this.types = types;
+            this.rows = rows;
+        }
+
+        @Override
+        public List<PGType> getTypes()
+        {
+            return types;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return rows.hasNext();
+        }
+
+        @Override
+        public Object[] next()
+        {
+            return rows.next();
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -262,9 +262,11 @@ public class Messages
      * <p>
      * ByteN
      * The value of the column, in the format indicated by the associated format code. n is the above length.
+     *
+     * @return the number of the bytes of the message
      */
     @SuppressWarnings({"unchecked", "rawtypes"})
-    static void sendDataRow(Channel channel, Object[] row, List<PGType> schema, @Nullable FormatCodes.FormatCode[] formatCodes)
+    static int sendDataRow(Channel channel, Object[] row, List<PGType> schema, @Nullable FormatCodes.FormatCode[] formatCodes)
     {
         int length = 4 + 2;
 
@@ -301,6 +303,7 @@ public class Messages
 
         buffer.setInt(1, length);
         channel.write(buffer);
+        return length + 1;
     }
 
     static void writeCString(ByteBuf buffer, byte[] valBytes)
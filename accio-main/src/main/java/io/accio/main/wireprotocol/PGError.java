@@ -142,6 +142,7 @@ public class PGError
                 put(UndefinedErrorCode.USER_ERROR, PGErrorStatus.CANNOT_CONNECT_NOW);
                 put(StandardErrorCode.SYNTAX_ERROR, PGErrorStatus.SYNTAX_ERROR);
                 put(StandardErrorCode.USER_CANCELED, PGErrorStatus.QUERY_CANCELED);
+                put(StandardErrorCode.ADMINISTRATIVELY_KILLED, PGErrorStatus.QUERY_CANCELED);
                 put(StandardErrorCode.DIVISION_BY_ZERO, PGErrorStatus.DIVISION_BY_ZERO);
                 put(StandardErrorCode.INVALID_CAST_ARGUMENT, PGErrorStatus.INVALID_CHARACTER_VALUE_FOR_CAST);
                 put(StandardErrorCode.NOT_SUPPORTED, PGErrorStatus.FEATURE_NOT_SUPPORTED);
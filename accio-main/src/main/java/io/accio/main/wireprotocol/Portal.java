@@ -43,6 +43,8 @@ public class Portal
     private final List<Object> params;
     private ConnectorRecordIterator connectorRecordIterator;
     private long rowCount;
+    @Nullable
+    private RunningQuery runningQuery;
 
     @Nullable
     private final FormatCodes.FormatCode[] resultFormatCodes;
@@ -111,6 +113,20 @@ public class Portal
         this.rowCount = rowCount;
     }
 
+    @Nullable
+    public RunningQuery getRunningQuery()
+    {
+        return runningQuery;
+    }
+
+    public void setRunningQuery(RunningQuery runningQuery)
+    {
+        if (this.runningQuery != null) {
+            this.runningQuery.finish();
+        }
+        this.runningQuery = runningQuery;
+    }
+
     public boolean isSuspended()
     {
         return connectorRecordIterator != null;
@@ -141,6 +157,9 @@ public class Portal
     @PreDestroy
     protected void close()
     {
+        if (runningQuery != null) {
+            runningQuery.finish();
+        }
         if (connectorRecordIterator != null) {
             LOG.info("ConnectorRecordIterable is closing.");
             try {
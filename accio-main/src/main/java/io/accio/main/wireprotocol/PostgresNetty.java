@@ -22,11 +22,12 @@ import io.accio.main.AccioMetastore;
 import io.accio.main.PostgresWireProtocolConfig;
 import io.accio.main.metadata.Metadata;
 import io.accio.main.netty.ChannelBootstrapFactory;
+import io.accio.main.pgcatalog.LocalPgCatalog;
+import io.accio.main.pgcatalog.PgCatalogManager;
 import io.accio.main.pgcatalog.regtype.RegObjectFactory;
 import io.accio.main.wireprotocol.ssl.SslContextProvider;
 import io.accio.main.wireprotocol.ssl.SslReqHandler;
 import io.accio.preaggregation.PreAggregationManager;
-import io.accio.preaggregation.PreAggregationTableMapping;
 import io.airlift.log.Logger;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
@@ -89,7 +90,10 @@ public class PostgresNetty
     private BoundTransportAddress boundAddress;
     private final AccioMetastore accioMetastore;
     private final PreAggregationManager preAggregationManager;
-    private final PreAggregationTableMapping preAggregationTableMapping;
+    private final LocalPgCatalog localPgCatalog;
+    private final PgCatalogManager pgCatalogManager;
+    private final WireProtocolStats stats;
+    private final QueryRegistry queryRegistry;
 
     public PostgresNetty(
             NetworkService networkService,
@@ -100,7 +104,10 @@ public class PostgresNetty
             SqlConverter sqlConverter,
             AccioMetastore accioMetastore,
             PreAggregationManager preAggregationManager,
-            PreAggregationTableMapping preAggregationTableMapping)
+            LocalPgCatalog localPgCatalog,
+            PgCatalogManager pgCatalogManager,
+            WireProtocolStats stats,
+            QueryRegistry queryRegistry)
     {
         this.settings = toWireProtocolSettings();
         this.port = postgresWireProtocolConfig.getPort();
@@ -114,7 +121,10 @@ public class PostgresNetty
         this.sqlConverter = requireNonNull(sqlConverter, "sqlConverter is null");
         this.accioMetastore = requireNonNull(accioMetastore, "accioMetastore is null");
         this.preAggregationManager = requireNonNull(preAggregationManager, "preAggregationManager is null");
-        this.preAggregationTableMapping = requireNonNull(preAggregationTableMapping, "preAggregationTableMapping is null");
+        this.localPgCatalog = requireNonNull(localPgCatalog, "localPgCatalog is null");
+        this.pgCatalogManager = requireNonNull(pgCatalogManager, "pgCatalogManager is null");
+        this.stats = requireNonNull(stats, "stats is null");
+        this.queryRegistry = requireNonNull(queryRegistry, "queryRegistry is null");
     }
 
     public void start()
@@ -130,8 +140,8 @@ public class PostgresNetty
                 ChannelPipeline pipeline = ch.pipeline();
                 pipeline.addLast("open_channels", openChannels);
                 WireProtocolSession wireProtocolSession =
-                        new WireProtocolSession(regObjectFactory, connector, sqlConverter, accioMetastore, preAggregationManager, preAggregationTableMapping);
-                PostgresWireProtocol postgresWireProtocol = new PostgresWireProtocol(wireProtocolSession, new SslReqHandler(sslContextProvider));
+                        new WireProtocolSession(regObjectFactory, connector, sqlConverter, accioMetastore, preAggregationManager, localPgCatalog, pgCatalogManager, stats, queryRegistry);
+                PostgresWireProtocol postgresWireProtocol = new PostgresWireProtocol(wireProtocolSession, new SslReqHandler(sslContextProvider), stats);
                 pipeline.addLast("frame-decoder", postgresWireProtocol.decoder);
                 pipeline.addLast("handler", postgresWireProtocol.handler);
             }
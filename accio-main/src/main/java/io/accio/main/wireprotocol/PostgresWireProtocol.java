@@ -16,7 +16,6 @@ package io.accio.main.wireprotocol;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import io.accio.base.AccioException;
-import io.accio.base.Column;
 import io.accio.base.ConnectorRecordIterator;
 import io.accio.base.type.PGType;
 import io.accio.base.type.PGTypes;
@@ -34,14 +33,15 @@ import javax.annotation.Nullable;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
-import java.util.Set;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -49,8 +49,9 @@ import java.util.regex.Pattern;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static io.accio.base.metadata.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static io.accio.main.Utils.closeQuietly;
+import static io.airlift.units.Duration.nanosSince;
 import static java.lang.String.format;
-import static java.util.Locale.ENGLISH;
 import static java.util.Objects.isNull;
 import static java.util.Objects.requireNonNull;
 
@@ -68,16 +69,6 @@ public class PostgresWireProtocol
 
     // set (session) property { = | to } { value | 'value' }
     private static final Pattern SET_STMT_PATTERN = Pattern.compile("(?i)^ *SET( +SESSION)* +(?<property>[a-zA-Z0-9_]+)( *= *| +TO +)(?<value>[^ ']+|'.*')");
-    private static final Pattern SET_TRANSACTION_PATTERN = Pattern.compile("SET +(SESSION CHARACTERISTICS AS )? *TRANSACTION");
-    private static final Pattern SET_SESSION_AUTHORIZATION = Pattern.compile("SET (SESSION |LOCAL )?SESSION AUTHORIZATION");
-
-    private static final Set<String> IGNORED_COMMAND = Set.of(
-            "BEGIN",
-            "COMMIT",
-            "DISCARD",
-            "RESET",
-            "CLOSE",
-            "UNLISTEN");
 
     private static final Logger LOG = Logger.get(PostgresWireProtocol.class);
 
@@ -89,6 +80,7 @@ public class PostgresWireProtocol
     private final SslReqHandler sslReqHandler;
 
     private final WireProtocolSession wireProtocolSession;
+    private final WireProtocolStats stats;
 
     enum State
     {
@@ -101,10 +93,11 @@ public class PostgresWireProtocol
 
     private State state = State.PRE_STARTUP;
 
-    public PostgresWireProtocol(WireProtocolSession wireProtocolSession, SslReqHandler sslReqHandler)
+    public PostgresWireProtocol(WireProtocolSession wireProtocolSession, SslReqHandler sslReqHandler, WireProtocolStats stats)
     {
         this.wireProtocolSession = requireNonNull(wireProtocolSession, "wireProtocolSession is null");
         this.sslReqHandler = sslReqHandler;
+        this.stats = requireNonNull(stats, "stats is null");
         this.decoder = new MessageDecoder();
         this.handler = new MessageHandler();
     }
@@ -234,74 +227,83 @@ public class PostgresWireProtocol
         Messages.sendReadyForQuery(channel, TransactionState.IDLE);
     }
 
-    private void handleSimpleQuery(ByteBuf buffer, final Channel channel)
+    private CompletableFuture<?> handleSimpleQuery(ByteBuf buffer, final Channel channel)
     {
         String statement = readCString(buffer);
         LOG.debug("get statement: %s", statement);
         checkArgument(statement != null, "query must not be null");
 
-        List<String> queries = QueryStringSplitter.splitQuery(statement);
+        List<ClassifiedStatement> queries = StatementClassifier.split(statement);
 
         CompletableFuture<?> composedFuture = CompletableFuture.completedFuture(null);
-        for (String query : queries) {
+        for (ClassifiedStatement query : queries) {
             composedFuture = composedFuture.thenCompose(result -> handleSingleQuery(query, channel));
         }
-        composedFuture.whenComplete(new ReadyForQueryCallback(channel, TransactionState.IDLE));
+        return composedFuture.whenComplete(new ReadyForQueryCallback(channel, TransactionState.IDLE));
     }
 
-    private CompletableFuture<?> handleSingleQuery(String statement, Channel channel)
+    private CompletableFuture<?> handleSingleQuery(ClassifiedStatement classified, Channel channel)
     {
-        if (statement.isEmpty() || ";".equals(statement.trim())) {
+        String statement = classified.getSql();
+        if (classified.getType() == ClassifiedStatement.Type.EMPTY) {
             Messages.sendEmptyQueryResponse(channel);
             return CompletableFuture.completedFuture(null);
         }
-        if (isIgnoredCommand(statement)) {
+        if (classified.isIgnored()) {
             sendHardWiredSessionProperty(statement);
             Messages.sendCommandComplete(channel, statement, 0);
             return CompletableFuture.completedFuture(null);
         }
+        long start = System.nanoTime();
+        Portal portal = null;
+        CompletableFuture<Optional<ConnectorRecordIterator>> execution;
         try {
-            wireProtocolSession.parse("", statement, ImmutableList.of());
+            wireProtocolSession.parse("", classified, ImmutableList.of());
             wireProtocolSession.bind("", "", ImmutableList.of(), null);
-            Optional<ConnectorRecordIterator> iterator = wireProtocolSession.execute("").join();
-            if (iterator.isEmpty()) {
-                sendHardWiredSessionProperty(statement);
-                Messages.sendCommandComplete(channel, statement, 0);
-                return CompletableFuture.completedFuture(null);
-            }
-            ResultSetSender resultSetSender = new ResultSetSender(
-                    statement,
-                    channel,
-                    iterator.get(),
-                    0,
-                    0,
-                    null);
-            Messages.sendRowDescription(channel, wireProtocolSession.describePortal("").get(), null);
-            resultSetSender.sendResultSet();
-            return wireProtocolSession.sync();
+            portal = wireProtocolSession.getPortal("");
+            execution = wireProtocolSession.execute("");
         }
         catch (Exception e) {
-            LOG.error(e, format("Query failed. Statement: %s", statement));
-            Messages.sendErrorResponse(channel, e);
-            CompletableFuture<?> future = CompletableFuture.completedFuture(null);
-            future.completeExceptionally(e);
-            return future;
-        }
-    }
-
-    public static boolean isIgnoredCommand(String statement)
-    {
-        Optional<String> command = Arrays.stream(statement.toUpperCase(ENGLISH).split(" |;"))
-                .filter(split -> !split.isEmpty())
-                .findFirst();
-
-        if ((command.isPresent() && IGNORED_COMMAND.contains(command.get())) ||
-                SET_TRANSACTION_PATTERN.matcher(statement).find() || SET_SESSION_AUTHORIZATION.matcher(statement).find()) {
-            return true;
-        }
-
-        Matcher matcher = SET_STMT_PATTERN.matcher(statement);
-        return matcher.find() && PostgresSessionProperties.isIgnoredSessionProperties(matcher.group("property"));
+            return CompletableFuture.failedFuture(failQuery(channel, statement, start, portal == null ? null : portal.getRunningQuery(), e));
+        }
+        RunningQuery runningQuery = portal.getRunningQuery();
+        // the netty thread isn't held while the backend works, the result is sent on it once it's ready
+        return execution
+                .thenComposeAsync(iterator -> {
+                    if (iterator.isEmpty()) {
+                        sendHardWiredSessionProperty(statement);
+                        Messages.sendCommandComplete(channel, statement, 0);
+                        runningQuery.finish();
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return wireProtocolSession.describePortalAsync("")
+                            .whenComplete((columns, e) -> {
+                                if (e != null) {
+                                    closeQuietly(iterator.get());
+                                }
+                            })
+                            .thenAcceptAsync(columns -> {
+                                ResultSetSender resultSetSender = new ResultSetSender(
+                                        statement,
+                                        channel,
+                                        iterator.get(),
+                                        0,
+                                        0,
+                                        null,
+                                        stats,
+                                        runningQuery);
+                                Messages.sendRowDescription(channel, columns.get(), null);
+                                resultSetSender.sendResultSet();
+                            }, channel.eventLoop())
+                            .thenCompose(ignored -> wireProtocolSession.sync());
+                }, channel.eventLoop())
+                .handleAsync((result, e) -> {
+                    if (e != null) {
+                        throw new CompletionException(failQuery(channel, statement, start, runningQuery, e));
+                    }
+                    stats.queryFinished(nanosSince(start));
+                    return result;
+                }, channel.eventLoop());
     }
 
     public static Optional<Pair<String, String>> parseSetStmt(String statement)
@@ -432,7 +434,7 @@ public class PostgresWireProtocol
      * | string portalName
      * | int32 maxRows (0 = unlimited)
      */
-    private void handleExecute(ByteBuf buffer, Channel channel)
+    private CompletableFuture<?> handleExecute(ByteBuf buffer, Channel channel)
     {
         String portalName = readCString(buffer);
         int maxRows = buffer.readInt();
@@ -445,41 +447,116 @@ public class PostgresWireProtocol
             statement = portal.getPreparedStatement().getOriginalStatement();
             if (statement.isEmpty()) {
                 Messages.sendEmptyQueryResponse(channel);
-                return;
+                return CompletableFuture.completedFuture(null);
             }
-            if (isIgnoredCommand(statement)) {
+            if (portal.getPreparedStatement().isIgnored()) {
                 sendHardWiredSessionProperty(statement);
                 Messages.sendCommandComplete(channel, statement, 0);
-                return;
+                return CompletableFuture.completedFuture(null);
             }
-
-            if (!portal.isSuspended()) {
-                Optional<ConnectorRecordIterator> connectorRecordIterable = wireProtocolSession.execute(portalName).join();
-                if (connectorRecordIterable.isEmpty()) {
-                    sendHardWiredSessionProperty(statement);
-                    Messages.sendCommandComplete(channel, statement, 0);
-                    return;
+            if (portal.isSuspended()) {
+                // the later executions of a suspended portal are part of the same query
+                try {
+                    sendResultSet(portal, statement, maxRows, channel);
+                }
+                catch (Exception e) {
+                    LOG.error(e, format("Execute query failed. Statement: %s. Root cause is %s", statement, e.getMessage()));
+                    Messages.sendErrorResponse(channel, finishFailedQuery(portal.getRunningQuery(), e));
                 }
-                portal.setResultSetSender(connectorRecordIterable.get());
+                return CompletableFuture.completedFuture(null);
             }
-
-            ConnectorRecordIterator connectorRecordIterable = portal.getConnectorRecordIterable();
-            FormatCodes.FormatCode[] resultFormatCodes = wireProtocolSession.getResultFormatCodes(portalName);
-            ResultSetSender resultSetSender = new ResultSetSender(
-                    statement,
-                    channel,
-                    connectorRecordIterable,
-                    maxRows,
-                    portal.getRowCount(),
-                    resultFormatCodes);
-            portal.setRowCount(resultSetSender.sendResultSet());
+            return executeNewQuery(portalName, portal, statement, maxRows, channel);
         }
         catch (Exception e) {
             LOG.error(e, format("Execute query failed. Statement: %s. Root cause is %s", statement, e.getMessage()));
             Messages.sendErrorResponse(channel, e);
+            return CompletableFuture.completedFuture(null);
         }
     }
 
+    private CompletableFuture<?> executeNewQuery(String portalName, Portal portal, String statement, int maxRows, Channel channel)
+    {
+        long start = System.nanoTime();
+        CompletableFuture<Optional<ConnectorRecordIterator>> execution;
+        try {
+            execution = wireProtocolSession.execute(portalName);
+        }
+        catch (Exception e) {
+            failQuery(channel, statement, start, portal.getRunningQuery(), e);
+            return CompletableFuture.completedFuture(null);
+        }
+        RunningQuery runningQuery = portal.getRunningQuery();
+        // the netty thread isn't held while the backend works, the result is sent on it once it's ready
+        return execution
+                .thenAcceptAsync(iterator -> {
+                    if (iterator.isEmpty()) {
+                        sendHardWiredSessionProperty(statement);
+                        Messages.sendCommandComplete(channel, statement, 0);
+                        runningQuery.finish();
+                        return;
+                    }
+                    if (!channel.isActive()) {
+                        // the portals were closed with the connection while the backend worked
+                        closeQuietly(iterator.get());
+                        runningQuery.finish();
+                        return;
+                    }
+                    portal.setResultSetSender(iterator.get());
+                    sendResultSet(portal, statement, maxRows, channel);
+                }, channel.eventLoop())
+                .handleAsync((result, e) -> {
+                    if (e != null) {
+                        failQuery(channel, statement, start, runningQuery, e);
+                        return null;
+                    }
+                    stats.queryFinished(nanosSince(start));
+                    return null;
+                }, channel.eventLoop());
+    }
+
+    private void sendResultSet(Portal portal, String statement, int maxRows, Channel channel)
+    {
+        ResultSetSender resultSetSender = new ResultSetSender(
+                statement,
+                channel,
+                portal.getConnectorRecordIterable(),
+                maxRows,
+                portal.getRowCount(),
+                portal.getResultFormatCodes(),
+                stats,
+                portal.getRunningQuery());
+        portal.setRowCount(resultSetSender.sendResultSet());
+    }
+
+    /**
+     * Report the failure of the query to the client and unregister it.
+     *
+     * @return the reported failure
+     */
+    private Throwable failQuery(Channel channel, String statement, long start, @Nullable RunningQuery runningQuery, Throwable e)
+    {
+        Throwable failure = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        stats.queryFailed(nanosSince(start));
+        LOG.error(failure, format("Query failed. Statement: %s", statement));
+        failure = finishFailedQuery(runningQuery, failure);
+        Messages.sendErrorResponse(channel, failure);
+        return failure;
+    }
+
+    /**
+     * Unregister the failed query.
+     *
+     * @return the failure to report, a killed query reports the kill instead of what the backend failed with
+     */
+    private static Throwable finishFailedQuery(@Nullable RunningQuery runningQuery, Throwable e)
+    {
+        if (runningQuery == null) {
+            return e;
+        }
+        runningQuery.finish();
+        return runningQuery.toFailure(e);
+    }
+
     private void handleSync(final Channel channel)
     {
         try {
@@ -502,47 +579,61 @@ public class PostgresWireProtocol
      * | 'S' = prepared statement or 'P' = portal
      * | string nameOfPortalOrStatement
      */
-    private void handleDescribeMessage(ByteBuf buffer, Channel channel)
+    private CompletableFuture<?> handleDescribeMessage(ByteBuf buffer, Channel channel)
     {
         try {
             byte type = buffer.readByte();
             String portalOrStatement = readCString(buffer);
 
             // TODO: check parameter's size equal to parameter type's size
+            CompletableFuture<?> described;
             switch (type) {
                 case 'P':
-                    Optional<List<Column>> columns = wireProtocolSession.describePortal(portalOrStatement);
-                    if (columns.isPresent()) {
-                        FormatCodes.FormatCode[] formatCodes = wireProtocolSession.getResultFormatCodes(portalOrStatement);
-                        Messages.sendRowDescription(channel, columns.get(), formatCodes);
-                        break;
-                    }
-                    Messages.sendNoData(channel);
+                    FormatCodes.FormatCode[] formatCodes = wireProtocolSession.getResultFormatCodes(portalOrStatement);
+                    described = wireProtocolSession.describePortalAsync(portalOrStatement)
+                            .thenAcceptAsync(columns -> {
+                                if (columns.isPresent()) {
+                                    Messages.sendRowDescription(channel, columns.get(), formatCodes);
+                                    return;
+                                }
+                                Messages.sendNoData(channel);
+                            }, channel.eventLoop());
                     break;
                 case 'S':
                     List<Integer> paramTypes = wireProtocolSession.describeStatement(portalOrStatement);
                     Messages.sendParameterDescription(channel, paramTypes);
                     wireProtocolSession.bind("", portalOrStatement, paramTypes.stream().map(ignore -> "null").collect(toImmutableList()), null);
-                    Optional<List<Column>> described = wireProtocolSession.describePortal("");
-                    if (described.isEmpty()) {
-                        Messages.sendNoData(channel);
-                    }
-                    else {
-                        // dry run for getting the row description
-                        Messages.sendRowDescription(channel, described.get(),
-                                described.get().stream().map(ignore -> FormatCodes.FormatCode.TEXT).collect(toImmutableList()).toArray(new FormatCodes.FormatCode[0]));
-                    }
+                    described = wireProtocolSession.describePortalAsync("")
+                            .thenAcceptAsync(columns -> {
+                                if (columns.isEmpty()) {
+                                    Messages.sendNoData(channel);
+                                    return;
+                                }
+                                // dry run for getting the row description
+                                Messages.sendRowDescription(channel, columns.get(),
+                                        columns.get().stream().map(ignore -> FormatCodes.FormatCode.TEXT).collect(toImmutableList()).toArray(new FormatCodes.FormatCode[0]));
+                            }, channel.eventLoop());
                     break;
                 default:
                     throw new AccioException(GENERIC_INTERNAL_ERROR, format("Type %s is invalid. We only support 'P' and 'S'.", type));
             }
+            return described.exceptionally(e -> {
+                sendDescribeError(channel, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                return null;
+            });
         }
         catch (Exception e) {
-            LOG.error(format("Describe message failed. Root cause is %s", e.getMessage()));
-            Messages.sendErrorResponse(channel, e);
+            sendDescribeError(channel, e);
+            return CompletableFuture.completedFuture(null);
         }
     }
 
+    private static void sendDescribeError(Channel channel, Throwable e)
+    {
+        LOG.error(format("Describe message failed. Root cause is %s", e.getMessage()));
+        Messages.sendErrorResponse(channel, e);
+    }
+
     /**
      * Flush Message
      * | 'H' | int32 len
@@ -598,11 +689,16 @@ public class PostgresWireProtocol
     private class MessageHandler
             extends SimpleChannelInboundHandler<ByteBuf>
     {
+        // the messages read while a previous one waits for the backend, only touched on the event loop
+        private final Queue<PendingMessage> pendingMessages = new ArrayDeque<>();
+        private boolean waiting;
+
         @Override
         public void channelRegistered(ChannelHandlerContext ctx)
         {
             LOG.debug("channel registered.");
             channel = ctx.channel();
+            stats.connectionOpened();
         }
 
         @Override
@@ -627,13 +723,43 @@ public class PostgresWireProtocol
                 case MSG_BODY:
                     state = PostgresWireProtocol.State.MSG_HEADER;
                     LOG.debug("msg=%s msgLength=%s readableBytes=%s", ((char) msgType), msgLength, buffer.readableBytes());
-                    dispatchMessage(buffer, channel);
+                    // released once it's handled, SimpleChannelInboundHandler releases it when this returns
+                    pendingMessages.add(new PendingMessage(msgType, buffer.retain()));
+                    processPendingMessages(channel);
                     return;
                 default:
                     throw new IllegalStateException("Illegal state: " + state);
             }
         }
 
+        /**
+         * Handle the messages in the order they came. A message which waits for the backend, e.g. an Execute,
+         * holds the later ones back until it's done, and the channel stops reading meanwhile. The event loop
+         * isn't blocked, it serves the other connections.
+         */
+        private void processPendingMessages(Channel channel)
+        {
+            while (!waiting && !pendingMessages.isEmpty()) {
+                PendingMessage message = pendingMessages.poll();
+                CompletableFuture<?> handled;
+                try {
+                    handled = dispatchMessage(message.type, message.buffer, channel);
+                }
+                finally {
+                    message.buffer.release();
+                }
+                if (!handled.isDone()) {
+                    waiting = true;
+                    channel.config().setAutoRead(false);
+                    handled.whenComplete((result, e) -> channel.eventLoop().execute(() -> {
+                        waiting = false;
+                        channel.config().setAutoRead(true);
+                        processPendingMessages(channel);
+                    }));
+                }
+            }
+        }
+
         /**
          * Simple Query Mode:
          * handleSimpleQuery()
@@ -644,45 +770,43 @@ public class PostgresWireProtocol
          * handleParseMessage() -> handleBindMessage() -> handleExecute() -> handleSync()
          * @see <a href="https://www.postgresql.org/docs/9.3/protocol-flow.html#PROTOCOL-FLOW-EXT-QUERY">PROTOCOL-FLOW-EXT-QUERY</a>
          */
-        private void dispatchMessage(ByteBuf buffer, Channel channel)
+        private CompletableFuture<?> dispatchMessage(byte msgType, ByteBuf buffer, Channel channel)
         {
             LOG.info("channel dispatch message. msgType: %s", msgType);
             switch (msgType) {
                 case 'Q': // Query (simple)
-                    handleSimpleQuery(buffer, channel);
-                    return;
+                    return handleSimpleQuery(buffer, channel);
                 case 'P':
                     handleParseMessage(buffer, channel);
-                    return;
+                    break;
                 case 'p':
                     handlePassword(buffer, channel);
-                    return;
+                    break;
                 case 'B':
                     handleBindMessage(buffer, channel);
-                    return;
+                    break;
                 case 'D':
-                    handleDescribeMessage(buffer, channel);
-                    return;
+                    return handleDescribeMessage(buffer, channel);
                 case 'E':
-                    handleExecute(buffer, channel);
-                    return;
+                    return handleExecute(buffer, channel);
                 case 'H':
                     handleFlush(channel);
-                    return;
+                    break;
                 case 'S':
                     handleSync(channel);
-                    return;
+                    break;
                 case 'C':
                     handleClose(buffer, channel);
-                    return;
+                    break;
                 case 'X': // Terminate (called when jdbc connection is closed)
                     channel.close();
-                    return;
+                    break;
                 default:
                     Messages.sendErrorResponse(
                             channel,
                             new AccioException(GENERIC_INTERNAL_ERROR, "Unsupported messageType: " + msgType));
             }
+            return CompletableFuture.completedFuture(null);
         }
 
         @Override
@@ -697,10 +821,26 @@ public class PostgresWireProtocol
         {
             LOG.debug("channelDisconnected");
             channel = null;
+            pendingMessages.forEach(message -> message.buffer.release());
+            pendingMessages.clear();
+            wireProtocolSession.close();
+            stats.connectionClosed();
             super.channelUnregistered(ctx);
         }
     }
 
+    private static class PendingMessage
+    {
+        private final byte type;
+        private final ByteBuf buffer;
+
+        private PendingMessage(byte type, ByteBuf buffer)
+        {
+            this.type = type;
+            this.buffer = buffer;
+        }
+    }
+
     /**
      * FrameDecoder that makes sure that a full message is in the buffer before delegating work to the MessageHandler
      */
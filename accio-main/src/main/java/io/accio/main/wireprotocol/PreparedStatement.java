@@ -14,6 +14,8 @@
 
 package io.accio.main.wireprotocol;
 
+import io.accio.preaggregation.PreAggregationStatement;
+
 import java.util.List;
 import java.util.Optional;
 
@@ -23,7 +25,10 @@ public class PreparedStatement
 
     private final String name;
     private final String statement;
-    private final Optional<String> preAggregationStatement;
+    private final Optional<PreAggregationStatement> preAggregationStatement;
+    private final Optional<String> localPgCatalogStatement;
+    private final boolean readsPgCatalog;
+    private final Optional<IntrospectionQuery> introspectionQuery;
     private final List<Integer> paramTypeOids;
     private final String originalStatement;
     private final boolean isSessionCommand;
@@ -41,7 +46,43 @@ public class PreparedStatement
     public PreparedStatement(
             String name,
             String statement,
-            Optional<String> preAggregationStatement,
+            Optional<PreAggregationStatement> preAggregationStatement,
+            List<Integer> paramTypeOids,
+            String originalStatement,
+            boolean isSessionCommand)
+    {
+        this(name, statement, preAggregationStatement, Optional.empty(), false, paramTypeOids, originalStatement, isSessionCommand);
+    }
+
+    public PreparedStatement(
+            String name,
+            String statement,
+            Optional<PreAggregationStatement> preAggregationStatement,
+            Optional<String> localPgCatalogStatement,
+            boolean readsPgCatalog,
+            List<Integer> paramTypeOids,
+            String originalStatement,
+            boolean isSessionCommand)
+    {
+        this(name, statement, preAggregationStatement, localPgCatalogStatement, readsPgCatalog, Optional.empty(), paramTypeOids, originalStatement, isSessionCommand);
+    }
+
+    public PreparedStatement(
+            String name,
+            IntrospectionQuery introspectionQuery,
+            List<Integer> paramTypeOids,
+            String originalStatement)
+    {
+        this(name, originalStatement, Optional.empty(), Optional.empty(), false, Optional.of(introspectionQuery), paramTypeOids, originalStatement, false);
+    }
+
+    private PreparedStatement(
+            String name,
+            String statement,
+            Optional<PreAggregationStatement> preAggregationStatement,
+            Optional<String> localPgCatalogStatement,
+            boolean readsPgCatalog,
+            Optional<IntrospectionQuery> introspectionQuery,
             List<Integer> paramTypeOids,
             String originalStatement,
             boolean isSessionCommand)
@@ -49,6 +90,9 @@ public class PreparedStatement
         this.name = name.isEmpty() ? CANNERFLOW_RESERVED_PREPARE_NAME : name;
         this.statement = statement;
         this.preAggregationStatement = preAggregationStatement;
+        this.localPgCatalogStatement = localPgCatalogStatement;
+        this.readsPgCatalog = readsPgCatalog;
+        this.introspectionQuery = introspectionQuery;
         this.paramTypeOids = paramTypeOids;
         this.originalStatement = originalStatement;
         this.isSessionCommand = isSessionCommand;
@@ -74,13 +118,39 @@ public class PreparedStatement
         return originalStatement;
     }
 
+    /**
+     * The statement is empty or a command which is acknowledged without executing it.
+     */
+    public boolean isIgnored()
+    {
+        return statement.isEmpty();
+    }
+
     public boolean isSessionCommand()
     {
         return isSessionCommand;
     }
 
-    public Optional<String> getPreAggregationStatement()
+    public Optional<PreAggregationStatement> getPreAggregationStatement()
     {
         return preAggregationStatement;
     }
+
+    public Optional<String> getLocalPgCatalogStatement()
+    {
+        return localPgCatalogStatement;
+    }
+
+    /**
+     * The statement reads pg_catalog tables. It reads them in the data source unless the local pg_catalog answers it.
+     */
+    public boolean readsPgCatalog()
+    {
+        return readsPgCatalog;
+    }
+
+    public Optional<IntrospectionQuery> getIntrospectionQuery()
+    {
+        return introspectionQuery;
+    }
 }
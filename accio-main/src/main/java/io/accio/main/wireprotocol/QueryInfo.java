@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.airlift.units.Duration;
+
+import javax.annotation.Nullable;
+
+import java.time.Instant;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The snapshot of a {@link RunningQuery}.
+ */
+public class QueryInfo
+{
+    private final long queryId;
+    private final int connectionId;
+    private final String user;
+    private final String database;
+    private final String statement;
+    private final RunningQuery.Phase phase;
+    private final RunningQuery.Backend backend;
+    private final String backendJobId;
+    private final Instant createTime;
+    private final Duration elapsedTime;
+    private final long rowsSent;
+    private final long bytesSent;
+    private final boolean killed;
+
+    @JsonCreator
+    public QueryInfo(
+            @JsonProperty("queryId") long queryId,
+            @JsonProperty("connectionId") int connectionId,
+            @JsonProperty("user") @Nullable String user,
+            @JsonProperty("database") @Nullable String database,
+            @JsonProperty("statement") String statement,
+            @JsonProperty("phase") RunningQuery.Phase phase,
+            @JsonProperty("backend") @Nullable RunningQuery.Backend backend,
+            @JsonProperty("backendJobId") @Nullable String backendJobId,
+            @JsonProperty("createTime") Instant createTime,
+            @JsonProperty("elapsedTime") Duration elapsedTime,
+            @JsonProperty("rowsSent") long rowsSent,
+            @JsonProperty("bytesSent") long bytesSent,
+            @JsonProperty("killed") boolean killed)
+    {
+        this.queryId = queryId;
+        this.connectionId = connectionId;
+        this.user = user;
+        this.database = database;
+        this.statement = requireNonNull(statement, "statement is null");
+        this.phase = requireNonNull(phase, "phase is null");
+        this.backend = backend;
+        this.backendJobId = backendJobId;
+        this.createTime = requireNonNull(createTime, "createTime is null");
+        this.elapsedTime = requireNonNull(elapsedTime, "elapsedTime is null");
+        this.rowsSent = rowsSent;
+        this.bytesSent = bytesSent;
+        this.killed = killed;
+    }
+
+    @JsonProperty
+    public long getQueryId()
+    {
+        return queryId;
+    }
+
+    @JsonProperty
+    public int getConnectionId()
+    {
+        return connectionId;
+    }
+
+    @Nullable
+    @JsonProperty
+    public String getUser()
+    {
+        return user;
+    }
+
+    @Nullable
+    @JsonProperty
+    public String getDatabase()
+    {
+        return database;
+    }
+
+    @JsonProperty
+    public String getStatement()
+    {
+        return statement;
+    }
+
+    @JsonProperty
+    public RunningQuery.Phase getPhase()
+    {
+        return phase;
+    }
+
+    @Nullable
+    @JsonProperty
+    public RunningQuery.Backend getBackend()
+    {
+        return backend;
+    }
+
+    @Nullable
+    @JsonProperty
+    public String getBackendJobId()
+    {
+        return backendJobId;
+    }
+
+    @JsonProperty
+    public Instant getCreateTime()
+    {
+        return createTime;
+    }
+
+    @JsonProperty
+    public Duration getElapsedTime()
+    {
+        return elapsedTime;
+    }
+
+    @JsonProperty
+    public long getRowsSent()
+    {
+        return rowsSent;
+    }
+
+    @JsonProperty
+    public long getBytesSent()
+    {
+        return bytesSent;
+    }
+
+    @JsonProperty
+    public boolean isKilled()
+    {
+        return killed;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import io.accio.main.PostgresWireProtocolConfig;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+/**
+ * The queries running on all the wire protocol connections of the server.
+ */
+public class QueryRegistry
+{
+    private final Map<Long, RunningQuery> queries = new ConcurrentHashMap<>();
+    private final AtomicLong nextQueryId = new AtomicLong();
+    private final AtomicInteger nextConnectionId = new AtomicInteger();
+    private final Set<String> adminUsers;
+
+    public QueryRegistry()
+    {
+        this(ImmutableSet.of());
+    }
+
+    @Inject
+    public QueryRegistry(PostgresWireProtocolConfig config)
+    {
+        this(ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(config.getAdminUsers())));
+    }
+
+    public QueryRegistry(Set<String> adminUsers)
+    {
+        this.adminUsers = ImmutableSet.copyOf(adminUsers);
+    }
+
+    public int newConnectionId()
+    {
+        return nextConnectionId.incrementAndGet();
+    }
+
+    public RunningQuery register(int connectionId, @Nullable String user, @Nullable String database, String statement)
+    {
+        RunningQuery query = new RunningQuery(this, nextQueryId.incrementAndGet(), connectionId, user, database, statement);
+        queries.put(query.getQueryId(), query);
+        return query;
+    }
+
+    void remove(RunningQuery query)
+    {
+        queries.remove(query.getQueryId(), query);
+    }
+
+    /**
+     * @return the running queries, the oldest first
+     */
+    public List<QueryInfo> getQueries()
+    {
+        return queries.values().stream()
+                .map(RunningQuery::getQueryInfo)
+                .sorted(Comparator.comparing(QueryInfo::getQueryId))
+                .collect(toImmutableList());
+    }
+
+    /**
+     * @return the running queries the user may see, an admin user sees the queries of all users
+     */
+    public List<QueryInfo> getQueries(@Nullable String user)
+    {
+        if (user != null && adminUsers.contains(user)) {
+            return getQueries();
+        }
+        return getQueries().stream()
+                .filter(info -> user != null && user.equals(info.getUser()))
+                .collect(toImmutableList());
+    }
+
+    public Optional<QueryInfo> getQuery(long queryId)
+    {
+        return Optional.ofNullable(queries.get(queryId)).map(RunningQuery::getQueryInfo);
+    }
+
+    /**
+     * Kill the query. The query running at the backend is cancelled, or the query fails before sending the next
+     * rows if it's sending or suspended.
+     *
+     * @return false if the query isn't running
+     */
+    public boolean kill(long queryId)
+    {
+        RunningQuery query = queries.get(queryId);
+        if (query == null) {
+            return false;
+        }
+        query.kill();
+        return true;
+    }
+
+    @Managed
+    public int getRunningQueries()
+    {
+        return queries.size();
+    }
+}
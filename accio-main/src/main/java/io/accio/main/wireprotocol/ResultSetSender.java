@@ -32,19 +32,27 @@ class ResultSetSender
     private final Iterator<Object[]> connectorRecordIterator;
     private final List<PGType> schema;
     private final int maxRows;
+    private final WireProtocolStats stats;
+    private final RunningQuery runningQuery;
 
     @Nullable
     private final FormatCodes.FormatCode[] formatCodes;
 
     private long localRowCount;
     private long totalRowCount;
+    // reported to the stats once per batch, updating the shared counters for every row is contended
+    private long bytesSent;
+    private long reportedRows;
+    private long reportedBytes;
 
     ResultSetSender(String query,
             Channel channel,
             ConnectorRecordIterator connectorRecordIterator,
             int maxRows,
             long previousCount,
-            @Nullable FormatCodes.FormatCode[] formatCodes)
+            @Nullable FormatCodes.FormatCode[] formatCodes,
+            WireProtocolStats stats,
+            RunningQuery runningQuery)
     {
         this.query = query;
         this.channel = channel;
@@ -53,21 +61,26 @@ class ResultSetSender
         this.maxRows = maxRows;
         this.totalRowCount = previousCount;
         this.formatCodes = formatCodes;
+        this.stats = stats;
+        this.runningQuery = runningQuery;
     }
 
     @Override
     public void sendRow(Object[] row)
     {
         localRowCount++;
-        Messages.sendDataRow(channel, row, schema, formatCodes);
+        bytesSent += Messages.sendDataRow(channel, row, schema, formatCodes);
         if (localRowCount % 1000 == 0) {
             channel.flush();
+            reportProgress();
+            runningQuery.checkNotKilled();
         }
     }
 
     @Override
     public void batchFinished()
     {
+        runningQuery.suspended();
         Messages.sendPortalSuspended(channel);
     }
 
@@ -80,26 +93,43 @@ class ResultSetSender
         else {
             Messages.sendCommandComplete(channel, query, totalRowCount);
         }
+        runningQuery.finish();
     }
 
     @Override
     public void fail(@Nonnull Throwable throwable)
     {
+        runningQuery.finish();
         Messages.sendErrorResponse(channel, throwable).addListener(f -> super.fail(throwable));
     }
 
     public long sendResultSet()
     {
-        while (connectorRecordIterator.hasNext()) {
-            sendRow(connectorRecordIterator.next());
-            if (maxRows > 0 && connectorRecordIterator.hasNext() && localRowCount % maxRows == 0) {
-                batchFinished();
-                totalRowCount += localRowCount;
-                return totalRowCount;
+        runningQuery.checkNotKilled();
+        runningQuery.sending();
+        try {
+            while (connectorRecordIterator.hasNext()) {
+                sendRow(connectorRecordIterator.next());
+                if (maxRows > 0 && connectorRecordIterator.hasNext() && localRowCount % maxRows == 0) {
+                    batchFinished();
+                    totalRowCount += localRowCount;
+                    return totalRowCount;
+                }
             }
+            totalRowCount += localRowCount;
+            allFinished(false);
+            return totalRowCount;
         }
-        totalRowCount += localRowCount;
-        allFinished(false);
-        return totalRowCount;
+        finally {
+            reportProgress();
+            stats.resultSent(localRowCount, bytesSent);
+        }
+    }
+
+    private void reportProgress()
+    {
+        runningQuery.addProgress(localRowCount - reportedRows, bytesSent - reportedBytes);
+        reportedRows = localRowCount;
+        reportedBytes = bytesSent;
     }
 }
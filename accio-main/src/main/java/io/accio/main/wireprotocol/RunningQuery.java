@@ -0,0 +1,190 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import io.accio.base.AccioException;
+
+import javax.annotation.Nullable;
+
+import java.time.Instant;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.accio.base.metadata.StandardErrorCode.ADMINISTRATIVELY_KILLED;
+import static io.airlift.units.Duration.nanosSince;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A query executed through the wire protocol, from the Execute message until its last row is sent or its
+ * portal is closed. The connection thread updates it, {@link QueryRegistry} reads and kills it from the others.
+ */
+public class RunningQuery
+{
+    public enum Phase
+    {
+        // waiting for the result from the backend
+        EXECUTING,
+        SENDING,
+        // the portal is suspended until the client fetches the next rows
+        SUSPENDED,
+    }
+
+    public enum Backend
+    {
+        // the introspection queries and the system tables
+        INTROSPECTION,
+        LOCAL_PG_CATALOG,
+        PRE_AGGREGATION,
+        DATA_SOURCE,
+    }
+
+    private final QueryRegistry registry;
+    private final long queryId;
+    private final int connectionId;
+    @Nullable
+    private final String user;
+    @Nullable
+    private final String database;
+    private final String statement;
+    private final Instant createTime = Instant.now();
+    private final long start = System.nanoTime();
+
+    private volatile Phase phase = Phase.EXECUTING;
+    @Nullable
+    private volatile Backend backend;
+    @Nullable
+    private volatile String backendJobId;
+    private final AtomicLong rowsSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private volatile boolean killed;
+    @Nullable
+    private volatile Future<?> backendQuery;
+
+    RunningQuery(QueryRegistry registry, long queryId, int connectionId, @Nullable String user, @Nullable String database, String statement)
+    {
+        this.registry = requireNonNull(registry, "registry is null");
+        this.queryId = queryId;
+        this.connectionId = connectionId;
+        this.user = user;
+        this.database = database;
+        this.statement = requireNonNull(statement, "statement is null");
+    }
+
+    public long getQueryId()
+    {
+        return queryId;
+    }
+
+    public void setBackend(Backend backend)
+    {
+        this.backend = requireNonNull(backend, "backend is null");
+    }
+
+    public void setBackendJobId(String backendJobId)
+    {
+        this.backendJobId = requireNonNull(backendJobId, "backendJobId is null");
+    }
+
+    /**
+     * The query running at the backend, it's cancelled when this query is killed. The backend has to close
+     * the result which comes after the cancellation.
+     */
+    public void setBackendQuery(Future<?> backendQuery)
+    {
+        this.backendQuery = requireNonNull(backendQuery, "backendQuery is null");
+        if (killed) {
+            backendQuery.cancel(true);
+        }
+    }
+
+    public void sending()
+    {
+        backendQuery = null;
+        phase = Phase.SENDING;
+    }
+
+    public void suspended()
+    {
+        phase = Phase.SUSPENDED;
+    }
+
+    public void addProgress(long rows, long bytes)
+    {
+        rowsSent.addAndGet(rows);
+        bytesSent.addAndGet(bytes);
+    }
+
+    public boolean isKilled()
+    {
+        return killed;
+    }
+
+    public void checkNotKilled()
+    {
+        if (killed) {
+            throw killedException();
+        }
+    }
+
+    /**
+     * The failure to report to the client. A killed query fails because of the kill, whatever the backend reports.
+     */
+    public Throwable toFailure(Throwable failure)
+    {
+        return killed ? killedException() : failure;
+    }
+
+    private AccioException killedException()
+    {
+        return new AccioException(ADMINISTRATIVELY_KILLED, format("Query %s has been killed", queryId));
+    }
+
+    void kill()
+    {
+        killed = true;
+        Future<?> query = backendQuery;
+        if (query != null) {
+            query.cancel(true);
+        }
+    }
+
+    /**
+     * Remove the query from the registry. It's called when the last row is sent, the query fails or its portal is closed.
+     */
+    public void finish()
+    {
+        registry.remove(this);
+    }
+
+    public QueryInfo getQueryInfo()
+    {
+        return new QueryInfo(
+                queryId,
+                connectionId,
+                user,
+                database,
+                statement,
+                phase,
+                backend,
+                backendJobId,
+                createTime,
+                nanosSince(start),
+                rowsSent.get(),
+                bytesSent.get(),
+                killed);
+    }
+}
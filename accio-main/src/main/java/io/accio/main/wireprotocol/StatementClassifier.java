@@ -0,0 +1,222 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.EMPTY;
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.IGNORED_COMMAND;
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.OTHER;
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.QUERY;
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.SESSION_COMMAND;
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.TRANSACTION_CONTROL;
+import static io.accio.main.wireprotocol.PostgresSessionProperties.isIgnoredSessionProperties;
+import static java.util.Locale.ENGLISH;
+
+/**
+ * Split a query string into statements and classify them in a single pass over the text. The quotes and the
+ * comments are skipped, the leading tokens decide the type of statement, and the words are kept for the
+ * compatibility rewrites to check before running their regex.
+ */
+public final class StatementClassifier
+{
+    // SET SESSION CHARACTERISTICS AS TRANSACTION is the longest prefix to check
+    private static final int MAX_LEADING_TOKENS = 6;
+
+    private static final Set<String> TRANSACTION_CONTROL_COMMANDS = ImmutableSet.of("BEGIN", "START", "COMMIT", "END", "ROLLBACK", "ABORT");
+    private static final Set<String> IGNORED_COMMANDS = ImmutableSet.of("DISCARD", "RESET", "CLOSE", "UNLISTEN");
+    private static final Set<String> SESSION_COMMANDS = ImmutableSet.of("SET", "SHOW", "DEALLOCATE", "PREPARE", "EXECUTE");
+    private static final Set<String> QUERY_COMMANDS = ImmutableSet.of("SELECT", "WITH", "VALUES", "TABLE", "EXPLAIN", "(");
+
+    private StatementClassifier() {}
+
+    public static ClassifiedStatement classify(String statement)
+    {
+        List<ClassifiedStatement> statements = lex(statement, false);
+        return statements.isEmpty() ? new ClassifiedStatement(statement, EMPTY, ImmutableList.of(), ImmutableSet.of()) : statements.get(0);
+    }
+
+    /**
+     * Split the query string by the semicolons outside the quotes and comments. The semicolon is kept in the statement
+     * and the leading comments are dropped.
+     *
+     * @return the statements, or a single empty statement if there is nothing to execute
+     */
+    public static List<ClassifiedStatement> split(String query)
+    {
+        List<ClassifiedStatement> statements = lex(query, true);
+        return statements.isEmpty() ? ImmutableList.of(new ClassifiedStatement("", EMPTY, ImmutableList.of(), ImmutableSet.of())) : statements;
+    }
+
+    private static List<ClassifiedStatement> lex(String query, boolean split)
+    {
+        ImmutableList.Builder<ClassifiedStatement> statements = ImmutableList.builder();
+        List<String> leadingTokens = new ArrayList<>();
+        Set<String> words = new HashSet<>();
+        int start = -1;
+        int wordStart = -1;
+        char quote = 0;
+        boolean lineComment = false;
+        boolean blockComment = false;
+        int length = query.length();
+        for (int i = 0; i < length; i++) {
+            char c = query.charAt(i);
+            char next = i + 1 < length ? query.charAt(i + 1) : 0;
+            if (lineComment) {
+                lineComment = c != '\n';
+                continue;
+            }
+            if (blockComment) {
+                if (c == '*' && next == '/') {
+                    blockComment = false;
+                    i++;
+                }
+                continue;
+            }
+            if (quote != 0) {
+                // an escaped quote, e.g. 'Joe''s', closes the quote and opens it again
+                if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                if (wordStart < 0) {
+                    wordStart = i;
+                }
+                if (start < 0) {
+                    start = i;
+                }
+                continue;
+            }
+            if (wordStart >= 0) {
+                addWord(query.substring(wordStart, i), leadingTokens, words);
+                wordStart = -1;
+            }
+            if ((c == '-' && next == '-') || (c == '/' && next == '*')) {
+                lineComment = c == '-';
+                blockComment = c == '/';
+                i++;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            if (start < 0) {
+                start = i;
+            }
+            if (c == ';' && split) {
+                statements.add(classify(query.substring(start, i + 1), leadingTokens, words));
+                leadingTokens = new ArrayList<>();
+                words = new HashSet<>();
+                start = -1;
+                continue;
+            }
+            if (c == '\'' || c == '"') {
+                quote = c;
+            }
+            if (leadingTokens.size() < MAX_LEADING_TOKENS) {
+                leadingTokens.add(String.valueOf(c));
+            }
+        }
+        if (wordStart >= 0) {
+            addWord(query.substring(wordStart), leadingTokens, words);
+        }
+        // the statement might not be terminated by semicolon, and it's kept as is if it isn't split
+        if (start >= 0) {
+            statements.add(classify(query.substring(split ? start : 0), leadingTokens, words));
+        }
+        return statements.build();
+    }
+
+    private static void addWord(String word, List<String> leadingTokens, Set<String> words)
+    {
+        if (leadingTokens.size() < MAX_LEADING_TOKENS) {
+            leadingTokens.add(word);
+        }
+        words.add(word.toLowerCase(ENGLISH));
+    }
+
+    private static ClassifiedStatement classify(String sql, List<String> leadingTokens, Set<String> words)
+    {
+        return new ClassifiedStatement(sql, classify(leadingTokens), leadingTokens, words);
+    }
+
+    private static ClassifiedStatement.Type classify(List<String> tokens)
+    {
+        if (tokens.isEmpty() || tokens.get(0).equals(";")) {
+            return EMPTY;
+        }
+        String command = tokens.get(0).toUpperCase(ENGLISH);
+        if (TRANSACTION_CONTROL_COMMANDS.contains(command)) {
+            return TRANSACTION_CONTROL;
+        }
+        if (IGNORED_COMMANDS.contains(command)) {
+            return IGNORED_COMMAND;
+        }
+        if (command.equals("SET")) {
+            return classifySet(tokens);
+        }
+        if (SESSION_COMMANDS.contains(command)) {
+            return SESSION_COMMAND;
+        }
+        if (QUERY_COMMANDS.contains(command)) {
+            return QUERY;
+        }
+        return OTHER;
+    }
+
+    private static ClassifiedStatement.Type classifySet(List<String> tokens)
+    {
+        // SET TRANSACTION ... or SET SESSION CHARACTERISTICS AS TRANSACTION ...
+        if (matches(tokens, "TRANSACTION") || matches(tokens, "SESSION", "CHARACTERISTICS", "AS", "TRANSACTION")) {
+            return TRANSACTION_CONTROL;
+        }
+        // SET [ SESSION | LOCAL ] SESSION AUTHORIZATION ...
+        if (matches(tokens, "SESSION", "AUTHORIZATION") || matches(tokens, "SESSION", "SESSION", "AUTHORIZATION") || matches(tokens, "LOCAL", "SESSION", "AUTHORIZATION")) {
+            return IGNORED_COMMAND;
+        }
+        // SET [ SESSION ] property { = | TO } value
+        int property = 1;
+        while (property < tokens.size() && tokens.get(property).equalsIgnoreCase("SESSION")) {
+            property++;
+        }
+        if (property + 2 < tokens.size()
+                && (tokens.get(property + 1).equals("=") || tokens.get(property + 1).equalsIgnoreCase("TO"))
+                && isIgnoredSessionProperties(tokens.get(property))) {
+            return IGNORED_COMMAND;
+        }
+        return SESSION_COMMAND;
+    }
+
+    private static boolean matches(List<String> tokens, String... keywords)
+    {
+        if (tokens.size() <= keywords.length) {
+            return false;
+        }
+        for (int i = 0; i < keywords.length; i++) {
+            if (!tokens.get(i + 1).equalsIgnoreCase(keywords[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.accio.base.AccioException;
+import io.accio.base.Column;
+import io.accio.base.type.PGType;
+import io.trino.sql.parser.ParsingException;
+import io.trino.sql.parser.SqlParser;
+import io.trino.sql.tree.AllColumns;
+import io.trino.sql.tree.BooleanLiteral;
+import io.trino.sql.tree.ComparisonExpression;
+import io.trino.sql.tree.Expression;
+import io.trino.sql.tree.Identifier;
+import io.trino.sql.tree.Limit;
+import io.trino.sql.tree.LogicalExpression;
+import io.trino.sql.tree.LongLiteral;
+import io.trino.sql.tree.Node;
+import io.trino.sql.tree.OrderBy;
+import io.trino.sql.tree.Query;
+import io.trino.sql.tree.QuerySpecification;
+import io.trino.sql.tree.SelectItem;
+import io.trino.sql.tree.SingleColumn;
+import io.trino.sql.tree.SortItem;
+import io.trino.sql.tree.Statement;
+import io.trino.sql.tree.StringLiteral;
+import io.trino.sql.tree.Table;
+
+import javax.annotation.Nullable;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.accio.base.metadata.StandardErrorCode.COLUMN_NOT_FOUND;
+import static io.accio.base.metadata.StandardErrorCode.INVALID_COLUMN_REFERENCE;
+import static io.accio.base.metadata.StandardErrorCode.NOT_SUPPORTED;
+import static io.accio.base.metadata.StandardErrorCode.TYPE_MISMATCH;
+import static io.accio.base.type.BigIntType.BIGINT;
+import static io.accio.base.type.BooleanType.BOOLEAN;
+import static io.accio.base.type.IntegerType.INTEGER;
+import static io.accio.base.type.VarcharType.VARCHAR;
+import static io.accio.main.wireprotocol.WireProtocolSession.PARSE_AS_DECIMAL;
+import static java.lang.String.format;
+import static java.util.Locale.ENGLISH;
+
+/**
+ * The tables of the server state in the {@code accio_system} schema, answered by the session like the
+ * introspection queries, e.g.
+ * {@code SELECT query_id, statement FROM accio_system.running_queries WHERE phase = 'SENDING' ORDER BY elapsed_ms DESC LIMIT 10}.
+ * <p>
+ * The statements aren't planned by an engine, only a fixed syntax is evaluated on the snapshot of the registry:
+ * <ul>
+ * <li>SELECT {@code *} or the column references, optionally aliased, from a single table</li>
+ * <li>WHERE the comparisons ({@code = <> < <= > >=}) of a column with a literal combined by AND. The integer columns
+ * only compare with the integer literals, the varchar columns with the string literals by their code points and
+ * {@code killed} with a boolean literal. A null value never matches.</li>
+ * <li>ORDER BY the columns, the select aliases or the 1-based ordinals, the nulls sort last</li>
+ * <li>LIMIT an integer literal</li>
+ * </ul>
+ * Anything else is rejected with {@code NOT_SUPPORTED}. A user only sees their own queries unless they're one of
+ * the admin users, see {@link QueryRegistry#getQueries(String)}.
+ */
+public final class SystemTables
+{
+    public static final String SYSTEM_SCHEMA = "accio_system";
+    public static final String RUNNING_QUERIES = "running_queries";
+
+    private static final List<SystemColumn> RUNNING_QUERIES_COLUMNS = ImmutableList.of(
+            new SystemColumn("query_id", BIGINT, QueryInfo::getQueryId),
+            new SystemColumn("connection_id", INTEGER, QueryInfo::getConnectionId),
+            new SystemColumn("user_name", VARCHAR, QueryInfo::getUser),
+            new SystemColumn("database_name", VARCHAR, QueryInfo::getDatabase),
+            new SystemColumn("statement", VARCHAR, QueryInfo::getStatement),
+            new SystemColumn("phase", VARCHAR, info -> info.getPhase().name()),
+            new SystemColumn("backend", VARCHAR, info -> info.getBackend() == null ? null : info.getBackend().name()),
+            new SystemColumn("backend_job_id", VARCHAR, QueryInfo::getBackendJobId),
+            new SystemColumn("create_time", VARCHAR, info -> info.getCreateTime().toString()),
+            new SystemColumn("elapsed_ms", BIGINT, info -> info.getElapsedTime().toMillis()),
+            new SystemColumn("rows_sent", BIGINT, QueryInfo::getRowsSent),
+            new SystemColumn("bytes_sent", BIGINT, QueryInfo::getBytesSent),
+            new SystemColumn("killed", BOOLEAN, QueryInfo::isKilled));
+
+    private static final Map<String, SystemColumn> RUNNING_QUERIES_COLUMN_MAP = RUNNING_QUERIES_COLUMNS.stream()
+            .collect(ImmutableMap.toImmutableMap(SystemColumn::getName, Function.identity()));
+
+    private SystemTables() {}
+
+    /**
+     * @param user the user of the session, the rows are limited to the queries visible to them
+     * @return the query answering the statement, or empty if the statement doesn't read a system table
+     */
+    public static Optional<IntrospectionQuery> match(SqlParser sqlParser, String statement, QueryRegistry queryRegistry, @Nullable String user)
+    {
+        // don't parse the statement twice unless it could read a system table
+        if (!statement.toLowerCase(ENGLISH).contains(SYSTEM_SCHEMA)) {
+            return Optional.empty();
+        }
+        Statement parsed;
+        try {
+            parsed = sqlParser.createStatement(statement, PARSE_AS_DECIMAL);
+        }
+        catch (ParsingException e) {
+            return Optional.empty();
+        }
+        if (!(parsed instanceof Query) || !(((Query) parsed).getQueryBody() instanceof QuerySpecification)) {
+            return Optional.empty();
+        }
+        Query query = (Query) parsed;
+        QuerySpecification specification = (QuerySpecification) query.getQueryBody();
+        if (specification.getFrom().isEmpty() || !isRunningQueriesTable(specification.getFrom().get())) {
+            return Optional.empty();
+        }
+        if (query.getWith().isPresent()
+                || query.getOffset().isPresent()
+                || specification.getSelect().isDistinct()
+                || specification.getGroupBy().isPresent()
+                || specification.getHaving().isPresent()
+                || specification.getOffset().isPresent()) {
+            throw new AccioException(NOT_SUPPORTED, format("Unsupported query on %s.%s: %s", SYSTEM_SCHEMA, RUNNING_QUERIES, statement));
+        }
+
+        List<SystemColumn> columns = toColumns(specification.getSelect().getSelectItems());
+        Predicate<QueryInfo> filter = specification.getWhere().map(SystemTables::toFilter).orElse(info -> true);
+        Optional<Comparator<QueryInfo>> ordering = Stream.of(specification.getOrderBy(), query.getOrderBy())
+                .flatMap(Optional::stream)
+                .findFirst()
+                .map(orderBy -> toOrdering(orderBy, columns));
+        long limit = Stream.of(specification.getLimit(), query.getLimit())
+                .flatMap(Optional::stream)
+                .findFirst()
+                .map(SystemTables::toLimit)
+                .orElse(Long.MAX_VALUE);
+
+        return Optional.of(IntrospectionQuery.table(
+                columns.stream().map(column -> new Column(column.getName(), column.getType())).collect(toImmutableList()),
+                session -> {
+                    Stream<QueryInfo> queries = queryRegistry.getQueries(user).stream().filter(filter);
+                    if (ordering.isPresent()) {
+                        queries = queries.sorted(ordering.get());
+                    }
+                    return queries.limit(limit)
+                            .map(info -> columns.stream().map(column -> column.getValue(info)).toArray())
+                            .collect(toImmutableList());
+                }));
+    }
+
+    private static boolean isRunningQueriesTable(Node relation)
+    {
+        if (!(relation instanceof Table)) {
+            return false;
+        }
+        List<String> parts = ((Table) relation).getName().getParts();
+        return parts.size() >= 2
+                && parts.size() <= 3
+                && parts.get(parts.size() - 2).equalsIgnoreCase(SYSTEM_SCHEMA)
+                && parts.get(parts.size() - 1).equalsIgnoreCase(RUNNING_QUERIES);
+    }
+
+    private static List<SystemColumn> toColumns(List<SelectItem> selectItems)
+    {
+        ImmutableList.Builder<SystemColumn> columns = ImmutableList.builder();
+        for (SelectItem item : selectItems) {
+            if (item instanceof AllColumns && ((AllColumns) item).getTarget().isEmpty() && ((AllColumns) item).getAliases().isEmpty()) {
+                columns.addAll(RUNNING_QUERIES_COLUMNS);
+            }
+            else if (item instanceof SingleColumn) {
+                SingleColumn column = (SingleColumn) item;
+                SystemColumn systemColumn = getColumn(column.getExpression());
+                columns.add(column.getAlias()
+                        .map(alias -> systemColumn.withName(alias.getValue()))
+                        .orElse(systemColumn));
+            }
+            else {
+                throw new AccioException(NOT_SUPPORTED, format("Unsupported select item: %s", item));
+            }
+        }
+        return columns.build();
+    }
+
+    private static Predicate<QueryInfo> toFilter(Expression expression)
+    {
+        if (expression instanceof LogicalExpression && ((LogicalExpression) expression).getOperator() == LogicalExpression.Operator.AND) {
+            return ((LogicalExpression) expression).getTerms().stream()
+                    .map(SystemTables::toFilter)
+                    .reduce(info -> true, Predicate::and);
+        }
+        if (!(expression instanceof ComparisonExpression)) {
+            throw new AccioException(NOT_SUPPORTED, format("Unsupported predicate: %s", expression));
+        }
+        ComparisonExpression comparison = (ComparisonExpression) expression;
+        ComparisonExpression.Operator operator = comparison.getOperator();
+        Expression left = comparison.getLeft();
+        Expression right = comparison.getRight();
+        if (!(left instanceof Identifier)) {
+            // e.g. 10 < elapsed_ms
+            operator = operator.flip();
+            left = comparison.getRight();
+            right = comparison.getLeft();
+        }
+        SystemColumn column = getColumn(left);
+        Object literal = toValue(right);
+        ComparisonExpression.Operator finalOperator = operator;
+        return info -> {
+            Object value = column.getValue(info);
+            if (value == null) {
+                return false;
+            }
+            int result = compare(column, value, literal);
+            switch (finalOperator) {
+                case EQUAL:
+                    return result == 0;
+                case NOT_EQUAL:
+                    return result != 0;
+                case LESS_THAN:
+                    return result < 0;
+                case LESS_THAN_OR_EQUAL:
+                    return result <= 0;
+                case GREATER_THAN:
+                    return result > 0;
+                case GREATER_THAN_OR_EQUAL:
+                    return result >= 0;
+            }
+            throw new AccioException(NOT_SUPPORTED, format("Unsupported operator: %s", finalOperator));
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<QueryInfo> toOrdering(OrderBy orderBy, List<SystemColumn> selectedColumns)
+    {
+        Comparator<QueryInfo> ordering = null;
+        for (SortItem sortItem : orderBy.getSortItems()) {
+            SystemColumn column = getSortColumn(sortItem.getSortKey(), selectedColumns);
+            Comparator<QueryInfo> comparator = Comparator.comparing(
+                    info -> (Comparable<Object>) column.getValue(info),
+                    Comparator.nullsLast(Comparator.naturalOrder()));
+            if (sortItem.getOrdering() == SortItem.Ordering.DESCENDING) {
+                comparator = comparator.reversed();
+            }
+            ordering = ordering == null ? comparator : ordering.thenComparing(comparator);
+        }
+        return ordering;
+    }
+
+    private static SystemColumn getSortColumn(Expression sortKey, List<SystemColumn> selectedColumns)
+    {
+        if (sortKey instanceof LongLiteral) {
+            long ordinal = ((LongLiteral) sortKey).getValue();
+            if (ordinal < 1 || ordinal > selectedColumns.size()) {
+                throw new AccioException(INVALID_COLUMN_REFERENCE, format("ORDER BY position %s is not in select list", ordinal));
+            }
+            return selectedColumns.get((int) ordinal - 1);
+        }
+        if (sortKey instanceof Identifier) {
+            // the select aliases hide the table columns of the same name like in postgres
+            String name = ((Identifier) sortKey).getValue();
+            Optional<SystemColumn> selected = selectedColumns.stream()
+                    .filter(column -> column.getName().equalsIgnoreCase(name))
+                    .findFirst();
+            if (selected.isPresent()) {
+                return selected.get();
+            }
+        }
+        return getColumn(sortKey);
+    }
+
+    private static long toLimit(Node limit)
+    {
+        if (limit instanceof Limit && ((Limit) limit).getRowCount() instanceof LongLiteral) {
+            return ((LongLiteral) ((Limit) limit).getRowCount()).getValue();
+        }
+        throw new AccioException(NOT_SUPPORTED, format("Unsupported limit: %s", limit));
+    }
+
+    private static SystemColumn getColumn(Expression expression)
+    {
+        if (!(expression instanceof Identifier)) {
+            throw new AccioException(NOT_SUPPORTED, format("Only the column references are supported: %s", expression));
+        }
+        String name = ((Identifier) expression).getValue().toLowerCase(ENGLISH);
+        SystemColumn column = RUNNING_QUERIES_COLUMN_MAP.get(name);
+        if (column == null) {
+            throw new AccioException(COLUMN_NOT_FOUND, format("Column %s not found in %s.%s", name, SYSTEM_SCHEMA, RUNNING_QUERIES));
+        }
+        return column;
+    }
+
+    private static Object toValue(Expression expression)
+    {
+        if (expression instanceof StringLiteral) {
+            return ((StringLiteral) expression).getValue();
+        }
+        if (expression instanceof LongLiteral) {
+            return ((LongLiteral) expression).getValue();
+        }
+        if (expression instanceof BooleanLiteral) {
+            return ((BooleanLiteral) expression).getValue();
+        }
+        throw new AccioException(NOT_SUPPORTED, format("Only the string, integer and boolean literals are supported: %s", expression));
+    }
+
+    private static int compare(SystemColumn column, Object value, Object literal)
+    {
+        // the integer columns are Integer or Long and the literals Long, so longValue() is exact
+        if (value instanceof Number && literal instanceof Long) {
+            return Long.compare(((Number) value).longValue(), (Long) literal);
+        }
+        if (value instanceof String && literal instanceof String) {
+            return ((String) value).compareTo((String) literal);
+        }
+        if (value instanceof Boolean && literal instanceof Boolean) {
+            return Boolean.compare((Boolean) value, (Boolean) literal);
+        }
+        throw new AccioException(TYPE_MISMATCH, format("Column %s can't be compared with %s", column.getName(), literal));
+    }
+
+    private static class SystemColumn
+    {
+        private final String name;
+        private final PGType<?> type;
+        private final Function<QueryInfo, Object> value;
+
+        private SystemColumn(String name, PGType<?> type, Function<QueryInfo, Object> value)
+        {
+            this.name = name;
+            this.type = type;
+            this.value = value;
+        }
+
+        private String getName()
+        {
+            return name;
+        }
+
+        private PGType<?> getType()
+        {
+            return type;
+        }
+
+        private Object getValue(QueryInfo info)
+        {
+            return value.apply(info);
+        }
+
+        private SystemColumn withName(String name)
+        {
+            return new SystemColumn(name, type, value);
+        }
+    }
+}
@@ -22,13 +22,14 @@ import io.accio.base.SessionContext;
 import io.accio.base.sql.SqlConverter;
 import io.accio.main.AccioMetastore;
 import io.accio.main.metadata.Metadata;
+import io.accio.main.pgcatalog.LocalPgCatalog;
+import io.accio.main.pgcatalog.PgCatalogManager;
 import io.accio.main.pgcatalog.regtype.RegObjectFactory;
 import io.accio.main.sql.PostgreSqlRewrite;
 import io.accio.main.wireprotocol.patterns.PostgreSqlRewriteUtil;
 import io.accio.preaggregation.PreAggregationManager;
-import io.accio.preaggregation.PreAggregationTableMapping;
+import io.accio.preaggregation.PreAggregationStatement;
 import io.accio.sqlrewrite.AccioPlanner;
-import io.accio.sqlrewrite.PreAggregationRewrite;
 import io.airlift.log.Logger;
 import io.trino.sql.parser.ParsingOptions;
 import io.trino.sql.parser.SqlParser;
@@ -54,8 +55,8 @@ import static com.google.common.base.Strings.nullToEmpty;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static io.accio.base.metadata.StandardErrorCode.INVALID_PARAMETER_USAGE;
 import static io.accio.base.metadata.StandardErrorCode.NOT_FOUND;
-import static io.accio.main.wireprotocol.PostgresWireProtocol.isIgnoredCommand;
 import static io.accio.main.wireprotocol.PostgresWireProtocolErrorCode.INVALID_PREPARED_STATEMENT_NAME;
+import static io.airlift.units.Duration.nanosSince;
 import static io.trino.execution.ParameterExtractor.getParameterCount;
 import static io.trino.execution.sql.SqlFormatterUtil.getFormattedSql;
 import static java.lang.String.format;
@@ -74,7 +75,7 @@ public class WireProtocolSession
 
     private Properties properties;
     private final PreparedStatementMap preparedStatements = new PreparedStatementMap();
-    private final PortalMap portals = new PortalMap();
+    private final PortalMap portals;
     private final List<String> sessionProperties = new ArrayList<>();
     private CompletableFuture<Optional<GenericTableRecordIterable>> runningQuery = CompletableFuture.completedFuture(null);
     private final SqlParser sqlParser;
@@ -84,7 +85,11 @@ public class WireProtocolSession
     private final SqlConverter sqlConverter;
     private final AccioMetastore accioMetastore;
     private final PreAggregationManager preAggregationManager;
-    private final PreAggregationTableMapping preAggregationTableMapping;
+    private final LocalPgCatalog localPgCatalog;
+    private final PgCatalogManager pgCatalogManager;
+    private final WireProtocolStats stats;
+    private final QueryRegistry queryRegistry;
+    private final int connectionId;
 
     public WireProtocolSession(
             RegObjectFactory regObjectFactory,
@@ -92,7 +97,10 @@ public class WireProtocolSession
             SqlConverter sqlConverter,
             AccioMetastore accioMetastore,
             PreAggregationManager preAggregationManager,
-            PreAggregationTableMapping preAggregationTableMapping)
+            LocalPgCatalog localPgCatalog,
+            PgCatalogManager pgCatalogManager,
+            WireProtocolStats stats,
+            QueryRegistry queryRegistry)
     {
         this.sqlParser = new SqlParser();
         this.regObjectFactory = requireNonNull(regObjectFactory, "regObjectFactory is null");
@@ -100,7 +108,12 @@ public class WireProtocolSession
         this.sqlConverter = sqlConverter;
         this.accioMetastore = requireNonNull(accioMetastore, "accioMetastore is null");
         this.preAggregationManager = requireNonNull(preAggregationManager, "preAggregationManager is null");
-        this.preAggregationTableMapping = requireNonNull(preAggregationTableMapping, "preAggregationTableMapping is null");
+        this.localPgCatalog = requireNonNull(localPgCatalog, "localPgCatalog is null");
+        this.pgCatalogManager = requireNonNull(pgCatalogManager, "pgCatalogManager is null");
+        this.stats = requireNonNull(stats, "stats is null");
+        this.portals = new PortalMap(stats);
+        this.queryRegistry = requireNonNull(queryRegistry, "queryRegistry is null");
+        this.connectionId = queryRegistry.newConnectionId();
     }
 
     public int getParamTypeOid(String statementName, int fieldPosition)
@@ -166,6 +179,19 @@ public class WireProtocolSession
                 .orElse(extraFirstSearchPath(properties.getProperty("options")));
     }
 
+    /**
+     * The schema the unqualified names are resolved in, the schema of the MDL if the client doesn't set the search path.
+     */
+    public String getCurrentSchema()
+    {
+        return Optional.ofNullable(getDefaultSchema()).orElseGet(() -> accioMetastore.getAccioMDL().getSchema());
+    }
+
+    public String getCurrentDatabase()
+    {
+        return metadata.getDefaultCatalog();
+    }
+
     private String extraFirstSearchPath(String options)
     {
         if (options == null) {
@@ -189,13 +215,31 @@ public class WireProtocolSession
         return true;
     }
 
-    public Optional<List<Column>> describePortal(String name)
+    /**
+     * Describe the columns of the portal. The data source describes the queries it runs, e.g. a BigQuery dry run,
+     * so the columns come back asynchronously like the result of {@link #execute(String)}.
+     */
+    public CompletableFuture<Optional<List<Column>>> describePortalAsync(String name)
     {
         Portal portal = getPortal(name);
 
-        String oriStmt = portal.getPreparedStatement().getOriginalStatement();
-        if (oriStmt.isEmpty() || isIgnoredCommand(oriStmt)) {
-            return Optional.empty();
+        if (portal.getPreparedStatement().isIgnored()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        Optional<IntrospectionQuery> introspectionQuery = portal.getPreparedStatement().getIntrospectionQuery();
+        if (introspectionQuery.isPresent()) {
+            return CompletableFuture.completedFuture(Optional.of(introspectionQuery.get().getColumns()));
+        }
+
+        Optional<String> localPgCatalogStatement = portal.getPreparedStatement().getLocalPgCatalogStatement();
+        if (localPgCatalogStatement.isPresent()) {
+            try {
+                return CompletableFuture.completedFuture(Optional.of(localPgCatalog.describe(localPgCatalogStatement.get(), portal.getParameters())));
+            }
+            catch (RuntimeException e) {
+                LOG.warn(e, "Failed to describe local pg_catalog query: %s", localPgCatalogStatement.get());
+            }
         }
 
         String sql = sqlConverter.convert(
@@ -204,7 +248,20 @@ public class WireProtocolSession
                         .setCatalog(getDefaultDatabase())
                         .setSchema(getDefaultSchema())
                         .build());
-        return Optional.of(metadata.describeQuery(sql, portal.getParameters()));
+        return awaitPgCatalog(portal.getPreparedStatement())
+                .thenCompose(ignored -> metadata.describeQueryAsync(sql, portal.getParameters()))
+                .thenApply(Optional::of);
+    }
+
+    /**
+     * The statement reading pg_catalog in the data source waits for its initialization.
+     */
+    private CompletableFuture<Void> awaitPgCatalog(PreparedStatement preparedStatement)
+    {
+        if (!preparedStatement.readsPgCatalog()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return pgCatalogManager.whenReady();
     }
 
     public List<Integer> describeStatement(String name)
@@ -213,20 +270,34 @@ public class WireProtocolSession
     }
 
     public void parse(String statementName, String statement, List<Integer> paramTypes)
+    {
+        parse(statementName, StatementClassifier.split(statement).get(0), paramTypes);
+    }
+
+    public void parse(String statementName, ClassifiedStatement classified, List<Integer> paramTypes)
     {
         if (statementName.equalsIgnoreCase(ALL)) {
             throw new AccioException(INVALID_PREPARED_STATEMENT_NAME, format("%s is a preserved word. Can't be the name of prepared statement", statementName));
         }
-        String statementTrimmed = rewritePreparedChar(statement.split(";")[0].trim());
-        if (statementTrimmed.isEmpty() || isIgnoredCommand(statementTrimmed)) {
+        String sql = classified.getSql();
+        String statementTrimmed = rewritePreparedChar((sql.endsWith(";") ? sql.substring(0, sql.length() - 1) : sql).trim());
+        if (classified.getType() == ClassifiedStatement.Type.EMPTY || classified.isIgnored()) {
             preparedStatements.put(statementName, new PreparedStatement(statementName, "", paramTypes, statementTrimmed, false));
+            return;
+        }
+        // the statements the drivers send when they connect don't need the rewriting, planning and data source
+        Optional<IntrospectionQuery> introspectionQuery = IntrospectionQueries.match(statementTrimmed)
+                .or(() -> SystemTables.match(sqlParser, statementTrimmed, queryRegistry, getClientUser()));
+        if (introspectionQuery.isPresent()) {
+            preparedStatements.put(statementName, new PreparedStatement(statementName, introspectionQuery.get(), paramTypes, statementTrimmed));
         }
         else {
+            long start = System.nanoTime();
             SessionContext sessionContext = SessionContext.builder()
                     .setCatalog(getDefaultDatabase())
                     .setSchema(getDefaultSchema())
                     .build();
-            String statementPreRewritten = PostgreSqlRewriteUtil.rewrite(statementTrimmed);
+            String statementPreRewritten = PostgreSqlRewriteUtil.rewrite(classified.withSql(statementTrimmed));
             String accioRewritten = AccioPlanner.rewrite(
                     statementPreRewritten,
                     sessionContext,
@@ -235,14 +306,18 @@ public class WireProtocolSession
             Statement parsedStatement = sqlParser.createStatement(accioRewritten, PARSE_AS_DECIMAL);
             Statement rewrittenStatement = PostgreSqlRewrite.rewrite(regObjectFactory, metadata.getDefaultCatalog(), parsedStatement);
             List<Integer> rewrittenParamTypes = rewriteParameters(rewrittenStatement, paramTypes);
+            Optional<String> localPgCatalogStatement = localPgCatalog.rewrite(rewrittenStatement);
             preparedStatements.put(statementName,
                     new PreparedStatement(
                             statementName,
                             getFormattedSql(rewrittenStatement, sqlParser),
-                            PreAggregationRewrite.rewrite(sessionContext, statementPreRewritten, preAggregationTableMapping::convertToAggregationTable, accioMetastore.getAccioMDL()),
+                            preAggregationManager.rewrite(sessionContext, statementPreRewritten, accioMetastore.getAccioMDL()),
+                            localPgCatalogStatement,
+                            localPgCatalogStatement.isPresent() || localPgCatalog.readsPgCatalog(rewrittenStatement),
                             rewrittenParamTypes,
                             statementTrimmed,
                             isSessionCommand(rewrittenStatement)));
+            stats.getPlanningTime().add(nanosSince(start));
             LOG.info("Create preparedStatement %s", statementName);
         }
     }
@@ -271,37 +346,97 @@ public class WireProtocolSession
         LOG.info("Bind Portal %s with parameters %s to Statement %s", portalName, paramString, statementName);
     }
 
+    /**
+     * Execute the portal. The query is registered in the {@link QueryRegistry} until its last row is sent,
+     * it fails or the portal is closed.
+     */
     public CompletableFuture<Optional<ConnectorRecordIterator>> execute(String portalName)
     {
-        return execute(portals.get(portalName));
+        Portal portal = portals.get(portalName);
+        RunningQuery query = queryRegistry.register(connectionId, getClientUser(), getDefaultDatabase(), portal.getPreparedStatement().getOriginalStatement());
+        portal.setRunningQuery(query);
+        return execute(portal, query);
     }
 
-    private CompletableFuture<Optional<ConnectorRecordIterator>> execute(Portal portal)
+    private CompletableFuture<Optional<ConnectorRecordIterator>> execute(Portal portal, RunningQuery query)
     {
+        Optional<IntrospectionQuery> introspectionQuery = portal.getPreparedStatement().getIntrospectionQuery();
+        if (introspectionQuery.isPresent()) {
+            query.setBackend(RunningQuery.Backend.INTROSPECTION);
+            stats.getIntrospectionQueries().update(1);
+            return CompletableFuture.completedFuture(Optional.of(introspectionQuery.get().execute(this)));
+        }
         String execStmt = portal.getPreparedStatement().getStatement();
-        return CompletableFuture.supplyAsync(() -> executePreAggregation(portal).or(() -> {
-            String sql = sqlConverter.convert(execStmt,
-                    SessionContext.builder()
-                            .setCatalog(getDefaultDatabase())
-                            .setSchema(getDefaultSchema())
-                            .build());
-            return Optional.of(metadata.directQuery(sql, portal.getParameters()));
-        }));
-    }
-
-    private Optional<ConnectorRecordIterator> executePreAggregation(Portal portal)
-    {
-        return portal.getPreparedStatement().getPreAggregationStatement().map(statement -> {
-            try {
-                return preAggregationManager.query(statement, portal.getParameters());
+        // the connectors run the queries on their own executors, no thread is held here while they run
+        return executeLocalPgCatalog(portal, query).thenCompose(localPgCatalogResult -> {
+            if (localPgCatalogResult.isPresent()) {
+                return CompletableFuture.completedFuture(localPgCatalogResult);
             }
-            catch (Exception e) {
-                LOG.warn(e, "Failed to execute pre-aggregation query: %s", statement);
-                return null;
+            return executePreAggregation(portal, query);
+        }).thenCompose(preAggregationResult -> {
+            if (preAggregationResult.isPresent()) {
+                return CompletableFuture.completedFuture(preAggregationResult);
             }
+            return awaitPgCatalog(portal.getPreparedStatement()).thenCompose(ignored -> executeDataSource(portal, query, execStmt));
         });
     }
 
+    private CompletableFuture<Optional<ConnectorRecordIterator>> executeDataSource(Portal portal, RunningQuery query, String execStmt)
+    {
+        String sql = sqlConverter.convert(execStmt,
+                SessionContext.builder()
+                        .setCatalog(getDefaultDatabase())
+                        .setSchema(getDefaultSchema())
+                        .build());
+        long start = System.nanoTime();
+        stats.getDataSourceQueries().update(1);
+        query.setBackend(RunningQuery.Backend.DATA_SOURCE);
+        CompletableFuture<ConnectorRecordIterator> dataSourceQuery = metadata.directQueryAsync(sql, portal.getParameters(), query::setBackendJobId);
+        query.setBackendQuery(dataSourceQuery);
+        return dataSourceQuery
+                .whenComplete((iterator, e) -> stats.getDataSourceTime().add(nanosSince(start)))
+                .thenApply(Optional::of);
+    }
+
+    private CompletableFuture<Optional<ConnectorRecordIterator>> executeLocalPgCatalog(Portal portal, RunningQuery query)
+    {
+        Optional<String> localPgCatalogStatement = portal.getPreparedStatement().getLocalPgCatalogStatement();
+        if (localPgCatalogStatement.isEmpty()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        String statement = localPgCatalogStatement.get();
+        query.setBackend(RunningQuery.Backend.LOCAL_PG_CATALOG);
+        return localPgCatalog.queryAsync(statement, portal.getParameters())
+                .handle((iterator, e) -> {
+                    if (e != null) {
+                        LOG.warn(e, "Failed to execute local pg_catalog query: %s", statement);
+                        return Optional.<ConnectorRecordIterator>empty();
+                    }
+                    stats.getLocalPgCatalogQueries().update(1);
+                    return Optional.of(iterator);
+                });
+    }
+
+    private CompletableFuture<Optional<ConnectorRecordIterator>> executePreAggregation(Portal portal, RunningQuery query)
+    {
+        Optional<PreAggregationStatement> preAggregationStatement = portal.getPreparedStatement().getPreAggregationStatement();
+        if (preAggregationStatement.isEmpty()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        PreAggregationStatement statement = preAggregationStatement.get();
+        query.setBackend(RunningQuery.Backend.PRE_AGGREGATION);
+        return preAggregationManager.queryAsync(statement, portal.getParameters())
+                .handle((iterator, e) -> {
+                    if (e != null) {
+                        LOG.warn(e, "Failed to execute pre-aggregation query: %s", statement.getSql());
+                        stats.getPreAggregationFallbacks().update(1);
+                        return Optional.<ConnectorRecordIterator>empty();
+                    }
+                    stats.getPreAggregationQueries().update(1);
+                    return Optional.of(iterator);
+                });
+    }
+
     private CompletableFuture<Optional<Iterable<?>>> executeSessionCommand(Portal portal)
     {
         throw new UnsupportedOperationException();
@@ -342,6 +477,14 @@ public class WireProtocolSession
         }
     }
 
+    /**
+     * Close the portals left open when the connection is closed.
+     */
+    public void close()
+    {
+        portals.clear();
+    }
+
     private static class PreparedStatementMap
     {
         private final HashMap<String, PreparedStatement> delegate = new HashMap<>();
@@ -392,6 +535,12 @@ public class WireProtocolSession
     private static class PortalMap
     {
         private final Map<String, Portal> delegate = new ConcurrentHashMap<>();
+        private final WireProtocolStats stats;
+
+        private PortalMap(WireProtocolStats stats)
+        {
+            this.stats = stats;
+        }
 
         public Portal get(String key)
         {
@@ -401,13 +550,26 @@ public class WireProtocolSession
         public Portal put(String key, Portal value)
         {
             close(key);
-            return delegate.put(key, value);
+            Portal replaced = delegate.put(key, value);
+            if (replaced == null) {
+                stats.portalOpened();
+            }
+            return replaced;
         }
 
         public Portal remove(String key)
         {
             close(key);
-            return delegate.remove(key);
+            Portal removed = delegate.remove(key);
+            if (removed != null) {
+                stats.portalClosed();
+            }
+            return removed;
+        }
+
+        public void clear()
+        {
+            ImmutableList.copyOf(delegate.keySet()).forEach(this::remove);
         }
 
         public boolean containsKey(String key)
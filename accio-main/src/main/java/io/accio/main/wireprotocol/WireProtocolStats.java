@@ -0,0 +1,213 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * The stats of all the wire protocol connections. A query is counted once per execution, the later
+ * Execute messages of a suspended portal only add the rows and bytes they send.
+ */
+public class WireProtocolStats
+{
+    private final AtomicLong activeConnections = new AtomicLong();
+    private final AtomicLong activePortals = new AtomicLong();
+    private final CounterStat connections = new CounterStat();
+
+    private final CounterStat queries = new CounterStat();
+    private final CounterStat failedQueries = new CounterStat();
+    private final TimeStat queryTime = new TimeStat(MILLISECONDS);
+    private final TimeStat planningTime = new TimeStat(MILLISECONDS);
+
+    // where the statements are answered
+    private final CounterStat introspectionQueries = new CounterStat();
+    private final CounterStat localPgCatalogQueries = new CounterStat();
+    private final CounterStat preAggregationQueries = new CounterStat();
+    private final CounterStat preAggregationFallbacks = new CounterStat();
+    private final CounterStat dataSourceQueries = new CounterStat();
+    private final TimeStat dataSourceTime = new TimeStat(MILLISECONDS);
+
+    private final CounterStat rowsSent = new CounterStat();
+    private final CounterStat bytesSent = new CounterStat();
+
+    public void connectionOpened()
+    {
+        connections.update(1);
+        activeConnections.incrementAndGet();
+    }
+
+    public void connectionClosed()
+    {
+        activeConnections.decrementAndGet();
+    }
+
+    public void portalOpened()
+    {
+        activePortals.incrementAndGet();
+    }
+
+    public void portalClosed()
+    {
+        activePortals.decrementAndGet();
+    }
+
+    public void queryFinished(Duration elapsed)
+    {
+        queries.update(1);
+        queryTime.add(elapsed);
+    }
+
+    public void queryFailed(Duration elapsed)
+    {
+        queries.update(1);
+        failedQueries.update(1);
+        queryTime.add(elapsed);
+    }
+
+    public void resultSent(long rows, long bytes)
+    {
+        rowsSent.update(rows);
+        bytesSent.update(bytes);
+    }
+
+    @Managed
+    public long getActiveConnections()
+    {
+        return activeConnections.get();
+    }
+
+    @Managed
+    public long getActivePortals()
+    {
+        return activePortals.get();
+    }
+
+    /**
+     * The ratio of the queries answered by the pre-aggregation tables to the queries that read the models,
+     * the fallbacks are counted as data source queries.
+     */
+    @Managed
+    public double getPreAggregationHitRate()
+    {
+        long preAggregation = preAggregationQueries.getTotalCount();
+        long total = preAggregation + dataSourceQueries.getTotalCount();
+        return total == 0 ? 0 : (double) preAggregation / total;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getConnections()
+    {
+        return connections;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getQueries()
+    {
+        return queries;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFailedQueries()
+    {
+        return failedQueries;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getQueryTime()
+    {
+        return queryTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getPlanningTime()
+    {
+        return planningTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getIntrospectionQueries()
+    {
+        return introspectionQueries;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getLocalPgCatalogQueries()
+    {
+        return localPgCatalogQueries;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getPreAggregationQueries()
+    {
+        return preAggregationQueries;
+    }
+
+    /**
+     * The pre-aggregation queries that failed and were sent to the data source instead.
+     */
+    @Managed
+    @Nested
+    public CounterStat getPreAggregationFallbacks()
+    {
+        return preAggregationFallbacks;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getDataSourceQueries()
+    {
+        return dataSourceQueries;
+    }
+
+    /**
+     * The time until the data source returns the first rows.
+     */
+    @Managed
+    @Nested
+    public TimeStat getDataSourceTime()
+    {
+        return dataSourceTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRowsSent()
+    {
+        return rowsSent;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getBytesSent()
+    {
+        return bytesSent;
+    }
+}
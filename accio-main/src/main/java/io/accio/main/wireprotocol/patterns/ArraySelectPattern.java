@@ -30,7 +30,7 @@ public class ArraySelectPattern
 
     private ArraySelectPattern()
     {
-        super(Pattern.compile("(ARRAY[ \n]*\\([ \n]*SELECT)", CASE_INSENSITIVE));
+        super(Pattern.compile("(ARRAY[ \n]*\\([ \n]*SELECT)", CASE_INSENSITIVE), statement -> statement.containsWord("array"));
     }
 
     @Override
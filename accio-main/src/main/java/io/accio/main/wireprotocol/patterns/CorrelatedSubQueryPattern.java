@@ -38,7 +38,8 @@ public class CorrelatedSubQueryPattern
                         " *FROM pg_catalog.pg_statistic_ext stat\n" +
                         " *WHERE stxrelid = '\\d*'\n" +
                         " *ORDER BY 1",
-                CASE_INSENSITIVE));
+                CASE_INSENSITIVE),
+                statement -> statement.containsWord("pg_statistic_ext"));
     }
 
     @Override
@@ -26,7 +26,7 @@ public class DeallocatePattern
 
     private DeallocatePattern()
     {
-        super(Pattern.compile("(?i)^ *DEALLOCATE +([a-zA-Z0-9_]+)"));
+        super(Pattern.compile("(?i)^ *DEALLOCATE +([a-zA-Z0-9_]+)"), statement -> statement.startsWith("DEALLOCATE"));
     }
 
     @Override
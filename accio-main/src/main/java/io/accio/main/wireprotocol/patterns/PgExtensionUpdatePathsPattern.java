@@ -26,7 +26,7 @@ public class PgExtensionUpdatePathsPattern
         // Avoiding to pop-up an error message when refreshing data source in DataGrip.
         // Trino didn't support table function and array by table subquery expression.
         // Thus, rewrite this function through hard code for now.
-        super(Pattern.compile("pg_extension_update_paths"));
+        super(Pattern.compile("pg_extension_update_paths"), statement -> statement.containsWord("pg_extension_update_paths"));
     }
 
     @Override
@@ -15,6 +15,8 @@
 package io.accio.main.wireprotocol.patterns;
 
 import com.google.common.collect.ImmutableList;
+import io.accio.main.wireprotocol.ClassifiedStatement;
+import io.accio.main.wireprotocol.StatementClassifier;
 
 import java.util.List;
 
@@ -37,7 +39,17 @@ public final class PostgreSqlRewriteUtil
 
     public static String rewrite(String statement)
     {
+        return rewrite(StatementClassifier.classify(statement));
+    }
+
+    /**
+     * Only run the regex of the patterns whose keywords show up in the statement.
+     */
+    public static String rewrite(ClassifiedStatement classified)
+    {
+        String statement = classified.getSql();
         return PATTERNS.stream()
+                .filter(pattern -> pattern.mayMatch(classified))
                 .filter(pattern -> pattern.matcher(statement).find())
                 .findFirst()
                 .map(pattern -> pattern.rewrite(statement))
@@ -14,20 +14,40 @@
 
 package io.accio.main.wireprotocol.patterns;
 
+import io.accio.main.wireprotocol.ClassifiedStatement;
+
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static java.util.Objects.requireNonNull;
+
 public abstract class QueryPattern
 {
     private final Pattern pattern;
+    private final Predicate<ClassifiedStatement> precondition;
 
     public QueryPattern(Pattern pattern)
     {
-        this.pattern = pattern;
+        this(pattern, statement -> true);
+    }
+
+    /**
+     * @param precondition a cheap check on the classified statement, the pattern is only matched if it passes
+     */
+    public QueryPattern(Pattern pattern, Predicate<ClassifiedStatement> precondition)
+    {
+        this.pattern = requireNonNull(pattern, "pattern is null");
+        this.precondition = requireNonNull(precondition, "precondition is null");
     }
 
     protected abstract String rewrite(String statement);
 
+    boolean mayMatch(ClassifiedStatement statement)
+    {
+        return precondition.test(statement);
+    }
+
     protected Matcher matcher(String statement)
     {
         return this.pattern.matcher(statement);
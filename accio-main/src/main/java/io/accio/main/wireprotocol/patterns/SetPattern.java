@@ -24,7 +24,7 @@ public class SetPattern
 
     private SetPattern()
     {
-        super(Pattern.compile("(?i)^ *SET +(?!LOCAL|TIME ZONE|CONSTRAINTS|ROLE|TRANSACTION|SESSION)"));
+        super(Pattern.compile("(?i)^ *SET +(?!LOCAL|TIME ZONE|CONSTRAINTS|ROLE|TRANSACTION|SESSION)"), statement -> statement.startsWith("SET"));
     }
 
     @Override
@@ -23,7 +23,7 @@ public class ShowMaxIdentifierLengthPattern
 
     private ShowMaxIdentifierLengthPattern()
     {
-        super(Pattern.compile("(?i)^ *SHOW +max_identifier_length"));
+        super(Pattern.compile("(?i)^ *SHOW +max_identifier_length"), statement -> statement.startsWith("SHOW"));
     }
 
     @Override
@@ -23,7 +23,7 @@ public class ShowStandardConformingPattern
 
     private ShowStandardConformingPattern()
     {
-        super(Pattern.compile("(?i)^ *SHOW +standard_conforming_strings"));
+        super(Pattern.compile("(?i)^ *SHOW +standard_conforming_strings"), statement -> statement.startsWith("SHOW"));
     }
 
     @Override
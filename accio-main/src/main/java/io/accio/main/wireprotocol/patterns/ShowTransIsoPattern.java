@@ -23,7 +23,7 @@ public class ShowTransIsoPattern
 
     private ShowTransIsoPattern()
     {
-        super(Pattern.compile("(?i)^ *SHOW +TRANSACTION( *ISOLATION *LEVEL|_ISOLATION) *$"));
+        super(Pattern.compile("(?i)^ *SHOW +TRANSACTION( *ISOLATION *LEVEL|_ISOLATION) *$"), statement -> statement.startsWith("SHOW"));
     }
 
     @Override
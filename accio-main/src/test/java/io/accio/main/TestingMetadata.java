@@ -22,6 +22,7 @@ import io.accio.main.metadata.Metadata;
 import io.trino.sql.tree.QualifiedName;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class TestingMetadata
         implements Metadata
@@ -86,9 +87,24 @@ public class TestingMetadata
         throw new UnsupportedOperationException("TestingMetadata doesn't support this method");
     }
 
+    @Override
+    public CompletableFuture<ConnectorRecordIterator> directQueryAsync(String sql, List<Parameter> parameters)
+    {
+        throw new UnsupportedOperationException("TestingMetadata doesn't support this method");
+    }
+
+    @Override
+    public CompletableFuture<List<Column>> describeQueryAsync(String sql, List<Parameter> parameters)
+    {
+        throw new UnsupportedOperationException("TestingMetadata doesn't support this method");
+    }
+
     @Override
     public boolean isPgCompatible()
     {
         return false;
     }
+
+    @Override
+    public void invalidateCache() {}
 }
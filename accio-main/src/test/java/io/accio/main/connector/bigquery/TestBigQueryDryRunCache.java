@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.connector.bigquery;
+
+import com.google.common.collect.ImmutableList;
+import io.accio.base.Column;
+import io.accio.base.Parameter;
+import io.airlift.units.Duration;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.accio.base.type.BigIntType.BIGINT;
+import static io.accio.base.type.IntegerType.INTEGER;
+import static io.accio.base.type.VarcharType.VARCHAR;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertThrows;
+
+public class TestBigQueryDryRunCache
+{
+    private static final List<Column> COLUMNS = ImmutableList.of(new Column("c1", BIGINT));
+
+    @Test
+    public void testCacheKey()
+    {
+        BigQueryDryRunCache cache = new BigQueryDryRunCache(100, new Duration(10, MINUTES));
+        AtomicInteger dryRuns = new AtomicInteger();
+
+        List<Parameter> intParameter = ImmutableList.of(new Parameter(INTEGER, 1));
+        assertSame(cache.get("SELECT ?", intParameter, 1, () -> dryRun(dryRuns)), COLUMNS);
+        // the value of the parameter doesn't matter
+        assertSame(cache.get("SELECT ?", ImmutableList.of(new Parameter(INTEGER, 2)), 1, () -> dryRun(dryRuns)), COLUMNS);
+        assertEquals(dryRuns.get(), 1);
+
+        cache.get("SELECT ?", ImmutableList.of(new Parameter(VARCHAR, "1")), 1, () -> dryRun(dryRuns));
+        assertEquals(dryRuns.get(), 2);
+        cache.get("SELECT ?", intParameter, 2, () -> dryRun(dryRuns));
+        assertEquals(dryRuns.get(), 3);
+        cache.get("SELECT ? ", intParameter, 2, () -> dryRun(dryRuns));
+        assertEquals(dryRuns.get(), 4);
+
+        cache.invalidateAll();
+        cache.get("SELECT ?", intParameter, 1, () -> dryRun(dryRuns));
+        assertEquals(dryRuns.get(), 5);
+    }
+
+    @Test
+    public void testFailureNotCached()
+    {
+        BigQueryDryRunCache cache = new BigQueryDryRunCache(100, new Duration(10, MINUTES));
+        assertThrows(IllegalStateException.class, () -> cache.get("SELECT 1", ImmutableList.of(), 1, () -> {
+            throw new IllegalStateException("dry-run failed");
+        }));
+        assertSame(cache.get("SELECT 1", ImmutableList.of(), 1, () -> COLUMNS), COLUMNS);
+    }
+
+    @Test
+    public void testConcurrentMissesCollapsed()
+            throws Exception
+    {
+        BigQueryDryRunCache cache = new BigQueryDryRunCache(100, new Duration(10, MINUTES));
+        AtomicInteger dryRuns = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = newFixedThreadPool(8);
+        try {
+            ImmutableList.Builder<Future<List<Column>>> futures = ImmutableList.builder();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cache.get("SELECT 1", ImmutableList.of(), 1, () -> {
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return dryRun(dryRuns);
+                })));
+            }
+            SECONDS.sleep(1);
+            release.countDown();
+            for (Future<List<Column>> future : futures.build()) {
+                assertSame(future.get(10, SECONDS), COLUMNS);
+            }
+            assertEquals(dryRuns.get(), 1);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Column> dryRun(AtomicInteger dryRuns)
+    {
+        dryRuns.incrementAndGet();
+        return COLUMNS;
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.connector.bigquery;
+
+import com.google.api.services.bigquery.model.Dataset;
+import com.google.api.services.bigquery.model.DatasetReference;
+import com.google.api.services.bigquery.model.Table;
+import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.google.api.services.bigquery.model.TableReference;
+import com.google.api.services.bigquery.model.TableSchema;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.Tuple;
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.TableResult;
+import com.google.cloud.bigquery.spi.v2.BigQueryRpc;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multiset;
+import io.accio.base.Parameter;
+import io.accio.base.metadata.TableMetadata;
+import io.accio.connector.bigquery.BigQueryClient;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TestBigQueryMetadata
+{
+    private static final String PROJECT_ID = "project";
+    private static final String LOCATION = "asia-east1";
+
+    @Test
+    public void testCacheSchemas()
+    {
+        StubBigQuery stub = new StubBigQuery();
+        stub.addDataset("tpch", LOCATION);
+        stub.addDataset("other_location", "us");
+        StubBigQueryClient client = new StubBigQueryClient(stub);
+        BigQueryMetadata metadata = createMetadata(client);
+        try {
+            assertThat(metadata.listSchemas()).containsExactly("tpch");
+            assertThat(metadata.listSchemas()).containsExactly("tpch");
+            assertThat(stub.calls.count("listDatasets")).isEqualTo(1);
+            // the location is in the listing, the datasets aren't fetched one by one
+            assertThat(stub.calls.count("getDataset")).isEqualTo(0);
+
+            metadata.createSchema("created");
+            assertThat(metadata.listSchemas()).containsExactlyInAnyOrder("tpch", "created");
+            assertThat(stub.calls.count("listDatasets")).isEqualTo(2);
+
+            stub.addDataset("added", LOCATION);
+            assertThat(metadata.listSchemas()).doesNotContain("added");
+            metadata.directDDL("CREATE SCHEMA added");
+            assertThat(client.ddl).containsExactly("CREATE SCHEMA added");
+            assertThat(metadata.listSchemas()).containsExactlyInAnyOrder("tpch", "created", "added");
+            assertThat(stub.calls.count("listDatasets")).isEqualTo(3);
+        }
+        finally {
+            metadata.close();
+        }
+    }
+
+    @Test
+    public void testListingWithoutLocation()
+    {
+        StubBigQuery stub = new StubBigQuery();
+        stub.addDataset("tpch", LOCATION);
+        stub.addDataset("without_location", LOCATION);
+        stub.addDataset("other_location", "us");
+        stub.listedWithoutLocation.add("without_location");
+        stub.listedWithoutLocation.add("other_location");
+        BigQueryMetadata metadata = createMetadata(new StubBigQueryClient(stub));
+        try {
+            // only the datasets listed without the location are fetched to check it
+            assertThat(metadata.listSchemas()).containsExactlyInAnyOrder("tpch", "without_location");
+            assertThat(stub.calls.count("getDataset")).isEqualTo(2);
+        }
+        finally {
+            metadata.close();
+        }
+    }
+
+    @Test(timeOut = 30_000)
+    public void testCacheTables()
+    {
+        StubBigQuery stub = new StubBigQuery();
+        stub.addDataset("tpch", LOCATION);
+        stub.addTable("tpch", "orders");
+        stub.addTable("tpch", "customer");
+        stub.addTable("tpch", "lineitem");
+        // every table waits for the others, it only passes if the tables are fetched in parallel
+        stub.getTableBarrier = new CountDownLatch(3);
+        StubBigQueryClient client = new StubBigQueryClient(stub);
+        BigQueryMetadata metadata = createMetadata(client);
+        try {
+            assertThat(metadata.listTables("tpch"))
+                    .extracting(table -> table.getTable().getTableName())
+                    .containsExactly("orders", "customer", "lineitem");
+            assertThat(metadata.listTables("tpch")).hasSize(3);
+            assertThat(stub.calls.count("listTables")).isEqualTo(1);
+            assertThat(stub.calls.count("getTable")).isEqualTo(3);
+
+            stub.getTableBarrier = null;
+            stub.addTable("tpch", "nation");
+            metadata.directDDL("CREATE TABLE tpch.nation (c1 INT64)");
+            assertThat(metadata.listTables("tpch")).hasSize(4);
+            assertThat(stub.calls.count("listTables")).isEqualTo(2);
+            assertThat(stub.calls.count("getTable")).isEqualTo(7);
+
+            stub.addTable("tpch", "region");
+            metadata.invalidateCache();
+            assertThat(metadata.listTables("tpch")).hasSize(5);
+            assertThat(stub.calls.count("listTables")).isEqualTo(3);
+        }
+        finally {
+            metadata.close();
+        }
+    }
+
+    @Test
+    public void testFailedGetTableNotCached()
+    {
+        StubBigQuery stub = new StubBigQuery();
+        stub.addDataset("tpch", LOCATION);
+        stub.addTable("tpch", "orders");
+        stub.addTable("tpch", "broken");
+        stub.failingTables.add("broken");
+        BigQueryMetadata metadata = createMetadata(new StubBigQueryClient(stub));
+        try {
+            assertThatThrownBy(() -> metadata.listTables("tpch"))
+                    .isInstanceOf(BigQueryException.class)
+                    .hasMessageContaining("Failed to get table broken");
+
+            stub.failingTables.clear();
+            List<TableMetadata> tables = metadata.listTables("tpch");
+            assertThat(tables)
+                    .extracting(table -> table.getTable().getTableName())
+                    .containsExactly("orders", "broken");
+            assertThat(stub.calls.count("listTables")).isEqualTo(2);
+        }
+        finally {
+            metadata.close();
+        }
+    }
+
+    private static BigQueryMetadata createMetadata(BigQueryClient client)
+    {
+        return new BigQueryMetadata(client, new BigQueryConfig().setLocation(LOCATION));
+    }
+
+    private static class StubBigQueryClient
+            extends BigQueryClient
+    {
+        private final List<String> ddl = new CopyOnWriteArrayList<>();
+
+        private StubBigQueryClient(StubBigQuery stub)
+        {
+            super(stub.createBigQuery());
+        }
+
+        @Override
+        public TableResult query(String sql, List<Parameter> parameters)
+        {
+            ddl.add(sql);
+            return null;
+        }
+    }
+
+    /**
+     * Answers the metadata requests of the BigQuery service at its rpc layer, so the client gets the real
+     * datasets and tables built from the responses.
+     */
+    private static class StubBigQuery
+            implements InvocationHandler
+    {
+        private final Map<String, Dataset> datasets = new ConcurrentHashMap<>();
+        private final Map<String, List<String>> tables = new ConcurrentHashMap<>();
+        private final Set<String> listedWithoutLocation = ConcurrentHashMap.newKeySet();
+        private final Set<String> failingTables = ConcurrentHashMap.newKeySet();
+        private final Multiset<String> calls = ConcurrentHashMultiset.create();
+        private volatile CountDownLatch getTableBarrier;
+
+        private BigQuery createBigQuery()
+        {
+            BigQueryRpc rpc = (BigQueryRpc) Proxy.newProxyInstance(BigQueryRpc.class.getClassLoader(), new Class<?>[] {BigQueryRpc.class}, this);
+            return BigQueryOptions.newBuilder()
+                    .setProjectId(PROJECT_ID)
+                    .setCredentials(NoCredentials.getInstance())
+                    .setServiceRpcFactory(options -> rpc)
+                    .build()
+                    .getService();
+        }
+
+        private void addDataset(String name, String location)
+        {
+            datasets.put(name, new Dataset()
+                    .setDatasetReference(new DatasetReference().setProjectId(PROJECT_ID).setDatasetId(name))
+                    .setLocation(location));
+            tables.putIfAbsent(name, new CopyOnWriteArrayList<>());
+        }
+
+        private void addTable(String dataset, String name)
+        {
+            tables.get(dataset).add(name);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Exception
+        {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(this, args);
+            }
+            calls.add(method.getName());
+            switch (method.getName()) {
+                case "listDatasets":
+                    return Tuple.of(null, datasets.values().stream()
+                            .map(dataset -> new Dataset()
+                                    .setDatasetReference(dataset.getDatasetReference())
+                                    .setLocation(listedWithoutLocation.contains(dataset.getDatasetReference().getDatasetId()) ? null : dataset.getLocation()))
+                            .collect(toImmutableList()));
+                case "getDataset":
+                    return datasets.get((String) args[1]);
+                case "create":
+                    if (args[0] instanceof Dataset) {
+                        Dataset dataset = (Dataset) args[0];
+                        datasets.put(dataset.getDatasetReference().getDatasetId(), dataset);
+                        tables.putIfAbsent(dataset.getDatasetReference().getDatasetId(), new CopyOnWriteArrayList<>());
+                        return dataset;
+                    }
+                    break;
+                case "listTables":
+                    // the listing doesn't contain the schema
+                    return Tuple.of(null, tables.get((String) args[1]).stream()
+                            .map(table -> new Table()
+                                    .setTableReference(tableReference((String) args[1], table))
+                                    .setType("TABLE"))
+                            .collect(toImmutableList()));
+                case "getTable":
+                    return getTable((String) args[1], (String) args[2]);
+                default:
+                    break;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+
+        private Table getTable(String dataset, String table)
+                throws InterruptedException
+        {
+            CountDownLatch barrier = getTableBarrier;
+            if (barrier != null) {
+                barrier.countDown();
+                if (!barrier.await(10, SECONDS)) {
+                    throw new IllegalStateException("The tables aren't fetched in parallel");
+                }
+            }
+            if (failingTables.contains(table)) {
+                throw new BigQueryException(400, "Failed to get table " + table);
+            }
+            return new Table()
+                    .setTableReference(tableReference(dataset, table))
+                    .setType("TABLE")
+                    .setSchema(new TableSchema().setFields(ImmutableList.of(
+                            new TableFieldSchema().setName("c1").setType("INTEGER"),
+                            new TableFieldSchema().setName("c2").setType("STRING"))));
+        }
+
+        private static TableReference tableReference(String dataset, String table)
+        {
+            return new TableReference().setProjectId(PROJECT_ID).setDatasetId(dataset).setTableId(table);
+        }
+    }
+}
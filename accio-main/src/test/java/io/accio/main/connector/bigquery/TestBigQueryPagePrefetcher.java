@@ -0,0 +1,235 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.connector.bigquery;
+
+import com.google.api.gax.paging.Page;
+import com.google.cloud.bigquery.FieldValue;
+import com.google.cloud.bigquery.FieldValueList;
+import com.google.cloud.bigquery.TableResult;
+import com.google.common.collect.ImmutableList;
+import io.airlift.units.DataSize;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.airlift.units.DataSize.Unit.BYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TestBigQueryPagePrefetcher
+{
+    private static final int ROWS_PER_PAGE = 3;
+
+    @Test(timeOut = 10_000)
+    public void testIterateAllPages()
+    {
+        ExecutorService executor = newCachedThreadPool();
+        try (BigQueryPagePrefetcher prefetcher = new BigQueryPagePrefetcher(tableResult(5, new AtomicInteger(), -1), executor, 2, DataSize.of(1, MEGABYTE))) {
+            ImmutableList.Builder<String> values = ImmutableList.builder();
+            prefetcher.forEachRemaining(row -> values.add(row.get(0).getStringValue()));
+            assertThat(values.build()).isEqualTo(expectedValues(5));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testSinglePage()
+    {
+        ExecutorService executor = newCachedThreadPool();
+        AtomicInteger fetchedPages = new AtomicInteger();
+        try (BigQueryPagePrefetcher prefetcher = new BigQueryPagePrefetcher(tableResult(1, fetchedPages, -1), executor, 2, DataSize.of(1, MEGABYTE))) {
+            assertThat(ImmutableList.copyOf(prefetcher)).hasSize(ROWS_PER_PAGE);
+            assertThat(prefetcher.hasNext()).isFalse();
+            assertThat(fetchedPages.get()).isEqualTo(0);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testPageLimit()
+            throws Exception
+    {
+        ExecutorService executor = newCachedThreadPool();
+        AtomicInteger fetchedPages = new AtomicInteger();
+        try (BigQueryPagePrefetcher prefetcher = new BigQueryPagePrefetcher(tableResult(10, fetchedPages, -1), executor, 2, DataSize.of(1, MEGABYTE))) {
+            // two pages are buffered and the fetcher holds the third one while it waits for room
+            assertFetchedPages(fetchedPages, 3);
+
+            // consuming the first page and the first buffered page makes room for one more page
+            for (int i = 0; i < ROWS_PER_PAGE + 1; i++) {
+                prefetcher.next();
+            }
+            assertFetchedPages(fetchedPages, 4);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testSizeLimit()
+            throws Exception
+    {
+        ExecutorService executor = newCachedThreadPool();
+        AtomicInteger fetchedPages = new AtomicInteger();
+        try (BigQueryPagePrefetcher prefetcher = new BigQueryPagePrefetcher(tableResult(10, fetchedPages, -1), executor, 10, DataSize.of(1, BYTE))) {
+            // one page is always handed over even if it's over the limit, the fetcher holds the next one
+            assertFetchedPages(fetchedPages, 2);
+
+            ImmutableList.Builder<String> values = ImmutableList.builder();
+            prefetcher.forEachRemaining(row -> values.add(row.get(0).getStringValue()));
+            assertThat(values.build()).isEqualTo(expectedValues(10));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testFetchFailure()
+    {
+        ExecutorService executor = newCachedThreadPool();
+        try (BigQueryPagePrefetcher prefetcher = new BigQueryPagePrefetcher(tableResult(5, new AtomicInteger(), 2), executor, 2, DataSize.of(1, MEGABYTE))) {
+            // the pages before the failure are still served
+            for (int i = 0; i < 2 * ROWS_PER_PAGE; i++) {
+                prefetcher.next();
+            }
+            // an Error thrown by the client must not leave the consumer waiting
+            assertThatThrownBy(prefetcher::hasNext)
+                    .isInstanceOf(RuntimeException.class)
+                    .hasMessage("Failed to fetch the BigQuery result")
+                    .hasCauseInstanceOf(AssertionError.class);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testClose()
+            throws Exception
+    {
+        ExecutorService executor = newCachedThreadPool();
+        AtomicInteger fetchedPages = new AtomicInteger();
+        try {
+            BigQueryPagePrefetcher prefetcher = new BigQueryPagePrefetcher(tableResult(10, fetchedPages, -1), executor, 1, DataSize.of(1, MEGABYTE));
+            assertFetchedPages(fetchedPages, 2);
+            prefetcher.close();
+
+            assertThat(prefetcher.hasNext()).isFalse();
+            executor.shutdown();
+            // the fetcher waiting for room stops instead of fetching the rest of the result
+            assertThat(executor.awaitTermination(5, SECONDS)).isTrue();
+            assertThat(fetchedPages.get()).isEqualTo(2);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertFetchedPages(AtomicInteger fetchedPages, int expected)
+            throws InterruptedException
+    {
+        while (fetchedPages.get() < expected) {
+            MILLISECONDS.sleep(10);
+        }
+        // give the fetcher the chance to go over the limit
+        MILLISECONDS.sleep(200);
+        assertThat(fetchedPages.get()).isEqualTo(expected);
+    }
+
+    private static List<String> expectedValues(int pageCount)
+    {
+        return IntStream.range(0, pageCount * ROWS_PER_PAGE)
+                .mapToObj(i -> "value" + i)
+                .collect(toImmutableList());
+    }
+
+    /**
+     * @param failingPage the index of the page whose fetch throws, or -1 if every page can be fetched
+     */
+    private static TableResult tableResult(int pageCount, AtomicInteger fetchedPages, int failingPage)
+    {
+        return new TableResult(null, (long) pageCount * ROWS_PER_PAGE, new TestingPage(0, pageCount, fetchedPages, failingPage));
+    }
+
+    private static class TestingPage
+            implements Page<FieldValueList>
+    {
+        private final int index;
+        private final int pageCount;
+        private final AtomicInteger fetchedPages;
+        private final int failingPage;
+
+        private TestingPage(int index, int pageCount, AtomicInteger fetchedPages, int failingPage)
+        {
+            this.index = index;
+            this.pageCount = pageCount;
+            this.fetchedPages = fetchedPages;
+            this.failingPage = failingPage;
+        }
+
+        @Override
+        public boolean hasNextPage()
+        {
+            return index + 1 < pageCount;
+        }
+
+        @Override
+        public String getNextPageToken()
+        {
+            return hasNextPage() ? String.valueOf(index + 1) : null;
+        }
+
+        @Override
+        public Page<FieldValueList> getNextPage()
+        {
+            if (!hasNextPage()) {
+                return null;
+            }
+            if (index + 1 == failingPage) {
+                throw new AssertionError("failed to fetch page " + failingPage);
+            }
+            fetchedPages.incrementAndGet();
+            return new TestingPage(index + 1, pageCount, fetchedPages, failingPage);
+        }
+
+        @Override
+        public Iterable<FieldValueList> iterateAll()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterable<FieldValueList> getValues()
+        {
+            return IntStream.range(index * ROWS_PER_PAGE, (index + 1) * ROWS_PER_PAGE)
+                    .mapToObj(i -> FieldValueList.of(ImmutableList.of(FieldValue.of(FieldValue.Attribute.PRIMITIVE, "value" + i))))
+                    .collect(toImmutableList());
+        }
+    }
+}
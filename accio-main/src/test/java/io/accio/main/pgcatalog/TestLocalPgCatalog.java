@@ -0,0 +1,157 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.pgcatalog;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import io.accio.base.AccioMDL;
+import io.accio.base.ConnectorRecordIterator;
+import io.accio.base.client.duckdb.DuckdbClient;
+import io.accio.base.dto.Manifest;
+import io.accio.main.AccioMetastore;
+import io.accio.main.PostgresWireProtocolConfig;
+import io.accio.main.TestingMetadata;
+import io.accio.main.metadata.Metadata;
+import io.accio.main.pgcatalog.builder.DuckdbPgCatalogTableBuilder;
+import io.trino.sql.parser.SqlParser;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static io.accio.base.dto.Column.column;
+import static io.accio.base.dto.Model.model;
+import static io.accio.main.wireprotocol.WireProtocolSession.PARSE_AS_DECIMAL;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestLocalPgCatalog
+{
+    private final AccioMDL accioMDL = AccioMDL.fromManifest(
+            Manifest.builder()
+                    .setCatalog("accio_catalog")
+                    .setSchema("accio_schema")
+                    .setModels(List.of(
+                            model("OrdersModel",
+                                    "select * from orders",
+                                    List.of(
+                                            column("orderkey", "int4", null, true),
+                                            column("orderstatus", "varchar", null, true)),
+                                    "orderkey")))
+                    .build());
+
+    private final SqlParser sqlParser = new SqlParser();
+    private final LocalPgCatalog localPgCatalog;
+
+    public TestLocalPgCatalog()
+    {
+        Metadata metadata = new TestingMetadata()
+        {
+            @Override
+            public String getDefaultCatalog()
+            {
+                return "accio_catalog";
+            }
+        };
+        AccioMetastore accioMetastore = new AccioMetastore()
+        {
+            @Override
+            public AccioMDL getAccioMDL()
+            {
+                return accioMDL;
+            }
+
+            @Override
+            public long getAccioMDLVersion()
+            {
+                return 1;
+            }
+        };
+        DuckdbClient duckdbClient = new DuckdbClient();
+        localPgCatalog = new LocalPgCatalog(
+                metadata,
+                accioMetastore,
+                duckdbClient,
+                new DuckdbPgCatalogTableBuilder(metadata, accioMetastore, duckdbClient),
+                new PostgresWireProtocolConfig());
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void close()
+    {
+        localPgCatalog.close();
+    }
+
+    @Test
+    public void testRewrite()
+    {
+        assertThat(rewrite("SELECT c.relname FROM accio_catalog.pg_catalog.pg_class c WHERE accio_catalog.pg_catalog.pg_class.oid > 0"))
+                .hasValueSatisfying(sql -> assertThat(sql)
+                        .contains("accio_pg_catalog")
+                        .doesNotContain("accio_catalog"));
+        assertThat(rewrite("WITH t AS (SELECT oid FROM pg_catalog.pg_type) SELECT * FROM t")).isPresent();
+
+        // the other tables are read from the data source
+        assertThat(rewrite("SELECT * FROM accio_catalog.pg_catalog.pg_class JOIN accio_schema.OrdersModel ON true")).isEmpty();
+        assertThat(rewrite("SELECT * FROM accio_catalog.information_schema.tables")).isEmpty();
+        assertThat(rewrite("SELECT 1")).isEmpty();
+    }
+
+    @Test
+    public void testReadsPgCatalog()
+    {
+        assertThat(readsPgCatalog("SELECT * FROM accio_catalog.pg_catalog.pg_class")).isTrue();
+        assertThat(readsPgCatalog("SELECT * FROM accio_catalog.pg_catalog.pg_class JOIN accio_schema.OrdersModel ON true")).isTrue();
+        assertThat(readsPgCatalog("SELECT * FROM accio_schema.OrdersModel")).isFalse();
+        assertThat(readsPgCatalog("SELECT 1")).isFalse();
+    }
+
+    @Test
+    public void testQuery()
+    {
+        long ordersOid = Hashing.farmHashFingerprint64().hashString("accio_schemaOrdersModel", UTF_8).asLong();
+        assertThat(query("SELECT oid, relname FROM accio_catalog.pg_catalog.pg_class WHERE relname = 'OrdersModel'"))
+                .containsExactly(new Object[] {ordersOid, "OrdersModel"});
+        assertThat(query("SELECT a.attname, a.attnum FROM pg_catalog.pg_attribute a JOIN pg_catalog.pg_class c ON a.attrelid = c.oid " +
+                "WHERE c.relname = 'OrdersModel' ORDER BY a.attnum"))
+                .containsExactly(new Object[] {"orderkey", 1L}, new Object[] {"orderstatus", 2L});
+        assertThat(query("SELECT nspname FROM pg_catalog.pg_namespace ORDER BY nspname"))
+                .containsExactly(new Object[] {"accio_schema"}, new Object[] {"pg_catalog"});
+        assertThat(query("SELECT typname FROM pg_catalog.pg_type t JOIN pg_catalog.pg_namespace n ON t.typnamespace = n.oid WHERE t.oid = 23"))
+                .containsExactly(new Object[] {"int4"});
+    }
+
+    private boolean readsPgCatalog(String sql)
+    {
+        return localPgCatalog.readsPgCatalog(sqlParser.createStatement(sql, PARSE_AS_DECIMAL));
+    }
+
+    private Optional<String> rewrite(String sql)
+    {
+        return localPgCatalog.rewrite(sqlParser.createStatement(sql, PARSE_AS_DECIMAL));
+    }
+
+    private List<Object[]> query(String sql)
+    {
+        String localSql = rewrite(sql).orElseThrow();
+        try (ConnectorRecordIterator iterator = localPgCatalog.queryAsync(localSql, ImmutableList.of()).join()) {
+            return ImmutableList.copyOf(iterator);
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.pgcatalog;
+
+import com.google.common.collect.ImmutableList;
+import io.accio.base.AccioException;
+import io.accio.base.AccioMDL;
+import io.accio.base.ConnectorRecordIterator;
+import io.accio.base.Parameter;
+import io.accio.base.dto.Manifest;
+import io.accio.base.metadata.SchemaTableName;
+import io.accio.base.metadata.TableMetadata;
+import io.accio.base.type.PGType;
+import io.accio.main.AccioMetastore;
+import io.accio.main.PostgresWireProtocolConfig;
+import io.accio.main.TestingMetadata;
+import io.accio.main.metadata.Metadata;
+import io.accio.main.pgcatalog.builder.BigQueryPgCatalogTableBuilder;
+import io.accio.main.pgcatalog.builder.BigQueryPgFunctionBuilder;
+import io.accio.main.pgcatalog.function.PgFunction;
+import io.accio.main.pgcatalog.function.PgFunctionRegistry;
+import io.accio.main.pgcatalog.regtype.TestingPgMetadata;
+import io.airlift.units.Duration;
+import org.testng.annotations.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static io.accio.base.dto.Column.column;
+import static io.accio.base.dto.Model.model;
+import static io.accio.base.type.VarcharType.VARCHAR;
+import static io.accio.main.pgcatalog.PgCatalogManager.FINGERPRINT_TABLE_NAME;
+import static io.accio.main.pgcatalog.PgCatalogUtils.ACCIO_TEMP_NAME;
+import static io.accio.main.pgcatalog.PgCatalogUtils.PG_CATALOG_NAME;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TestPgCatalogManager
+{
+    private static final Pattern FINGERPRINT_ROW = Pattern.compile("SELECT '([^']*)' AS name, '([^']*)' AS fingerprint");
+    private static final Pattern TEMP_TABLE = Pattern.compile("CREATE OR REPLACE VIEW `" + ACCIO_TEMP_NAME + "\\.(\\w+)`");
+
+    private volatile AccioMDL accioMDL = accioMDL("OrdersModel");
+    private final AccioMetastore accioMetastore = new AccioMetastore()
+    {
+        @Override
+        public AccioMDL getAccioMDL()
+        {
+            return accioMDL;
+        }
+
+        @Override
+        public long getAccioMDLVersion()
+        {
+            return 1;
+        }
+    };
+
+    @Test
+    public void testCreateOnlyOutdatedObjects()
+    {
+        RecordingMetadata metadata = new RecordingMetadata();
+        PgCatalogManager pgCatalogManager = createPgCatalogManager(metadata, new PostgresWireProtocolConfig());
+
+        int pgFunctions = new PgFunctionRegistry().getPgFunctions().size();
+        pgCatalogManager.initPgCatalog();
+        // the source tables, the tables, the functions and the fingerprints
+        assertThat(metadata.ddls).hasSize(3 + PgCatalogManager.initTables().size() + pgFunctions + 1);
+        assertThat(metadata.fingerprints).hasSize(3 + PgCatalogManager.initTables().size() + pgFunctions);
+
+        metadata.ddls.clear();
+        pgCatalogManager.initPgCatalog();
+        assertThat(metadata.ddls).isEmpty();
+
+        // only the source tables read the MDL
+        accioMDL = accioMDL("CustomerModel");
+        pgCatalogManager.initPgCatalog();
+        assertThat(metadata.ddls).hasSize(3);
+        assertThat(metadata.ddls).filteredOn(sql -> sql.contains("CustomerModel")).hasSize(2);
+        assertThat(metadata.ddls.get(2)).contains(FINGERPRINT_TABLE_NAME);
+    }
+
+    @Test
+    public void testRecreateDroppedSourceTables()
+    {
+        RecordingMetadata metadata = new RecordingMetadata();
+        PgCatalogManager pgCatalogManager = createPgCatalogManager(metadata, new PostgresWireProtocolConfig());
+        pgCatalogManager.initPgCatalog();
+
+        // the fingerprints still match, but the table is gone
+        metadata.ddls.clear();
+        metadata.tempTables.remove("all_columns");
+        pgCatalogManager.initPgCatalog();
+        assertThat(metadata.ddls).hasSize(2);
+        assertThat(metadata.ddls.get(0)).contains("all_columns");
+        assertThat(metadata.ddls.get(1)).contains(FINGERPRINT_TABLE_NAME);
+    }
+
+    @Test
+    public void testWaitForInitialization()
+            throws Exception
+    {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingMetadata metadata = new RecordingMetadata()
+        {
+            @Override
+            public void directDDL(String sql)
+            {
+                started.countDown();
+                awaitUninterruptibly(release);
+                super.directDDL(sql);
+            }
+        };
+        PgCatalogManager pgCatalogManager = createPgCatalogManager(metadata, new PostgresWireProtocolConfig());
+        // nothing to wait for before the background initialization is started
+        assertThat(pgCatalogManager.whenReady()).isCompleted();
+
+        CompletableFuture<Void> initialization = pgCatalogManager.initPgCatalogAsync();
+        started.await();
+        CompletableFuture<Void> ready = pgCatalogManager.whenReady();
+        assertThat(ready).isNotDone();
+
+        release.countDown();
+        initialization.get(10, SECONDS);
+        ready.get(10, SECONDS);
+        assertThat(pgCatalogManager.whenReady()).isCompleted();
+    }
+
+    @Test
+    public void testWaitTimeout()
+            throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingMetadata metadata = new RecordingMetadata()
+        {
+            @Override
+            public void directDDL(String sql)
+            {
+                awaitUninterruptibly(release);
+                super.directDDL(sql);
+            }
+        };
+        PgCatalogManager pgCatalogManager = createPgCatalogManager(
+                metadata,
+                new PostgresWireProtocolConfig().setPgCatalogInitWaitTimeout(new Duration(10, MILLISECONDS)));
+        CompletableFuture<Void> initialization = pgCatalogManager.initPgCatalogAsync();
+        try {
+            assertThatThrownBy(() -> pgCatalogManager.whenReady().join())
+                    .hasCauseInstanceOf(AccioException.class)
+                    .hasRootCauseInstanceOf(TimeoutException.class);
+        }
+        finally {
+            release.countDown();
+        }
+        initialization.get(10, SECONDS);
+    }
+
+    @Test
+    public void testFailFastAfterFailedInitialization()
+    {
+        RecordingMetadata metadata = new RecordingMetadata()
+        {
+            @Override
+            public void directDDL(String sql)
+            {
+                throw new IllegalStateException("failed to create");
+            }
+        };
+        PgCatalogManager pgCatalogManager = createPgCatalogManager(metadata, new PostgresWireProtocolConfig());
+        try {
+            assertThatThrownBy(() -> pgCatalogManager.initPgCatalogAsync().join())
+                    .hasRootCauseMessage("failed to create");
+            assertThat(pgCatalogManager.whenReady()).isDone();
+            assertThatThrownBy(() -> pgCatalogManager.whenReady().join())
+                    .hasCauseInstanceOf(AccioException.class)
+                    .hasRootCauseMessage("failed to create");
+        }
+        finally {
+            pgCatalogManager.close();
+        }
+    }
+
+    @Test
+    public void testRetryFailedInitialization()
+            throws Exception
+    {
+        AtomicInteger failures = new AtomicInteger(2);
+        RecordingMetadata metadata = new RecordingMetadata()
+        {
+            @Override
+            public void directDDL(String sql)
+            {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("failed to create");
+                }
+                super.directDDL(sql);
+            }
+        };
+        PgCatalogManager pgCatalogManager = createPgCatalogManager(
+                metadata,
+                new PostgresWireProtocolConfig().setPgCatalogInitRetryMaxDelay(new Duration(10, MILLISECONDS)));
+        try {
+            assertThatThrownBy(() -> pgCatalogManager.initPgCatalogAsync().join())
+                    .hasRootCauseMessage("failed to create");
+
+            long deadline = System.nanoTime() + SECONDS.toNanos(10);
+            while (true) {
+                try {
+                    pgCatalogManager.whenReady().get(10, SECONDS);
+                    break;
+                }
+                catch (ExecutionException e) {
+                    // between the attempts
+                    assertThat(System.nanoTime()).isLessThan(deadline);
+                    Thread.sleep(10);
+                }
+            }
+            assertThat(metadata.fingerprints).isNotEmpty();
+        }
+        finally {
+            pgCatalogManager.close();
+        }
+    }
+
+    private PgCatalogManager createPgCatalogManager(Metadata metadata, PostgresWireProtocolConfig config)
+    {
+        return new PgCatalogManager(
+                metadata,
+                new BigQueryPgCatalogTableBuilder(metadata, accioMetastore),
+                new BigQueryPgFunctionBuilder(metadata),
+                new TestingPgMetadata(),
+                config);
+    }
+
+    private static AccioMDL accioMDL(String modelName)
+    {
+        return AccioMDL.fromManifest(
+                Manifest.builder()
+                        .setCatalog("accio_catalog")
+                        .setSchema("accio_schema")
+                        .setModels(List.of(
+                                model(modelName,
+                                        "select * from orders",
+                                        List.of(column("orderkey", "int4", null, true)),
+                                        "orderkey")))
+                        .build());
+    }
+
+    private static class RecordingMetadata
+            extends TestingMetadata
+    {
+        private final List<String> ddls = new CopyOnWriteArrayList<>();
+        private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+        private final Set<String> tempTables = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public boolean isSchemaExist(String name)
+        {
+            return true;
+        }
+
+        @Override
+        public List<TableMetadata> listTables(String schemaName)
+        {
+            if (schemaName.equals(PG_CATALOG_NAME)) {
+                return PgCatalogManager.initTables().keySet().stream()
+                        .map(name -> TableMetadata.builder(new SchemaTableName(PG_CATALOG_NAME, name)).build())
+                        .collect(toImmutableList());
+            }
+            if (schemaName.equals(ACCIO_TEMP_NAME)) {
+                ImmutableList.Builder<TableMetadata> tables = ImmutableList.builder();
+                tempTables.forEach(name -> tables.add(TableMetadata.builder(new SchemaTableName(ACCIO_TEMP_NAME, name)).build()));
+                if (!fingerprints.isEmpty()) {
+                    tables.add(TableMetadata.builder(new SchemaTableName(ACCIO_TEMP_NAME, FINGERPRINT_TABLE_NAME)).build());
+                }
+                return tables.build();
+            }
+            return List.of();
+        }
+
+        @Override
+        public List<String> listFunctionNames(String schemaName)
+        {
+            return new PgFunctionRegistry().getPgFunctions().stream()
+                    .map(PgFunction::getName)
+                    .collect(toImmutableList());
+        }
+
+        @Override
+        public void directDDL(String sql)
+        {
+            ddls.add(sql);
+            Matcher tempTable = TEMP_TABLE.matcher(sql);
+            if (tempTable.find()) {
+                tempTables.add(tempTable.group(1));
+            }
+            if (sql.contains(FINGERPRINT_TABLE_NAME)) {
+                fingerprints.clear();
+                Matcher matcher = FINGERPRINT_ROW.matcher(sql);
+                while (matcher.find()) {
+                    fingerprints.put(matcher.group(1), matcher.group(2));
+                }
+            }
+        }
+
+        @Override
+        public ConnectorRecordIterator directQuery(String sql, List<Parameter> parameters)
+        {
+            Iterator<Object[]> rows = fingerprints.entrySet().stream()
+                    .map(entry -> new Object[] {entry.getKey(), entry.getValue()})
+                    .iterator();
+            return new ConnectorRecordIterator()
+            {
+                @Override
+                public List<PGType> getTypes()
+                {
+                    return List.of(VARCHAR, VARCHAR);
+                }
+
+                @Override
+                public void close() {}
+
+                @Override
+                public boolean hasNext()
+                {
+                    return rows.hasNext();
+                }
+
+                @Override
+                public Object[] next()
+                {
+                    return rows.next();
+                }
+            };
+        }
+    }
+}
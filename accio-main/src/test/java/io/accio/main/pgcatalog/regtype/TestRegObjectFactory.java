@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.pgcatalog.regtype;
+
+import com.google.common.collect.ImmutableList;
+import io.accio.base.AccioException;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TestRegObjectFactory
+{
+    @Test
+    public void testIndexBuiltOncePerCatalogVersion()
+    {
+        CountingPgMetadata pgMetadata = new CountingPgMetadata();
+        RegObjectFactory regObjectFactory = new RegObjectFactory(pgMetadata);
+
+        assertThat(regObjectFactory.of("regclass", "t1").getOid()).isEqualTo(1);
+        assertThat(regObjectFactory.of("regclass", 2).getName()).isEqualTo("t2");
+        assertThat(regObjectFactory.of("regclass", 1, "t1")).isPresent();
+        assertThat(regObjectFactory.of("regclass", 1, "t2")).isEmpty();
+        assertThat(pgMetadata.regClassListed.get()).isEqualTo(2);
+
+        pgMetadata.invalidate();
+        regObjectFactory.of("regclass", "t1");
+        regObjectFactory.of("regclass", "t2");
+        assertThat(pgMetadata.regClassListed.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void testMissRebuildsIndex()
+    {
+        CountingPgMetadata pgMetadata = new CountingPgMetadata();
+        RegObjectFactory regObjectFactory = new RegObjectFactory(pgMetadata);
+        regObjectFactory.of("regclass", "t1");
+
+        pgMetadata.regClasses.add(new RegObjectImpl(3, "t3"));
+        assertThat(regObjectFactory.of("regclass", "t3").getOid()).isEqualTo(3);
+        assertThat(pgMetadata.regClassListed.get()).isEqualTo(2);
+
+        assertThatThrownBy(() -> regObjectFactory.of("regclass", "t4"))
+                .isInstanceOf(AccioException.class)
+                .hasMessage("t4 does not exist");
+        assertThatThrownBy(() -> regObjectFactory.of("regclass", 4))
+                .isInstanceOf(AccioException.class)
+                .hasMessage("RegObject oid 4 does not exist");
+        assertThat(pgMetadata.regClassListed.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testMissesAnsweredFromRebuiltIndex()
+    {
+        CountingPgMetadata pgMetadata = new CountingPgMetadata();
+        RegObjectFactory regObjectFactory = new RegObjectFactory(pgMetadata);
+
+        // the first miss of the catalog version rebuilds the index, the later ones don't list the records again
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(() -> regObjectFactory.of("regclass", "missing"))
+                    .isInstanceOf(AccioException.class);
+            assertThat(regObjectFactory.of("regclass", 5, "missing")).isEmpty();
+        }
+        assertThat(pgMetadata.regClassListed.get()).isEqualTo(2);
+
+        // an object created without re-initializing the pg_catalog isn't found until the next catalog version
+        pgMetadata.regClasses.add(new RegObjectImpl(5, "missing"));
+        assertThat(regObjectFactory.of("regclass", 5, "missing")).isEmpty();
+        assertThat(pgMetadata.regClassListed.get()).isEqualTo(2);
+
+        pgMetadata.invalidate();
+        assertThat(regObjectFactory.of("regclass", 5, "missing")).isPresent();
+        assertThat(regObjectFactory.of("regclass", "missing").getOid()).isEqualTo(5);
+        assertThat(pgMetadata.regClassListed.get()).isEqualTo(3);
+    }
+
+    private static class CountingPgMetadata
+            extends PgMetadata
+    {
+        private final List<RegObject> regClasses = new ArrayList<>(List.of(new RegObjectImpl(1, "t1"), new RegObjectImpl(2, "t2")));
+        private final AtomicInteger regClassListed = new AtomicInteger();
+
+        @Override
+        protected List<RegObject> listRegProc()
+        {
+            return ImmutableList.of();
+        }
+
+        @Override
+        protected List<RegObject> listRegClass()
+        {
+            regClassListed.incrementAndGet();
+            return ImmutableList.copyOf(regClasses);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.web;
+
+import io.accio.main.wireprotocol.WireProtocolStats;
+import io.airlift.units.Duration;
+import org.testng.annotations.Test;
+import org.weakref.jmx.MBeanExporter;
+
+import javax.management.MBeanServer;
+
+import static io.accio.main.web.MetricsResource.toSnakeCase;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static javax.management.MBeanServerFactory.newMBeanServer;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestMetricsResource
+{
+    @Test
+    public void testGetMetrics()
+    {
+        MBeanServer mbeanServer = newMBeanServer();
+        MBeanExporter exporter = new MBeanExporter(mbeanServer);
+        WireProtocolStats stats = new WireProtocolStats();
+        exporter.export("io.accio.main.wireprotocol:name=WireProtocolStats", stats);
+        // only the accio MBeans are rendered
+        exporter.export("com.example:name=Other", new WireProtocolStats());
+
+        stats.connectionOpened();
+        stats.queryFinished(new Duration(10, MILLISECONDS));
+        stats.resultSent(3, 100);
+
+        String metrics = new MetricsResource(mbeanServer).getMetrics();
+        assertThat(metrics.split("\n"))
+                .contains(
+                        "accio_wire_protocol_stats_active_connections 1",
+                        "accio_wire_protocol_stats_queries_total_count 1",
+                        "accio_wire_protocol_stats_rows_sent_total_count 3",
+                        "accio_wire_protocol_stats_bytes_sent_total_count 100")
+                .allMatch(line -> line.startsWith("accio_wire_protocol_stats_"));
+    }
+
+    @Test
+    public void testToSnakeCase()
+    {
+        assertThat(toSnakeCase("WireProtocolStats")).isEqualTo("wire_protocol_stats");
+        assertThat(toSnakeCase("QueryTime_FiveMinutes_P95")).isEqualTo("query_time_five_minutes_p95");
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static io.accio.main.wireprotocol.IntrospectionQueries.match;
+import static io.accio.main.wireprotocol.IntrospectionQueries.normalize;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestIntrospectionQueries
+{
+    @DataProvider(name = "normalize")
+    public Object[][] createNormalize()
+    {
+        return new Object[][] {
+                new Object[] {"SELECT version()", "select version()"},
+                new Object[] {"  select  PG_CATALOG . version ( ) ;", "select pg_catalog.version()"},
+                new Object[] {"SHOW\nTRANSACTION  ISOLATION\tLEVEL", "show transaction isolation level"},
+                new Object[] {"SELECT 'A  B' AS \"Upper  Case\"", "select 'A  B' as \"Upper  Case\""},
+                new Object[] {"SELECT a , b FROM t WHERE c = 'x'", "select a,b from t where c='x'"},
+        };
+    }
+
+    @Test(dataProvider = "normalize")
+    public void testNormalize(String statement, String expected)
+    {
+        assertEquals(normalize(statement), expected);
+    }
+
+    @Test
+    public void testMatch()
+    {
+        assertTrue(match("SELECT version()").isPresent());
+        assertTrue(match("select current_schema()").isPresent());
+        assertTrue(match("SHOW TRANSACTION ISOLATION LEVEL").isPresent());
+        assertTrue(match("show DateStyle").isPresent());
+        assertTrue(match("SELECT 1;").isPresent());
+        assertEquals(match("SHOW max_identifier_length").get().getColumns().get(0).getName(), "max_identifier_length");
+
+        assertFalse(match("SELECT 1 FROM t").isPresent());
+        assertFalse(match("SELECT version() FROM t").isPresent());
+        assertFalse(match("SELECT 'select version()'").isPresent());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.EMPTY;
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.IGNORED_COMMAND;
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.OTHER;
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.QUERY;
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.SESSION_COMMAND;
+import static io.accio.main.wireprotocol.ClassifiedStatement.Type.TRANSACTION_CONTROL;
+import static io.accio.main.wireprotocol.StatementClassifier.classify;
+import static io.accio.main.wireprotocol.StatementClassifier.split;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestStatementClassifier
+{
+    @DataProvider(name = "classify")
+    public Object[][] createClassify()
+    {
+        return new Object[][] {
+                new Object[] {"", EMPTY},
+                new Object[] {" -- comment only", EMPTY},
+                new Object[] {";", EMPTY},
+                new Object[] {"BEGIN", TRANSACTION_CONTROL},
+                new Object[] {"commit;", TRANSACTION_CONTROL},
+                new Object[] {"ROLLBACK", TRANSACTION_CONTROL},
+                new Object[] {"START TRANSACTION READ ONLY", TRANSACTION_CONTROL},
+                new Object[] {"SET TRANSACTION ISOLATION LEVEL READ COMMITTED", TRANSACTION_CONTROL},
+                new Object[] {"set session characteristics as transaction read only", TRANSACTION_CONTROL},
+                new Object[] {"DISCARD ALL", IGNORED_COMMAND},
+                new Object[] {"/* reset */ RESET ALL", IGNORED_COMMAND},
+                new Object[] {"SET SESSION AUTHORIZATION DEFAULT", IGNORED_COMMAND},
+                new Object[] {"SET LOCAL SESSION AUTHORIZATION DEFAULT", IGNORED_COMMAND},
+                new Object[] {"SET extra_float_digits = 3", IGNORED_COMMAND},
+                new Object[] {"SET SESSION search_path TO 'public'", IGNORED_COMMAND},
+                new Object[] {"SET datestyle = 'ISO'", SESSION_COMMAND},
+                new Object[] {"SHOW TRANSACTION ISOLATION LEVEL", SESSION_COMMAND},
+                new Object[] {"DEALLOCATE foo", SESSION_COMMAND},
+                new Object[] {"SELECT 'BEGIN'", QUERY},
+                new Object[] {"-- BEGIN\nSELECT 1", QUERY},
+                new Object[] {"(SELECT 1)", QUERY},
+                new Object[] {"with t as (select 1) select * from t", QUERY},
+                new Object[] {"CREATE TABLE t (c int)", OTHER},
+        };
+    }
+
+    @Test(dataProvider = "classify")
+    public void testClassify(String statement, ClassifiedStatement.Type expected)
+    {
+        assertEquals(classify(statement).getType(), expected);
+    }
+
+    @Test
+    public void testSplit()
+    {
+        assertEquals(sqls(split("")), List.of(""));
+        assertEquals(sqls(split("  -- comment\n")), List.of(""));
+        assertEquals(sqls(split("SELECT 1")), List.of("SELECT 1"));
+        assertEquals(sqls(split("SELECT 1; SELECT 2;")), List.of("SELECT 1;", "SELECT 2;"));
+        assertEquals(sqls(split("SELECT 1;;")), List.of("SELECT 1;", ";"));
+        assertEquals(sqls(split("SELECT ';' AS \"a;b\"; BEGIN")), List.of("SELECT ';' AS \"a;b\";", "BEGIN"));
+        assertEquals(sqls(split("SELECT 'it''s;'; SELECT 2")), List.of("SELECT 'it''s;';", "SELECT 2"));
+        assertEquals(sqls(split("/* a; */ SELECT 1 -- b;\n; SELECT 2 /* c */")), List.of("SELECT 1 -- b;\n;", "SELECT 2 /* c */"));
+        assertEquals(sqls(split("SELECT 1 -- trailing")), List.of("SELECT 1 -- trailing"));
+
+        List<ClassifiedStatement> statements = split("BEGIN; SELECT * FROM pg_catalog.pg_statistic_ext");
+        assertEquals(statements.get(0).getType(), TRANSACTION_CONTROL);
+        assertEquals(statements.get(1).getType(), QUERY);
+    }
+
+    @Test
+    public void testWords()
+    {
+        ClassifiedStatement statement = classify("SELECT ARRAY(SELECT 'pg_extension_update_paths') FROM pg_catalog.pg_statistic_ext -- stxkeys");
+        assertTrue(statement.startsWith("select"));
+        assertTrue(statement.containsWord("array"));
+        assertTrue(statement.containsWord("pg_statistic_ext"));
+        assertFalse(statement.containsWord("pg_extension_update_paths"));
+        assertFalse(statement.containsWord("stxkeys"));
+        assertEquals(classify("SET a TO 'b c'").getLeadingTokens(), List.of("SET", "a", "TO", "'"));
+    }
+
+    private static List<String> sqls(List<ClassifiedStatement> statements)
+    {
+        return statements.stream()
+                .map(ClassifiedStatement::getSql)
+                .collect(toImmutableList());
+    }
+}
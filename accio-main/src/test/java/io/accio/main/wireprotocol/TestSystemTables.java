@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.main.wireprotocol;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.accio.base.AccioException;
+import io.accio.base.Column;
+import io.accio.base.ConnectorRecordIterator;
+import io.trino.sql.parser.SqlParser;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TestSystemTables
+{
+    private final SqlParser sqlParser = new SqlParser();
+
+    @Test
+    public void testMatch()
+    {
+        QueryRegistry registry = new QueryRegistry();
+        assertThat(SystemTables.match(sqlParser, "SELECT * FROM accio_system.running_queries", registry, "accio")).isPresent();
+        assertThat(SystemTables.match(sqlParser, "select * from canner.ACCIO_SYSTEM.running_queries", registry, "accio")).isPresent();
+
+        assertThat(SystemTables.match(sqlParser, "SELECT * FROM orders", registry, "accio")).isEmpty();
+        assertThat(SystemTables.match(sqlParser, "SELECT * FROM accio_system.other", registry, "accio")).isEmpty();
+        assertThat(SystemTables.match(sqlParser, "SELECT 'accio_system'", registry, "accio")).isEmpty();
+
+        assertThatThrownBy(() -> SystemTables.match(sqlParser, "SELECT phase, count(*) FROM accio_system.running_queries GROUP BY phase", registry, "accio"))
+                .isInstanceOf(AccioException.class);
+        assertThatThrownBy(() -> SystemTables.match(sqlParser, "SELECT unknown FROM accio_system.running_queries", registry, "accio"))
+                .hasMessageContaining("Column unknown not found");
+    }
+
+    @Test
+    public void testQuery()
+    {
+        QueryRegistry registry = new QueryRegistry(ImmutableSet.of("accio"));
+        RunningQuery first = registry.register(1, "canner", "tpch", "SELECT 1");
+        RunningQuery second = registry.register(2, "accio", "tpch", "SELECT 2");
+        second.setBackend(RunningQuery.Backend.DATA_SOURCE);
+        second.sending();
+        second.addProgress(10, 100);
+        RunningQuery finished = registry.register(1, "canner", "tpch", "SELECT 3");
+        finished.finish();
+
+        IntrospectionQuery query = SystemTables.match(sqlParser, "SELECT query_id, user_name AS u, rows_sent FROM accio_system.running_queries ORDER BY rows_sent DESC", registry, "accio")
+                .orElseThrow();
+        assertThat(query.getColumns()).extracting(Column::getName).containsExactly("query_id", "u", "rows_sent");
+        assertThat(rows(query)).containsExactly(
+                new Object[] {second.getQueryId(), "accio", 10L},
+                new Object[] {first.getQueryId(), "canner", 0L});
+
+        query = SystemTables.match(sqlParser, "SELECT statement FROM accio_system.running_queries WHERE phase = 'EXECUTING' AND connection_id >= 1 LIMIT 1", registry, "accio")
+                .orElseThrow();
+        assertThat(rows(query)).containsExactly(new Object[] {"SELECT 1"});
+        query = SystemTables.match(sqlParser, "SELECT statement FROM accio_system.running_queries WHERE 5 < rows_sent", registry, "accio")
+                .orElseThrow();
+        assertThat(rows(query)).containsExactly(new Object[] {"SELECT 2"});
+
+        // the decimal literals aren't compared with the integer columns
+        assertThatThrownBy(() -> SystemTables.match(sqlParser, "SELECT * FROM accio_system.running_queries WHERE rows_sent > 1.5", registry, "accio"))
+                .hasMessageContaining("Only the string, integer and boolean literals are supported");
+    }
+
+    @Test
+    public void testOrderByAliasAndOrdinal()
+    {
+        QueryRegistry registry = new QueryRegistry(ImmutableSet.of("accio"));
+        RunningQuery first = registry.register(1, "canner", "tpch", "SELECT 1");
+        RunningQuery second = registry.register(2, "accio", "tpch", "SELECT 2");
+        second.addProgress(10, 100);
+
+        IntrospectionQuery query = SystemTables.match(sqlParser, "SELECT query_id, rows_sent AS r FROM accio_system.running_queries ORDER BY r DESC", registry, "accio")
+                .orElseThrow();
+        assertThat(rows(query)).containsExactly(
+                new Object[] {second.getQueryId(), 10L},
+                new Object[] {first.getQueryId(), 0L});
+
+        query = SystemTables.match(sqlParser, "SELECT query_id, user_name FROM accio_system.running_queries ORDER BY 2", registry, "accio")
+                .orElseThrow();
+        assertThat(rows(query)).containsExactly(
+                new Object[] {second.getQueryId(), "accio"},
+                new Object[] {first.getQueryId(), "canner"});
+
+        assertThatThrownBy(() -> SystemTables.match(sqlParser, "SELECT query_id FROM accio_system.running_queries ORDER BY 2", registry, "accio"))
+                .hasMessageContaining("ORDER BY position 2 is not in select list");
+    }
+
+    @Test
+    public void testQueriesOfOtherUsers()
+    {
+        QueryRegistry registry = new QueryRegistry(ImmutableSet.of("admin"));
+        registry.register(1, "canner", "tpch", "SELECT 1");
+        registry.register(2, "accio", "tpch", "SELECT 2");
+
+        String statement = "SELECT statement FROM accio_system.running_queries ORDER BY statement";
+        assertThat(rows(SystemTables.match(sqlParser, statement, registry, "canner").orElseThrow()))
+                .containsExactly(new Object[] {"SELECT 1"});
+        assertThat(rows(SystemTables.match(sqlParser, statement, registry, "other").orElseThrow()))
+                .isEmpty();
+        assertThat(rows(SystemTables.match(sqlParser, statement, registry, null).orElseThrow()))
+                .isEmpty();
+        assertThat(rows(SystemTables.match(sqlParser, statement, registry, "admin").orElseThrow()))
+                .containsExactly(new Object[] {"SELECT 1"}, new Object[] {"SELECT 2"});
+    }
+
+    @Test
+    public void testKill()
+    {
+        QueryRegistry registry = new QueryRegistry();
+        RunningQuery query = registry.register(1, "canner", "tpch", "SELECT 1");
+        CompletableFuture<ConnectorRecordIterator> backendQuery = new CompletableFuture<>();
+        query.setBackendQuery(backendQuery);
+
+        assertThat(registry.kill(query.getQueryId())).isTrue();
+        assertThat(backendQuery).isCancelled();
+        assertThat(registry.getQuery(query.getQueryId())).hasValueSatisfying(info -> assertThat(info.isKilled()).isTrue());
+        assertThatThrownBy(query::checkNotKilled).hasMessage("Query %s has been killed", query.getQueryId());
+
+        query.finish();
+        assertThat(registry.getQueries()).isEmpty();
+        assertThat(registry.kill(query.getQueryId())).isFalse();
+    }
+
+    private static List<Object[]> rows(IntrospectionQuery query)
+    {
+        return ImmutableList.copyOf(query.execute(null));
+    }
+}
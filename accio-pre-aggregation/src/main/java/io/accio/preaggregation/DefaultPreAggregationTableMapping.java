@@ -15,9 +15,15 @@ package io.accio.preaggregation;
 
 import io.accio.base.CatalogSchemaTableName;
 import io.accio.base.client.duckdb.DuckdbClient;
+import io.accio.base.dto.PreAggregationInfo;
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
 import javax.inject.Inject;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -26,23 +32,35 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
 public class DefaultPreAggregationTableMapping
         implements PreAggregationTableMapping
 {
+    private static final Logger LOG = Logger.get(DefaultPreAggregationTableMapping.class);
     private final DuckdbClient duckdbClient;
+    private final PreAggregationTableReclaimer tableReclaimer;
+    private final long maxPreAggregationSize;
     private final ConcurrentMap<CatalogSchemaTableName, PreAggregationInfoPair> preAggregationTableMapping = new ConcurrentHashMap<>();
+    private final ConcurrentMap<CatalogSchemaTableName, PreAggregationTableStats> preAggregationTableStats = new ConcurrentHashMap<>();
+    // the stats of the evicted tables keep counting the queries falling back to the data source
+    private final ConcurrentMap<CatalogSchemaTableName, EvictedTable> evictedTables = new ConcurrentHashMap<>();
+    private final CounterStat evictions = new CounterStat();
 
     @Inject
-    public DefaultPreAggregationTableMapping(DuckdbClient duckdbClient)
+    public DefaultPreAggregationTableMapping(DuckdbClient duckdbClient, PreAggregationTableReclaimer tableReclaimer, DuckdbConfig duckdbConfig)
     {
         this.duckdbClient = requireNonNull(duckdbClient, "duckdbClient is null");
+        this.tableReclaimer = requireNonNull(tableReclaimer, "tableReclaimer is null");
+        this.maxPreAggregationSize = requireNonNull(duckdbConfig, "duckdbConfig is null").getMaxPreAggregationSize().toBytes();
     }
 
     @Override
     public void putPreAggregationTableMapping(CatalogSchemaTableName catalogSchemaTableName, PreAggregationInfoPair preAggregationInfoPair)
     {
+        // measured before the table is published, a failure leaves the published version untouched
+        long sizeInBytes = preAggregationInfoPair.getTableName().map(duckdbClient::getTableSize).orElse(0L);
         synchronized (preAggregationTableMapping) {
             if (preAggregationTableMapping.containsKey(catalogSchemaTableName)) {
                 PreAggregationInfoPair existedPreAggregationInfoPair = preAggregationTableMapping.get(catalogSchemaTableName);
@@ -50,10 +68,104 @@ public class DefaultPreAggregationTableMapping
                     preAggregationInfoPair.getTableName().ifPresent(duckdbClient::dropTableQuietly);
                     return;
                 }
-                existedPreAggregationInfoPair.getTableName().ifPresent(duckdbClient::dropTableQuietly);
             }
-            preAggregationTableMapping.put(catalogSchemaTableName, preAggregationInfoPair);
+            // publish the new version first, the old one is dropped after the queries reading it are closed
+            PreAggregationInfoPair replaced = preAggregationTableMapping.put(catalogSchemaTableName, preAggregationInfoPair);
+            if (replaced != null) {
+                replaced.getTableName().ifPresent(tableReclaimer::retire);
+            }
+            updateTableStats(catalogSchemaTableName, preAggregationInfoPair, sizeInBytes);
+            evictIfExceedBudget(catalogSchemaTableName);
+        }
+    }
+
+    @Override
+    public void putPreAggregationTableError(CatalogSchemaTableName catalogSchemaTableName, PreAggregationInfo preAggregationInfo, String errorMessage, long createTime)
+    {
+        synchronized (preAggregationTableMapping) {
+            PreAggregationInfoPair existed = preAggregationTableMapping.get(catalogSchemaTableName);
+            if (existed != null && existed.getCreateTime() > createTime) {
+                return;
+            }
+            if (existed != null && existed.getTableName().isPresent()) {
+                // the last good table stays published with its stats, only the error is recorded
+                preAggregationTableMapping.put(catalogSchemaTableName, new PreAggregationInfoPair(
+                        existed.getPreAggregationInfo(),
+                        existed.getTableName(),
+                        Optional.of(errorMessage),
+                        existed.getCreateTime(),
+                        existed.getBuildTimeMillis()));
+                return;
+            }
+            preAggregationTableMapping.put(catalogSchemaTableName, new PreAggregationInfoPair(preAggregationInfo, Optional.empty(), Optional.of(errorMessage), createTime));
+        }
+    }
+
+    private void updateTableStats(CatalogSchemaTableName catalogSchemaTableName, PreAggregationInfoPair preAggregationInfoPair, long sizeInBytes)
+    {
+        if (preAggregationInfoPair.getTableName().isEmpty()) {
+            preAggregationTableStats.remove(catalogSchemaTableName);
+            return;
+        }
+        String tableName = preAggregationInfoPair.getTableName().get();
+        // keep the hit count of the previous or the evicted version, the rebuilt table serves the same queries
+        EvictedTable evictedTable = evictedTables.remove(catalogSchemaTableName);
+        long hitCount = Optional.ofNullable(preAggregationTableStats.get(catalogSchemaTableName))
+                .or(() -> Optional.ofNullable(evictedTable).map(evicted -> evicted.tableStats))
+                .map(PreAggregationTableStats::getHitCount)
+                .orElse(0L);
+        preAggregationTableStats.put(catalogSchemaTableName, new PreAggregationTableStats(
+                tableName,
+                sizeInBytes,
+                preAggregationInfoPair.getBuildTimeMillis(),
+                hitCount));
+    }
+
+    /**
+     * Evict the least valuable tables until the total size fits the budget. The table just published is evicted
+     * last, otherwise a rebuilt table of low value would be dropped right after it's built.
+     */
+    private void evictIfExceedBudget(CatalogSchemaTableName published)
+    {
+        long totalSize = preAggregationTableStats.values().stream()
+                .mapToLong(PreAggregationTableStats::getSizeInBytes)
+                .sum();
+        if (totalSize <= maxPreAggregationSize) {
+            return;
         }
+        List<Map.Entry<CatalogSchemaTableName, PreAggregationTableStats>> candidates = preAggregationTableStats.entrySet().stream()
+                .sorted(Comparator.<Map.Entry<CatalogSchemaTableName, PreAggregationTableStats>, Boolean>comparing(entry -> entry.getKey().equals(published))
+                        .thenComparingDouble(entry -> entry.getValue().getValue()))
+                .collect(toImmutableList());
+        for (Map.Entry<CatalogSchemaTableName, PreAggregationTableStats> candidate : candidates) {
+            if (totalSize <= maxPreAggregationSize) {
+                break;
+            }
+            evict(candidate.getKey(), candidate.getValue());
+            totalSize -= candidate.getValue().getSizeInBytes();
+        }
+    }
+
+    private void evict(CatalogSchemaTableName catalogSchemaTableName, PreAggregationTableStats tableStats)
+    {
+        PreAggregationInfoPair preAggregationInfoPair = preAggregationTableMapping.get(catalogSchemaTableName);
+        String errMsg = format("Pre-aggregation table %s is evicted; size: %s bytes, hit count: %s; the max pre-aggregation size is %s bytes",
+                tableStats.getTableName(),
+                tableStats.getSizeInBytes(),
+                tableStats.getHitCount(),
+                maxPreAggregationSize);
+        LOG.info(errMsg);
+        evictions.update(1);
+        // queries fall back to the data source once the mapping has no table name
+        preAggregationTableMapping.put(catalogSchemaTableName, new PreAggregationInfoPair(
+                preAggregationInfoPair.getPreAggregationInfo(),
+                Optional.empty(),
+                Optional.of(errMsg),
+                preAggregationInfoPair.getCreateTime(),
+                preAggregationInfoPair.getBuildTimeMillis()));
+        preAggregationTableStats.remove(catalogSchemaTableName);
+        evictedTables.put(catalogSchemaTableName, new EvictedTable(tableStats));
+        tableReclaimer.retire(tableStats.getTableName());
     }
 
     @Override
@@ -65,7 +177,14 @@ public class DefaultPreAggregationTableMapping
     @Override
     public void remove(CatalogSchemaTableName preAggregationTable)
     {
-        preAggregationTableMapping.remove(preAggregationTable);
+        synchronized (preAggregationTableMapping) {
+            PreAggregationInfoPair removed = preAggregationTableMapping.remove(preAggregationTable);
+            preAggregationTableStats.remove(preAggregationTable);
+            evictedTables.remove(preAggregationTable);
+            if (removed != null) {
+                removed.getTableName().ifPresent(tableReclaimer::retire);
+            }
+        }
     }
 
     @Override
@@ -77,7 +196,56 @@ public class DefaultPreAggregationTableMapping
     @Override
     public Optional<String> convertToAggregationTable(CatalogSchemaTableName catalogSchemaTableName)
     {
-        return preAggregationTableMapping.get(catalogSchemaTableName).getTableName();
+        Optional<String> tableName = Optional.ofNullable(preAggregationTableMapping.get(catalogSchemaTableName))
+                .flatMap(PreAggregationInfoPair::getTableName);
+        if (tableName.isPresent()) {
+            Optional.ofNullable(preAggregationTableStats.get(catalogSchemaTableName)).ifPresent(PreAggregationTableStats::recordHit);
+        }
+        else {
+            // the query falls back to the data source, the table is refreshed again since it's wanted
+            Optional.ofNullable(evictedTables.get(catalogSchemaTableName)).ifPresent(evictedTable -> evictedTable.tableStats.recordHit());
+        }
+        return tableName;
+    }
+
+    @Override
+    public Optional<PreAggregationTableStats> getTableStats(CatalogSchemaTableName catalogSchemaTableName)
+    {
+        return Optional.ofNullable(preAggregationTableStats.get(catalogSchemaTableName));
+    }
+
+    @Override
+    public boolean isEvicted(CatalogSchemaTableName catalogSchemaTableName)
+    {
+        EvictedTable evictedTable = evictedTables.get(catalogSchemaTableName);
+        return evictedTable != null && !evictedTable.isQueried();
+    }
+
+    @Managed
+    public int getTableCount()
+    {
+        return preAggregationTableStats.size();
+    }
+
+    @Managed
+    public long getTotalSizeInBytes()
+    {
+        return preAggregationTableStats.values().stream()
+                .mapToLong(PreAggregationTableStats::getSizeInBytes)
+                .sum();
+    }
+
+    @Managed
+    public int getEvictedTableCount()
+    {
+        return evictedTables.size();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getEvictions()
+    {
+        return evictions;
     }
 
     @Override
@@ -99,4 +267,21 @@ public class DefaultPreAggregationTableMapping
                 .map(Map.Entry::getValue)
                 .collect(toImmutableList());
     }
+
+    private static class EvictedTable
+    {
+        private final PreAggregationTableStats tableStats;
+        private final long hitCountAtEviction;
+
+        private EvictedTable(PreAggregationTableStats tableStats)
+        {
+            this.tableStats = tableStats;
+            this.hitCountAtEviction = tableStats.getHitCount();
+        }
+
+        private boolean isQueried()
+        {
+            return tableStats.getHitCount() > hitCountAtEviction;
+        }
+    }
 }
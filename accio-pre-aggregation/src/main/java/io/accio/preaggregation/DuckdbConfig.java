@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.preaggregation;
+
+import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
+import io.airlift.units.DataSize;
+
+import static io.accio.base.client.duckdb.DuckdbClient.DEFAULT_CONNECTION_POOL_SIZE;
+import static io.accio.base.client.duckdb.DuckdbClient.DEFAULT_STATEMENT_CACHE_SIZE;
+import static io.airlift.units.DataSize.Unit.GIGABYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.lang.String.format;
+
+public class DuckdbConfig
+{
+    public static final String DUCKDB_MEMORY_LIMIT = "duckdb.memory-limit";
+    public static final String DUCKDB_TEMP_DIRECTORY = "duckdb.temp-directory";
+    public static final String DUCKDB_MAX_PRE_AGGREGATION_SIZE = "duckdb.max-pre-aggregation-size";
+    public static final String DUCKDB_CONNECTION_POOL_SIZE = "duckdb.connection-pool-size";
+    public static final String DUCKDB_STATEMENT_CACHE_SIZE = "duckdb.statement-cache-size";
+
+    private DataSize memoryLimit = DataSize.of(2, GIGABYTE);
+    private String tempDirectory = "/tmp/duckdb";
+    private DataSize maxPreAggregationSize = DataSize.of(1, GIGABYTE);
+    private int connectionPoolSize = DEFAULT_CONNECTION_POOL_SIZE;
+    private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+
+    public DataSize getMemoryLimit()
+    {
+        return memoryLimit;
+    }
+
+    @Config(DUCKDB_MEMORY_LIMIT)
+    @ConfigDescription("The max memory duckdb can use; default is 2GB")
+    public DuckdbConfig setMemoryLimit(DataSize memoryLimit)
+    {
+        this.memoryLimit = memoryLimit;
+        return this;
+    }
+
+    public String getTempDirectory()
+    {
+        return tempDirectory;
+    }
+
+    @Config(DUCKDB_TEMP_DIRECTORY)
+    @ConfigDescription("The directory duckdb spills to when the memory limit is reached; default is /tmp/duckdb")
+    public DuckdbConfig setTempDirectory(String tempDirectory)
+    {
+        this.tempDirectory = tempDirectory;
+        return this;
+    }
+
+    public DataSize getMaxPreAggregationSize()
+    {
+        return maxPreAggregationSize;
+    }
+
+    @Config(DUCKDB_MAX_PRE_AGGREGATION_SIZE)
+    @ConfigDescription("The total size of pre-aggregation tables kept in duckdb; the least valuable tables are evicted beyond it; default is 1GB")
+    public DuckdbConfig setMaxPreAggregationSize(DataSize maxPreAggregationSize)
+    {
+        this.maxPreAggregationSize = maxPreAggregationSize;
+        return this;
+    }
+
+    public int getConnectionPoolSize()
+    {
+        return connectionPoolSize;
+    }
+
+    @Config(DUCKDB_CONNECTION_POOL_SIZE)
+    @ConfigDescription("The max number of idle duckdb connections kept for pre-aggregation queries; default is 16")
+    public DuckdbConfig setConnectionPoolSize(int connectionPoolSize)
+    {
+        this.connectionPoolSize = connectionPoolSize;
+        return this;
+    }
+
+    public int getStatementCacheSize()
+    {
+        return statementCacheSize;
+    }
+
+    @Config(DUCKDB_STATEMENT_CACHE_SIZE)
+    @ConfigDescription("The max number of prepared statements cached by each duckdb connection; default is 128")
+    public DuckdbConfig setStatementCacheSize(int statementCacheSize)
+    {
+        this.statementCacheSize = statementCacheSize;
+        return this;
+    }
+
+    public String generateDuckdbSettingStatement()
+    {
+        return format("SET GLOBAL memory_limit='%dMB';\nSET GLOBAL temp_directory='%s';\n",
+                (long) memoryLimit.getValue(MEGABYTE),
+                tempDirectory);
+    }
+}
@@ -16,18 +16,21 @@ package io.accio.preaggregation;
 import com.google.common.collect.ImmutableList;
 import io.accio.base.ConnectorRecordIterator;
 import io.accio.base.Parameter;
-import io.accio.base.client.AutoCloseableIterator;
-import io.accio.base.client.Client;
-import io.accio.base.client.jdbc.JdbcRecordIterator;
+import io.accio.base.client.duckdb.DuckdbClient;
+import io.accio.base.client.duckdb.DuckdbConnectionPool.PooledConnection;
+import io.accio.base.client.jdbc.ColumnExtractor;
 import io.accio.base.type.PGType;
 import io.accio.base.type.TimestampType;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.NoSuchElementException;
 
 import static io.accio.base.client.duckdb.DuckdbType.DUCKDB_TYPE;
 import static java.time.ZoneOffset.UTC;
@@ -37,31 +40,59 @@ public class DuckdbRecordIterator
         implements ConnectorRecordIterator
 {
     private final List<PGType> types;
-    private final AutoCloseableIterator<Object[]> recordIterator;
+    private final ColumnExtractor[] extractors;
+    private final PooledConnection connection;
+    private final ResultSet resultSet;
+    private final Runnable onClose;
+    private boolean hasNext;
+    private boolean closed;
 
-    public static DuckdbRecordIterator of(Client client, String sql, List<Parameter> parameters)
+    public static DuckdbRecordIterator of(DuckdbClient client, String sql, List<Parameter> parameters)
             throws SQLException
     {
-        return new DuckdbRecordIterator(client, sql, parameters);
+        return new DuckdbRecordIterator(client, sql, parameters, () -> {});
     }
 
-    private DuckdbRecordIterator(Client client, String sql, List<Parameter> parameters)
+    public static DuckdbRecordIterator of(DuckdbClient client, String sql, List<Parameter> parameters, Runnable onClose)
+            throws SQLException
+    {
+        return new DuckdbRecordIterator(client, sql, parameters, onClose);
+    }
+
+    private DuckdbRecordIterator(DuckdbClient client, String sql, List<Parameter> parameters, Runnable onClose)
             throws SQLException
     {
         requireNonNull(client, "client is null");
         requireNonNull(sql, "sql is null");
         requireNonNull(parameters, "parameters is null");
-        JdbcRecordIterator jdbcRecordIterator = JdbcRecordIterator.of(client, sql, parameters);
-        this.recordIterator = jdbcRecordIterator;
+        this.onClose = requireNonNull(onClose, "onClose is null");
+        this.connection = client.acquireConnection();
+        try {
+            // the prepared statement is cached by the pooled connection, only the result set belongs to this iterator
+            PreparedStatement statement = connection.prepareStatement(sql);
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i).getValue());
+            }
+            this.resultSet = statement.executeQuery();
 
-        ResultSetMetaData resultSetMetaData = jdbcRecordIterator.getResultSetMetaData();
-        ImmutableList.Builder<PGType> typeBuilder = ImmutableList.builder();
-        for (int i = 1; i <= resultSetMetaData.getColumnCount(); i++) {
-            int columnType = resultSetMetaData.getColumnType(i);
-            PGType<?> pgType = DUCKDB_TYPE.toPGType(columnType);
-            typeBuilder.add(pgType);
+            ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
+            int columnCount = resultSetMetaData.getColumnCount();
+            ImmutableList.Builder<PGType> typeBuilder = ImmutableList.builder();
+            this.extractors = new ColumnExtractor[columnCount];
+            for (int i = 1; i <= columnCount; i++) {
+                int columnType = resultSetMetaData.getColumnType(i);
+                PGType<?> pgType = DUCKDB_TYPE.toPGType(columnType);
+                typeBuilder.add(pgType);
+                extractors[i - 1] = createExtractor(columnType, pgType);
+            }
+            this.types = typeBuilder.build();
+            this.hasNext = resultSet.next();
+        }
+        catch (SQLException | RuntimeException e) {
+            connection.markBroken();
+            connection.close();
+            throw e;
         }
-        this.types = typeBuilder.build();
     }
 
     @Override
@@ -74,35 +105,63 @@ public class DuckdbRecordIterator
     public void close()
             throws Exception
     {
-        recordIterator.close();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            resultSet.close();
+        }
+        catch (SQLException | RuntimeException e) {
+            connection.markBroken();
+        }
+        finally {
+            connection.close();
+            onClose.run();
+        }
     }
 
     @Override
     public boolean hasNext()
     {
-        return recordIterator.hasNext();
+        return hasNext;
     }
 
     @Override
     public Object[] next()
     {
-        Object[] record = recordIterator.next();
-        return IntStream.range(0, record.length)
-                .mapToObj(index -> convertValue(types.get(index), record[index]))
-                .toArray();
+        if (!hasNext) {
+            throw new NoSuchElementException();
+        }
+        Object[] record = new Object[extractors.length];
+        try {
+            for (int i = 0; i < extractors.length; i++) {
+                record[i] = extractors[i].extract(resultSet, i + 1);
+            }
+            hasNext = resultSet.next();
+        }
+        catch (SQLException e) {
+            connection.markBroken();
+            throw new RuntimeException(e);
+        }
+        return record;
     }
 
-    private Object convertValue(PGType<?> pgType, Object value)
+    private static ColumnExtractor createExtractor(int columnType, PGType<?> pgType)
     {
-        try {
-            if (pgType instanceof TimestampType) {
-                return convertToMicroseconds(((Timestamp) value).toLocalDateTime());
-            }
-            return value;
+        if (pgType instanceof TimestampType) {
+            return (resultSet, index) -> {
+                Timestamp timestamp = resultSet.getTimestamp(index);
+                return timestamp == null ? null : convertToMicroseconds(timestamp.toLocalDateTime());
+            };
+        }
+        if (columnType == Types.BLOB) {
+            return ColumnExtractor.BLOB;
         }
-        catch (Exception e) {
-            throw new IllegalArgumentException("Unsupported value: " + value, e);
+        if (columnType == Types.SMALLINT) {
+            return ColumnExtractor.SMALLINT;
         }
+        return ColumnExtractor.OBJECT;
     }
 
     private static long convertToMicroseconds(LocalDateTime localDateTime)
@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.preaggregation;
+
+import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
+import io.airlift.units.Duration;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class PreAggregationConfig
+{
+    public static final String PRE_AGGREGATION_REFRESH_MAX_CONCURRENCY = "pre-aggregation.refresh.max-concurrency";
+    public static final String PRE_AGGREGATION_REFRESH_MAX_CONCURRENCY_PER_BACKEND = "pre-aggregation.refresh.max-concurrency-per-backend";
+    public static final String PRE_AGGREGATION_REFRESH_JITTER = "pre-aggregation.refresh.jitter";
+    public static final String PRE_AGGREGATION_REFRESH_MAX_INITIAL_DELAY = "pre-aggregation.refresh.max-initial-delay";
+    public static final String PRE_AGGREGATION_REFRESH_INITIAL_BACKOFF = "pre-aggregation.refresh.initial-backoff";
+    public static final String PRE_AGGREGATION_REFRESH_MAX_BACKOFF = "pre-aggregation.refresh.max-backoff";
+
+    private int refreshMaxConcurrency = 5;
+    private int refreshMaxConcurrencyPerBackend = 3;
+    private double refreshJitter = 0.1;
+    private Duration refreshMaxInitialDelay = new Duration(10, SECONDS);
+    private Duration refreshInitialBackoff = new Duration(10, SECONDS);
+    private Duration refreshMaxBackoff = new Duration(30, MINUTES);
+
+    public int getRefreshMaxConcurrency()
+    {
+        return refreshMaxConcurrency;
+    }
+
+    @Config(PRE_AGGREGATION_REFRESH_MAX_CONCURRENCY)
+    @ConfigDescription("The max number of pre-aggregation refreshes running at the same time; default is 5")
+    public PreAggregationConfig setRefreshMaxConcurrency(int refreshMaxConcurrency)
+    {
+        this.refreshMaxConcurrency = refreshMaxConcurrency;
+        return this;
+    }
+
+    public int getRefreshMaxConcurrencyPerBackend()
+    {
+        return refreshMaxConcurrencyPerBackend;
+    }
+
+    @Config(PRE_AGGREGATION_REFRESH_MAX_CONCURRENCY_PER_BACKEND)
+    @ConfigDescription("The max number of pre-aggregation refreshes loading the data source or duckdb at the same time; default is 3")
+    public PreAggregationConfig setRefreshMaxConcurrencyPerBackend(int refreshMaxConcurrencyPerBackend)
+    {
+        this.refreshMaxConcurrencyPerBackend = refreshMaxConcurrencyPerBackend;
+        return this;
+    }
+
+    public double getRefreshJitter()
+    {
+        return refreshJitter;
+    }
+
+    @Config(PRE_AGGREGATION_REFRESH_JITTER)
+    @ConfigDescription("The ratio of the refresh time used to randomize the next refresh; default is 0.1")
+    public PreAggregationConfig setRefreshJitter(double refreshJitter)
+    {
+        this.refreshJitter = refreshJitter;
+        return this;
+    }
+
+    public Duration getRefreshMaxInitialDelay()
+    {
+        return refreshMaxInitialDelay;
+    }
+
+    @Config(PRE_AGGREGATION_REFRESH_MAX_INITIAL_DELAY)
+    @ConfigDescription("The first refresh of a scheduled pre-aggregation is delayed by a random time up to this; default is 10s")
+    public PreAggregationConfig setRefreshMaxInitialDelay(Duration refreshMaxInitialDelay)
+    {
+        this.refreshMaxInitialDelay = refreshMaxInitialDelay;
+        return this;
+    }
+
+    public Duration getRefreshInitialBackoff()
+    {
+        return refreshInitialBackoff;
+    }
+
+    @Config(PRE_AGGREGATION_REFRESH_INITIAL_BACKOFF)
+    @ConfigDescription("The delay before retrying a failed pre-aggregation refresh, doubled on each consecutive failure; default is 10s")
+    public PreAggregationConfig setRefreshInitialBackoff(Duration refreshInitialBackoff)
+    {
+        this.refreshInitialBackoff = refreshInitialBackoff;
+        return this;
+    }
+
+    public Duration getRefreshMaxBackoff()
+    {
+        return refreshMaxBackoff;
+    }
+
+    @Config(PRE_AGGREGATION_REFRESH_MAX_BACKOFF)
+    @ConfigDescription("The max delay before retrying a failed pre-aggregation refresh; default is 30m")
+    public PreAggregationConfig setRefreshMaxBackoff(Duration refreshMaxBackoff)
+    {
+        this.refreshMaxBackoff = refreshMaxBackoff;
+        return this;
+    }
+}
@@ -27,18 +27,25 @@ public class PreAggregationInfoPair
     private final Optional<String> tableName;
     private final Optional<String> errorMessage;
     private final long createTime;
+    private final long buildTimeMillis;
 
-    protected PreAggregationInfoPair(PreAggregationInfo preAggregationInfo, String tableName, long createTime)
+    protected PreAggregationInfoPair(PreAggregationInfo preAggregationInfo, String tableName, long createTime, long buildTimeMillis)
     {
-        this(preAggregationInfo, Optional.of(tableName), Optional.empty(), createTime);
+        this(preAggregationInfo, Optional.of(tableName), Optional.empty(), createTime, buildTimeMillis);
     }
 
     protected PreAggregationInfoPair(PreAggregationInfo preAggregationInfo, Optional<String> tableName, Optional<String> errorMessage, long createTime)
+    {
+        this(preAggregationInfo, tableName, errorMessage, createTime, 0);
+    }
+
+    protected PreAggregationInfoPair(PreAggregationInfo preAggregationInfo, Optional<String> tableName, Optional<String> errorMessage, long createTime, long buildTimeMillis)
     {
         this.preAggregationInfo = requireNonNull(preAggregationInfo, "preAggregationInfo is null");
         this.tableName = requireNonNull(tableName, "tableName is null");
         this.errorMessage = requireNonNull(errorMessage, "errorMessage is null");
         this.createTime = createTime;
+        this.buildTimeMillis = buildTimeMillis;
     }
 
     public PreAggregationInfo getPreAggregationInfo()
@@ -65,4 +72,12 @@ public class PreAggregationInfoPair
     {
         return createTime;
     }
+
+    /**
+     * How long it took to build the table, 0 if the table isn't built.
+     */
+    public long getBuildTimeMillis()
+    {
+        return buildTimeMillis;
+    }
 }
@@ -22,45 +22,56 @@ import io.accio.base.ConnectorRecordIterator;
 import io.accio.base.Parameter;
 import io.accio.base.SessionContext;
 import io.accio.base.client.duckdb.DuckdbClient;
+import io.accio.base.dto.Metric;
 import io.accio.base.dto.PreAggregationInfo;
 import io.accio.base.sql.SqlConverter;
 import io.accio.preaggregation.dto.PreAggregationTable;
 import io.accio.sqlrewrite.AccioPlanner;
+import io.accio.sqlrewrite.PreAggregationRewrite;
 import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
 import io.trino.sql.parser.ParsingOptions;
 import io.trino.sql.parser.SqlParser;
 import io.trino.sql.tree.Statement;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.function.Predicate;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static io.accio.base.metadata.StandardErrorCode.GENERIC_USER_ERROR;
+import static io.accio.base.metadata.StandardErrorCode.NOT_FOUND;
+import static io.accio.preaggregation.PreAggregationRefreshScheduler.RefreshBackend.DATA_SOURCE;
+import static io.accio.preaggregation.PreAggregationRefreshScheduler.RefreshBackend.DUCKDB;
 import static io.accio.preaggregation.TaskInfo.TaskStatus.DONE;
 import static io.accio.preaggregation.TaskInfo.TaskStatus.RUNNING;
 import static io.airlift.concurrent.Threads.daemonThreadsNamed;
 import static io.airlift.concurrent.Threads.threadsNamed;
+import static io.airlift.units.Duration.nanosSince;
 import static io.trino.execution.sql.SqlFormatterUtil.getFormattedSql;
 import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
 import static java.util.Objects.requireNonNull;
 import static java.util.UUID.randomUUID;
-import static java.util.concurrent.CompletableFuture.runAsync;
 import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toList;
 
@@ -76,12 +87,19 @@ public class PreAggregationManager
     private final PreAggregationStorageConfig preAggregationStorageConfig;
     private final ConcurrentLinkedQueue<PathInfo> tempFileLocations = new ConcurrentLinkedQueue<>();
     private final PreAggregationTableMapping preAggregationTableMapping;
-    private final ConcurrentMap<CatalogSchemaTableName, ScheduledFuture<?>> preAggregationScheduledFutures = new ConcurrentHashMap<>();
-    private final ScheduledThreadPoolExecutor refreshExecutor = new ScheduledThreadPoolExecutor(5, daemonThreadsNamed("pre-aggregation-refresh-%s"));
+    private final PreAggregationTableReclaimer tableReclaimer;
+    private final PreAggregationRefreshScheduler refreshScheduler;
 
     private final ExecutorService executorService = newCachedThreadPool(threadsNamed("pre-aggregation-manager-%s"));
+    // duckdb runs the queries in process, so the async queries are bounded by its connections
+    private final ExecutorService queryExecutor;
     private final ConcurrentHashMap<String, Task> tasks = new ConcurrentHashMap<>();
 
+    private final TimeStat queryTime = new TimeStat(MILLISECONDS);
+    private final CounterStat queryFailures = new CounterStat();
+    private final TimeStat refreshTime = new TimeStat(MILLISECONDS);
+    private final CounterStat refreshFailures = new CounterStat();
+
     @Inject
     public PreAggregationManager(
             SqlConverter sqlConverter,
@@ -89,16 +107,20 @@ public class PreAggregationManager
             ExtraRewriter extraRewriter,
             DuckdbClient duckdbClient,
             PreAggregationStorageConfig preAggregationStorageConfig,
-            PreAggregationTableMapping preAggregationTableMapping)
+            PreAggregationTableMapping preAggregationTableMapping,
+            PreAggregationTableReclaimer tableReclaimer,
+            PreAggregationRefreshScheduler refreshScheduler)
     {
         this.sqlParser = new SqlParser();
         this.sqlConverter = requireNonNull(sqlConverter, "sqlConverter is null");
         this.preAggregationService = requireNonNull(preAggregationService, "preAggregationService is null");
         this.extraRewriter = requireNonNull(extraRewriter, "extraRewriter is null");
         this.duckdbClient = requireNonNull(duckdbClient, "duckdbClient is null");
+        this.queryExecutor = newFixedThreadPool(duckdbClient.getConnectionPoolSize(), daemonThreadsNamed("pre-aggregation-query-%s"));
         this.preAggregationStorageConfig = requireNonNull(preAggregationStorageConfig, "preAggregationStorageConfig is null");
         this.preAggregationTableMapping = requireNonNull(preAggregationTableMapping, "preAggregationTableMapping is null");
-        refreshExecutor.setRemoveOnCancelPolicy(true);
+        this.tableReclaimer = requireNonNull(tableReclaimer, "tableReclaimer is null");
+        this.refreshScheduler = requireNonNull(refreshScheduler, "refreshScheduler is null");
     }
 
     private synchronized CompletableFuture<Void> refreshPreAggregation(AccioMDL mdl)
@@ -109,7 +131,8 @@ public class PreAggregationManager
         if (!taskInfoList.isEmpty()) {
             throw new AccioException(GENERIC_USER_ERROR, format("Pre-aggregation is already running; catalogName: %s, schemaName: %s", mdl.getCatalog(), mdl.getSchema()));
         }
-        removePreAggregation(catalogName, schemaName);
+        // the existing pre-aggregations keep serving queries until their new versions are published
+        removeOutdatedPreAggregation(mdl, mdl);
         return doPreAggregation(mdl);
     }
 
@@ -117,15 +140,11 @@ public class PreAggregationManager
     {
         List<CompletableFuture<Void>> futures = mdl.listPreAggregated()
                 .stream()
-                .map(preAggregationInfo ->
-                        doSinglePreAggregation(mdl, preAggregationInfo)
-                                .thenRun(() -> preAggregationScheduledFutures.put(
-                                        new CatalogSchemaTableName(mdl.getCatalog(), mdl.getSchema(), preAggregationInfo.getName()),
-                                        refreshExecutor.scheduleWithFixedDelay(
-                                                () -> doSinglePreAggregation(mdl, preAggregationInfo).join(),
-                                                preAggregationInfo.getRefreshTime().toMillis(),
-                                                preAggregationInfo.getRefreshTime().toMillis(),
-                                                MILLISECONDS))))
+                .map(preAggregationInfo -> refreshScheduler.schedule(
+                        new CatalogSchemaTableName(mdl.getCatalog(), mdl.getSchema(), preAggregationInfo.getName()),
+                        new CatalogSchemaTableName(mdl.getCatalog(), mdl.getSchema(), getModelName(preAggregationInfo)),
+                        preAggregationInfo.getRefreshTime(),
+                        () -> doSinglePreAggregation(mdl, preAggregationInfo)))
                 .collect(toImmutableList());
         CompletableFuture<Void> allFutures = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
         return allFutures.whenComplete((v, e) -> {
@@ -135,38 +154,155 @@ public class PreAggregationManager
         });
     }
 
+    private static String getModelName(PreAggregationInfo preAggregationInfo)
+    {
+        if (preAggregationInfo instanceof Metric) {
+            return ((Metric) preAggregationInfo).getBaseModel();
+        }
+        return preAggregationInfo.getName();
+    }
+
+    /**
+     * Rewrite the statement to read the pre-aggregation tables.
+     *
+     * @return empty if the statement reads any table which isn't pre-aggregated
+     */
+    public Optional<PreAggregationStatement> rewrite(SessionContext sessionContext, String sql, AccioMDL mdl)
+    {
+        Map<CatalogSchemaTableName, String> tableNames = new HashMap<>();
+        Optional<String> rewritten = PreAggregationRewrite.rewrite(
+                sessionContext,
+                sql,
+                catalogSchemaTableName -> {
+                    Optional<String> tableName = preAggregationTableMapping.convertToAggregationTable(catalogSchemaTableName);
+                    tableName.ifPresent(name -> tableNames.put(catalogSchemaTableName, name));
+                    return tableName;
+                },
+                mdl);
+        return rewritten.map(rewrittenSql -> new PreAggregationStatement(rewrittenSql, tableNames, () -> rewrite(sessionContext, sql, mdl)));
+    }
+
+    /**
+     * Query the pre-aggregation tables. The tables the statement reads are checked after the query enters
+     * the reclaimer epoch, the ones which are still published then can't be dropped until the iterator is
+     * closed. The statement is rewritten against the published tables if a refresh replaced any of them
+     * after it was parsed.
+     */
+    public ConnectorRecordIterator query(PreAggregationStatement statement, List<Parameter> parameters)
+            throws SQLException
+    {
+        long start = System.nanoTime();
+        long epoch = tableReclaimer.enter();
+        try {
+            PreAggregationStatement published = isPublished(statement)
+                    ? statement
+                    : statement.rewrite()
+                    .orElseThrow(() -> new AccioException(NOT_FOUND, "The pre-aggregation tables read by the statement are no longer available"));
+            return DuckdbRecordIterator.of(duckdbClient, published.getSql(), ImmutableList.copyOf(parameters), () -> tableReclaimer.exit(epoch));
+        }
+        catch (SQLException | RuntimeException e) {
+            queryFailures.update(1);
+            tableReclaimer.exit(epoch);
+            throw e;
+        }
+        finally {
+            queryTime.add(nanosSince(start));
+        }
+    }
+
+    private boolean isPublished(PreAggregationStatement statement)
+    {
+        return statement.getTableNames().entrySet().stream()
+                .allMatch(entry -> Optional.ofNullable(preAggregationTableMapping.get(entry.getKey()))
+                        .flatMap(PreAggregationInfoPair::getTableName)
+                        .filter(entry.getValue()::equals)
+                        .isPresent());
+    }
+
     public ConnectorRecordIterator query(String sql, List<Parameter> parameters)
             throws SQLException
     {
-        return DuckdbRecordIterator.of(duckdbClient, sql, parameters.stream().collect(toImmutableList()));
+        long start = System.nanoTime();
+        // the tables read by the query won't be dropped until the iterator is closed
+        long epoch = tableReclaimer.enter();
+        try {
+            return DuckdbRecordIterator.of(duckdbClient, sql, parameters.stream().collect(toImmutableList()), () -> tableReclaimer.exit(epoch));
+        }
+        catch (SQLException | RuntimeException e) {
+            queryFailures.update(1);
+            tableReclaimer.exit(epoch);
+            throw e;
+        }
+        finally {
+            queryTime.add(nanosSince(start));
+        }
+    }
+
+    public CompletableFuture<ConnectorRecordIterator> queryAsync(PreAggregationStatement statement, List<Parameter> parameters)
+    {
+        return supplyAsync(() -> {
+            try {
+                return query(statement, parameters);
+            }
+            catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, queryExecutor);
     }
 
-    private CompletableFuture<Void> doSinglePreAggregation(AccioMDL mdl, PreAggregationInfo preAggregationInfo)
+    private boolean doSinglePreAggregation(AccioMDL mdl, PreAggregationInfo preAggregationInfo)
     {
         CatalogSchemaTableName catalogSchemaTableName = new CatalogSchemaTableName(mdl.getCatalog(), mdl.getSchema(), preAggregationInfo.getName());
+        if (preAggregationTableMapping.isEvicted(catalogSchemaTableName)) {
+            // rebuilding the table would only evict it or another table again, wait until it's queried
+            LOG.debug("Skip refreshing the evicted pre-aggregation %s", catalogSchemaTableName);
+            return true;
+        }
         String duckdbTableName = format("%s_%s", preAggregationInfo.getName(), randomUUID().toString().replace("-", ""));
         long createTime = currentTimeMillis();
-        return runAsync(() -> {
-            SessionContext sessionContext = SessionContext.builder()
-                    .setCatalog(mdl.getCatalog())
-                    .setSchema(mdl.getSchema())
-                    .build();
-            String accioRewritten = AccioPlanner.rewrite(
-                    format("select * from %s", preAggregationInfo.getName()),
-                    sessionContext,
-                    mdl);
-            Statement parsedStatement = sqlParser.createStatement(accioRewritten, PARSE_AS_DECIMAL);
-            Statement rewrittenStatement = extraRewriter.rewrite(parsedStatement);
+        long start = System.nanoTime();
+        try {
+            SessionContext sessionContext = toSessionContext(mdl);
+            Statement rewrittenStatement = planPreAggregation(mdl, preAggregationInfo);
 
             createPreAggregation(mdl, preAggregationInfo, sessionContext, rewrittenStatement, duckdbTableName);
-            preAggregationTableMapping.putPreAggregationTableMapping(catalogSchemaTableName, new PreAggregationInfoPair(preAggregationInfo, duckdbTableName, createTime));
-        }).exceptionally(e -> {
+            long buildTimeMillis = nanosSince(start).toMillis();
+            preAggregationTableMapping.putPreAggregationTableMapping(catalogSchemaTableName, new PreAggregationInfoPair(preAggregationInfo, duckdbTableName, createTime, buildTimeMillis));
+            return true;
+        }
+        catch (RuntimeException e) {
+            refreshFailures.update(1);
             duckdbClient.dropTableQuietly(duckdbTableName);
             String errMsg = format("Failed to do pre-aggregation for preAggregationInfo %s; caused by %s", preAggregationInfo.getName(), e.getMessage());
             LOG.error(e, errMsg);
-            preAggregationTableMapping.putPreAggregationTableMapping(catalogSchemaTableName, new PreAggregationInfoPair(preAggregationInfo, Optional.empty(), Optional.of(errMsg), createTime));
-            return null;
-        });
+            preAggregationTableMapping.putPreAggregationTableError(catalogSchemaTableName, preAggregationInfo, errMsg, createTime);
+            return false;
+        }
+        finally {
+            refreshTime.add(nanosSince(start));
+        }
+    }
+
+    private static SessionContext toSessionContext(AccioMDL mdl)
+    {
+        return SessionContext.builder()
+                .setCatalog(mdl.getCatalog())
+                .setSchema(mdl.getSchema())
+                .build();
+    }
+
+    /**
+     * The statement building the pre-aggregation. It's planned with the whole mdl, so it covers what the
+     * pre-aggregation depends on, e.g. the base model of a metric, not only its own definition.
+     */
+    private Statement planPreAggregation(AccioMDL mdl, PreAggregationInfo preAggregationInfo)
+    {
+        String accioRewritten = AccioPlanner.rewrite(
+                format("select * from %s", preAggregationInfo.getName()),
+                toSessionContext(mdl),
+                mdl);
+        Statement parsedStatement = sqlParser.createStatement(accioRewritten, PARSE_AS_DECIMAL);
+        return extraRewriter.rewrite(parsedStatement);
     }
 
     private void createPreAggregation(
@@ -176,20 +312,23 @@ public class PreAggregationManager
             Statement rewrittenStatement,
             String duckdbTableName)
     {
-        preAggregationService.createPreAggregation(
-                        mdl.getCatalog(),
-                        mdl.getSchema(),
-                        preAggregationInfo.getName(),
-                        sqlConverter.convert(getFormattedSql(rewrittenStatement, sqlParser), sessionContext))
-                .ifPresent(pathInfo -> {
-                    try {
-                        tempFileLocations.add(pathInfo);
-                        refreshPreAggInDuckDB(pathInfo.getPath() + "/" + pathInfo.getFilePattern(), duckdbTableName);
-                    }
-                    finally {
-                        removeTempFile(pathInfo);
-                    }
-                });
+        String statement = sqlConverter.convert(getFormattedSql(rewrittenStatement, sqlParser), sessionContext);
+        if (refreshScheduler.runOnBackends(EnumSet.of(DATA_SOURCE, DUCKDB), () -> preAggregationService.loadPreAggregation(statement, duckdbTableName))) {
+            return;
+        }
+        // export the result from the data source and load it into duckdb, each step waits for its own backend
+        Optional<PathInfo> exported = refreshScheduler.runOnBackends(
+                EnumSet.of(DATA_SOURCE),
+                () -> preAggregationService.createPreAggregation(mdl.getCatalog(), mdl.getSchema(), preAggregationInfo.getName(), statement));
+        exported.ifPresent(pathInfo -> {
+            try {
+                tempFileLocations.add(pathInfo);
+                refreshScheduler.runOnBackends(EnumSet.of(DUCKDB), () -> refreshPreAggInDuckDB(pathInfo.getPath() + "/" + pathInfo.getFilePattern(), duckdbTableName));
+            }
+            finally {
+                removeTempFile(pathInfo);
+            }
+        });
     }
 
     private void refreshPreAggInDuckDB(String path, String tableName)
@@ -202,32 +341,111 @@ public class PreAggregationManager
         requireNonNull(catalogName, "catalogName is null");
         requireNonNull(schemaName, "schemaName is null");
 
-        preAggregationScheduledFutures.keySet().stream()
-                .filter(catalogSchemaTableName -> catalogSchemaTableName.getCatalogName().equals(catalogName)
-                        && catalogSchemaTableName.getSchemaTableName().getSchemaName().equals(schemaName))
-                .forEach(catalogSchemaTableName -> {
-                    preAggregationScheduledFutures.get(catalogSchemaTableName).cancel(true);
-                    preAggregationScheduledFutures.remove(catalogSchemaTableName);
-                });
+        cancelScheduledRefresh(catalogName, schemaName);
+        preAggregationTableMapping.entrySet().stream()
+                .map(Map.Entry::getKey)
+                .filter(catalogSchemaTableName -> isInSchema(catalogSchemaTableName, catalogName, schemaName))
+                .collect(toImmutableList())
+                .forEach(preAggregationTableMapping::remove);
+    }
+
+    /**
+     * Remove the pre-aggregations of the old mdl which can't be used by the new mdl. The pre-aggregation
+     * of an unchanged metric or model keeps serving queries until its new version is published. A
+     * pre-aggregation is changed if its definition or anything it's built from, e.g. the base model of
+     * a metric, is changed.
+     */
+    public void removeOutdatedPreAggregation(AccioMDL oldMdl, AccioMDL newMdl)
+    {
+        requireNonNull(oldMdl, "oldMdl is null");
+        requireNonNull(newMdl, "newMdl is null");
 
+        cancelScheduledRefresh(oldMdl.getCatalog(), oldMdl.getSchema());
         preAggregationTableMapping.entrySet().stream()
-                .filter(entry -> entry.getKey().getCatalogName().equals(catalogName)
-                        && entry.getKey().getSchemaTableName().getSchemaName().equals(schemaName))
-                .forEach(entry -> {
-                    entry.getValue().getTableName().ifPresent(duckdbClient::dropTableQuietly);
-                    preAggregationTableMapping.remove(entry.getKey());
-                });
+                .filter(entry -> isInSchema(entry.getKey(), oldMdl.getCatalog(), oldMdl.getSchema()))
+                .filter(entry -> isOutdated(oldMdl, newMdl, entry.getKey(), entry.getValue().getPreAggregationInfo()))
+                .map(Map.Entry::getKey)
+                .collect(toImmutableList())
+                .forEach(preAggregationTableMapping::remove);
+    }
+
+    private boolean isOutdated(AccioMDL oldMdl, AccioMDL newMdl, CatalogSchemaTableName catalogSchemaTableName, PreAggregationInfo preAggregationInfo)
+    {
+        Optional<PreAggregationInfo> newPreAggregationInfo = newMdl.getPreAggregationInfo(catalogSchemaTableName);
+        if (newPreAggregationInfo.isEmpty() || !newPreAggregationInfo.get().equals(preAggregationInfo)) {
+            return true;
+        }
+        if (oldMdl == newMdl) {
+            return false;
+        }
+        try {
+            return !getFormattedSql(planPreAggregation(oldMdl, preAggregationInfo), sqlParser)
+                    .equals(getFormattedSql(planPreAggregation(newMdl, newPreAggregationInfo.get()), sqlParser));
+        }
+        catch (RuntimeException e) {
+            LOG.warn(e, "Failed to plan pre-aggregation %s, it's rebuilt", catalogSchemaTableName);
+            return true;
+        }
+    }
+
+    private void cancelScheduledRefresh(String catalogName, String schemaName)
+    {
+        refreshScheduler.listScheduled().stream()
+                .filter(catalogSchemaTableName -> isInSchema(catalogSchemaTableName, catalogName, schemaName))
+                .forEach(refreshScheduler::cancel);
+    }
+
+    private static boolean isInSchema(CatalogSchemaTableName catalogSchemaTableName, String catalogName, String schemaName)
+    {
+        return catalogSchemaTableName.getCatalogName().equals(catalogName)
+                && catalogSchemaTableName.getSchemaTableName().getSchemaName().equals(schemaName);
     }
 
     public boolean preAggregationScheduledFutureExists(CatalogSchemaTableName catalogSchemaTableName)
     {
-        return preAggregationScheduledFutures.containsKey(catalogSchemaTableName);
+        return refreshScheduler.isScheduled(catalogSchemaTableName);
+    }
+
+    @Managed
+    public long getRunningTasks()
+    {
+        return tasks.values().stream()
+                .filter(task -> task.getTaskInfo().getTaskStatus() == RUNNING)
+                .count();
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getQueryTime()
+    {
+        return queryTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getQueryFailures()
+    {
+        return queryFailures;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getRefreshTime()
+    {
+        return refreshTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRefreshFailures()
+    {
+        return refreshFailures;
     }
 
     @PreDestroy
     public void stop()
     {
-        refreshExecutor.shutdown();
+        queryExecutor.shutdownNow();
         cleanTempFiles();
     }
 
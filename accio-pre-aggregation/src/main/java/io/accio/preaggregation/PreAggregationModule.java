@@ -15,11 +15,14 @@
 package io.accio.preaggregation;
 
 import com.google.inject.Binder;
+import com.google.inject.Provides;
 import com.google.inject.Scopes;
+import com.google.inject.Singleton;
 import io.accio.base.client.duckdb.DuckdbClient;
 import io.airlift.configuration.AbstractConfigurationAwareModule;
 
 import static io.airlift.configuration.ConfigBinder.configBinder;
+import static org.weakref.jmx.guice.ExportBinder.newExporter;
 
 public class PreAggregationModule
         extends AbstractConfigurationAwareModule
@@ -28,9 +31,24 @@ public class PreAggregationModule
     protected void setup(Binder binder)
     {
         configBinder(binder).bindConfig(DuckdbS3StyleStorageConfig.class);
+        configBinder(binder).bindConfig(DuckdbConfig.class);
+        configBinder(binder).bindConfig(PreAggregationConfig.class);
         binder.bind(PreAggregationStorageConfig.class).to(DuckdbS3StyleStorageConfig.class).in(Scopes.SINGLETON);
         binder.bind(PreAggregationManager.class).in(Scopes.SINGLETON);
-        binder.bind(DuckdbClient.class).in(Scopes.SINGLETON);
+        binder.bind(PreAggregationTableReclaimer.class).in(Scopes.SINGLETON);
+        binder.bind(PreAggregationRefreshScheduler.class).in(Scopes.SINGLETON);
         binder.bind(PreAggregationTableMapping.class).to(DefaultPreAggregationTableMapping.class).in(Scopes.SINGLETON);
+        newExporter(binder).export(PreAggregationManager.class).withGeneratedName();
+        newExporter(binder).export(PreAggregationTableMapping.class).withGeneratedName();
+    }
+
+    @Provides
+    @Singleton
+    public static DuckdbClient provideDuckdbClient(DuckdbConfig duckdbConfig)
+    {
+        DuckdbClient duckdbClient = new DuckdbClient(duckdbConfig.getConnectionPoolSize(), duckdbConfig.getStatementCacheSize());
+        // limit the memory duckdb can use and let it spill to the temp directory beyond the limit
+        duckdbClient.executeDDL(duckdbConfig.generateDuckdbSettingStatement());
+        return duckdbClient;
     }
 }
@@ -0,0 +1,385 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.preaggregation;
+
+import com.google.common.collect.ImmutableSet;
+import io.accio.base.CatalogSchemaTableName;
+import io.airlift.log.Logger;
+import io.airlift.units.Duration;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Schedule the refreshes of pre-aggregations.
+ * <p>
+ * The refreshes are queued and dispatched when the global limit allows it, and each step of a refresh waits for
+ * the limit of the backend it loads, i.e. the data source it reads from or duckdb it writes into, so a large mdl
+ * won't flood the backends. When several refreshes are waiting, the most stale one weighted by how often its table
+ * is queried goes first. The first refresh of a pre-aggregation is delayed by a random time and the periodic refresh
+ * is jittered to spread the refreshes scheduled together, and a failed refresh is retried with an exponential backoff.
+ * <p>
+ * A refresh requested while the same pre-aggregation is waiting, queued or running is coalesced with it, and a
+ * pre-aggregation is never refreshed twice at the same time, even if it's cancelled and scheduled again while its
+ * refresh is running. When the periodic refresh of a pre-aggregation is due, the pre-aggregations built from the
+ * same model which are due within their jitter are refreshed with it, so the model is read in one go.
+ */
+public class PreAggregationRefreshScheduler
+{
+    private static final Logger LOG = Logger.get(PreAggregationRefreshScheduler.class);
+
+    public enum RefreshBackend
+    {
+        DATA_SOURCE,
+        DUCKDB,
+    }
+
+    private final PreAggregationTableMapping preAggregationTableMapping;
+    private final int maxConcurrency;
+    private final double jitter;
+    private final Duration maxInitialDelay;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Map<RefreshBackend, Semaphore> backendPermits = new EnumMap<>(RefreshBackend.class);
+
+    private final ScheduledExecutorService timer = newSingleThreadScheduledExecutor(daemonThreadsNamed("pre-aggregation-refresh-timer-%s"));
+    private final ExecutorService refreshExecutor = newCachedThreadPool(daemonThreadsNamed("pre-aggregation-refresh-%s"));
+
+    // all fields below are guarded by this
+    private final Map<CatalogSchemaTableName, RefreshTask> refreshTasks = new HashMap<>();
+    private final List<RefreshTask> queuedTasks = new ArrayList<>();
+    private final Set<CatalogSchemaTableName> runningTables = new HashSet<>();
+    private int runningCount;
+
+    @Inject
+    public PreAggregationRefreshScheduler(PreAggregationTableMapping preAggregationTableMapping, PreAggregationConfig preAggregationConfig)
+    {
+        this.preAggregationTableMapping = requireNonNull(preAggregationTableMapping, "preAggregationTableMapping is null");
+        requireNonNull(preAggregationConfig, "preAggregationConfig is null");
+        this.maxConcurrency = preAggregationConfig.getRefreshMaxConcurrency();
+        this.jitter = preAggregationConfig.getRefreshJitter();
+        this.maxInitialDelay = preAggregationConfig.getRefreshMaxInitialDelay();
+        this.initialBackoff = preAggregationConfig.getRefreshInitialBackoff();
+        this.maxBackoff = preAggregationConfig.getRefreshMaxBackoff();
+        int maxConcurrencyPerBackend = preAggregationConfig.getRefreshMaxConcurrencyPerBackend();
+        checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+        checkArgument(maxConcurrencyPerBackend > 0, "maxConcurrencyPerBackend must be positive");
+        checkArgument(jitter >= 0 && jitter < 1, "jitter must be in [0, 1)");
+        for (RefreshBackend backend : RefreshBackend.values()) {
+            backendPermits.put(backend, new Semaphore(maxConcurrencyPerBackend, true));
+        }
+    }
+
+    /**
+     * Refresh the pre-aggregation and keep refreshing it every {@code refreshTime} until it is cancelled. The
+     * first refresh of a newly scheduled pre-aggregation is delayed by a random time up to the max initial delay,
+     * a pre-aggregation which is already scheduled is refreshed as soon as possible. The refresher returns false
+     * if the refresh failed.
+     *
+     * @param model the model the pre-aggregation is built from
+     * @return the future completed when the next refresh is done
+     */
+    public synchronized CompletableFuture<Void> schedule(
+            CatalogSchemaTableName catalogSchemaTableName,
+            CatalogSchemaTableName model,
+            Duration refreshTime,
+            BooleanSupplier refresher)
+    {
+        requireNonNull(catalogSchemaTableName, "catalogSchemaTableName is null");
+        requireNonNull(model, "model is null");
+        requireNonNull(refreshTime, "refreshTime is null");
+        requireNonNull(refresher, "refresher is null");
+        RefreshTask refreshTask = refreshTasks.get(catalogSchemaTableName);
+        if (refreshTask == null) {
+            refreshTask = new RefreshTask(catalogSchemaTableName, model, refreshTime, refresher);
+            refreshTasks.put(catalogSchemaTableName, refreshTask);
+            long delayMillis = ThreadLocalRandom.current().nextLong(maxInitialDelay.toMillis() + 1);
+            if (delayMillis > 0 && !timer.isShutdown()) {
+                delayRefresh(refreshTask, delayMillis);
+                return refreshTask.future;
+            }
+        }
+        return requestRefresh(refreshTask);
+    }
+
+    public synchronized void cancel(CatalogSchemaTableName catalogSchemaTableName)
+    {
+        RefreshTask refreshTask = refreshTasks.remove(catalogSchemaTableName);
+        if (refreshTask == null) {
+            return;
+        }
+        refreshTask.cancelled = true;
+        cancelTimer(refreshTask);
+        queuedTasks.remove(refreshTask);
+        // a running refresh completes its own future when it's done
+        if (!refreshTask.running && refreshTask.future != null) {
+            refreshTask.future.complete(null);
+            refreshTask.future = null;
+        }
+    }
+
+    public synchronized boolean isScheduled(CatalogSchemaTableName catalogSchemaTableName)
+    {
+        return refreshTasks.containsKey(catalogSchemaTableName);
+    }
+
+    public synchronized Set<CatalogSchemaTableName> listScheduled()
+    {
+        return ImmutableSet.copyOf(refreshTasks.keySet());
+    }
+
+    /**
+     * Run a step of a refresh which loads the given backends. The step waits while the backends are loaded
+     * by as many other refreshes as their limit allows.
+     */
+    public <T> T runOnBackends(EnumSet<RefreshBackend> backends, Supplier<T> step)
+    {
+        requireNonNull(step, "step is null");
+        List<Semaphore> acquired = new ArrayList<>();
+        try {
+            // the backends are acquired in the order of the enum, so two steps never wait for each other
+            for (RefreshBackend backend : backends) {
+                Semaphore permits = backendPermits.get(backend);
+                permits.acquire();
+                acquired.add(permits);
+            }
+            return step.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the pre-aggregation backends " + backends, e);
+        }
+        finally {
+            acquired.forEach(Semaphore::release);
+        }
+    }
+
+    public void runOnBackends(EnumSet<RefreshBackend> backends, Runnable step)
+    {
+        requireNonNull(step, "step is null");
+        runOnBackends(backends, () -> {
+            step.run();
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        timer.shutdownNow();
+        refreshExecutor.shutdownNow();
+    }
+
+    private CompletableFuture<Void> requestRefresh(RefreshTask refreshTask)
+    {
+        if (refreshTask.future == null) {
+            refreshTask.future = new CompletableFuture<>();
+            queue(refreshTask);
+        }
+        else if (refreshTask.timer.isPresent()) {
+            // bring the waiting refresh forward
+            cancelTimer(refreshTask);
+            queue(refreshTask);
+        }
+        // otherwise the same pre-aggregation is queued or running
+        return refreshTask.future;
+    }
+
+    private void delayRefresh(RefreshTask refreshTask, long delayMillis)
+    {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        refreshTask.future = future;
+        refreshTask.nextRefreshMillis = currentTimeMillis() + delayMillis;
+        refreshTask.timer = Optional.of(timer.schedule(() -> refreshDelayed(refreshTask, future), delayMillis, MILLISECONDS));
+    }
+
+    private synchronized void refreshDelayed(RefreshTask refreshTask, CompletableFuture<Void> future)
+    {
+        if (refreshTask.cancelled || refreshTask.future != future || refreshTask.timer.isEmpty()) {
+            // the refresh is cancelled or brought forward
+            return;
+        }
+        refreshTask.timer = Optional.empty();
+        queue(refreshTask);
+
+        long now = currentTimeMillis();
+        refreshTasks.values().stream()
+                .filter(sibling -> sibling != refreshTask && sibling.model.equals(refreshTask.model))
+                .filter(sibling -> sibling.timer.isPresent() && sibling.nextRefreshMillis - now <= getJitterMillis(sibling.refreshTime))
+                .collect(toImmutableList())
+                .forEach(sibling -> {
+                    cancelTimer(sibling);
+                    queue(sibling);
+                });
+    }
+
+    private void cancelTimer(RefreshTask refreshTask)
+    {
+        refreshTask.timer.ifPresent(future -> future.cancel(false));
+        refreshTask.timer = Optional.empty();
+    }
+
+    private void queue(RefreshTask refreshTask)
+    {
+        queuedTasks.add(refreshTask);
+        dispatch();
+    }
+
+    private void dispatch()
+    {
+        if (refreshExecutor.isShutdown()) {
+            return;
+        }
+        long now = currentTimeMillis();
+        while (runningCount < maxConcurrency) {
+            Optional<RefreshTask> next = queuedTasks.stream()
+                    // the refresh of a pre-aggregation scheduled again waits for the one cancelled
+                    .filter(refreshTask -> !runningTables.contains(refreshTask.catalogSchemaTableName))
+                    .max(Comparator.comparingDouble(refreshTask -> refreshTask.getPriority(now)));
+            if (next.isEmpty()) {
+                return;
+            }
+            RefreshTask refreshTask = next.get();
+            queuedTasks.remove(refreshTask);
+            runningCount++;
+            runningTables.add(refreshTask.catalogSchemaTableName);
+            refreshTask.running = true;
+            refreshExecutor.execute(() -> run(refreshTask));
+        }
+    }
+
+    private void run(RefreshTask refreshTask)
+    {
+        boolean success;
+        try {
+            success = refreshTask.refresher.getAsBoolean();
+        }
+        catch (RuntimeException e) {
+            LOG.error(e, "Failed to refresh pre-aggregation %s", refreshTask.catalogSchemaTableName);
+            success = false;
+        }
+
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            runningCount--;
+            runningTables.remove(refreshTask.catalogSchemaTableName);
+            refreshTask.running = false;
+            future = refreshTask.future;
+            refreshTask.future = null;
+            if (success) {
+                refreshTask.lastRefreshMillis = currentTimeMillis();
+                refreshTask.consecutiveFailures = 0;
+            }
+            else {
+                refreshTask.consecutiveFailures++;
+            }
+            if (!refreshTask.cancelled && !timer.isShutdown()) {
+                delayRefresh(refreshTask, success ? getJitteredRefreshMillis(refreshTask.refreshTime) : getBackoffMillis(refreshTask.consecutiveFailures));
+            }
+            dispatch();
+        }
+        future.complete(null);
+    }
+
+    private long getJitteredRefreshMillis(Duration refreshTime)
+    {
+        long jitterMillis = getJitterMillis(refreshTime);
+        if (jitterMillis == 0) {
+            return refreshTime.toMillis();
+        }
+        return refreshTime.toMillis() + ThreadLocalRandom.current().nextLong(-jitterMillis, jitterMillis + 1);
+    }
+
+    private long getJitterMillis(Duration refreshTime)
+    {
+        return (long) (refreshTime.toMillis() * jitter);
+    }
+
+    private long getBackoffMillis(int consecutiveFailures)
+    {
+        // cap the exponent to avoid overflow, the result is capped by the max backoff anyway
+        long backoffMillis = initialBackoff.toMillis() << Math.min(consecutiveFailures - 1, 30);
+        return Math.min(backoffMillis, maxBackoff.toMillis());
+    }
+
+    private class RefreshTask
+    {
+        private final CatalogSchemaTableName catalogSchemaTableName;
+        private final CatalogSchemaTableName model;
+        private final Duration refreshTime;
+        private final BooleanSupplier refresher;
+
+        // the future of the next refresh, null if the pre-aggregation isn't waiting, queued or running
+        private CompletableFuture<Void> future;
+        private Optional<ScheduledFuture<?>> timer = Optional.empty();
+        private long nextRefreshMillis;
+        private boolean running;
+        private long lastRefreshMillis;
+        private int consecutiveFailures;
+        private boolean cancelled;
+
+        private RefreshTask(CatalogSchemaTableName catalogSchemaTableName, CatalogSchemaTableName model, Duration refreshTime, BooleanSupplier refresher)
+        {
+            this.catalogSchemaTableName = catalogSchemaTableName;
+            this.model = model;
+            this.refreshTime = refreshTime;
+            this.refresher = refresher;
+        }
+
+        /**
+         * A pre-aggregation which was never built goes first. Otherwise, the priority is how many refresh periods
+         * the table is behind, weighted by how often the table is queried.
+         */
+        private double getPriority(long now)
+        {
+            if (lastRefreshMillis == 0) {
+                return Double.MAX_VALUE;
+            }
+            double staleness = (double) (now - lastRefreshMillis) / Math.max(refreshTime.toMillis(), 1);
+            long hitCount = preAggregationTableMapping.getTableStats(catalogSchemaTableName)
+                    .map(PreAggregationTableStats::getHitCount)
+                    .orElse(0L);
+            return staleness * (1 + Math.log1p(hitCount));
+        }
+    }
+}
@@ -19,5 +19,15 @@ public interface PreAggregationService
 {
     Optional<PathInfo> createPreAggregation(String catalog, String schema, String name, String statement);
 
+    /**
+     * Load the result of the statement into the duckdb table directly without exporting it to an intermediate storage.
+     *
+     * @return false if the service doesn't support direct loading and {@link #createPreAggregation} should be used instead.
+     */
+    default boolean loadPreAggregation(String statement, String duckdbTableName)
+    {
+        return false;
+    }
+
     void deleteTarget(PathInfo pathInfo);
 }
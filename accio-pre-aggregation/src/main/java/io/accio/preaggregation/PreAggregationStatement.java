@@ -0,0 +1,61 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.preaggregation;
+
+import com.google.common.collect.ImmutableMap;
+import io.accio.base.CatalogSchemaTableName;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A statement rewritten to read the pre-aggregation tables. The tables are resolved when the statement is
+ * parsed, a refresh may replace them before it's executed, so {@link PreAggregationManager} checks them
+ * again when the query is opened and rewrites the statement if any of them has been replaced.
+ */
+public class PreAggregationStatement
+{
+    private final String sql;
+    private final Map<CatalogSchemaTableName, String> tableNames;
+    private final Supplier<Optional<PreAggregationStatement>> rewriter;
+
+    PreAggregationStatement(String sql, Map<CatalogSchemaTableName, String> tableNames, Supplier<Optional<PreAggregationStatement>> rewriter)
+    {
+        this.sql = requireNonNull(sql, "sql is null");
+        this.tableNames = ImmutableMap.copyOf(requireNonNull(tableNames, "tableNames is null"));
+        this.rewriter = requireNonNull(rewriter, "rewriter is null");
+    }
+
+    public String getSql()
+    {
+        return sql;
+    }
+
+    /**
+     * @return the duckdb table each pre-aggregation is read from
+     */
+    public Map<CatalogSchemaTableName, String> getTableNames()
+    {
+        return tableNames;
+    }
+
+    Optional<PreAggregationStatement> rewrite()
+    {
+        return rewriter.get();
+    }
+}
@@ -14,6 +14,7 @@
 package io.accio.preaggregation;
 
 import io.accio.base.CatalogSchemaTableName;
+import io.accio.base.dto.PreAggregationInfo;
 
 import java.util.List;
 import java.util.Map;
@@ -24,6 +25,12 @@ public interface PreAggregationTableMapping
 {
     void putPreAggregationTableMapping(CatalogSchemaTableName catalogSchemaTableName, PreAggregationInfoPair preAggregationInfoPair);
 
+    /**
+     * Record a failed refresh. The published table keeps serving the queries with the error attached,
+     * the queries fall back to the data source only if there's no published table.
+     */
+    void putPreAggregationTableError(CatalogSchemaTableName catalogSchemaTableName, PreAggregationInfo preAggregationInfo, String errorMessage, long createTime);
+
     PreAggregationInfoPair get(CatalogSchemaTableName preAggregationTable);
 
     void remove(CatalogSchemaTableName preAggregationTable);
@@ -32,6 +39,13 @@ public interface PreAggregationTableMapping
 
     Optional<String> convertToAggregationTable(CatalogSchemaTableName catalogSchemaTableName);
 
+    Optional<PreAggregationTableStats> getTableStats(CatalogSchemaTableName catalogSchemaTableName);
+
+    /**
+     * @return true if the table is evicted and isn't queried since, it shouldn't be refreshed until it's queried
+     */
+    boolean isEvicted(CatalogSchemaTableName catalogSchemaTableName);
+
     Set<Map.Entry<CatalogSchemaTableName, PreAggregationInfoPair>> entrySet();
 
     List<PreAggregationInfoPair> getPreAggregationInfoPairs(String catalogName, String schemaName);
@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.preaggregation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.SortedMultiset;
+import com.google.common.collect.TreeMultiset;
+import io.accio.base.client.duckdb.DuckdbClient;
+
+import javax.inject.Inject;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Drop the retired pre-aggregation tables only when no open query can still read them.
+ * <p>
+ * Every query enters the current epoch when it's opened and exits it when it's closed.
+ * Retiring a table moves to the next epoch, so the queries opened before the retirement are
+ * the ones in an older epoch. The table is dropped once all of them are closed.
+ */
+public class PreAggregationTableReclaimer
+{
+    private final DuckdbClient duckdbClient;
+
+    private long currentEpoch;
+    private final SortedMultiset<Long> activeEpochs = TreeMultiset.create();
+    private final Queue<RetiredTable> retiredTables = new ArrayDeque<>();
+
+    @Inject
+    public PreAggregationTableReclaimer(DuckdbClient duckdbClient)
+    {
+        this.duckdbClient = requireNonNull(duckdbClient, "duckdbClient is null");
+    }
+
+    public synchronized long enter()
+    {
+        activeEpochs.add(currentEpoch);
+        return currentEpoch;
+    }
+
+    public void exit(long epoch)
+    {
+        List<String> reclaimable;
+        synchronized (this) {
+            activeEpochs.remove(epoch);
+            reclaimable = pollReclaimable();
+        }
+        reclaimable.forEach(duckdbClient::dropTableQuietly);
+    }
+
+    public void retire(String tableName)
+    {
+        List<String> reclaimable;
+        synchronized (this) {
+            currentEpoch++;
+            retiredTables.add(new RetiredTable(tableName, currentEpoch));
+            reclaimable = pollReclaimable();
+        }
+        reclaimable.forEach(duckdbClient::dropTableQuietly);
+    }
+
+    public synchronized int getRetiredTableCount()
+    {
+        return retiredTables.size();
+    }
+
+    private List<String> pollReclaimable()
+    {
+        long oldestActiveEpoch = activeEpochs.isEmpty() ? Long.MAX_VALUE : activeEpochs.firstEntry().getElement();
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        // tables are retired in epoch order
+        while (!retiredTables.isEmpty() && retiredTables.peek().getRetiredEpoch() <= oldestActiveEpoch) {
+            builder.add(retiredTables.poll().getTableName());
+        }
+        return builder.build();
+    }
+
+    private static class RetiredTable
+    {
+        private final String tableName;
+        private final long retiredEpoch;
+
+        private RetiredTable(String tableName, long retiredEpoch)
+        {
+            this.tableName = requireNonNull(tableName, "tableName is null");
+            this.retiredEpoch = retiredEpoch;
+        }
+
+        public String getTableName()
+        {
+            return tableName;
+        }
+
+        public long getRetiredEpoch()
+        {
+            return retiredEpoch;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.preaggregation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+public class PreAggregationTableStats
+{
+    private final String tableName;
+    private final long sizeInBytes;
+    private final long rebuildCostMillis;
+    private final AtomicLong hitCount;
+
+    public PreAggregationTableStats(String tableName, long sizeInBytes, long rebuildCostMillis, long hitCount)
+    {
+        this.tableName = requireNonNull(tableName, "tableName is null");
+        this.sizeInBytes = sizeInBytes;
+        this.rebuildCostMillis = rebuildCostMillis;
+        this.hitCount = new AtomicLong(hitCount);
+    }
+
+    public String getTableName()
+    {
+        return tableName;
+    }
+
+    public long getSizeInBytes()
+    {
+        return sizeInBytes;
+    }
+
+    public long getRebuildCostMillis()
+    {
+        return rebuildCostMillis;
+    }
+
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    public void recordHit()
+    {
+        hitCount.incrementAndGet();
+    }
+
+    /**
+     * The value of keeping the table in duckdb: a table that is queried often and expensive to rebuild
+     * is worth more than a large table that is rarely used.
+     */
+    public double getValue()
+    {
+        return (double) (getHitCount() + 1) * Math.max(rebuildCostMillis, 1) / Math.max(sizeInBytes, 1);
+    }
+}
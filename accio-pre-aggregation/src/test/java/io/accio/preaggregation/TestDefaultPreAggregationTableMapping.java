@@ -0,0 +1,219 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.preaggregation;
+
+import com.google.common.collect.ImmutableList;
+import io.accio.base.CatalogSchemaTableName;
+import io.accio.base.client.duckdb.DuckdbClient;
+import io.accio.base.dto.PreAggregationInfo;
+import io.airlift.units.DataSize;
+import org.testng.annotations.Test;
+
+import static io.accio.base.dto.Model.model;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TestDefaultPreAggregationTableMapping
+{
+    private static final CatalogSchemaTableName T1 = new CatalogSchemaTableName("catalog", "schema", "t1");
+    private static final CatalogSchemaTableName T2 = new CatalogSchemaTableName("catalog", "schema", "t2");
+    private static final CatalogSchemaTableName T3 = new CatalogSchemaTableName("catalog", "schema", "t3");
+
+    @Test
+    public void testEvictLeastValuableTable()
+    {
+        DuckdbClient duckdbClient = new DuckdbClient();
+        long size = createTable(duckdbClient, "t1_v1", 500);
+        createTable(duckdbClient, "t2_v1", 500);
+        createTable(duckdbClient, "t3_v1", 500);
+        DefaultPreAggregationTableMapping mapping = createMapping(duckdbClient, 2 * size);
+
+        publish(mapping, T1, "t1_v1", 10);
+        publish(mapping, T2, "t2_v1", 1000);
+        mapping.convertToAggregationTable(T2);
+        publish(mapping, T3, "t3_v1", 100);
+
+        // t1 is cheaper to rebuild and queried less than t2
+        assertThat(mapping.get(T1).getTableName()).isEmpty();
+        assertThat(mapping.get(T1).getErrorMessage()).hasValueSatisfying(message -> assertThat(message).contains("is evicted"));
+        assertThat(mapping.convertToAggregationTable(T2)).hasValue("t2_v1");
+        assertThat(mapping.convertToAggregationTable(T3)).hasValue("t3_v1");
+        assertThat(duckdbClient.listTables()).doesNotContain("t1_v1");
+        assertThat(mapping.getTotalSizeInBytes()).isEqualTo(2 * size);
+        assertThat(mapping.getEvictions().getTotalCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRebuildCostIsBuildTime()
+    {
+        DuckdbClient duckdbClient = new DuckdbClient();
+        createTable(duckdbClient, "t1_v1", 10);
+        DefaultPreAggregationTableMapping mapping = createMapping(duckdbClient, Long.MAX_VALUE);
+
+        // the table was created long ago, but it took 42ms to build
+        mapping.putPreAggregationTableMapping(T1, new PreAggregationInfoPair(preAggregationInfo(T1), "t1_v1", currentTimeMillis() - 3_600_000, 42));
+        assertThat(mapping.getTableStats(T1)).hasValueSatisfying(stats -> assertThat(stats.getRebuildCostMillis()).isEqualTo(42));
+    }
+
+    @Test
+    public void testPublishedTableEvictedLast()
+    {
+        DuckdbClient duckdbClient = new DuckdbClient();
+        long size = createTable(duckdbClient, "t1_v1", 500);
+        createTable(duckdbClient, "t2_v1", 500);
+        createTable(duckdbClient, "t3_v1", 1500);
+        DefaultPreAggregationTableMapping mapping = createMapping(duckdbClient, size);
+
+        publish(mapping, T1, "t1_v1", 1000);
+        mapping.convertToAggregationTable(T1);
+        // t2 is worth less than t1, but it's just built
+        publish(mapping, T2, "t2_v1", 1);
+        assertThat(mapping.get(T1).getTableName()).isEmpty();
+        assertThat(mapping.get(T2).getTableName()).hasValue("t2_v1");
+
+        // t3 is evicted after t2 since it doesn't fit the budget alone
+        publish(mapping, T3, "t3_v1", 1);
+        assertThat(mapping.get(T2).getTableName()).isEmpty();
+        assertThat(mapping.get(T3).getTableName()).isEmpty();
+        assertThat(mapping.getTableCount()).isEqualTo(0);
+        assertThat(mapping.getEvictedTableCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testEvictedTableRefreshedAfterQueried()
+    {
+        DuckdbClient duckdbClient = new DuckdbClient();
+        long size = createTable(duckdbClient, "t1_v1", 500);
+        createTable(duckdbClient, "t2_v1", 500);
+        createTable(duckdbClient, "t1_v2", 500);
+        DefaultPreAggregationTableMapping mapping = createMapping(duckdbClient, size);
+
+        publish(mapping, T1, "t1_v1", 1);
+        mapping.convertToAggregationTable(T1);
+        publish(mapping, T2, "t2_v1", 1);
+        assertThat(mapping.isEvicted(T1)).isTrue();
+        assertThat(mapping.isEvicted(T2)).isFalse();
+
+        // the query falls back to the data source and brings t1 back to the refreshes
+        assertThat(mapping.convertToAggregationTable(T1)).isEmpty();
+        assertThat(mapping.isEvicted(T1)).isFalse();
+
+        // the rebuilt table keeps the hit count, so t2 which is never queried is evicted instead
+        publish(mapping, T1, "t1_v2", 1);
+        assertThat(mapping.getTableStats(T1)).hasValueSatisfying(stats -> assertThat(stats.getHitCount()).isEqualTo(2));
+        assertThat(mapping.convertToAggregationTable(T1)).hasValue("t1_v2");
+        assertThat(mapping.isEvicted(T2)).isTrue();
+        assertThat(mapping.getEvictedTableCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRemoveEvictedTable()
+    {
+        DuckdbClient duckdbClient = new DuckdbClient();
+        long size = createTable(duckdbClient, "t1_v1", 500);
+        createTable(duckdbClient, "t2_v1", 500);
+        DefaultPreAggregationTableMapping mapping = createMapping(duckdbClient, size);
+
+        publish(mapping, T1, "t1_v1", 1);
+        publish(mapping, T2, "t2_v1", 1);
+        assertThat(mapping.isEvicted(T1)).isTrue();
+
+        mapping.remove(T1);
+        assertThat(mapping.get(T1)).isNull();
+        assertThat(mapping.isEvicted(T1)).isFalse();
+        assertThat(mapping.getEvictedTableCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testTableSizeCountsContentLength()
+    {
+        DuckdbClient duckdbClient = new DuckdbClient();
+        duckdbClient.executeDDL("create table t1_v1 as select range as c1, repeat('x', 1000) as c2 from range(10)");
+        DefaultPreAggregationTableMapping mapping = createMapping(duckdbClient, Long.MAX_VALUE);
+
+        publish(mapping, T1, "t1_v1", 1);
+        // the bigint, and the header and the content of the varchar
+        assertThat(mapping.getTableStats(T1)).hasValueSatisfying(stats -> assertThat(stats.getSizeInBytes()).isEqualTo(10 * (8 + 16 + 1000)));
+    }
+
+    @Test
+    public void testFailedSizeKeepsPublishedTable()
+    {
+        DuckdbClient duckdbClient = new DuckdbClient();
+        createTable(duckdbClient, "t1_v1", 10);
+        DefaultPreAggregationTableMapping mapping = createMapping(duckdbClient, Long.MAX_VALUE);
+
+        publish(mapping, T1, "t1_v1", 1);
+        assertThatThrownBy(() -> publish(mapping, T1, "t1_missing", 1))
+                .isInstanceOf(RuntimeException.class);
+        assertThat(mapping.convertToAggregationTable(T1)).hasValue("t1_v1");
+        assertThat(duckdbClient.listTables()).contains("t1_v1");
+    }
+
+    @Test
+    public void testFailedRefreshKeepsPublishedTable()
+    {
+        DuckdbClient duckdbClient = new DuckdbClient();
+        createTable(duckdbClient, "t1_v1", 10);
+        DefaultPreAggregationTableMapping mapping = createMapping(duckdbClient, Long.MAX_VALUE);
+
+        publish(mapping, T1, "t1_v1", 1);
+        mapping.convertToAggregationTable(T1);
+        mapping.putPreAggregationTableError(T1, preAggregationInfo(T1), "refresh failed", currentTimeMillis());
+        assertThat(mapping.get(T1).getErrorMessage()).hasValue("refresh failed");
+        assertThat(mapping.convertToAggregationTable(T1)).hasValue("t1_v1");
+        assertThat(mapping.getTableStats(T1)).hasValueSatisfying(stats -> assertThat(stats.getHitCount()).isEqualTo(2));
+        assertThat(duckdbClient.listTables()).contains("t1_v1");
+
+        // the next successful refresh clears the error
+        createTable(duckdbClient, "t1_v2", 10);
+        publish(mapping, T1, "t1_v2", 1);
+        assertThat(mapping.get(T1).getErrorMessage()).isEmpty();
+        assertThat(mapping.convertToAggregationTable(T1)).hasValue("t1_v2");
+
+        // without a published table the queries fall back to the data source
+        mapping.putPreAggregationTableError(T2, preAggregationInfo(T2), "refresh failed", currentTimeMillis());
+        assertThat(mapping.get(T2).getTableName()).isEmpty();
+        assertThat(mapping.get(T2).getErrorMessage()).hasValue("refresh failed");
+        assertThat(mapping.getTableStats(T2)).isEmpty();
+    }
+
+    private static DefaultPreAggregationTableMapping createMapping(DuckdbClient duckdbClient, long maxPreAggregationSize)
+    {
+        return new DefaultPreAggregationTableMapping(
+                duckdbClient,
+                new PreAggregationTableReclaimer(duckdbClient),
+                new DuckdbConfig().setMaxPreAggregationSize(DataSize.ofBytes(maxPreAggregationSize)));
+    }
+
+    private static long createTable(DuckdbClient duckdbClient, String tableName, int rowCount)
+    {
+        duckdbClient.executeDDL(format("create table %s as select range as c1 from range(%s)", tableName, rowCount));
+        return duckdbClient.getTableSize(tableName);
+    }
+
+    private static void publish(DefaultPreAggregationTableMapping mapping, CatalogSchemaTableName name, String tableName, long buildTimeMillis)
+    {
+        mapping.putPreAggregationTableMapping(name, new PreAggregationInfoPair(preAggregationInfo(name), tableName, currentTimeMillis(), buildTimeMillis));
+    }
+
+    private static PreAggregationInfo preAggregationInfo(CatalogSchemaTableName name)
+    {
+        String tableName = name.getSchemaTableName().getTableName();
+        return model(tableName, "select 1", ImmutableList.of(), true);
+    }
+}
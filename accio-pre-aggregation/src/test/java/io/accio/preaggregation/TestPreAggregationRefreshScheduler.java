@@ -0,0 +1,276 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.preaggregation;
+
+import io.accio.base.CatalogSchemaTableName;
+import io.accio.base.client.duckdb.DuckdbClient;
+import io.airlift.units.Duration;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static io.accio.preaggregation.PreAggregationRefreshScheduler.RefreshBackend.DATA_SOURCE;
+import static io.accio.preaggregation.PreAggregationRefreshScheduler.RefreshBackend.DUCKDB;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestPreAggregationRefreshScheduler
+{
+    private static final Duration REFRESH_TIME = new Duration(1, HOURS);
+
+    private PreAggregationTableMapping preAggregationTableMapping;
+
+    @BeforeClass
+    public void setup()
+    {
+        DuckdbClient duckdbClient = new DuckdbClient();
+        preAggregationTableMapping = new DefaultPreAggregationTableMapping(duckdbClient, new PreAggregationTableReclaimer(duckdbClient), new DuckdbConfig());
+    }
+
+    @Test(timeOut = 10_000)
+    public void testCoalesceRefreshes()
+            throws Exception
+    {
+        PreAggregationRefreshScheduler scheduler = createScheduler(new PreAggregationConfig().setRefreshMaxInitialDelay(new Duration(0, SECONDS)));
+        try {
+            AtomicInteger refreshes = new AtomicInteger();
+            CountDownLatch release = new CountDownLatch(1);
+            BooleanSupplier refresher = () -> {
+                refreshes.incrementAndGet();
+                await(release);
+                return true;
+            };
+            CompletableFuture<Void> first = scheduler.schedule(table("t1"), table("model"), REFRESH_TIME, refresher);
+            CompletableFuture<Void> second = scheduler.schedule(table("t1"), table("model"), REFRESH_TIME, refresher);
+            assertThat(second).isSameAs(first);
+
+            release.countDown();
+            first.get(5, SECONDS);
+            assertThat(refreshes.get()).isEqualTo(1);
+            assertThat(scheduler.isScheduled(table("t1"))).isTrue();
+        }
+        finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testInitialDelay()
+            throws Exception
+    {
+        PreAggregationRefreshScheduler scheduler = createScheduler(new PreAggregationConfig().setRefreshMaxInitialDelay(new Duration(1, HOURS)));
+        try {
+            AtomicInteger refreshes = new AtomicInteger();
+            BooleanSupplier refresher = () -> {
+                refreshes.incrementAndGet();
+                return true;
+            };
+            CompletableFuture<Void> delayed = scheduler.schedule(table("t1"), table("model"), REFRESH_TIME, refresher);
+            MILLISECONDS.sleep(200);
+            assertThat(delayed).isNotDone();
+            assertThat(refreshes.get()).isEqualTo(0);
+
+            // scheduling the same pre-aggregation again brings the refresh forward
+            CompletableFuture<Void> requested = scheduler.schedule(table("t1"), table("model"), REFRESH_TIME, refresher);
+            assertThat(requested).isSameAs(delayed);
+            requested.get(5, SECONDS);
+            assertThat(refreshes.get()).isEqualTo(1);
+        }
+        finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testCancelWaitingRefresh()
+            throws Exception
+    {
+        PreAggregationRefreshScheduler scheduler = createScheduler(new PreAggregationConfig().setRefreshMaxInitialDelay(new Duration(1, HOURS)));
+        try {
+            AtomicInteger refreshes = new AtomicInteger();
+            CompletableFuture<Void> delayed = scheduler.schedule(table("t1"), table("model"), REFRESH_TIME, () -> refreshes.incrementAndGet() > 0);
+            scheduler.cancel(table("t1"));
+            delayed.get(5, SECONDS);
+            assertThat(refreshes.get()).isEqualTo(0);
+            assertThat(scheduler.isScheduled(table("t1"))).isFalse();
+        }
+        finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testNoConcurrentRefreshOfSameTable()
+            throws Exception
+    {
+        PreAggregationRefreshScheduler scheduler = createScheduler(new PreAggregationConfig().setRefreshMaxInitialDelay(new Duration(0, SECONDS)));
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            CountDownLatch release = new CountDownLatch(1);
+            BooleanSupplier refresher = () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                await(release);
+                running.decrementAndGet();
+                return true;
+            };
+            CompletableFuture<Void> first = scheduler.schedule(table("t1"), table("model"), REFRESH_TIME, refresher);
+            waitFor(running, 1);
+
+            // the refresh scheduled again waits for the cancelled one which is still running
+            scheduler.cancel(table("t1"));
+            CompletableFuture<Void> second = scheduler.schedule(table("t1"), table("model"), REFRESH_TIME, refresher);
+            assertThat(second).isNotSameAs(first);
+            MILLISECONDS.sleep(200);
+            assertThat(first).isNotDone();
+            assertThat(second).isNotDone();
+
+            release.countDown();
+            first.get(5, SECONDS);
+            second.get(5, SECONDS);
+            assertThat(maxRunning.get()).isEqualTo(1);
+        }
+        finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testMaxConcurrency()
+            throws Exception
+    {
+        PreAggregationRefreshScheduler scheduler = createScheduler(new PreAggregationConfig()
+                .setRefreshMaxInitialDelay(new Duration(0, SECONDS))
+                .setRefreshMaxConcurrency(2));
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            CountDownLatch release = new CountDownLatch(1);
+            BooleanSupplier refresher = () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                await(release);
+                running.decrementAndGet();
+                return true;
+            };
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[4];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = scheduler.schedule(table("t" + i), table("model" + i), REFRESH_TIME, refresher);
+            }
+            waitFor(running, 2);
+            MILLISECONDS.sleep(200);
+            assertThat(running.get()).isEqualTo(2);
+
+            release.countDown();
+            CompletableFuture.allOf(futures).get(5, SECONDS);
+            assertThat(maxRunning.get()).isEqualTo(2);
+        }
+        finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testMaxConcurrencyPerBackend()
+            throws Exception
+    {
+        PreAggregationRefreshScheduler scheduler = createScheduler(new PreAggregationConfig().setRefreshMaxConcurrencyPerBackend(1));
+        ExecutorService executor = newCachedThreadPool();
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger dataSourceSteps = new AtomicInteger();
+            Future<?> blocking = executor.submit(() -> scheduler.runOnBackends(EnumSet.of(DATA_SOURCE), () -> {
+                dataSourceSteps.incrementAndGet();
+                await(release);
+            }));
+            waitFor(dataSourceSteps, 1);
+
+            // the other backend isn't limited by the data source
+            assertThat(scheduler.runOnBackends(EnumSet.of(DUCKDB), () -> "duckdb")).isEqualTo("duckdb");
+
+            Future<?> waiting = executor.submit(() -> scheduler.runOnBackends(EnumSet.of(DATA_SOURCE, DUCKDB), dataSourceSteps::incrementAndGet));
+            MILLISECONDS.sleep(200);
+            assertThat(dataSourceSteps.get()).isEqualTo(1);
+
+            release.countDown();
+            blocking.get(5, SECONDS);
+            waiting.get(5, SECONDS);
+            assertThat(dataSourceSteps.get()).isEqualTo(2);
+        }
+        finally {
+            executor.shutdownNow();
+            scheduler.stop();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testBackoffOnFailure()
+            throws Exception
+    {
+        PreAggregationRefreshScheduler scheduler = createScheduler(new PreAggregationConfig()
+                .setRefreshMaxInitialDelay(new Duration(0, SECONDS))
+                .setRefreshInitialBackoff(new Duration(50, MILLISECONDS))
+                .setRefreshMaxBackoff(new Duration(100, MILLISECONDS)));
+        try {
+            AtomicInteger attempts = new AtomicInteger();
+            // fail twice, then the next refresh is an hour later
+            scheduler.schedule(table("t1"), table("model"), REFRESH_TIME, () -> attempts.incrementAndGet() > 2);
+            waitFor(attempts, 3);
+            MILLISECONDS.sleep(500);
+            assertThat(attempts.get()).isEqualTo(3);
+        }
+        finally {
+            scheduler.stop();
+        }
+    }
+
+    private PreAggregationRefreshScheduler createScheduler(PreAggregationConfig config)
+    {
+        return new PreAggregationRefreshScheduler(preAggregationTableMapping, config);
+    }
+
+    private static CatalogSchemaTableName table(String name)
+    {
+        return new CatalogSchemaTableName("catalog", "schema", name);
+    }
+
+    private static void waitFor(AtomicInteger counter, int expected)
+            throws InterruptedException
+    {
+        while (counter.get() < expected) {
+            MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.preaggregation;
+
+import io.accio.base.client.duckdb.DuckdbClient;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestPreAggregationTableReclaimer
+{
+    private DuckdbClient duckdbClient;
+
+    @BeforeClass
+    public void setup()
+    {
+        duckdbClient = new DuckdbClient();
+    }
+
+    @Test
+    public void testDropRetiredTableWithoutQueries()
+    {
+        PreAggregationTableReclaimer reclaimer = new PreAggregationTableReclaimer(duckdbClient);
+        duckdbClient.executeDDL("create table idle_table as select 1 as c1");
+
+        reclaimer.retire("idle_table");
+        assertThat(duckdbClient.listTables()).doesNotContain("idle_table");
+        assertThat(reclaimer.getRetiredTableCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testKeepRetiredTableUntilQueriesExit()
+    {
+        PreAggregationTableReclaimer reclaimer = new PreAggregationTableReclaimer(duckdbClient);
+        duckdbClient.executeDDL("create table read_table as select 1 as c1");
+
+        long first = reclaimer.enter();
+        long second = reclaimer.enter();
+        reclaimer.retire("read_table");
+        assertThat(duckdbClient.listTables()).contains("read_table");
+
+        reclaimer.exit(first);
+        assertThat(duckdbClient.listTables()).contains("read_table");
+        assertThat(reclaimer.getRetiredTableCount()).isEqualTo(1);
+
+        reclaimer.exit(second);
+        assertThat(duckdbClient.listTables()).doesNotContain("read_table");
+        assertThat(reclaimer.getRetiredTableCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testQueriesEnteredAfterRetirementDoNotHoldTable()
+    {
+        PreAggregationTableReclaimer reclaimer = new PreAggregationTableReclaimer(duckdbClient);
+        duckdbClient.executeDDL("create table old_table as select 1 as c1");
+        duckdbClient.executeDDL("create table new_table as select 1 as c1");
+
+        long before = reclaimer.enter();
+        reclaimer.retire("old_table");
+        long after = reclaimer.enter();
+        reclaimer.exit(before);
+        // the query opened after the retirement can't read the old table
+        assertThat(duckdbClient.listTables()).doesNotContain("old_table");
+
+        reclaimer.retire("new_table");
+        assertThat(duckdbClient.listTables()).contains("new_table");
+        reclaimer.exit(after);
+        assertThat(duckdbClient.listTables()).doesNotContain("new_table");
+    }
+}
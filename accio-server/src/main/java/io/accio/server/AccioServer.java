@@ -19,6 +19,7 @@ import com.google.inject.Injector;
 import com.google.inject.Module;
 import io.accio.main.AccioConfig;
 import io.accio.main.AccioModule;
+import io.accio.main.pgcatalog.LocalPgCatalog;
 import io.accio.main.pgcatalog.PgCatalogManager;
 import io.accio.main.server.Server;
 import io.accio.main.server.module.BigQueryConnectorModule;
@@ -30,8 +31,11 @@ import io.accio.preaggregation.PreAggregationModule;
 import io.airlift.event.client.EventModule;
 import io.airlift.http.server.HttpServerModule;
 import io.airlift.jaxrs.JaxrsModule;
+import io.airlift.jmx.JmxModule;
 import io.airlift.json.JsonModule;
+import io.airlift.log.Logger;
 import io.airlift.node.NodeModule;
+import org.weakref.jmx.guice.MBeanModule;
 
 import static io.accio.main.AccioConfig.DataSourceType.BIGQUERY;
 import static io.accio.main.AccioConfig.DataSourceType.POSTGRES;
@@ -40,6 +44,8 @@ import static io.airlift.configuration.ConditionalModule.conditionalModule;
 public class AccioServer
         extends Server
 {
+    private static final Logger LOG = Logger.get(AccioServer.class);
+
     public static void main(String[] args)
     {
         new AccioServer().start();
@@ -48,8 +54,20 @@ public class AccioServer
     @Override
     protected void configure(Injector injector)
     {
-        PgCatalogManager pgCatalogManager = injector.getInstance(PgCatalogManager.class);
-        pgCatalogManager.initPgCatalog();
+        // build the local pg_catalog before the first connection, the catalog queries go to the data source if it fails
+        try {
+            injector.getInstance(LocalPgCatalog.class).refreshIfOutdated();
+        }
+        catch (RuntimeException e) {
+            LOG.warn(e, "Failed to build the local pg_catalog");
+        }
+        // creating the pg_catalog in the data source takes a while, don't block the startup
+        injector.getInstance(PgCatalogManager.class).initPgCatalogAsync()
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        LOG.error(e, "Failed to initialize pg_catalog, it's retried in the background");
+                    }
+                });
     }
 
     @Override
@@ -61,6 +79,8 @@ public class AccioServer
                 new JsonModule(),
                 new JaxrsModule(),
                 new EventModule(),
+                new MBeanModule(),
+                new JmxModule(),
                 new PostgresWireProtocolModule(new EmptyTlsDataProvider()),
                 conditionalModule(AccioConfig.class, config -> config.getDataSourceType().equals(BIGQUERY), new BigQueryConnectorModule()),
                 conditionalModule(AccioConfig.class, config -> config.getDataSourceType().equals(POSTGRES), new PostgresConnectorModule()),
@@ -14,18 +14,23 @@
 
 package io.accio.main.server.module;
 
+import com.google.api.gax.core.FixedCredentialsProvider;
 import com.google.api.gax.rpc.FixedHeaderProvider;
 import com.google.api.gax.rpc.HeaderProvider;
 import com.google.auth.Credentials;
 import com.google.auth.oauth2.ServiceAccountCredentials;
 import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadSettings;
 import com.google.cloud.storage.StorageOptions;
 import com.google.inject.Binder;
+import com.google.inject.Module;
 import com.google.inject.Provides;
 import com.google.inject.Scopes;
 import com.google.inject.Singleton;
 import io.accio.base.sql.SqlConverter;
 import io.accio.connector.bigquery.BigQueryClient;
+import io.accio.connector.bigquery.BigQueryStorageReader;
 import io.accio.connector.bigquery.GcsStorageClient;
 import io.accio.main.connector.bigquery.BigQueryConfig;
 import io.accio.main.connector.bigquery.BigQueryCredentialsSupplier;
@@ -42,9 +47,12 @@ import io.accio.main.pgcatalog.regtype.PgMetadata;
 import io.accio.preaggregation.PreAggregationService;
 import io.airlift.configuration.AbstractConfigurationAwareModule;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Optional;
 
-import static io.airlift.configuration.ConfigBinder.configBinder;
+import static com.google.inject.multibindings.OptionalBinder.newOptionalBinder;
+import static org.weakref.jmx.guice.ExportBinder.newExporter;
 
 public class BigQueryConnectorModule
         extends AbstractConfigurationAwareModule
@@ -57,9 +65,15 @@ public class BigQueryConnectorModule
         binder.bind(PgFunctionBuilder.class).to(BigQueryPgFunctionBuilder.class).in(Scopes.SINGLETON);
         binder.bind(PgMetadata.class).to(BigQueryPgMetadata.class).in(Scopes.SINGLETON);
         binder.bind(SqlConverter.class).to(BigQuerySqlConverter.class).in(Scopes.SINGLETON);
-        configBinder(binder).bindConfig(BigQueryConfig.class);
+        BigQueryConfig config = buildConfigObject(BigQueryConfig.class);
 
         binder.bind(PreAggregationService.class).to(BigQueryPreAggregationService.class).in(Scopes.SINGLETON);
+        newExporter(binder).export(BigQueryClient.class).withGeneratedName();
+
+        newOptionalBinder(binder, BigQueryStorageReader.class);
+        if (config.isStorageReadEnabled()) {
+            install(new BigQueryStorageReadModule());
+        }
     }
 
     @Provides
@@ -116,4 +130,34 @@ public class BigQueryConnectorModule
         bigQueryCredentialsSupplier.getCredentials().ifPresent(options::setCredentials);
         return new GcsStorageClient(options.build().getService());
     }
+
+    private static class BigQueryStorageReadModule
+            implements Module
+    {
+        @Override
+        public void configure(Binder binder) {}
+
+        @Provides
+        @Singleton
+        public static BigQueryStorageReader provideBigQueryStorageReader(BigQueryConfig config, HeaderProvider headerProvider, BigQueryCredentialsSupplier bigQueryCredentialsSupplier)
+        {
+            String billingProjectId = calculateBillingProjectId(config.getParentProjectId(), bigQueryCredentialsSupplier.getCredentials());
+            BigQueryReadSettings.Builder settings = BigQueryReadSettings.newBuilder()
+                    .setHeaderProvider(headerProvider);
+            bigQueryCredentialsSupplier.getCredentials().map(FixedCredentialsProvider::create).ifPresent(settings::setCredentialsProvider);
+            config.getStorageReadEndpoint().ifPresent(settings::setEndpoint);
+            return new BigQueryStorageReader(
+                    () -> {
+                        try {
+                            return BigQueryReadClient.create(settings.build());
+                        }
+                        catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    },
+                    billingProjectId,
+                    config.getStorageReadMaxStreams(),
+                    config.getStorageReadBufferedBatchesPerStream());
+        }
+    }
 }
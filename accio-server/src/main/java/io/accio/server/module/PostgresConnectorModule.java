@@ -33,6 +33,7 @@ import io.accio.preaggregation.PreAggregationService;
 import io.airlift.configuration.AbstractConfigurationAwareModule;
 
 import static io.airlift.configuration.ConfigBinder.configBinder;
+import static org.weakref.jmx.guice.ExportBinder.newExporter;
 
 public class PostgresConnectorModule
         extends AbstractConfigurationAwareModule
@@ -41,6 +42,7 @@ public class PostgresConnectorModule
     protected void setup(Binder binder)
     {
         binder.bind(PostgresClient.class).in(Scopes.SINGLETON);
+        newExporter(binder).export(PostgresClient.class).withGeneratedName();
         binder.bind(Metadata.class).to(PostgresMetadata.class).in(Scopes.SINGLETON);
         binder.bind(SqlConverter.class).to(PostgresSqlConverter.class).in(Scopes.SINGLETON);
         binder.bind(PgCatalogTableBuilder.class).to(PostgresPgCatalogTableBuilder.class).in(Scopes.SINGLETON);
@@ -18,10 +18,14 @@ import com.google.inject.Binder;
 import com.google.inject.Scopes;
 import io.accio.main.PostgresNettyProvider;
 import io.accio.main.PostgresWireProtocolConfig;
+import io.accio.main.pgcatalog.LocalPgCatalog;
 import io.accio.main.pgcatalog.PgCatalogManager;
+import io.accio.main.pgcatalog.builder.DuckdbPgCatalogTableBuilder;
 import io.accio.main.pgcatalog.regtype.RegObjectFactory;
 import io.accio.main.wireprotocol.PgWireProtocolExtraRewriter;
 import io.accio.main.wireprotocol.PostgresNetty;
+import io.accio.main.wireprotocol.QueryRegistry;
+import io.accio.main.wireprotocol.WireProtocolStats;
 import io.accio.main.wireprotocol.ssl.SslContextProvider;
 import io.accio.main.wireprotocol.ssl.TlsDataProvider;
 import io.accio.preaggregation.ExtraRewriter;
@@ -29,6 +33,7 @@ import io.airlift.configuration.AbstractConfigurationAwareModule;
 import io.trino.sql.parser.SqlParser;
 
 import static io.airlift.configuration.ConfigBinder.configBinder;
+import static org.weakref.jmx.guice.ExportBinder.newExporter;
 
 public class PostgresWireProtocolModule
         extends AbstractConfigurationAwareModule
@@ -48,7 +53,13 @@ public class PostgresWireProtocolModule
         binder.bind(TlsDataProvider.class).toInstance(tlsDataProvider);
         binder.bind(SslContextProvider.class).in(Scopes.SINGLETON);
         binder.bind(PgCatalogManager.class).in(Scopes.SINGLETON);
+        binder.bind(DuckdbPgCatalogTableBuilder.class).in(Scopes.SINGLETON);
+        binder.bind(LocalPgCatalog.class).in(Scopes.SINGLETON);
         binder.bind(RegObjectFactory.class).in((Scopes.SINGLETON));
+        binder.bind(WireProtocolStats.class).in(Scopes.SINGLETON);
+        newExporter(binder).export(WireProtocolStats.class).withGeneratedName();
+        binder.bind(QueryRegistry.class).in(Scopes.SINGLETON);
+        newExporter(binder).export(QueryRegistry.class).withGeneratedName();
         binder.bind(PostgresNetty.class).toProvider(PostgresNettyProvider.class).in(Scopes.SINGLETON);
 
         // for pre-aggregation extra rewrite
@@ -16,7 +16,9 @@ package io.accio.main.server.module;
 
 import com.google.inject.Binder;
 import io.accio.main.web.AccioExceptionMapper;
+import io.accio.main.web.MetricsResource;
 import io.accio.main.web.PreAggregationResource;
+import io.accio.main.web.QueryResource;
 import io.accio.main.web.ReloadResource;
 import io.airlift.configuration.AbstractConfigurationAwareModule;
 
@@ -30,6 +32,8 @@ public class WebModule
     {
         jaxrsBinder(binder).bind(ReloadResource.class);
         jaxrsBinder(binder).bind(PreAggregationResource.class);
+        jaxrsBinder(binder).bind(MetricsResource.class);
+        jaxrsBinder(binder).bind(QueryResource.class);
         jaxrsBinder(binder).bindInstance(new AccioExceptionMapper());
     }
 }
@@ -38,6 +38,9 @@ import io.airlift.http.server.testing.TestingHttpServerModule;
 import io.airlift.jaxrs.JaxrsModule;
 import io.airlift.json.JsonModule;
 import io.airlift.node.NodeModule;
+import org.weakref.jmx.guice.MBeanModule;
+
+import javax.management.MBeanServer;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -49,7 +52,9 @@ import java.util.Map;
 import static io.accio.main.AccioConfig.DataSourceType.BIGQUERY;
 import static io.accio.main.AccioConfig.DataSourceType.POSTGRES;
 import static io.accio.main.PostgresWireProtocolConfig.PG_WIRE_PROTOCOL_PORT;
+import static io.accio.preaggregation.PreAggregationConfig.PRE_AGGREGATION_REFRESH_MAX_INITIAL_DELAY;
 import static io.airlift.configuration.ConditionalModule.conditionalModule;
+import static javax.management.MBeanServerFactory.newMBeanServer;
 
 public class TestingAccioServer
         implements Closeable
@@ -71,6 +76,8 @@ public class TestingAccioServer
         requiredConfigProps.put(PG_WIRE_PROTOCOL_PORT, String.valueOf(randomPort()));
         requiredConfigProps.put(HTTP_SERVER_PORT, String.valueOf(randomPort()));
         requiredConfigProps.put(NODE_ENVIRONMENT, "test");
+        // the tests wait for the pre-aggregations, don't delay their first refresh
+        requiredConfigProps.put(PRE_AGGREGATION_REFRESH_MAX_INITIAL_DELAY, "0s");
 
         requiredConfigProps.putAll(requiredConfigs);
 
@@ -80,6 +87,9 @@ public class TestingAccioServer
                 new JsonModule(),
                 new JaxrsModule(),
                 new EventModule(),
+                new MBeanModule(),
+                // a server per test class shares the jvm, don't register the MBeans in the platform server
+                binder -> binder.bind(MBeanServer.class).toInstance(newMBeanServer()),
                 new PostgresWireProtocolModule(new EmptyTlsDataProvider()),
                 conditionalModule(AccioConfig.class, config -> config.getDataSourceType().equals(BIGQUERY), new BigQueryConnectorModule()),
                 conditionalModule(AccioConfig.class, config -> config.getDataSourceType().equals(POSTGRES), new PostgresConnectorModule()),
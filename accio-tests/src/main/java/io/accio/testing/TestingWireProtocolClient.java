@@ -27,6 +27,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import org.intellij.lang.annotations.Language;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -47,6 +48,7 @@ import static io.accio.base.type.TimestampWithTimeZoneType.TIMESTAMP_WITH_TIMEZO
 import static io.accio.main.wireprotocol.FormatCodes.FormatCode.BINARY;
 import static io.accio.main.wireprotocol.FormatCodes.FormatCode.TEXT;
 import static io.accio.main.wireprotocol.FormatCodes.getFormatCode;
+import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.isNull;
 import static java.util.Objects.requireNonNull;
@@ -1016,6 +1018,59 @@ public class TestingWireProtocolClient
         System.out.println(commandTag);
     }
 
+    /**
+     * Read the responses until ReadyForQuery without asserting them, e.g. the responses of a simple
+     * query or the responses of the extended query messages followed by a Sync.
+     *
+     * @return the number of the data rows
+     * @throws IllegalStateException if any ErrorResponse is read, the connection is ready for the next query
+     */
+    public long readUntilReadyForQuery()
+            throws IOException
+    {
+        long rows = 0;
+        String errorMessage = null;
+        while (true) {
+            byte id = readBytes(1)[0];
+            int length = ByteBuffer.wrap(readBytes(4)).getInt();
+            byte[] body = readBytes(length - 4);
+            switch (id) {
+                case 'D':
+                    rows++;
+                    break;
+                case 'E':
+                    errorMessage = getErrorMessage(ByteBuffer.wrap(body));
+                    break;
+                case 'Z':
+                    if (errorMessage != null) {
+                        throw new IllegalStateException(errorMessage);
+                    }
+                    return rows;
+                default:
+                    // ignore the other responses
+            }
+        }
+    }
+
+    private static String getErrorMessage(ByteBuffer buffer)
+    {
+        // the fields are the type bytes followed by the c strings, terminated by a zero byte
+        while (buffer.hasRemaining()) {
+            byte id = buffer.get();
+            if (id == 0) {
+                break;
+            }
+            int start = buffer.position();
+            while (buffer.get() != 0) {
+                // skip to the end of the value
+            }
+            if (id == 'M') {
+                return new String(buffer.array(), start, buffer.position() - start - 1, UTF_8);
+            }
+        }
+        return "unknown error";
+    }
+
     @Override
     public void close()
             throws IOException
@@ -1029,8 +1084,10 @@ public class TestingWireProtocolClient
     private byte[] readBytes(int length)
             throws IOException
     {
-        byte[] bytes = new byte[length];
-        in.read(bytes);
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException(format("Expected %s bytes but only %s bytes are read", length, bytes.length));
+        }
         return bytes;
     }
 
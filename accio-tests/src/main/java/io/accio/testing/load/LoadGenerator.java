@@ -0,0 +1,317 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.testing.load;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.accio.testing.TestingWireProtocolClient;
+import io.airlift.log.Logger;
+import io.airlift.units.Duration;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Replay a weighted mix of workloads against a running server through N concurrent connections
+ * and report the throughput and the latency percentiles of each workload. Each connection runs in
+ * its own thread and sends the next request once the previous one is done, so the concurrency is
+ * the number of connections.
+ */
+public class LoadGenerator
+{
+    private static final Logger LOG = Logger.get(LoadGenerator.class);
+    private static final int PROTOCOL_VERSION = 196608;
+
+    private final InetSocketAddress address;
+    private final String database;
+    private final String user;
+    private final String password;
+    private final int connections;
+    private final Duration warmup;
+    private final Duration duration;
+    private final List<Workload> workloads;
+    private final int[] cumulativeWeights;
+
+    private LoadGenerator(
+            HostAndPort address,
+            String database,
+            String user,
+            String password,
+            int connections,
+            Duration warmup,
+            Duration duration,
+            List<Workload> workloads,
+            List<Integer> weights)
+    {
+        requireNonNull(address, "address is null");
+        this.address = new InetSocketAddress(address.getHost(), address.getPort());
+        this.database = requireNonNull(database, "database is null");
+        this.user = requireNonNull(user, "user is null");
+        this.password = requireNonNull(password, "password is null");
+        checkArgument(connections > 0, "connections must be positive");
+        this.connections = connections;
+        this.warmup = requireNonNull(warmup, "warmup is null");
+        this.duration = requireNonNull(duration, "duration is null");
+        checkArgument(!workloads.isEmpty(), "no workload is added");
+        this.workloads = ImmutableList.copyOf(workloads);
+        this.cumulativeWeights = new int[weights.size()];
+        int sum = 0;
+        for (int i = 0; i < weights.size(); i++) {
+            sum += weights.get(i);
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    public static Builder builder(HostAndPort address)
+    {
+        return new Builder(address);
+    }
+
+    public LoadReport run()
+            throws InterruptedException
+    {
+        ExecutorService executor = newFixedThreadPool(connections, new ThreadFactoryBuilder().setNameFormat("load-generator-%s").setDaemon(true).build());
+        try {
+            CountDownLatch connected = new CountDownLatch(connections);
+            List<Future<Recorder[]>> futures = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                futures.add(executor.submit(() -> runConnection(connected)));
+            }
+            connected.await();
+            LOG.info("Running %s workloads through %s connections for %s", workloads.size(), connections, duration);
+
+            List<Recorder[]> recorders = new ArrayList<>();
+            for (Future<Recorder[]> future : futures) {
+                try {
+                    recorders.add(future.get());
+                }
+                catch (ExecutionException e) {
+                    throw new RuntimeException("Failed to run the connection", e.getCause());
+                }
+            }
+            return new LoadReport(connections, duration, IntStream.range(0, workloads.size())
+                    .mapToObj(index -> merge(
+                            workloads.get(index).getName(),
+                            recorders.stream().map(recorder -> recorder[index]).collect(toImmutableList())))
+                    .collect(toImmutableList()));
+        }
+        finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, SECONDS);
+        }
+    }
+
+    private Recorder[] runConnection(CountDownLatch connected)
+            throws IOException, InterruptedException
+    {
+        Recorder[] recorders = new Recorder[workloads.size()];
+        Arrays.setAll(recorders, i -> new Recorder());
+        TestingWireProtocolClient client;
+        try {
+            client = connect();
+        }
+        finally {
+            // don't block the others if the startup fails
+            connected.countDown();
+        }
+        try (client) {
+            // all the connections start at the same time, the slow startup of one doesn't shorten the others
+            connected.await();
+
+            long now = System.nanoTime();
+            long measureStart = now + warmup.roundTo(NANOSECONDS);
+            long end = measureStart + duration.roundTo(NANOSECONDS);
+            while (now < end) {
+                int index = nextWorkload();
+                long rows;
+                boolean failed = false;
+                try {
+                    rows = workloads.get(index).run(client);
+                }
+                catch (IllegalStateException e) {
+                    // the server returned an error, the connection can run the next request
+                    rows = 0;
+                    failed = true;
+                    LOG.debug(e, "Workload %s failed", workloads.get(index).getName());
+                }
+                long finished = System.nanoTime();
+                if (now >= measureStart) {
+                    recorders[index].record(finished - now, rows, failed);
+                }
+                now = finished;
+            }
+        }
+        return recorders;
+    }
+
+    private TestingWireProtocolClient connect()
+            throws IOException
+    {
+        TestingWireProtocolClient client = new TestingWireProtocolClient(address);
+        try {
+            client.sendStartUpMessage(PROTOCOL_VERSION, password, database, user);
+            client.readUntilReadyForQuery();
+            return client;
+        }
+        catch (IOException | RuntimeException e) {
+            try {
+                client.close();
+            }
+            catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+    }
+
+    private int nextWorkload()
+    {
+        int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("unreachable");
+    }
+
+    private LoadReport.WorkloadStats merge(String name, List<Recorder> recorders)
+    {
+        int count = recorders.stream().mapToInt(recorder -> recorder.count).sum();
+        long[] latencies = new long[count];
+        int position = 0;
+        long rows = 0;
+        long errors = 0;
+        for (Recorder recorder : recorders) {
+            System.arraycopy(recorder.latencies, 0, latencies, position, recorder.count);
+            position += recorder.count;
+            rows += recorder.rows;
+            errors += recorder.errors;
+        }
+        Arrays.sort(latencies);
+        return new LoadReport.WorkloadStats(name, latencies, rows, errors, duration);
+    }
+
+    // only accessed by the thread of one connection
+    private static class Recorder
+    {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long rows;
+        private long errors;
+
+        private void record(long latencyNanos, long rows, boolean failed)
+        {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+            this.rows += rows;
+            if (failed) {
+                errors++;
+            }
+        }
+    }
+
+    public static class Builder
+    {
+        private final HostAndPort address;
+        private String database = "accio";
+        private String user = "accio";
+        private String password = "ignored";
+        private int connections = 1;
+        private Duration warmup = new Duration(0, SECONDS);
+        private Duration duration = new Duration(10, SECONDS);
+        private final ImmutableList.Builder<Workload> workloads = ImmutableList.builder();
+        private final ImmutableList.Builder<Integer> weights = ImmutableList.builder();
+
+        private Builder(HostAndPort address)
+        {
+            this.address = requireNonNull(address, "address is null");
+        }
+
+        public Builder setDatabase(String database)
+        {
+            this.database = database;
+            return this;
+        }
+
+        public Builder setUser(String user)
+        {
+            this.user = user;
+            return this;
+        }
+
+        public Builder setPassword(String password)
+        {
+            this.password = password;
+            return this;
+        }
+
+        public Builder setConnections(int connections)
+        {
+            this.connections = connections;
+            return this;
+        }
+
+        /**
+         * The requests sent in the warmup aren't measured.
+         */
+        public Builder setWarmup(Duration warmup)
+        {
+            this.warmup = warmup;
+            return this;
+        }
+
+        public Builder setDuration(Duration duration)
+        {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * @param weight the workload is picked for the next request with the probability weight / sum of the weights
+         */
+        public Builder addWorkload(Workload workload, int weight)
+        {
+            checkArgument(weight > 0, "weight must be positive");
+            workloads.add(requireNonNull(workload, "workload is null"));
+            weights.add(weight);
+            return this;
+        }
+
+        public LoadGenerator build()
+        {
+            return new LoadGenerator(address, database, user, password, connections, warmup, duration, workloads.build(), weights.build());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.testing.load;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.units.Duration;
+
+import java.util.List;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class LoadReport
+{
+    private final int connections;
+    private final Duration duration;
+    private final List<WorkloadStats> workloads;
+
+    public LoadReport(int connections, Duration duration, List<WorkloadStats> workloads)
+    {
+        this.connections = connections;
+        this.duration = requireNonNull(duration, "duration is null");
+        this.workloads = ImmutableList.copyOf(requireNonNull(workloads, "workloads is null"));
+    }
+
+    public int getConnections()
+    {
+        return connections;
+    }
+
+    public Duration getDuration()
+    {
+        return duration;
+    }
+
+    public List<WorkloadStats> getWorkloads()
+    {
+        return workloads;
+    }
+
+    public WorkloadStats getWorkload(String name)
+    {
+        return workloads.stream()
+                .filter(workload -> workload.getName().equals(name))
+                .findAny()
+                .orElseThrow(() -> new IllegalArgumentException("workload not found: " + name));
+    }
+
+    public long getCount()
+    {
+        return workloads.stream().mapToLong(WorkloadStats::getCount).sum();
+    }
+
+    public long getErrors()
+    {
+        return workloads.stream().mapToLong(WorkloadStats::getErrors).sum();
+    }
+
+    public double getQps()
+    {
+        return getCount() / duration.getValue(SECONDS);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(format("connections: %s, duration: %s, qps: %.1f, errors: %s%n", connections, duration, getQps(), getErrors()));
+        builder.append(format("%-24s %10s %8s %10s %12s %10s %10s %10s %10s%n", "workload", "count", "errors", "qps", "rows", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)"));
+        for (WorkloadStats workload : workloads) {
+            builder.append(format("%-24s %10d %8d %10.1f %12d %10.2f %10.2f %10.2f %10.2f%n",
+                    workload.getName(),
+                    workload.getCount(),
+                    workload.getErrors(),
+                    workload.getQps(),
+                    workload.getRows(),
+                    workload.getPercentile(0.5).getValue(MILLISECONDS),
+                    workload.getPercentile(0.99).getValue(MILLISECONDS),
+                    workload.getPercentile(0.999).getValue(MILLISECONDS),
+                    workload.getMax().getValue(MILLISECONDS)));
+        }
+        return builder.toString();
+    }
+
+    public static class WorkloadStats
+    {
+        private final String name;
+        private final long[] sortedLatencies;
+        private final long rows;
+        private final long errors;
+        private final Duration duration;
+
+        /**
+         * @param sortedLatencies the latencies in nanoseconds in ascending order, the failed requests are included
+         */
+        public WorkloadStats(String name, long[] sortedLatencies, long rows, long errors, Duration duration)
+        {
+            this.name = requireNonNull(name, "name is null");
+            this.sortedLatencies = requireNonNull(sortedLatencies, "sortedLatencies is null");
+            this.rows = rows;
+            this.errors = errors;
+            this.duration = requireNonNull(duration, "duration is null");
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public long getCount()
+        {
+            return sortedLatencies.length;
+        }
+
+        public long getRows()
+        {
+            return rows;
+        }
+
+        public long getErrors()
+        {
+            return errors;
+        }
+
+        public double getQps()
+        {
+            return getCount() / duration.getValue(SECONDS);
+        }
+
+        /**
+         * The nearest-rank percentile, e.g. 0.99 for p99.
+         */
+        public Duration getPercentile(double percentile)
+        {
+            if (sortedLatencies.length == 0) {
+                return new Duration(0, NANOSECONDS);
+            }
+            int rank = (int) Math.ceil(percentile * sortedLatencies.length);
+            return new Duration(sortedLatencies[Math.max(rank, 1) - 1], NANOSECONDS);
+        }
+
+        public Duration getMax()
+        {
+            return getPercentile(1);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.testing.load;
+
+import com.google.common.collect.ImmutableList;
+import io.accio.testing.TestingWireProtocolClient;
+import org.intellij.lang.annotations.Language;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static io.accio.testing.TestingWireProtocolClient.DescribeType.PORTAL;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A kind of request the {@link LoadGenerator} sends through a connection. The latency of a request
+ * is measured from the first message sent to the ReadyForQuery read.
+ */
+public class Workload
+{
+    private final String name;
+    private final Request request;
+
+    public Workload(String name, Request request)
+    {
+        this.name = requireNonNull(name, "name is null");
+        this.request = requireNonNull(request, "request is null");
+    }
+
+    /**
+     * Send the statement through the simple query protocol.
+     */
+    public static Workload simpleQuery(String name, @Language("SQL") String statement)
+    {
+        requireNonNull(statement, "statement is null");
+        return new Workload(name, client -> {
+            client.sendSimpleQuery(statement);
+            return client.readUntilReadyForQuery();
+        });
+    }
+
+    /**
+     * Send the statement through the extended query protocol, i.e. Parse, Bind, Describe, Execute and Sync,
+     * the way the JDBC driver sends a prepared statement.
+     */
+    public static Workload extendedQuery(
+            String name,
+            @Language("SQL") String statement,
+            List<Integer> paramTypeOids,
+            Supplier<List<TestingWireProtocolClient.Parameter>> parameters)
+    {
+        requireNonNull(statement, "statement is null");
+        List<Integer> oids = ImmutableList.copyOf(requireNonNull(paramTypeOids, "paramTypeOids is null"));
+        requireNonNull(parameters, "parameters is null");
+        return new Workload(name, client -> {
+            client.sendParse("", statement, oids);
+            client.sendBind("", "", parameters.get());
+            client.sendDescribe(PORTAL, "");
+            client.sendExecute("", 0);
+            client.sendSync();
+            return client.readUntilReadyForQuery();
+        });
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return the number of the rows returned
+     */
+    public long run(TestingWireProtocolClient client)
+            throws IOException
+    {
+        return request.send(client);
+    }
+
+    @FunctionalInterface
+    public interface Request
+    {
+        long send(TestingWireProtocolClient client)
+                throws IOException;
+    }
+}
@@ -19,6 +19,8 @@ import io.accio.testing.AbstractWireProtocolTest;
 import io.accio.testing.TestingAccioServer;
 import io.accio.testing.TestingPostgreSqlServer;
 
+import java.util.Map;
+
 public class AbstractWireProtocolTestWithPostgres
         extends AbstractWireProtocolTest
 {
@@ -37,12 +39,23 @@ public class AbstractWireProtocolTestWithPostgres
         if (getAccioMDLPath().isPresent()) {
             properties.put("accio.file", getAccioMDLPath().get());
         }
+        properties.putAll(getExtraProperties());
 
         return TestingAccioServer.builder()
                 .setRequiredConfigs(properties.build())
                 .build();
     }
 
+    protected Map<String, String> getExtraProperties()
+    {
+        return ImmutableMap.of();
+    }
+
+    protected TestingPostgreSqlServer getTestingPostgreSqlServer()
+    {
+        return testingPostgreSqlServer;
+    }
+
     @Override
     protected String getDefaultCatalog()
     {
@@ -0,0 +1,239 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.testing.postgres;
+
+import io.accio.connector.postgres.PostgresConfig;
+import io.accio.connector.postgres.PostgresConnectionPool;
+import io.accio.testing.TestingPostgreSqlServer;
+import io.airlift.units.Duration;
+import org.postgresql.PGConnection;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Test(singleThreaded = true)
+public class TestPostgresConnectionPool
+{
+    private final TestingPostgreSqlServer testingPostgreSqlServer;
+
+    private TestPostgresConnectionPool()
+    {
+        testingPostgreSqlServer = new TestingPostgreSqlServer();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void close()
+    {
+        testingPostgreSqlServer.close();
+    }
+
+    @Test
+    public void testReuseConnection()
+            throws Exception
+    {
+        try (PostgresConnectionPool pool = new PostgresConnectionPool(createConfig(2))) {
+            int backendPid;
+            Statement statement;
+            try (Connection connection = pool.getConnection()) {
+                backendPid = connection.unwrap(PGConnection.class).getBackendPID();
+                statement = connection.createStatement();
+                connection.setAutoCommit(false);
+            }
+            // the statements are closed and the connection is reset when it's returned to the pool
+            assertThat(statement.isClosed()).isTrue();
+            try (Connection connection = pool.getConnection()) {
+                assertThat(connection.unwrap(PGConnection.class).getBackendPID()).isEqualTo(backendPid);
+                assertThat(connection.getAutoCommit()).isTrue();
+            }
+        }
+    }
+
+    @Test
+    public void testDiscardSessionState()
+            throws Exception
+    {
+        try (PostgresConnectionPool pool = new PostgresConnectionPool(createConfig(1))) {
+            int backendPid;
+            try (Connection connection = pool.getConnection();
+                    Statement statement = connection.createStatement()) {
+                backendPid = connection.unwrap(PGConnection.class).getBackendPID();
+                statement.execute("SET search_path TO pg_catalog");
+                statement.execute("CREATE TEMP TABLE session_table (c1 int)");
+                statement.execute("PREPARE session_statement AS SELECT 1");
+            }
+            try (Connection connection = pool.getConnection();
+                    Statement statement = connection.createStatement()) {
+                assertThat(connection.unwrap(PGConnection.class).getBackendPID()).isEqualTo(backendPid);
+                try (ResultSet resultSet = statement.executeQuery("SHOW search_path")) {
+                    assertThat(resultSet.next()).isTrue();
+                    assertThat(resultSet.getString(1)).isEqualTo("\"$user\", public");
+                }
+                try (ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM pg_prepared_statements WHERE name = 'session_statement'")) {
+                    assertThat(resultSet.next()).isTrue();
+                    assertThat(resultSet.getLong(1)).isEqualTo(0);
+                }
+                assertThatThrownBy(() -> statement.executeQuery("SELECT * FROM session_table"))
+                        .isInstanceOf(SQLException.class)
+                        .hasMessageContaining("does not exist");
+            }
+        }
+    }
+
+    @Test
+    public void testServerPreparedStatementAfterReset()
+            throws Exception
+    {
+        try (PostgresConnectionPool pool = new PostgresConnectionPool(createConfig(1))) {
+            // the driver prepares the statement on the server from the first execution
+            for (int i = 0; i < 3; i++) {
+                try (Connection connection = pool.getConnection()) {
+                    connection.unwrap(PGConnection.class).setPrepareThreshold(1);
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT ?")) {
+                        statement.setInt(1, i);
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            assertThat(resultSet.next()).isTrue();
+                            assertThat(resultSet.getInt(1)).isEqualTo(i);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testResetOnlyAfterSessionChanged()
+            throws Exception
+    {
+        // the driver prepares the statements on the server from the first execution
+        PostgresConfig config = createConfig(1).setJdbcUrl(testingPostgreSqlServer.getJdbcUrl() + "?prepareThreshold=1");
+        try (PostgresConnectionPool pool = new PostgresConnectionPool(config)) {
+            executeQuery(pool);
+            // the queries don't reset the connection, the server-side prepared statement is kept
+            assertThat(countPreparedStatements(pool)).isGreaterThan(0);
+
+            try (Connection connection = pool.getConnection();
+                    Statement statement = connection.createStatement()) {
+                statement.execute("SET search_path TO pg_catalog");
+            }
+            assertThat(countPreparedStatements(pool)).isEqualTo(0);
+
+            executeQuery(pool);
+            try (Connection connection = pool.getConnection();
+                    Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery("SELECT set_config('search_path', 'pg_catalog', false)")) {
+                assertThat(resultSet.next()).isTrue();
+            }
+            assertThat(countPreparedStatements(pool)).isEqualTo(0);
+        }
+
+        try (PostgresConnectionPool pool = new PostgresConnectionPool(config.setConnectionAlwaysReset(true))) {
+            executeQuery(pool);
+            assertThat(countPreparedStatements(pool)).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testAbortDiscardsConnection()
+            throws Exception
+    {
+        try (PostgresConnectionPool pool = new PostgresConnectionPool(createConfig(1))) {
+            Connection connection = pool.getConnection();
+            int backendPid = connection.unwrap(PGConnection.class).getBackendPID();
+            connection.abort(directExecutor());
+            assertThat(connection.isClosed()).isTrue();
+
+            try (Connection newConnection = pool.getConnection()) {
+                assertThat(newConnection.unwrap(PGConnection.class).getBackendPID()).isNotEqualTo(backendPid);
+            }
+        }
+    }
+
+    @Test
+    public void testAcquireTimeout()
+            throws Exception
+    {
+        try (PostgresConnectionPool pool = new PostgresConnectionPool(createConfig(1)
+                .setConnectionAcquireTimeout(new Duration(100, MILLISECONDS)))) {
+            try (Connection ignored = pool.getConnection()) {
+                assertThatThrownBy(pool::getConnection)
+                        .isInstanceOf(SQLException.class)
+                        .hasMessageContaining("waiting for a postgres connection");
+            }
+            // the connection is available again after it's returned
+            try (Connection connection = pool.getConnection()) {
+                assertThat(connection.isValid(1)).isTrue();
+            }
+        }
+    }
+
+    @Test
+    public void testMaxLifetime()
+            throws Exception
+    {
+        try (PostgresConnectionPool pool = new PostgresConnectionPool(createConfig(1)
+                .setConnectionMaxLifetime(new Duration(1, MILLISECONDS)))) {
+            int backendPid;
+            try (Connection connection = pool.getConnection()) {
+                backendPid = connection.unwrap(PGConnection.class).getBackendPID();
+                Thread.sleep(10);
+            }
+            try (Connection connection = pool.getConnection()) {
+                assertThat(connection.unwrap(PGConnection.class).getBackendPID()).isNotEqualTo(backendPid);
+            }
+        }
+    }
+
+    private static void executeQuery(PostgresConnectionPool pool)
+            throws SQLException
+    {
+        try (Connection connection = pool.getConnection();
+                PreparedStatement statement = connection.prepareStatement("SELECT ?")) {
+            statement.setInt(1, 1);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                assertThat(resultSet.next()).isTrue();
+            }
+        }
+    }
+
+    private static long countPreparedStatements(PostgresConnectionPool pool)
+            throws SQLException
+    {
+        try (Connection connection = pool.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM pg_prepared_statements")) {
+            assertThat(resultSet.next()).isTrue();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private PostgresConfig createConfig(int maxConnections)
+    {
+        return new PostgresConfig()
+                .setJdbcUrl(testingPostgreSqlServer.getJdbcUrl())
+                .setUser(testingPostgreSqlServer.getUser())
+                .setPassword(testingPostgreSqlServer.getPassword())
+                .setMaxConnections(maxConnections);
+    }
+}
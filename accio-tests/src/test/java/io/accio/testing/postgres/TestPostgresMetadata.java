@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.testing.postgres;
+
+import io.accio.connector.postgres.PostgresClient;
+import io.accio.connector.postgres.PostgresConfig;
+import io.accio.main.connector.postgres.PostgresMetadata;
+import io.accio.testing.TestingPostgreSqlServer;
+import io.airlift.units.Duration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test(singleThreaded = true)
+public class TestPostgresMetadata
+{
+    private final TestingPostgreSqlServer testingPostgreSqlServer;
+
+    private TestPostgresMetadata()
+    {
+        testingPostgreSqlServer = new TestingPostgreSqlServer();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void close()
+    {
+        testingPostgreSqlServer.close();
+    }
+
+    @Test
+    public void testCacheFunctionNames()
+    {
+        PostgresConfig config = createConfig().setMetadataCacheTtl(new Duration(1, HOURS));
+        withMetadata(config, metadata -> {
+            assertThat(metadata.listFunctionNames("pg_catalog")).contains("abs").doesNotContain("cached_function");
+
+            createFunction("cached_function");
+            assertThat(metadata.listFunctionNames("pg_catalog")).doesNotContain("cached_function");
+
+            metadata.invalidateCache();
+            assertThat(metadata.listFunctionNames("pg_catalog")).contains("cached_function");
+        });
+    }
+
+    @Test
+    public void testCacheDisabled()
+    {
+        PostgresConfig config = createConfig().setMetadataCacheTtl(new Duration(0, SECONDS));
+        withMetadata(config, metadata -> {
+            assertThat(metadata.listFunctionNames("pg_catalog")).doesNotContain("uncached_function");
+            createFunction("uncached_function");
+            assertThat(metadata.listFunctionNames("pg_catalog")).contains("uncached_function");
+        });
+    }
+
+    @Test
+    public void testCacheMaxSize()
+    {
+        PostgresConfig config = createConfig()
+                .setMetadataCacheTtl(new Duration(1, HOURS))
+                .setMetadataCacheMaxSize(1);
+        withMetadata(config, metadata -> {
+            assertThat(metadata.listFunctionNames("pg_catalog")).doesNotContain("evicted_function");
+            createFunction("evicted_function");
+            // listing another schema evicts the cached function names of pg_catalog
+            assertThat(metadata.listFunctionNames("unknown_schema")).contains("evicted_function");
+            assertThat(metadata.listFunctionNames("pg_catalog")).contains("evicted_function");
+        });
+    }
+
+    private void withMetadata(PostgresConfig config, Consumer<PostgresMetadata> test)
+    {
+        PostgresClient postgresClient = new PostgresClient(config);
+        PostgresMetadata metadata = new PostgresMetadata(postgresClient, config);
+        try {
+            test.accept(metadata);
+        }
+        finally {
+            metadata.close();
+            postgresClient.close();
+        }
+    }
+
+    private void createFunction(String name)
+    {
+        testingPostgreSqlServer.execute(format("CREATE FUNCTION pg_catalog.%s() RETURNS integer LANGUAGE sql AS 'SELECT 1'", name));
+    }
+
+    private PostgresConfig createConfig()
+    {
+        return new PostgresConfig()
+                .setJdbcUrl(testingPostgreSqlServer.getJdbcUrl())
+                .setUser(testingPostgreSqlServer.getUser())
+                .setPassword(testingPostgreSqlServer.getPassword());
+    }
+}
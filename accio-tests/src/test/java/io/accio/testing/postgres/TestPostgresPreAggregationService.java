@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.testing.postgres;
+
+import com.google.common.collect.ImmutableList;
+import io.accio.base.client.AutoCloseableIterator;
+import io.accio.base.client.duckdb.DuckdbClient;
+import io.accio.connector.postgres.PostgresClient;
+import io.accio.connector.postgres.PostgresConfig;
+import io.accio.main.connector.postgres.PostgresPreAggregationService;
+import io.accio.testing.TestingPostgreSqlServer;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Test(singleThreaded = true)
+public class TestPostgresPreAggregationService
+{
+    private final TestingPostgreSqlServer testingPostgreSqlServer;
+    private final DuckdbClient duckdbClient;
+    private final PostgresPreAggregationService postgresPreAggregationService;
+
+    private TestPostgresPreAggregationService()
+    {
+        testingPostgreSqlServer = new TestingPostgreSqlServer();
+        testingPostgreSqlServer.execute("CREATE TABLE tpch.orders (" +
+                "orderkey int8, custkey int4, status varchar, totalprice numeric(12, 2), orderdate date, " +
+                "updated timestamp, shipped bool, priority int2, discount float8, uuid uuid)");
+        testingPostgreSqlServer.execute("INSERT INTO tpch.orders VALUES " +
+                "(1, 10, 'O', 173665.47, '1996-01-02', '1996-01-02 10:11:12.123456', true, 1, 0.5, 'a0eebc99-9c0b-4ef8-bb6d-6bb9bd380a11'), " +
+                "(2, 10, 'F', -46929.18, '1996-12-01', '1996-12-01 00:00:00', false, 2, 0.25, null), " +
+                "(3, 20, null, null, null, null, null, null, null, null)");
+        PostgresConfig postgresConfig = new PostgresConfig()
+                .setJdbcUrl(testingPostgreSqlServer.getJdbcUrl())
+                .setUser(testingPostgreSqlServer.getUser())
+                .setPassword(testingPostgreSqlServer.getPassword());
+        duckdbClient = new DuckdbClient();
+        postgresPreAggregationService = new PostgresPreAggregationService(new PostgresClient(postgresConfig), duckdbClient);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void close()
+    {
+        testingPostgreSqlServer.close();
+    }
+
+    @Test
+    public void testLoadPreAggregation()
+    {
+        assertThat(postgresPreAggregationService.loadPreAggregation("SELECT * FROM tpch.orders ORDER BY orderkey", "orders_copy")).isTrue();
+
+        List<Object[]> result = queryDuckdb("SELECT * FROM orders_copy ORDER BY orderkey");
+        assertThat(result).hasSize(3);
+        assertThat(result.get(0)).containsExactly(
+                1L, 10, "O", new BigDecimal("173665.47"), LocalDate.parse("1996-01-02"),
+                Timestamp.valueOf("1996-01-02 10:11:12.123456"), true, (short) 1, 0.5, "a0eebc99-9c0b-4ef8-bb6d-6bb9bd380a11");
+        assertThat(result.get(1)).containsExactly(
+                2L, 10, "F", new BigDecimal("-46929.18"), LocalDate.parse("1996-12-01"),
+                Timestamp.valueOf("1996-12-01 00:00:00"), false, (short) 2, 0.25, null);
+        assertThat(result.get(2)).containsExactly(3L, 20, null, null, null, null, null, null, null, null);
+    }
+
+    @Test
+    public void testLoadAggregation()
+    {
+        assertThat(postgresPreAggregationService.loadPreAggregation(
+                "SELECT custkey, sum(totalprice) AS revenue, count(*) AS cnt FROM tpch.orders GROUP BY custkey ORDER BY custkey",
+                "revenue_copy")).isTrue();
+
+        List<Object[]> result = queryDuckdb("SELECT * FROM revenue_copy ORDER BY custkey");
+        assertThat(result).hasSize(2);
+        // sum() returns unconstrained numeric, it's stored as an exact decimal
+        assertThat(result.get(0)).containsExactly(10, new BigDecimal("126736.290000000"), 2L);
+        assertThat(result.get(1)).containsExactly(20, null, 1L);
+    }
+
+    @Test
+    public void testLoadNumericPrecision()
+    {
+        assertThat(postgresPreAggregationService.loadPreAggregation(
+                "SELECT 1.5::numeric(38, 10) AS max_precision, 1.5::numeric(39, 2) AS over_precision, 12345678901234567890.1234567891::numeric AS unconstrained",
+                "numeric_copy")).isTrue();
+
+        List<Object[]> result = queryDuckdb("SELECT * FROM numeric_copy");
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0)).containsExactly(new BigDecimal("1.5000000000"), new BigDecimal("1.50"), new BigDecimal("12345678901234567890.123456789"));
+    }
+
+    @Test
+    public void testLoadNumericOverflow()
+    {
+        assertThatThrownBy(() -> postgresPreAggregationService.loadPreAggregation(
+                "SELECT 123456789012345678901234567890.5::numeric AS value",
+                "overflow_copy"))
+                .hasStackTraceContaining("numeric field overflow");
+    }
+
+    @Test
+    public void testLoadInfiniteDateTime()
+    {
+        assertThat(postgresPreAggregationService.loadPreAggregation(
+                "SELECT 'infinity'::date AS d1, '-infinity'::date AS d2, 'infinity'::timestamp AS t1, '-infinity'::timestamptz AS t2",
+                "infinity_copy")).isTrue();
+
+        List<Object[]> result = queryDuckdb("SELECT d1 = 'infinity'::DATE, d2 = '-infinity'::DATE, t1 = 'infinity'::TIMESTAMP, t2 = '-infinity'::TIMESTAMPTZ FROM infinity_copy");
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0)).containsExactly(true, true, true, true);
+    }
+
+    @Test
+    public void testLoadNonFiniteNumeric()
+    {
+        assertThatThrownBy(() -> postgresPreAggregationService.loadPreAggregation("SELECT 'NaN'::numeric(12, 2) AS value", "nan_copy"))
+                .hasRootCauseMessage("NaN numeric value is not supported");
+    }
+
+    private List<Object[]> queryDuckdb(String statement)
+    {
+        try (AutoCloseableIterator<Object[]> iterator = duckdbClient.query(statement)) {
+            ImmutableList.Builder<Object[]> builder = ImmutableList.builder();
+            while (iterator.hasNext()) {
+                builder.add(iterator.next());
+            }
+            return builder.build();
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.testing.postgres;
+
+import io.accio.base.client.AutoCloseableIterator;
+import io.accio.connector.postgres.PostgresClient;
+import io.accio.connector.postgres.PostgresConfig;
+import io.accio.testing.TestingPostgreSqlServer;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test(singleThreaded = true)
+public class TestPostgresRecordIterator
+{
+    private final TestingPostgreSqlServer testingPostgreSqlServer;
+    private final PostgresClient postgresClient;
+
+    private TestPostgresRecordIterator()
+    {
+        testingPostgreSqlServer = new TestingPostgreSqlServer();
+        postgresClient = new PostgresClient(new PostgresConfig()
+                .setJdbcUrl(testingPostgreSqlServer.getJdbcUrl())
+                .setUser(testingPostgreSqlServer.getUser())
+                .setPassword(testingPostgreSqlServer.getPassword())
+                .setMaxConnections(1)
+                .setFetchSize(10)
+                .setMaxFetchSize(1000));
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void close()
+    {
+        postgresClient.close();
+        testingPostgreSqlServer.close();
+    }
+
+    @Test
+    public void testStreamWholeResult()
+            throws Exception
+    {
+        long count = 0;
+        long sum = 0;
+        try (AutoCloseableIterator<Object[]> iterator = postgresClient.query("SELECT i FROM generate_series(1, 100000) i")) {
+            while (iterator.hasNext()) {
+                sum += (int) iterator.next()[0];
+                count++;
+            }
+        }
+        assertThat(count).isEqualTo(100000);
+        assertThat(sum).isEqualTo(5000050000L);
+    }
+
+    @Test
+    public void testCloseBeforeDrained()
+            throws Exception
+    {
+        try (AutoCloseableIterator<Object[]> iterator = postgresClient.query("SELECT i FROM generate_series(1, 100000) i")) {
+            assertThat(iterator.next()).containsExactly(1);
+        }
+        // the only connection in the pool is reusable after the cursor is closed
+        try (AutoCloseableIterator<Object[]> iterator = postgresClient.query("SELECT 1")) {
+            assertThat(iterator.next()).containsExactly(1);
+            assertThat(iterator.hasNext()).isFalse();
+        }
+    }
+
+    @Test
+    public void testExtractNullAndNonNullValues()
+            throws Exception
+    {
+        String sql = "SELECT 1::smallint, NULL::smallint, DATE '2020-01-02', NULL::date, ARRAY[1, 2], NULL::int[], 'a'::text, NULL::text";
+        try (AutoCloseableIterator<Object[]> iterator = postgresClient.query(sql)) {
+            assertThat(iterator.next()).containsExactly(
+                    (short) 1, null,
+                    LocalDate.of(2020, 1, 2), null,
+                    List.of(1, 2), null,
+                    "a", null);
+            assertThat(iterator.hasNext()).isFalse();
+        }
+    }
+}
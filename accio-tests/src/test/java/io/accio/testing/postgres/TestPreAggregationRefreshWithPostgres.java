@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.testing.postgres;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Key;
+import io.accio.main.wireprotocol.WireProtocolStats;
+import io.accio.preaggregation.PreAggregationTableMapping;
+import io.accio.testing.TestingWireProtocolClient;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static io.accio.base.type.IntegerType.INTEGER;
+import static io.accio.testing.TestingWireProtocolClient.Parameter.textParameter;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test(singleThreaded = true)
+public class TestPreAggregationRefreshWithPostgres
+        extends AbstractWireProtocolTestWithPostgres
+{
+    private static final String ORDERS_REF_SQL = "select * from tpch.load_orders";
+
+    private Path accioMDLFilePath;
+
+    @BeforeClass
+    public void prepareData()
+    {
+        getTestingPostgreSqlServer().execute("CREATE TABLE tpch.load_orders AS SELECT " +
+                "i AS o_orderkey, i % 1000 AS o_custkey, ((i % 100) * 1.5)::double precision AS o_totalprice, md5(i::text) AS o_comment " +
+                "FROM generate_series(1, 10000) AS i");
+        // the pre-aggregation failed at startup since the table didn't exist yet
+        reloadPreAggregation();
+    }
+
+    @Override
+    protected Optional<String> getAccioMDLPath()
+    {
+        // called by the constructor of the super class, the fields aren't initialized yet
+        if (accioMDLFilePath == null) {
+            try {
+                accioMDLFilePath = Files.createTempFile("acciomdl", ".json");
+                Files.writeString(accioMDLFilePath, readMDL());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return Optional.of(accioMDLFilePath.toString());
+    }
+
+    @Test
+    public void testExecuteAfterRefresh()
+            throws IOException
+    {
+        WireProtocolStats stats = getInstance(Key.get(WireProtocolStats.class));
+        try (TestingWireProtocolClient protocolClient = wireProtocolClient()) {
+            protocolClient.sendStartUpMessage(196608, MOCK_PASSWORD, getDefaultCatalog(), "canner");
+            protocolClient.readUntilReadyForQuery();
+
+            protocolClient.sendParse("revenue", "SELECT custkey, revenue FROM Revenue WHERE custkey = ?", ImmutableList.of(INTEGER.oid()));
+            protocolClient.sendSync();
+            protocolClient.readUntilReadyForQuery();
+            String parsedTableName = getPreAggregationTableName();
+
+            // the table the statement was parsed against is replaced and dropped before it's executed
+            reloadPreAggregation();
+            assertThat(getPreAggregationTableName()).isNotEqualTo(parsedTableName);
+
+            long preAggregationQueries = stats.getPreAggregationQueries().getTotalCount();
+            long fallbacks = stats.getPreAggregationFallbacks().getTotalCount();
+            protocolClient.sendBind("exec1", "revenue", ImmutableList.of(textParameter(42, INTEGER)));
+            protocolClient.sendExecute("exec1", 0);
+            protocolClient.sendSync();
+            assertThat(protocolClient.readUntilReadyForQuery()).isEqualTo(1);
+            assertThat(stats.getPreAggregationQueries().getTotalCount()).isEqualTo(preAggregationQueries + 1);
+            assertThat(stats.getPreAggregationFallbacks().getTotalCount()).isEqualTo(fallbacks);
+        }
+    }
+
+    @Test
+    public void testRebuildAfterBaseModelChanged()
+            throws IOException
+    {
+        String tableName = getPreAggregationTableName();
+
+        // only the base model of the metric is changed
+        Files.writeString(accioMDLFilePath, readMDL().replace(ORDERS_REF_SQL, ORDERS_REF_SQL + " where o_custkey < 500"));
+        reloadAccioMDL();
+        PreAggregationTableMapping preAggregationTableMapping = getInstance(Key.get(PreAggregationTableMapping.class));
+        assertThat(preAggregationTableMapping.getPreAggregationInfoPair(getDefaultCatalog(), getDefaultSchema(), "Revenue")).isNull();
+
+        reloadPreAggregation();
+        assertThat(getPreAggregationTableName()).isNotEqualTo(tableName);
+    }
+
+    private String getPreAggregationTableName()
+    {
+        return getInstance(Key.get(PreAggregationTableMapping.class))
+                .getPreAggregationInfoPair(getDefaultCatalog(), getDefaultSchema(), "Revenue")
+                .getRequiredTableName();
+    }
+
+    private static String readMDL()
+            throws IOException
+    {
+        return Files.readString(Path.of(requireNonNull(TestPreAggregationRefreshWithPostgres.class.getClassLoader().getResource("load/load_mdl.json")).getPath()), UTF_8);
+    }
+}
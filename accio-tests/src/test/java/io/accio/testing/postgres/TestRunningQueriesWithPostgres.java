@@ -0,0 +1,135 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.testing.postgres;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.accio.main.wireprotocol.QueryInfo;
+import io.accio.testing.TestingWireProtocolClient;
+import io.airlift.http.client.StringResponseHandler.StringResponse;
+import io.airlift.json.JsonCodec;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Properties;
+
+import static io.accio.main.wireprotocol.RunningQuery.Backend.DATA_SOURCE;
+import static io.accio.main.wireprotocol.RunningQuery.Phase.SUSPENDED;
+import static io.airlift.http.client.Request.Builder.prepareDelete;
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.StringResponseHandler.createStringResponseHandler;
+import static io.airlift.json.JsonCodec.jsonCodec;
+import static java.lang.String.format;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestRunningQueriesWithPostgres
+        extends AbstractWireProtocolTestWithPostgres
+{
+    private static final JsonCodec<QueryInfo> QUERY_INFO_CODEC = jsonCodec(QueryInfo.class);
+    private static final String STATEMENT = "select * from (values (1), (2), (3)) as t(c)";
+
+    @Override
+    protected Map<String, String> getExtraProperties()
+    {
+        return ImmutableMap.<String, String>builder()
+                .put("pg-wire-protocol.admin-users", "accio")
+                .put("pg-wire-protocol.query-api.enabled", "true")
+                .build();
+    }
+
+    @Test
+    public void testKillSuspendedQuery()
+            throws Exception
+    {
+        try (TestingWireProtocolClient protocolClient = wireProtocolClient()) {
+            protocolClient.sendStartUpMessage(196608, MOCK_PASSWORD, "test", "canner");
+            protocolClient.assertAuthOk();
+            protocolClient.readUntilReadyForQuery();
+
+            protocolClient.sendParse("stmt", STATEMENT, ImmutableList.of());
+            protocolClient.sendBind("portal", "stmt", ImmutableList.of());
+            protocolClient.sendExecute("portal", 1);
+            protocolClient.sendSync();
+            protocolClient.assertParseComplete();
+            protocolClient.assertBindComplete();
+            protocolClient.assertDataRow("1");
+            protocolClient.assertPortalPortalSuspended();
+            protocolClient.assertReadyForQuery('I');
+
+            long queryId;
+            try (Connection connection = createConnection();
+                    Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery(
+                            "SELECT query_id, user_name, statement, backend, rows_sent FROM accio_system.running_queries WHERE phase = 'SUSPENDED'")) {
+                assertThat(resultSet.next()).isTrue();
+                queryId = resultSet.getLong("query_id");
+                assertThat(resultSet.getString("user_name")).isEqualTo("canner");
+                assertThat(resultSet.getString("statement")).isEqualTo(STATEMENT);
+                assertThat(resultSet.getString("backend")).isEqualTo(DATA_SOURCE.name());
+                assertThat(resultSet.getLong("rows_sent")).isEqualTo(1);
+                assertThat(resultSet.next()).isFalse();
+            }
+
+            // the other users only see their own queries
+            try (Connection connection = createConnection("other");
+                    Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery("SELECT user_name FROM accio_system.running_queries")) {
+                while (resultSet.next()) {
+                    assertThat(resultSet.getString("user_name")).isEqualTo("other");
+                }
+            }
+
+            StringResponse response = executeHttpRequest(prepareGet().setUri(queryUri(queryId)).build(), createStringResponseHandler());
+            assertThat(response.getStatusCode()).isEqualTo(200);
+            QueryInfo queryInfo = QUERY_INFO_CODEC.fromJson(response.getBody());
+            assertThat(queryInfo.getPhase()).isEqualTo(SUSPENDED);
+            assertThat(queryInfo.getRowsSent()).isEqualTo(1);
+
+            assertThat(executeHttpRequest(prepareDelete().setUri(queryUri(queryId)).build(), createStringResponseHandler()).getStatusCode())
+                    .isEqualTo(204);
+
+            // the query fails when the client fetches the next rows
+            protocolClient.sendExecute("portal", 1);
+            protocolClient.sendSync();
+            protocolClient.assertErrorMessage("Query \\d+ has been killed");
+            protocolClient.assertReadyForQuery('I');
+
+            assertThat(executeHttpRequest(prepareGet().setUri(queryUri(queryId)).build(), createStringResponseHandler()).getStatusCode())
+                    .isEqualTo(404);
+            assertThat(executeHttpRequest(prepareDelete().setUri(queryUri(queryId)).build(), createStringResponseHandler()).getStatusCode())
+                    .isEqualTo(404);
+        }
+    }
+
+    private Connection createConnection(String user)
+            throws Exception
+    {
+        Properties props = getDefaultProperties();
+        props.setProperty("user", user);
+        return DriverManager.getConnection(
+                format("jdbc:postgresql://%s:%s/%s", server().getPgHostAndPort().getHost(), server().getPgHostAndPort().getPort(), getDefaultCatalog()),
+                props);
+    }
+
+    private URI queryUri(long queryId)
+    {
+        return server().getHttpServerBasedUrl().resolve("/v1/query/" + queryId);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.accio.testing.postgres;
+
+import com.google.common.collect.ImmutableList;
+import io.accio.testing.load.LoadGenerator;
+import io.accio.testing.load.LoadReport;
+import io.airlift.log.Logger;
+import io.airlift.units.Duration;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.accio.base.type.IntegerType.INTEGER;
+import static io.accio.testing.TestingWireProtocolClient.Parameter.textParameter;
+import static io.accio.testing.load.Workload.extendedQuery;
+import static io.accio.testing.load.Workload.simpleQuery;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Run a mix of the workloads against the server backed by a PostgreSQL container. It's a short smoke
+ * run by default, a real run can be configured by the system properties, e.g.
+ * {@code -Dload.connections=64 -Dload.warmup=30s -Dload.duration=5m}.
+ */
+@Test(singleThreaded = true)
+public class TestWireProtocolLoadWithPostgres
+        extends AbstractWireProtocolTestWithPostgres
+{
+    private static final Logger LOG = Logger.get(TestWireProtocolLoadWithPostgres.class);
+    private static final int ORDERS = Integer.getInteger("load.orders", 10_000);
+
+    @BeforeClass
+    public void prepareData()
+    {
+        getTestingPostgreSqlServer().execute(format("CREATE TABLE tpch.load_orders AS SELECT " +
+                "i AS o_orderkey, i %% 1000 AS o_custkey, ((i %% 100) * 1.5)::double precision AS o_totalprice, md5(i::text) AS o_comment " +
+                "FROM generate_series(1, %s) AS i", ORDERS));
+        getTestingPostgreSqlServer().execute("ALTER TABLE tpch.load_orders ADD PRIMARY KEY (o_orderkey)");
+        // the pre-aggregation failed at startup since the table didn't exist yet
+        reloadPreAggregation();
+    }
+
+    @Override
+    protected Optional<String> getAccioMDLPath()
+    {
+        return Optional.of(requireNonNull(getClass().getClassLoader().getResource("load/load_mdl.json")).getPath());
+    }
+
+    @Test
+    public void testMixedWorkloads()
+            throws Exception
+    {
+        LoadReport report = LoadGenerator.builder(server().getPgHostAndPort())
+                .setDatabase(getDefaultCatalog())
+                .setConnections(Integer.getInteger("load.connections", 4))
+                .setWarmup(Duration.valueOf(System.getProperty("load.warmup", "1s")))
+                .setDuration(Duration.valueOf(System.getProperty("load.duration", "5s")))
+                .addWorkload(simpleQuery("simple_query", "SELECT custkey, totalprice FROM Orders WHERE orderkey = 42"), 40)
+                .addWorkload(extendedQuery(
+                        "extended_query",
+                        "SELECT custkey, totalprice FROM Orders WHERE orderkey = ?",
+                        ImmutableList.of(INTEGER.oid()),
+                        () -> ImmutableList.of(textParameter(ThreadLocalRandom.current().nextInt(1, ORDERS + 1), INTEGER))), 40)
+                .addWorkload(simpleQuery("pre_aggregated", "SELECT custkey, revenue FROM Revenue WHERE custkey = 42"), 15)
+                .addWorkload(simpleQuery("large_result", "SELECT orderkey, custkey, totalprice, comment FROM Orders"), 5)
+                .build()
+                .run();
+        LOG.info("%s", report);
+
+        assertThat(report.getErrors()).isEqualTo(0);
+        for (LoadReport.WorkloadStats workload : report.getWorkloads()) {
+            assertThat(workload.getCount()).as(workload.getName()).isPositive();
+        }
+        assertThat(report.getWorkload("simple_query").getRows()).isEqualTo(report.getWorkload("simple_query").getCount());
+        assertThat(report.getWorkload("extended_query").getRows()).isEqualTo(report.getWorkload("extended_query").getCount());
+        assertThat(report.getWorkload("pre_aggregated").getRows()).isEqualTo(report.getWorkload("pre_aggregated").getCount());
+        assertThat(report.getWorkload("large_result").getRows()).isEqualTo(report.getWorkload("large_result").getCount() * ORDERS);
+    }
+}